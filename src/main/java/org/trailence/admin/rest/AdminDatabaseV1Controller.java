@@ -0,0 +1,35 @@
+package org.trailence.admin.rest;
+
+import java.util.List;
+
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.trailence.global.TrailenceUtils;
+import org.trailence.global.metrics.QueryProfiler;
+
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/api/admin/database/v1")
+@RequiredArgsConstructor
+public class AdminDatabaseV1Controller {
+
+	private final QueryProfiler profiler;
+
+	@GetMapping("/queries")
+	@PreAuthorize(TrailenceUtils.PREAUTHORIZE_ADMIN)
+	public Mono<List<QueryProfiler.QueryStats>> getQueries() {
+		return Mono.fromSupplier(profiler::getStats);
+	}
+
+	@DeleteMapping("/queries")
+	@PreAuthorize(TrailenceUtils.PREAUTHORIZE_ADMIN)
+	public Mono<Void> resetQueries() {
+		return Mono.fromRunnable(profiler::reset);
+	}
+
+}
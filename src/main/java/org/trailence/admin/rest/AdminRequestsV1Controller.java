@@ -0,0 +1,28 @@
+package org.trailence.admin.rest;
+
+import java.util.List;
+
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.trailence.global.TrailenceUtils;
+import org.trailence.global.rest.RequestWatchdog;
+
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/api/admin/requests/v1")
+@RequiredArgsConstructor
+public class AdminRequestsV1Controller {
+
+	private final RequestWatchdog watchdog;
+
+	@GetMapping("/watchdog")
+	@PreAuthorize(TrailenceUtils.PREAUTHORIZE_ADMIN)
+	public Mono<List<RequestWatchdog.Event>> getWatchdogEvents() {
+		return Mono.fromSupplier(watchdog::getEvents);
+	}
+
+}
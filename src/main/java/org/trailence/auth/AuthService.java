@@ -25,6 +25,7 @@ import org.springframework.data.relational.core.sql.Expressions;
 import org.springframework.data.relational.core.sql.SQL;
 import org.springframework.data.relational.core.sql.SimpleFunction;
 import org.springframework.data.relational.core.sql.Update;
+import org.springframework.r2dbc.core.binding.MutableBindings;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -384,20 +385,23 @@ public class AuthService {
 	public Mono<Void> handleExpiredKeys() {
 		return Mono.defer(() -> {
 			log.info("Deleting expired keys");
-			var now = SQL.literalOf(System.currentTimeMillis());
-			var update = Update.builder().table(UserKeyEntity.TABLE)
-				.set(Assignments.value(UserKeyEntity.COL_DELETED_AT, now))
-				.where(
-					Conditions.isNull(UserKeyEntity.COL_DELETED_AT)
-					.and(
-						Conditions.isLess(
-							new PlusExpression(UserKeyEntity.COL_CREATED_AT, UserKeyEntity.COL_EXPIRES_AFTER),
-							now
+			MutableBindings bindings = DbUtils.newBindings(r2dbc);
+			var now = SQL.bindMarker(bindings.bind(System.currentTimeMillis()).getPlaceholder());
+			var operation = DbUtils.shape("handleExpiredKeys", bindings, () -> {
+				var update = Update.builder().table(UserKeyEntity.TABLE)
+					.set(Assignments.value(UserKeyEntity.COL_DELETED_AT, now))
+					.where(
+						Conditions.isNull(UserKeyEntity.COL_DELETED_AT)
+						.and(
+							Conditions.isLess(
+								new PlusExpression(UserKeyEntity.COL_CREATED_AT, UserKeyEntity.COL_EXPIRES_AFTER),
+								now
+							)
 						)
 					)
-				)
-				.build();
-			var operation = DbUtils.update(update, null, r2dbc);
+					.build();
+				return DbUtils.update(update, null, r2dbc).toQuery();
+			});
 			return r2dbc.getDatabaseClient().sql(operation).fetch().rowsUpdated()
 			.flatMap(nb -> {
 				log.info("Deleted expired keys: {}", nb);
@@ -443,15 +447,22 @@ public class AuthService {
 			.map((row, _) -> Tuples.of(row.get(0, String.class), row.get(1, String.class), row.get(2, Long.class)))
 			.all()
 			.concatMap(row -> {
-				var delete = Delete.builder()
-				.from(UserKeyEntity.TABLE)
-				.where(
-					Conditions.isEqual(UserKeyEntity.COL_EMAIL, SQL.literalOf(row.getT1()))
-					.and(Conditions.isEqual(Expressions.just("device_info ->> 'deviceId'"), SQL.literalOf(row.getT2())))
-					.and(Conditions.isLess(UserKeyEntity.COL_CREATED_AT, SQL.literalOf(row.getT3())))
-					.and(Conditions.not(Conditions.isNull(UserKeyEntity.COL_DELETED_AT)))
-				).build();
-				return r2dbc.getDatabaseClient().sql(DbUtils.delete(delete, null, r2dbc)).fetch().rowsUpdated()
+				MutableBindings bindings = DbUtils.newBindings(r2dbc);
+				var email = SQL.bindMarker(bindings.bind(row.getT1()).getPlaceholder());
+				var deviceId = SQL.bindMarker(bindings.bind(row.getT2()).getPlaceholder());
+				var createdAt = SQL.bindMarker(bindings.bind(row.getT3()).getPlaceholder());
+				var operation = DbUtils.shape("cleanKeysOfDevice", bindings, () -> {
+					var delete = Delete.builder()
+					.from(UserKeyEntity.TABLE)
+					.where(
+						Conditions.isEqual(UserKeyEntity.COL_EMAIL, email)
+						.and(Conditions.isEqual(Expressions.just("device_info ->> 'deviceId'"), deviceId))
+						.and(Conditions.isLess(UserKeyEntity.COL_CREATED_AT, createdAt))
+						.and(Conditions.not(Conditions.isNull(UserKeyEntity.COL_DELETED_AT)))
+					).build();
+					return DbUtils.delete(delete, null, r2dbc).toQuery();
+				});
+				return r2dbc.getDatabaseClient().sql(operation).fetch().rowsUpdated()
 					.map(nb -> {
 						if (nb > 0) log.info("Deleted keys for user {} device id {}: {}", row.getT1(), row.getT2(), nb);
 						return Tuples.of(1L, nb);
@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.trailence.global.metrics.ExternalCallMetrics;
 
 import jakarta.annotation.PostConstruct;
 import lombok.AllArgsConstructor;
@@ -18,6 +19,8 @@ import reactor.core.publisher.Mono;
 @RequiredArgsConstructor
 public class CaptchaService {
 	
+	private final ExternalCallMetrics metrics;
+
 	@Value("${trailence.external.captcha.clientKey:}")
 	private String clientKey;
 	@Value("${trailence.external.captcha.secretKey:}")
@@ -55,7 +58,7 @@ public class CaptchaService {
 
 	public Mono<Boolean> validate(String token) {
 		if (!isActivated()) return Mono.just(false);
-		WebClient client = WebClient.builder().baseUrl(url).build();
+		WebClient client = metrics.webClient("captcha").baseUrl(url).build();
 		return client.post()
 		.body(BodyInserters.fromFormData("secret", secretKey).with("response", token))
 		.exchangeToMono(response -> response.bodyToMono(Map.class))
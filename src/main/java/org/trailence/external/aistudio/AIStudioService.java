@@ -7,6 +7,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.trailence.global.metrics.ExternalCallMetrics;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
@@ -14,13 +15,17 @@ import jakarta.annotation.PostConstruct;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
 
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class AIStudioService {
 
+	private final ExternalCallMetrics metrics;
+
 	@Value("${trailence.external.aistudio.baseUrl:}")
 	private String baseUrl;
 	@Value("${trailence.external.aistudio.apiKey:}")
@@ -69,7 +74,7 @@ public class AIStudioService {
 			log.warn("Missing AI Studio config");
 			return Mono.just("");
 		}
-		WebClient client = WebClient.builder().baseUrl(this.baseUrl).build();
+		WebClient client = metrics.webClient("aistudio").baseUrl(this.baseUrl).build();
 		return client
 		.post()
 		.uri("/" + model + ":generateContent")
@@ -6,19 +6,24 @@ import java.util.Map;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.trailence.global.metrics.ExternalCallMetrics;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
 
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class CurrencyApi {
 	
+	private final ExternalCallMetrics metrics;
+
 	@Value("${trailence.external.currency.url:https://cdn.jsdelivr.net/npm/@fawazahmed0/currency-api@latest/v1/currencies/eur.json}")
 	private String apiUrl;
 
 	public Mono<Map<String, Double>> getEuroConversion() {
-		WebClient client = WebClient.builder().baseUrl(apiUrl).build();
+		WebClient client = metrics.webClient("currency").baseUrl(apiUrl).build();
 		log.info("Requesting currency conversion from euro: {}", apiUrl);
 		return client.get()
 		.header("Cache", "no-cache")
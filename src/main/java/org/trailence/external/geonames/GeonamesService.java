@@ -10,12 +10,17 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.trailence.geo.dto.Place;
+import org.trailence.global.metrics.ExternalCallMetrics;
 
+import lombok.RequiredArgsConstructor;
 import reactor.core.publisher.Mono;
 
 @Service
+@RequiredArgsConstructor
 public class GeonamesService {
 
+	private final ExternalCallMetrics metrics;
+
 	@Value("${trailence.external.geonames.username:}")
 	private String username;
 	@Value("${trailence.external.geonames.url}")
@@ -28,7 +33,7 @@ public class GeonamesService {
 	@SuppressWarnings("unchecked")
 	public Mono<List<List<String>>> findNearbyPlaceName(double lat, double lng, long metersRadius, String language) {
 		if (username.isEmpty()) return Mono.just(List.of());
-		WebClient client = WebClient.builder().baseUrl(url).build();
+		WebClient client = metrics.webClient("geonames").baseUrl(url).build();
 		long radius = Math.round(metersRadius / 1000.0d);
 		return client.get()
 		.uri("/findNearbyPlaceNameJSON?lat={lat}&lng={lng}&lang={lang}&style=full&localCountry=false&username={username}&radius={radius}", Map.of("lat", lat, "lng", lng, "lang", language, "username", username, "radius", radius))
@@ -72,7 +77,7 @@ public class GeonamesService {
 		if (terms.length == 0) return Mono.just(List.of());
 		String name = String.join(" ", Arrays.asList(terms).stream().filter(s -> s.length() > 1).toList());
 		if (name.length() < 3) return Mono.just(List.of());
-		WebClient client = WebClient.builder().baseUrl(url).build();
+		WebClient client = metrics.webClient("geonames").baseUrl(url).build();
 		return client.get()
 		.uri("/search?maxRows=10&featureClass=L&featureClass=P&featureClass=T&featureClass=H&fuzzy=0.6&orderby=relevance&type=json&inclBbox=true&username=" + username + "&name={name}&lang={lang}", name, language)
 		.exchangeToMono(response -> response.bodyToMono(Map.class))
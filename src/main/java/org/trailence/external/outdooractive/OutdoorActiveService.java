@@ -17,6 +17,7 @@ import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.trailence.global.TrailenceUtils;
 import org.trailence.global.exceptions.ForbiddenException;
+import org.trailence.global.metrics.ExternalCallMetrics;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -30,6 +31,8 @@ import reactor.core.publisher.Mono;
 @SuppressWarnings("rawtypes")
 public class OutdoorActiveService {
 
+	private final ExternalCallMetrics metrics;
+
 	@Value("${trailence.external.outdooractive.clientKey:}")
 	private String key;
 	@Value("${trailence.external.outdooractive.userRole:}")
@@ -57,7 +60,7 @@ public class OutdoorActiveService {
 	
 	public Mono<List<String>> search(double lat, double lng, int radius, int limit, Authentication auth) {
 		if (!this.available(auth)) return Mono.just(List.of());
-		WebClient client = WebClient.builder().baseUrl("https://www.outdooractive.com").build();
+		WebClient client = metrics.webClient("outdooractive").baseUrl("https://www.outdooractive.com").build();
 		String queryParams = "?location=" + lng + "," + lat +
 			"&radius=" + radius +
 			"&sortby=distance&limit=" + Math.min(100, limit) +
@@ -131,7 +134,7 @@ public class OutdoorActiveService {
 	@SuppressWarnings("java:S3776")
 	public Mono<List<Rando>> getDetails(List<String> ids, String lang, Authentication auth) {
 		if (!this.available(auth)) return Mono.just(List.of());
-		WebClient client = WebClient.builder()
+		WebClient client = metrics.webClient("outdooractive")
 			.baseUrl("https://api-oa.com")
 			.exchangeStrategies(ExchangeStrategies.builder().codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(1024 * 1024)).build())
 			.build();
@@ -261,7 +264,7 @@ public class OutdoorActiveService {
 	
 	public Flux<DataBuffer> getPhoto(String id, String size, Authentication auth) {
 		if (!this.available(auth)) return Flux.error(new ForbiddenException());
-		WebClient client = WebClient.builder()
+		WebClient client = metrics.webClient("outdooractive")
 				.baseUrl("https://img1.oastatic.com/img2")
 				.exchangeStrategies(ExchangeStrategies.builder().codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(1024 * 1024)).build())
 				.build();
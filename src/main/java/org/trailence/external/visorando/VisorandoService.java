@@ -9,15 +9,20 @@ import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.trailence.global.TrailenceUtils;
+import org.trailence.global.metrics.ExternalCallMetrics;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import reactor.core.publisher.Mono;
 
 @Service
+@RequiredArgsConstructor
 public class VisorandoService {
 	
+	private final ExternalCallMetrics metrics;
+
 	@Value("${trailence.external.visorando.userRole:}")
 	private String userRole;
 	
@@ -42,7 +47,7 @@ public class VisorandoService {
 	@SuppressWarnings({"java:S3776", "java:S3740"})
 	public Mono<List<Rando>> searchBbox(String bbox, Authentication auth) {
 		if (!this.isAvailable(auth)) return Mono.just(List.of());
-		WebClient client = WebClient.builder().baseUrl("https://www.visorando.com").build();
+		WebClient client = metrics.webClient("visorando").baseUrl("https://www.visorando.com").build();
 		return client.get()
 		.uri("/?component=rando&task=searchCircuitV2&geolocation=0&metaData=&minDuration=0&maxDuration=720&minDifficulty=1&maxDifficulty=5&loc=&retourDepart=0&multilang=on&bbox=" + bbox)
 		.header("X-Requested-With", "XMLHttpRequest")
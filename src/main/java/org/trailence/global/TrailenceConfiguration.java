@@ -28,6 +28,9 @@ import org.springframework.web.server.session.WebSessionManager;
 import org.trailence.extensions.ExtensionsConfig;
 import org.trailence.global.rest.HttpFilter;
 import org.trailence.global.rest.JwtFilter;
+import org.trailence.global.rest.RateLimitFilter;
+import org.trailence.global.rest.RateLimiter;
+import org.trailence.global.rest.RequestWatchdog;
 import org.trailence.init.FreePlanProperties;
 import org.trailence.storage.StorageProperties;
 
@@ -45,7 +48,7 @@ public class TrailenceConfiguration implements WebFluxConfigurer {
 	}
 	
 	@Bean
-	SecurityWebFilterChain springSecurityFilterChain(ServerHttpSecurity http, ReactiveAuthenticationManager authManager) {
+	SecurityWebFilterChain springSecurityFilterChain(ServerHttpSecurity http, ReactiveAuthenticationManager authManager, RequestWatchdog watchdog, RateLimiter rateLimiter) {
 		return http
 		.csrf(CsrfSpec::disable)
 		.formLogin(FormLoginSpec::disable)
@@ -79,8 +82,9 @@ public class TrailenceConfiguration implements WebFluxConfigurer {
 			.pathMatchers(HttpMethod.GET, "/api/avatar/v1/public/**").permitAll()
 			.pathMatchers("/**").authenticated()
 		)
-		.addFilterBefore(new HttpFilter(), SecurityWebFiltersOrder.HTTP_BASIC)
+		.addFilterBefore(new HttpFilter(watchdog), SecurityWebFiltersOrder.HTTP_BASIC)
 		.addFilterBefore(new JwtFilter(authManager), SecurityWebFiltersOrder.HTTP_BASIC)
+		.addFilterAt(new RateLimitFilter(rateLimiter), SecurityWebFiltersOrder.AUTHENTICATION)
 		.securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
 		.exceptionHandling(handling ->
 			handling.authenticationEntryPoint(
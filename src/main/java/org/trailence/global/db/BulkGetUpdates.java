@@ -1,8 +1,9 @@
 package org.trailence.global.db;
 
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.function.Function;
 
 import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
@@ -36,36 +37,31 @@ public final class BulkGetUpdates {
         );
 	}
 	
-	@SuppressWarnings("java:S2445") // synchronized on parameter
 	public static <E extends AbstractEntityUuidOwner, R> Mono<UpdateResponse<R>> bulkGetUpdates(Flux<E> entities, List<Versioned> known, Function<E, R> mapper) {
+		Map<UuidAndOwner, Versioned> knownByKey = new LinkedHashMap<>();
+		for (var v : known) knownByKey.putIfAbsent(new UuidAndOwner(v.getUuid(), v.getOwner().toLowerCase()), v);
         List<E> newItems = new LinkedList<>();
         List<E> updatedItems = new LinkedList<>();
 
         return entities
         .doOnNext(entity -> {
-            Optional<Versioned> knownOpt;
-            synchronized (known) {
-                knownOpt = known.stream().filter(v -> v.getUuid().equals(entity.getUuid().toString()) && v.getOwner().toLowerCase().equals(entity.getOwner())).findAny();
+            Versioned v;
+            synchronized (knownByKey) {
+                v = knownByKey.remove(new UuidAndOwner(entity.getUuid().toString(), entity.getOwner()));
             }
-            if (knownOpt.isEmpty()) {
+            if (v == null) {
                 synchronized (newItems) {
                     newItems.add(entity);
                 }
-            } else {
-                Versioned v = knownOpt.get();
-                synchronized (known) {
-                    known.remove(v);
-                }
-                if (v.getVersion() < entity.getVersion()) {
-                    synchronized (updatedItems) {
-                        updatedItems.add(entity);
-                    }
+            } else if (v.getVersion() < entity.getVersion()) {
+                synchronized (updatedItems) {
+                    updatedItems.add(entity);
                 }
             }
         })
         .then(Mono.fromSupplier(() -> {
             UpdateResponse<R> response = new UpdateResponse<>();
-            response.setDeleted(known.stream().map(v -> new UuidAndOwner(v.getUuid(), v.getOwner())).toList());
+            response.setDeleted(knownByKey.values().stream().map(v -> new UuidAndOwner(v.getUuid(), v.getOwner())).toList());
             response.setCreated(newItems.stream().map(mapper).toList());
             response.setUpdated(updatedItems.stream().map(mapper).toList());
             return response;
@@ -1,13 +1,15 @@
 package org.trailence.global.db;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
-import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -117,10 +119,7 @@ public final class BulkUtils {
     	return repo.findAllByUuidInAndOwner(uuids, owner)
         .collectList()
         .flatMap(known -> {
-            List<ENTITY> toCreate = valid.stream()
-            	.filter(dto -> known.stream().noneMatch(entity -> entity.getUuid().toString().equals(dto.getUuid())))
-            	.map(dtoToEntity)
-            	.toList();
+            List<ENTITY> toCreate = unknown(valid, known).stream().map(dtoToEntity).toList();
             if (toCreate.isEmpty()) {
             	if (!known.isEmpty() || errors.isEmpty()) return Mono.just(known);
             	return Mono.error(errors.getFirst()); // should never happen
@@ -129,6 +128,13 @@ public final class BulkUtils {
         });
 	}
 	
+	/** Returns the DTOs which do not correspond to a known entity, all having the same owner. */
+	static <DTO extends Versioned.Interface, ENTITY extends AbstractEntityUuidOwner> List<DTO> unknown(List<DTO> dtos, List<ENTITY> known) {
+		Set<String> knownUuids = HashSet.newHashSet(known.size());
+		known.forEach(entity -> knownUuids.add(entity.getUuid().toString()));
+		return dtos.stream().filter(dto -> !knownUuids.contains(dto.getUuid())).toList();
+	}
+	
 	public static <DTO extends Versioned.Interface, ENTITY extends AbstractEntityUuidOwner, VALIDATION extends Throwable> Flux<ENTITY> bulkUpdate(
 		Iterable<DTO> source,
 		String owner,
@@ -137,18 +143,36 @@ public final class BulkUtils {
 		UuidOwnerRepository<ENTITY> repo,
 		R2dbcEntityTemplate r2dbc
 	) {
+		return bulkUpdate(source, owner, validateDto, _ -> Mono.just(true), _ -> entityUpdater, repo, r2dbc);
+	}
+	
+	/**
+	 * Bulk update, with a context loaded once for all the entities to update (for example the other entities they reference),
+	 * and given to the entity updater.
+	 */
+	public static <DTO extends Versioned.Interface, ENTITY extends AbstractEntityUuidOwner, CONTEXT, VALIDATION extends Throwable> Flux<ENTITY> bulkUpdate(
+		Iterable<DTO> source,
+		String owner,
+		FailableConsumer<DTO, VALIDATION> validateDto,
+		Function<List<ENTITY>, Mono<CONTEXT>> loadContext,
+		Function<CONTEXT, TriFunction<ENTITY, DTO, ChecksAndActions, Boolean>> entityUpdater,
+		UuidOwnerRepository<ENTITY> repo,
+		R2dbcEntityTemplate r2dbc
+	) {
+		AtomicReference<TriFunction<ENTITY, DTO, ChecksAndActions, Boolean>> updater = new AtomicReference<>();
 		return bulkUpdate(
 			source,
 			dto -> {
 				validateDto.accept(dto);
 				return UUID.fromString(dto.getUuid());
 			},
-			uuids -> repo.findAllByUuidInAndOwner(uuids, owner),
-			(entity, dto) -> dto.getUuid().equals(entity.getUuid().toString()),
+			uuids -> repo.findAllByUuidInAndOwner(uuids, owner).collectList()
+				.flatMapMany(entities -> loadContext.apply(entities).doOnNext(context -> updater.set(entityUpdater.apply(context))).thenMany(Flux.fromIterable(entities))),
+			AbstractEntityUuidOwner::getUuid,
 			(entity, dto) -> {
 				if (dto.getVersion() != entity.getVersion()) return Mono.just(entity);
 				ChecksAndActions checksAndActions = new ChecksAndActions();
-				boolean updated = entityUpdater.apply(entity, dto, checksAndActions);
+				boolean updated = updater.get().apply(entity, dto, checksAndActions);
 				if (!updated) return Mono.just(entity);
 				return checksAndActions.execute(DbUtils.updateByUuidAndOwner(r2dbc, entity), nb -> nb > 0)
 	            .flatMap(nb -> nb == 0 ? Mono.empty() : repo.findByUuidAndOwner(entity.getUuid(), entity.getOwner()));
@@ -197,16 +221,14 @@ public final class BulkUtils {
 		Iterable<SOURCE> source,
 		FailableFunction<SOURCE, UNIQUE, VALIDATION> validateItem,
 		Function<Set<UNIQUE>, Flux<ENTITY>> fetchEntities,
-		BiPredicate<ENTITY, SOURCE> sourceFinderForEntity,
+		Function<ENTITY, UNIQUE> entityKey,
 		BiFunction<ENTITY, SOURCE, Mono<ENTITY>> entityUpdater
 	) {
-		List<SOURCE> valid = new LinkedList<>();
-    	Set<UNIQUE> unique = new HashSet<>();
+		Map<UNIQUE, SOURCE> valid = new HashMap<>();
     	List<Throwable> errors = new LinkedList<>();
     	source.forEach(item -> {
     		try {
-    			var uniqueId = validateItem.apply(item);
-    			if (unique.add(uniqueId)) valid.add(item);
+    			valid.putIfAbsent(validateItem.apply(item), item);
     		} catch (@SuppressWarnings("java:S1181") Throwable t) {
     			errors.add(t);
     		}
@@ -215,11 +237,10 @@ public final class BulkUtils {
     		if (errors.isEmpty()) return Flux.empty();
     		return Flux.error(errors.getFirst());
     	}
-        return fetchEntities.apply(unique)
+        return fetchEntities.apply(valid.keySet())
         .flatMap(entity -> {
-        	var itemOpt = valid.stream().filter(item -> sourceFinderForEntity.test(entity, item)).findAny();
-            if (itemOpt.isEmpty()) return Mono.empty();
-            var item = itemOpt.get();
+        	var item = valid.get(entityKey.apply(entity));
+            if (item == null) return Mono.empty();
             return entityUpdater.apply(entity, item);
         }, BULK_TO_SINGLE_PARALLEL, BULK_TO_SINGLE_PREFETCH)
         .switchIfEmpty(Flux.defer(() -> {
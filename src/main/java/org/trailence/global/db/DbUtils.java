@@ -1,15 +1,25 @@
 package org.trailence.global.db;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
 import java.util.function.Supplier;
 import java.util.stream.StreamSupport;
 
 import org.springframework.data.mapping.PersistentPropertyAccessor;
 import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
 import org.springframework.data.r2dbc.dialect.DialectResolver;
+import org.springframework.data.r2dbc.dialect.R2dbcDialect;
 import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
 import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
 import org.springframework.data.relational.core.sql.Assignment;
@@ -29,8 +39,18 @@ import org.springframework.r2dbc.core.binding.BindTarget;
 import org.springframework.r2dbc.core.binding.Bindings;
 import org.springframework.r2dbc.core.binding.MutableBindings;
 
+import io.netty.buffer.Unpooled;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.postgresql.codec.Json;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import io.r2dbc.spi.Wrapped;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
@@ -52,6 +72,43 @@ public final class DbUtils {
 		return preparedOperation(sql, bindings, () -> sql);
 	}
 	
+	private static final int MAX_SHAPES = 10000;
+	private static final Map<Object, String> shapes = new ConcurrentHashMap<>();
+	private static final AtomicLong shapeHits = new AtomicLong();
+	private static final AtomicLong shapeMisses = new AtomicLong();
+	
+	/**
+	 * Returns an operation for a statement whose SQL depends only on the given shape key, values being given by the bindings.<br/>
+	 * The SQL is rendered only the first time a shape is seen, so the same statement is sent to the database and its prepared
+	 * statement can be reused by the driver.
+	 */
+	public static PreparedOperation<String> shape(Object shapeKey, Bindings bindings, Supplier<String> render) {
+		String sql = shapes.get(shapeKey);
+		if (sql != null) {
+			shapeHits.incrementAndGet();
+		} else {
+			shapeMisses.incrementAndGet();
+			sql = render.get();
+			if (shapes.size() < MAX_SHAPES) shapes.putIfAbsent(shapeKey, sql);
+		}
+		return operation(sql, bindings);
+	}
+	
+	static long getShapeHits() {
+		return shapeHits.get();
+	}
+	
+	static long getShapeMisses() {
+		return shapeMisses.get();
+	}
+	
+	private static final Map<ConnectionFactory, R2dbcDialect> dialects = new ConcurrentHashMap<>();
+	
+	public static MutableBindings newBindings(R2dbcEntityTemplate r2dbc) {
+		var dialect = dialects.computeIfAbsent(r2dbc.getDatabaseClient().getConnectionFactory(), DialectResolver::getDialect);
+		return new MutableBindings(dialect.getBindMarkersFactory().create());
+	}
+	
 	private static <T> PreparedOperation<T> preparedOperation(T source, Bindings bindings, Supplier<String> toQuery) {
 		return new PreparedOperation<T>() {
 			@Override
@@ -75,7 +132,6 @@ public final class DbUtils {
 	private static final String PROPERTY_UUID = "uuid";
 	private static final String PROPERTY_OWNER = "owner";
 	
-	@SuppressWarnings("java:S3776") // complexity
 	public static <T> Mono<Long> updateByUuidAndOwner(R2dbcEntityTemplate r2dbc, T entity) {
 		RelationalPersistentEntity<?> type = r2dbc.getConverter().getMappingContext().getRequiredPersistentEntity(entity.getClass());
 		var accessor = type.getPropertyAccessor(entity);
@@ -83,68 +139,189 @@ public final class DbUtils {
 		UUID uuid = (UUID) accessor.getProperty(type.getRequiredPersistentProperty(PROPERTY_UUID));
 		String owner = (String) accessor.getProperty(type.getRequiredPersistentProperty(PROPERTY_OWNER));
 		if (uuid == null || owner == null) return Mono.just(0L);
-		var versionProperty = Optional.ofNullable(type.getVersionProperty());
-		
-		Table table = Table.create(type.getQualifiedTableName());
+		var versionProperty = type.getVersionProperty();
 		
-		Condition where = Conditions.isEqual(Column.create(PROPERTY_UUID, table), SQL.literalOf(uuid.toString()))
-			.and(Conditions.isEqual(Column.create(PROPERTY_OWNER, table), SQL.literalOf(owner)));
-		if (versionProperty.isPresent()) {
-			var prop = versionProperty.get();
-			where = where.and(Conditions.isEqual(Column.create(prop.getColumnName(), table), SQL.literalOf((Long) accessor.getProperty(prop))));
-		}
-		
-		var dialect = DialectResolver.getDialect(r2dbc.getDatabaseClient().getConnectionFactory());
-		MutableBindings bindings = new MutableBindings(dialect.getBindMarkersFactory().create()); 
-		
-		List<Assignment> assignments = new LinkedList<>();
+		// the shape of the statement depends on the entity type and which properties are null
+		MutableBindings bindings = newBindings(r2dbc);
+		List<RelationalPersistentProperty> properties = new LinkedList<>();
+		List<String> placeholders = new LinkedList<>();
+		StringBuilder nulls = new StringBuilder(type.getType().getName()).append(':');
 		type.forEach(p -> {
 			if (p.isInsertOnly()) return;
-			if (p.getName().equals(PROPERTY_UUID) || p.getName().equals(PROPERTY_OWNER)) return;
-			if (p.equals(versionProperty.orElse(null))) {
-				assignments.add(Assignments.value(Column.create(versionProperty.get().getColumnName(), table), SQL.literalOf(((Long) accessor.getProperty(versionProperty.get()) + 1))));
-			} else if (p.getName().equals("updatedAt")) {
-				var marker = bindings.bind(r2dbc.getConverter().writeValue(System.currentTimeMillis(), p.getTypeInformation()));
-				assignments.add(Assignments.value(Column.create(p.getColumnName(), table), SQL.bindMarker(marker.getPlaceholder())));
+			if (p.getName().equals(PROPERTY_UUID) || p.getName().equals(PROPERTY_OWNER) || p.equals(versionProperty)) return;
+			Object val = p.getName().equals("updatedAt") ? System.currentTimeMillis() : accessor.getProperty(p);
+			val = r2dbc.getConverter().writeValue(val, p.getTypeInformation());
+			properties.add(p);
+			if (val == null) {
+				placeholders.add(null);
+				nulls.append('0');
 			} else {
-				Object val = accessor.getProperty(p);
-				val = r2dbc.getConverter().writeValue(val, p.getTypeInformation());
-				if (val == null)
-					assignments.add(Assignments.value(Column.create(p.getColumnName(), table), SQL.nullLiteral()));
-				else {
-					var marker = bindings.bind(val);
-					assignments.add(Assignments.value(Column.create(p.getColumnName(), table), SQL.bindMarker(marker.getPlaceholder())));
-				}
+				placeholders.add(bindings.bind(val).getPlaceholder());
+				nulls.append('1');
 			}
 		});
-
-		Update update = Update.builder()
-		.table(table)
-		.set(assignments)
-		.where(where)
-		.build();
+		String uuidMarker = bindings.bind(uuid).getPlaceholder();
+		String ownerMarker = bindings.bind(owner).getPlaceholder();
+		String versionMarker = versionProperty != null ? bindings.bind(accessor.getProperty(versionProperty)).getPlaceholder() : null;
 		
-		var operation = update(update, bindings, r2dbc);
+		var operation = shape(nulls.toString(), bindings, () -> {
+			Table table = Table.create(type.getQualifiedTableName());
+			List<Assignment> assignments = new LinkedList<>();
+			var placeholder = placeholders.iterator();
+			for (var p : properties) {
+				String marker = placeholder.next();
+				assignments.add(Assignments.value(Column.create(p.getColumnName(), table), marker == null ? SQL.nullLiteral() : SQL.bindMarker(marker)));
+			}
+			Condition where = Conditions.isEqual(Column.create(PROPERTY_UUID, table), SQL.bindMarker(uuidMarker))
+				.and(Conditions.isEqual(Column.create(PROPERTY_OWNER, table), SQL.bindMarker(ownerMarker)));
+			if (versionProperty != null) {
+				Column versionColumn = Column.create(versionProperty.getColumnName(), table);
+				assignments.add(Assignments.value(versionColumn, new PlusExpression(versionColumn, SQL.literalOf(1))));
+				where = where.and(Conditions.isEqual(versionColumn, SQL.bindMarker(versionMarker)));
+			}
+			return getRenderer(r2dbc).render(Update.builder().table(table).set(assignments).where(where).build());
+		});
 		return r2dbc.getDatabaseClient().sql(operation).fetch().rowsUpdated();
 	}
 	
-	public static <T> Mono<List<T>> insertMany(R2dbcEntityTemplate r2dbc, List<T> entities) {
-		if (entities.isEmpty()) return Mono.just(entities);
-		if (entities.size() == 1) return r2dbc.insert(entities.getFirst()).map(List::of);
-		RelationalPersistentEntity<?> type = r2dbc.getConverter().getMappingContext().getRequiredPersistentEntity(entities.getFirst().getClass());
+	/** Result of an insertion ignoring conflicts: the entities inserted, and the ones which were not inserted because of a conflict. */
+	public record InsertResult<T>(List<T> inserted, List<T> conflicts) {
 		
-		StringBuilder sql = new StringBuilder();
-		sql.append("INSERT INTO ").append(type.getQualifiedTableName().toString());
-		sql.append(" (");
-		sql.append(String.join(",", StreamSupport.stream(type.spliterator(), false).map(property -> property.getColumnName().toString()).toList()));
-		sql.append(") VALUES ");
+		/** Same inserted entities, with the given conflicts (typically the conflicting rows loaded from the database). */
+		public InsertResult<T> withConflicts(List<T> existing) {
+			return new InsertResult<>(inserted, existing);
+		}
 		
-		var dialect = DialectResolver.getDialect(r2dbc.getDatabaseClient().getConnectionFactory());
-		MutableBindings bindings = new MutableBindings(dialect.getBindMarkersFactory().create());
-		sql.append(String.join(",", entities.stream().map(entity -> insertValues(entity, type, r2dbc, bindings)).toList()));
+		/** Inserted entities followed by the conflicts. */
+		public List<T> all() {
+			if (conflicts.isEmpty()) return inserted;
+			List<T> all = new ArrayList<>(inserted.size() + conflicts.size());
+			all.addAll(inserted);
+			all.addAll(conflicts);
+			return all;
+		}
+	}
+	
+	public static final int COPY_MIN_ROWS = 50;
+	private static final int COPY_CHUNK_SIZE = 256 * 1024;
+	
+	/**
+	 * Insert the given entities, ignoring the ones conflicting with an existing row.<br/>
+	 * The entities which have been inserted are identified with the given key properties, so the caller knows
+	 * the outcome of each entity.<br/>
+	 * From COPY_MIN_ROWS entities, rows are sent with a COPY into a temporary staging table, then merged into the table
+	 * with INSERT ... ON CONFLICT DO NOTHING.
+	 */
+	public static <T> Mono<InsertResult<T>> insertIgnoringConflicts(R2dbcEntityTemplate r2dbc, List<T> entities, String... keyProperties) {
+		return insertIgnoringConflicts(r2dbc, entities, entities.size() >= COPY_MIN_ROWS, keyProperties);
+	}
+	
+	static <T> Mono<InsertResult<T>> insertIgnoringConflicts(R2dbcEntityTemplate r2dbc, List<T> entities, boolean useCopy, String... keyProperties) {
+		if (entities.isEmpty()) return Mono.just(new InsertResult<>(entities, List.of()));
+		RelationalPersistentEntity<?> type = r2dbc.getConverter().getMappingContext().getRequiredPersistentEntity(entities.getFirst().getClass());
+		List<RelationalPersistentProperty> keys = Arrays.stream(keyProperties).map(type::getRequiredPersistentProperty).toList();
+		String table = type.getQualifiedTableName().toString();
+		String columns = String.join(",", StreamSupport.stream(type.spliterator(), false).map(property -> property.getColumnName().toString()).toList());
+		String returning = String.join(",", keys.stream().map(key -> key.getColumnName().toString()).toList());
+		BiFunction<Row, RowMetadata, List<Object>> keyMapper = (row, _) -> keys.stream().<Object>map(key -> row.get(key.getColumnName().toString(), key.getType())).toList();
 		
-		var operation = operation(sql.toString(), bindings);
-		return r2dbc.getDatabaseClient().sql(operation).fetch().all().then(Mono.just(entities));
+		Mono<List<List<Object>>> inserted;
+		if (useCopy && isPostgres(r2dbc)) {
+			String staging = "bulk_" + type.getTableName().getReference();
+			byte[] data = copyData(r2dbc, type, entities);
+			inserted = r2dbc.getDatabaseClient().inConnection(connection -> {
+				PostgresqlConnection pg = unwrapPostgres(connection);
+				return execute(pg, "CREATE TEMP TABLE IF NOT EXISTS " + staging + " (LIKE " + table + " INCLUDING DEFAULTS)")
+				.then(execute(pg, "TRUNCATE " + staging))
+				.then(pg.copyIn("COPY " + staging + " (" + columns + ") FROM STDIN", Flux.range(0, (data.length + COPY_CHUNK_SIZE - 1) / COPY_CHUNK_SIZE)
+					.map(chunk -> Unpooled.wrappedBuffer(data, chunk * COPY_CHUNK_SIZE, Math.min(COPY_CHUNK_SIZE, data.length - chunk * COPY_CHUNK_SIZE)))
+				))
+				.thenMany(Flux.from(pg.createStatement(
+					"INSERT INTO " + table + " (" + columns + ") SELECT " + columns + " FROM " + staging + " ON CONFLICT DO NOTHING RETURNING " + returning
+				).execute()).flatMap(result -> result.map(keyMapper)))
+				.collectList();
+			});
+		} else {
+			MutableBindings bindings = newBindings(r2dbc);
+			String sql = "INSERT INTO " + table + " (" + columns + ") VALUES "
+				+ String.join(",", entities.stream().map(entity -> insertValues(entity, type, r2dbc, bindings)).toList())
+				+ " ON CONFLICT DO NOTHING RETURNING " + returning;
+			inserted = r2dbc.getDatabaseClient().sql(operation(sql, bindings)).map(keyMapper).all().collectList();
+		}
+		return inserted.map(insertedKeys -> {
+			Set<List<Object>> done = new HashSet<>(insertedKeys);
+			if (done.size() == entities.size()) return new InsertResult<>(entities, List.of());
+			List<T> insertedEntities = new ArrayList<>(done.size());
+			List<T> conflicts = new LinkedList<>();
+			for (T entity : entities) {
+				var accessor = type.getPropertyAccessor(entity);
+				if (done.contains(keys.stream().map(accessor::getProperty).toList())) insertedEntities.add(entity);
+				else conflicts.add(entity);
+			}
+			return new InsertResult<>(insertedEntities, conflicts);
+		});
+	}
+	
+	private static boolean isPostgres(R2dbcEntityTemplate r2dbc) {
+		return r2dbc.getDatabaseClient().getConnectionFactory().getMetadata().getName().equals("PostgreSQL");
+	}
+	
+	private static PostgresqlConnection unwrapPostgres(Connection connection) {
+		Object c = connection;
+		while (!(c instanceof PostgresqlConnection) && c instanceof Wrapped<?> wrapped) c = wrapped.unwrap();
+		if (c instanceof PostgresqlConnection pg) return pg;
+		throw new IllegalStateException("Cannot use COPY on connection " + connection.getClass().getName());
+	}
+	
+	private static Mono<Void> execute(PostgresqlConnection connection, String sql) {
+		return Flux.from(connection.createStatement(sql).execute()).flatMap(Result::getRowsUpdated).then();
+	}
+	
+	/** Build the rows in COPY text format. */
+	private static <T> byte[] copyData(R2dbcEntityTemplate r2dbc, RelationalPersistentEntity<?> type, List<T> entities) {
+		StringBuilder data = new StringBuilder(entities.size() * 256);
+		for (T entity : entities) {
+			var accessor = type.getPropertyAccessor(entity);
+			boolean first = true;
+			for (var property : type) {
+				if (first) first = false;
+				else data.append('\t');
+				Object value;
+				if (property.isVersionProperty()) {
+					accessor.setProperty(property, 1L);
+					value = 1L;
+				} else {
+					value = accessor.getProperty(property);
+					if (value != null) value = r2dbc.getConverter().writeValue(value, property.getTypeInformation());
+				}
+				appendCopyValue(data, value);
+			}
+			data.append('\n');
+		}
+		return data.toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	private static void appendCopyValue(StringBuilder data, Object value) {
+		if (value == null) {
+			data.append("\\N");
+			return;
+		}
+		String text = switch (value) {
+			case Boolean b -> b.booleanValue() ? "t" : "f";
+			case Json json -> json.asString();
+			case byte[] bytes -> "\\x" + HexFormat.of().formatHex(bytes);
+			default -> value.toString();
+		};
+		for (int i = 0; i < text.length(); ++i) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '\\' -> data.append("\\\\");
+				case '\n' -> data.append("\\n");
+				case '\r' -> data.append("\\r");
+				case '\t' -> data.append("\\t");
+				default -> data.append(c);
+			}
+		}
 	}
 	
 	private static <T> String insertValues(T entity, RelationalPersistentEntity<?> type, R2dbcEntityTemplate r2dbc, MutableBindings bindings) {
@@ -165,9 +342,12 @@ public final class DbUtils {
 		return marker.getPlaceholder();
 	}
 	
+	private static final SqlRenderer defaultRenderer = SqlRenderer.create();
+	private static final Map<RenderContext, SqlRenderer> renderers = new ConcurrentHashMap<>();
+	
 	private static SqlRenderer getRenderer(R2dbcEntityTemplate r2dbc) {
 		RenderContext ctx = r2dbc.getDataAccessStrategy().getStatementMapper().getRenderContext();
-		return ctx != null ? SqlRenderer.create(ctx) : SqlRenderer.create();
+		return ctx != null ? renderers.computeIfAbsent(ctx, SqlRenderer::create) : defaultRenderer;
 	}
 	
 }
@@ -0,0 +1,72 @@
+package org.trailence.global.db.proxy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Publisher;
+
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Follows an execution until the publisher of results and every result emitted have terminated, then notifies the listeners.<br/>
+ * The response time is taken at the first row or update count, so it does not include the time spent by the caller
+ * consuming a streamed result.
+ */
+@Slf4j
+class ExecutionTracker {
+
+	private final String sql;
+	private final Map<Object, Object> bindings;
+	private final ConnectionFactory connectionFactory;
+	private final List<QueryListener> listeners;
+	private final long start = System.nanoTime();
+	private final AtomicInteger pending = new AtomicInteger(1);
+	private final AtomicLong rows = new AtomicLong();
+	private final AtomicLong response = new AtomicLong(-1);
+	private final AtomicBoolean failed = new AtomicBoolean();
+
+	ExecutionTracker(String sql, Map<Object, Object> bindings, ConnectionFactory connectionFactory, List<QueryListener> listeners) {
+		this.sql = sql;
+		this.bindings = bindings;
+		this.connectionFactory = connectionFactory;
+		this.listeners = listeners;
+	}
+
+	Flux<Result> track(Publisher<? extends Result> results) {
+		return Flux.<Result>from(results)
+		.<Result>map(result -> {
+			pending.incrementAndGet();
+			return new ProxyResult(result, this);
+		})
+		.doFinally(this::terminated);
+	}
+
+	void rows(long nb) {
+		if (response.get() < 0) response.compareAndSet(-1, System.nanoTime() - start);
+		rows.addAndGet(nb);
+	}
+
+	void terminated(SignalType signal) {
+		if (signal == SignalType.ON_ERROR) failed.set(true);
+		if (pending.decrementAndGet() > 0) return;
+		long duration = System.nanoTime() - start;
+		// no row: the response is the end of the execution
+		response.compareAndSet(-1, duration);
+		var execution = new QueryExecution(sql, bindings, response.get(), duration, rows.get(), !failed.get(), connectionFactory);
+		for (var listener : listeners) {
+			try {
+				listener.afterQuery(execution);
+			} catch (Exception e) {
+				log.error("Error in query listener {}", listener.getClass().getName(), e);
+			}
+		}
+	}
+
+}
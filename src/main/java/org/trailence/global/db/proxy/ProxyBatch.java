@@ -0,0 +1,35 @@
+package org.trailence.global.db.proxy;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.reactivestreams.Publisher;
+
+import io.r2dbc.spi.Batch;
+import io.r2dbc.spi.Result;
+
+class ProxyBatch implements Batch {
+
+	private final Batch delegate;
+	private final ProxyConnectionFactory factory;
+	private final List<String> sqls = new LinkedList<>();
+
+	ProxyBatch(Batch delegate, ProxyConnectionFactory factory) {
+		this.delegate = delegate;
+		this.factory = factory;
+	}
+
+	@Override
+	public Batch add(String sql) {
+		sqls.add(sql);
+		delegate.add(sql);
+		return this;
+	}
+
+	@Override
+	public Publisher<? extends Result> execute() {
+		return factory.track(String.join(";\n", sqls), Map.of(), delegate::execute);
+	}
+
+}
@@ -0,0 +1,73 @@
+package org.trailence.global.db.proxy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.ObjectProvider;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Wrapped;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Connection factory notifying the {@link QueryListener} beans of each statement executed.<br/>
+ * The connections are {@link Wrapped}, so the driver connection is still reachable (for example to use COPY, which is not notified).
+ */
+public class ProxyConnectionFactory implements ConnectionFactory, Wrapped<ConnectionFactory>, Disposable {
+
+	private final ConnectionFactory delegate;
+	private final ObjectProvider<QueryListener> listenersProvider;
+	private List<QueryListener> listeners;
+
+	public ProxyConnectionFactory(ConnectionFactory delegate, ObjectProvider<QueryListener> listeners) {
+		this.delegate = delegate;
+		this.listenersProvider = listeners;
+	}
+
+	@Override
+	public Publisher<? extends Connection> create() {
+		return Mono.from(delegate.create()).map(connection -> new ProxyConnection(connection, this));
+	}
+
+	Flux<Result> track(String sql, Map<Object, Object> bindings, Supplier<Publisher<? extends Result>> execute) {
+		return Flux.defer(() -> {
+			var l = listeners();
+			if (l.isEmpty()) return Flux.<Result>from(execute.get());
+			// statements re-executed by the listeners (EXPLAIN) use the delegate, so they are not notified
+			return new ExecutionTracker(sql, bindings, delegate, l).track(execute.get());
+		});
+	}
+
+	private List<QueryListener> listeners() {
+		if (listeners == null) listeners = listenersProvider.orderedStream().toList();
+		return listeners;
+	}
+
+	@Override
+	public ConnectionFactoryMetadata getMetadata() {
+		return delegate.getMetadata();
+	}
+
+	@Override
+	public ConnectionFactory unwrap() {
+		return delegate;
+	}
+
+	@Override
+	public void dispose() {
+		if (delegate instanceof Disposable d) d.dispose();
+	}
+
+	@Override
+	public boolean isDisposed() {
+		return delegate instanceof Disposable d && d.isDisposed();
+	}
+
+}
@@ -0,0 +1,58 @@
+package org.trailence.global.db.proxy;
+
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.reactivestreams.Publisher;
+
+import io.r2dbc.spi.Readable;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+
+@RequiredArgsConstructor
+class ProxyResult implements Result {
+
+	private final Result delegate;
+	private final ExecutionTracker tracker;
+
+	@Override
+	public Publisher<Long> getRowsUpdated() {
+		return Flux.from(delegate.getRowsUpdated()).doOnNext(tracker::rows).doFinally(tracker::terminated);
+	}
+
+	@Override
+	public <T> Publisher<T> map(BiFunction<Row, RowMetadata, ? extends T> mappingFunction) {
+		return Flux.<T>from(delegate.map((row, metadata) -> {
+			tracker.rows(1);
+			return mappingFunction.apply(row, metadata);
+		})).doFinally(tracker::terminated);
+	}
+
+	@Override
+	public <T> Publisher<T> map(Function<? super Readable, ? extends T> mappingFunction) {
+		return Flux.<T>from(delegate.map((Readable readable) -> {
+			tracker.rows(1);
+			return mappingFunction.apply(readable);
+		})).doFinally(tracker::terminated);
+	}
+
+	@Override
+	public Result filter(Predicate<Segment> filter) {
+		// the filtered result is consumed instead of this one
+		return new ProxyResult(delegate.filter(filter), tracker);
+	}
+
+	@Override
+	public <T> Publisher<T> flatMap(Function<Segment, ? extends Publisher<? extends T>> mappingFunction) {
+		return Flux.<T>from(delegate.flatMap(segment -> {
+			if (segment instanceof RowSegment) tracker.rows(1);
+			else if (segment instanceof UpdateCount count) tracker.rows(count.value());
+			return mappingFunction.apply(segment);
+		})).doFinally(tracker::terminated);
+	}
+
+}
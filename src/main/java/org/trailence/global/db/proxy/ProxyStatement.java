@@ -0,0 +1,78 @@
+package org.trailence.global.db.proxy;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.reactivestreams.Publisher;
+
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+
+class ProxyStatement implements Statement {
+
+	private final Statement delegate;
+	private final String sql;
+	private final ProxyConnectionFactory factory;
+	private final Map<Object, Object> bindings = new LinkedHashMap<>();
+	private boolean firstBindings = true;
+
+	ProxyStatement(Statement delegate, String sql, ProxyConnectionFactory factory) {
+		this.delegate = delegate;
+		this.sql = sql;
+		this.factory = factory;
+	}
+
+	@Override
+	public Statement add() {
+		firstBindings = false;
+		delegate.add();
+		return this;
+	}
+
+	@Override
+	public Statement bind(int index, Object value) {
+		if (firstBindings) bindings.put(index, value);
+		delegate.bind(index, value);
+		return this;
+	}
+
+	@Override
+	public Statement bind(String name, Object value) {
+		if (firstBindings) bindings.put(name, value);
+		delegate.bind(name, value);
+		return this;
+	}
+
+	@Override
+	public Statement bindNull(int index, Class<?> type) {
+		if (firstBindings) bindings.put(index, new QueryExecution.NullValue(type));
+		delegate.bindNull(index, type);
+		return this;
+	}
+
+	@Override
+	public Statement bindNull(String name, Class<?> type) {
+		if (firstBindings) bindings.put(name, new QueryExecution.NullValue(type));
+		delegate.bindNull(name, type);
+		return this;
+	}
+
+	@Override
+	public Statement returnGeneratedValues(String... columns) {
+		delegate.returnGeneratedValues(columns);
+		return this;
+	}
+
+	@Override
+	public Statement fetchSize(int rows) {
+		delegate.fetchSize(rows);
+		return this;
+	}
+
+	@Override
+	public Publisher<? extends Result> execute() {
+		return factory.track(sql, Collections.unmodifiableMap(new LinkedHashMap<>(bindings)), delegate::execute);
+	}
+
+}
@@ -0,0 +1,72 @@
+package org.trailence.global.db.proxy;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Statement;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * A statement executed, from its execution until its results have been consumed.
+ *
+ * @param sql the statement as sent to the database
+ * @param bindings values bound to the statement, by index or by name (only the first set when the statement is executed with several sets of bindings)
+ * @param responseNanos time from the execution until the first row or update count, or until the end if there is none
+ * @param durationNanos time from the execution until the results have been consumed, including the time spent by the caller
+ * @param rows number of rows returned or updated
+ * @param success false if the execution or the consumption of the results failed
+ */
+public record QueryExecution(
+	String sql,
+	Map<Object, Object> bindings,
+	long responseNanos,
+	long durationNanos,
+	long rows,
+	boolean success,
+	ConnectionFactory connectionFactory
+) {
+
+	/** Value bound to null. */
+	public record NullValue(Class<?> type) {}
+
+	public boolean isSelect() {
+		String s = sql.stripLeading();
+		return s.regionMatches(true, 0, "SELECT", 0, 6) && !s.toUpperCase().contains(" FOR UPDATE");
+	}
+
+	/**
+	 * Get the plan of the statement with EXPLAIN, or execute it again with EXPLAIN (ANALYZE, BUFFERS), in a transaction which is rolled back.<br/>
+	 * As ANALYZE really executes the statement, only SELECT statements are accepted.
+	 */
+	public Mono<String> explain(boolean analyze) {
+		if (!isSelect()) return Mono.error(new IllegalStateException("Only SELECT statements can be explained"));
+		return Mono.usingWhen(
+			connectionFactory.create(),
+			connection -> Mono.from(connection.beginTransaction())
+				.thenMany(Flux.defer(() -> {
+					Statement statement = connection.createStatement((analyze ? "EXPLAIN (ANALYZE, BUFFERS) " : "EXPLAIN ") + sql);
+					bindings.forEach((key, value) -> bind(statement, key, value));
+					return statement.execute();
+				}))
+				.flatMap(result -> result.map((row, _) -> row.get(0, String.class)))
+				.collect(Collectors.joining("\n"))
+				.flatMap(plan -> Mono.from(connection.rollbackTransaction()).thenReturn(plan)),
+			connection -> connection.close(),
+			(connection, _) -> Mono.from(connection.rollbackTransaction()).onErrorComplete().then(Mono.from(connection.close())),
+			connection -> connection.close()
+		);
+	}
+
+	private static void bind(Statement statement, Object key, Object value) {
+		if (key instanceof Integer index) {
+			if (value instanceof NullValue n) statement.bindNull(index, n.type());
+			else statement.bind(index, value);
+		} else {
+			if (value instanceof NullValue n) statement.bindNull((String) key, n.type());
+			else statement.bind((String) key, value);
+		}
+	}
+
+}
@@ -0,0 +1,11 @@
+package org.trailence.global.db.proxy;
+
+/**
+ * Listener notified of each statement executed through the {@link ProxyConnectionFactory}.<br/>
+ * It is called on the thread completing the execution, so it must not block.
+ */
+public interface QueryListener {
+
+	void afterQuery(QueryExecution execution);
+
+}
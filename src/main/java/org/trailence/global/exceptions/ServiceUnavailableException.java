@@ -0,0 +1,13 @@
+package org.trailence.global.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+public class ServiceUnavailableException extends TrailenceException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ServiceUnavailableException(String errorCode, String message) {
+		super(HttpStatus.SERVICE_UNAVAILABLE, errorCode, message);
+	}
+	
+}
@@ -0,0 +1,163 @@
+package org.trailence.global.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Adaptive binary range coder (as in LZMA), with an order-1 model: each byte is coded bit by bit through a binary tree
+ * of probabilities selected by the previous byte.<br/>
+ * It suits the split bits and bytes of the tracks, where the bytes of a column are similar to the previous ones,
+ * without the cost of the matches search of deflate.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class RangeCoder {
+
+	private static final int TOP = 1 << 24;
+	private static final int PROBABILITY_BITS = 11;
+	private static final int PROBABILITY_INIT = (1 << PROBABILITY_BITS) / 2;
+	private static final int MOVE_BITS = 4;
+
+	private static short[] newModel() {
+		short[] probabilities = new short[256 * 256];
+		Arrays.fill(probabilities, (short) PROBABILITY_INIT);
+		return probabilities;
+	}
+
+	public static class Encoder {
+		private final OutputStream out;
+		private final short[] probabilities = newModel();
+		private int context = 0;
+		private long low = 0;
+		private int range = -1;
+		private int cache = 0;
+		private long cacheSize = 1;
+
+		public Encoder(OutputStream out) {
+			this.out = out;
+		}
+
+		public void encode(byte[] bytes, int off, int len) throws IOException {
+			for (int i = off; i < off + len; ++i) encode(bytes[i] & 0xFF);
+		}
+
+		public void encode(int b) throws IOException {
+			int base = context << 8;
+			int node = 1;
+			for (int i = 7; i >= 0; --i) {
+				int bit = (b >>> i) & 1;
+				encodeBit(base | node, bit);
+				node = (node << 1) | bit;
+			}
+			context = b;
+		}
+
+		private void encodeBit(int index, int bit) throws IOException {
+			int probability = probabilities[index];
+			int bound = (range >>> PROBABILITY_BITS) * probability;
+			if (bit == 0) {
+				range = bound;
+				probabilities[index] = (short) (probability + (((1 << PROBABILITY_BITS) - probability) >>> MOVE_BITS));
+			} else {
+				low += bound & 0xFFFFFFFFL;
+				range -= bound;
+				probabilities[index] = (short) (probability - (probability >>> MOVE_BITS));
+			}
+			while ((range & 0xFF000000) == 0) {
+				range <<= 8;
+				shiftLow();
+			}
+		}
+
+		private void shiftLow() throws IOException {
+			int carry = (int) (low >>> 32);
+			if (carry != 0 || low < 0xFF000000L) {
+				int c = cache;
+				do {
+					out.write((c + carry) & 0xFF);
+					c = 0xFF;
+				} while (--cacheSize != 0);
+				cache = (int) (low >>> 24) & 0xFF;
+			}
+			cacheSize++;
+			low = (low & 0x00FFFFFF) << 8;
+		}
+
+		/** Write the remaining bytes, the underlying stream is not closed. */
+		public void finish() throws IOException {
+			for (int i = 0; i < 5; ++i) shiftLow();
+		}
+	}
+
+	/** Decode the given number of bytes. */
+	public static class Decoder extends InputStream {
+		private final InputStream in;
+		private final short[] probabilities = newModel();
+		private long remaining;
+		private int context = 0;
+		private int range = -1;
+		private int code = 0;
+
+		public Decoder(InputStream in, long length) throws IOException {
+			this.in = in;
+			this.remaining = length;
+			if (next() != 0) throw new IOException("Invalid range coder data");
+			for (int i = 0; i < 4; ++i) code = (code << 8) | next();
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining == 0) return -1;
+			remaining--;
+			int base = context << 8;
+			int node = 1;
+			while (node < 0x100) node = (node << 1) | decodeBit(base | node);
+			context = node & 0xFF;
+			return context;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) return 0;
+			if (remaining == 0) return -1;
+			int nb = (int) Math.min(len, remaining);
+			for (int i = 0; i < nb; ++i) b[off + i] = (byte) read();
+			return nb;
+		}
+
+		private int decodeBit(int index) throws IOException {
+			if ((range & 0xFF000000) == 0) {
+				range <<= 8;
+				code = (code << 8) | next();
+			}
+			int probability = probabilities[index];
+			int bound = (range >>> PROBABILITY_BITS) * probability;
+			if ((code ^ 0x80000000) < (bound ^ 0x80000000)) {
+				range = bound;
+				probabilities[index] = (short) (probability + (((1 << PROBABILITY_BITS) - probability) >>> MOVE_BITS));
+				return 0;
+			}
+			range -= bound;
+			code -= bound;
+			probabilities[index] = (short) (probability - (probability >>> MOVE_BITS));
+			return 1;
+		}
+
+		private int next() throws IOException {
+			int b = in.read();
+			if (b == -1) throw new EOFException();
+			return b;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+}
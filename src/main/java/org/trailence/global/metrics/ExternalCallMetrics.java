@@ -0,0 +1,43 @@
+package org.trailence.global.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
+
+/** Latency of the calls to external services, until the response headers are received. */
+@Component
+@RequiredArgsConstructor
+public class ExternalCallMetrics {
+
+	private final MeterRegistry registry;
+
+	public WebClient.Builder webClient(String integration) {
+		return WebClient.builder().filter(filter(integration));
+	}
+
+	public ExchangeFilterFunction filter(String integration) {
+		return (request, next) -> Mono.defer(() -> {
+			long start = System.nanoTime();
+			return next.exchange(request)
+			.doOnNext(response -> record(integration, Integer.toString(response.statusCode().value()), start))
+			.doOnError(_ -> record(integration, "error", start));
+		});
+	}
+
+	private void record(String integration, String status, long start) {
+		Timer.builder("trailence.external.requests")
+		.description("Calls to external services")
+		.tag("integration", integration)
+		.tag("status", status)
+		.register(registry)
+		.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	}
+
+}
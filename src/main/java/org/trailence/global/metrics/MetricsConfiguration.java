@@ -0,0 +1,31 @@
+package org.trailence.global.metrics;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.trailence.global.db.proxy.ProxyConnectionFactory;
+import org.trailence.global.db.proxy.QueryListener;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.pool.ConnectionPool;
+
+@Configuration
+public class MetricsConfiguration {
+
+	/**
+	 * Wrap the connection pool to record the time needed to acquire a connection,
+	 * and to notify the query listeners of the statements executed.
+	 */
+	@Bean
+	static BeanPostProcessor connectionAcquisitionMetrics(ObjectProvider<MeterRegistry> registry, ObjectProvider<QueryListener> queryListeners) {
+		return new BeanPostProcessor() {
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) {
+				if (bean instanceof ConnectionPool pool) return new ProxyConnectionFactory(new TimedConnectionFactory(pool, registry), queryListeners);
+				return bean;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,177 @@
+package org.trailence.global.metrics;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.trailence.global.db.proxy.QueryExecution;
+import org.trailence.global.db.proxy.QueryListener;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Statistics per shape of statement: the literals and parameters are replaced by ?, and the lists of values are collapsed.<br/>
+ * The times are measured until the first row or update count, so a result streamed to a slow consumer is not counted as a slow statement.<br/>
+ * For a SELECT slower than the threshold, the plan is captured with EXPLAIN, at most once every 10 minutes per shape and one at a time.
+ * EXPLAIN (ANALYZE, BUFFERS) executes the statement again, so it is only used when enabled.
+ */
+@Component
+@Slf4j
+public class QueryProfiler implements QueryListener {
+
+	static final int MAX_SHAPES = 2000;
+	static final int SAMPLES = 256;
+	private static final long PLAN_VALIDITY = 10L * 60 * 1000;
+
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern PARAMETER = Pattern.compile("\\$\\d+");
+	private static final Pattern NUMBER = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+	private static final Pattern LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+	private static final Pattern ARRAY = Pattern.compile("\\[\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\]");
+	private static final Pattern TUPLES = Pattern.compile("(\\((?:\\?|\\.\\.\\.)\\))(?:\\s*,\\s*\\((?:\\?|\\.\\.\\.)\\))+");
+	private static final Pattern SPACES = Pattern.compile("\\s+");
+
+	public record QueryStats(
+		String shape,
+		long count,
+		long errors,
+		long rows,
+		double totalMillis,
+		double meanMillis,
+		double p50Millis,
+		double p95Millis,
+		double p99Millis,
+		double maxMillis,
+		String plan,
+		Long planAt
+	) {}
+
+	@Value("${trailence.db.profiler.explain-millis:1000}")
+	@Getter @Setter
+	private long explainThresholdMillis;
+
+	@Value("${trailence.db.profiler.explain-analyze:false}")
+	@Getter @Setter
+	private boolean explainAnalyze;
+
+	private final Map<String, Shape> shapes = new ConcurrentHashMap<>();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicBoolean explaining = new AtomicBoolean(false);
+
+	@Override
+	public void afterQuery(QueryExecution execution) {
+		String fingerprint = fingerprint(execution.sql());
+		Shape shape = shapes.get(fingerprint);
+		if (shape == null) {
+			if (shapes.size() >= MAX_SHAPES) {
+				dropped.incrementAndGet();
+				return;
+			}
+			shape = shapes.computeIfAbsent(fingerprint, Shape::new);
+		}
+		shape.record(execution);
+		if (execution.success() && execution.responseNanos() / 1000000L >= explainThresholdMillis && execution.isSelect())
+			explain(shape, execution);
+	}
+
+	private void explain(Shape shape, QueryExecution execution) {
+		long now = System.currentTimeMillis();
+		synchronized (shape) {
+			if (now - shape.planRequestedAt < PLAN_VALIDITY) return;
+			if (!explaining.compareAndSet(false, true)) return;
+			shape.planRequestedAt = now;
+		}
+		execution.explain(explainAnalyze)
+		.doFinally(_ -> explaining.set(false))
+		.subscribe(
+			plan -> shape.plan(plan, System.currentTimeMillis()),
+			error -> log.warn("Cannot explain statement: {}", shape.fingerprint, error)
+		);
+	}
+
+	/** Returns the statistics, the shapes with the highest total time first. */
+	public List<QueryStats> getStats() {
+		return shapes.values().stream().map(Shape::stats).sorted(Comparator.comparingDouble(QueryStats::totalMillis).reversed()).toList();
+	}
+
+	/** Number of executions not recorded because the maximum number of shapes was reached. */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public void reset() {
+		shapes.clear();
+		dropped.set(0);
+	}
+
+	static String fingerprint(String sql) {
+		String s = STRING_LITERAL.matcher(sql).replaceAll("?");
+		s = PARAMETER.matcher(s).replaceAll("?");
+		s = NUMBER.matcher(s).replaceAll("?");
+		s = SPACES.matcher(s).replaceAll(" ").trim();
+		s = LIST.matcher(s).replaceAll("(...)");
+		s = ARRAY.matcher(s).replaceAll("[...]");
+		return TUPLES.matcher(s).replaceAll("$1");
+	}
+
+	private static final class Shape {
+		private final String fingerprint;
+		private long count = 0;
+		private long errors = 0;
+		private long rows = 0;
+		private long totalNanos = 0;
+		private long maxNanos = 0;
+		private final long[] samples = new long[SAMPLES];
+		private String plan = null;
+		private long planAt = 0;
+		private long planRequestedAt = 0;
+
+		private Shape(String fingerprint) {
+			this.fingerprint = fingerprint;
+		}
+
+		private synchronized void record(QueryExecution execution) {
+			samples[(int) (count++ % SAMPLES)] = execution.responseNanos();
+			if (!execution.success()) errors++;
+			rows += execution.rows();
+			totalNanos += execution.responseNanos();
+			maxNanos = Math.max(maxNanos, execution.responseNanos());
+		}
+
+		private synchronized void plan(String plan, long at) {
+			this.plan = plan;
+			this.planAt = at;
+		}
+
+		private synchronized QueryStats stats() {
+			long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, SAMPLES));
+			Arrays.sort(sorted);
+			return new QueryStats(
+				fingerprint, count, errors, rows,
+				millis(totalNanos), count == 0 ? 0 : millis(totalNanos / count),
+				percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99),
+				millis(maxNanos),
+				plan, plan == null ? null : planAt
+			);
+		}
+
+		private static double percentile(long[] sorted, int percentile) {
+			if (sorted.length == 0) return 0;
+			return millis(sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * percentile / 100.0) - 1)]);
+		}
+
+		private static double millis(long nanos) {
+			return nanos / 1000000.0d;
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+package org.trailence.global.metrics;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.ToIntFunction;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Scannable;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Gauges on the workers of the bounded elastic scheduler.<br/>
+ * The executors are collected when the scheduler creates them, so the workers created before this component are
+ * only seen once they have been evicted and created again.
+ */
+@Component
+public class SchedulerMetrics {
+
+	private static final String DECORATOR_KEY = "trailence-metrics";
+	private static final String BOUNDED_ELASTIC = "boundedElastic";
+
+	private final Set<ThreadPoolExecutor> executors = ConcurrentHashMap.newKeySet();
+
+	public SchedulerMetrics(MeterRegistry registry) {
+		Schedulers.addExecutorServiceDecorator(DECORATOR_KEY, (scheduler, service) -> {
+			if (service instanceof ThreadPoolExecutor executor && Scannable.from(scheduler).name().startsWith(BOUNDED_ELASTIC))
+				executors.add(executor);
+			return service;
+		});
+		gauge(registry, "trailence.scheduler.queued", "Tasks waiting in the queues of the workers, including delayed tasks", e -> e.getQueue().size());
+		gauge(registry, "trailence.scheduler.active", "Workers executing a task", ThreadPoolExecutor::getActiveCount);
+		gauge(registry, "trailence.scheduler.workers", "Workers", _ -> 1);
+	}
+
+	private void gauge(MeterRegistry registry, String name, String description, ToIntFunction<ThreadPoolExecutor> value) {
+		Gauge.builder(name, executors, set -> {
+			// forget evicted workers
+			set.removeIf(ThreadPoolExecutor::isShutdown);
+			return set.stream().mapToInt(value).sum();
+		})
+		.description(description)
+		.tag("scheduler", BOUNDED_ELASTIC)
+		.register(registry);
+	}
+
+	@PreDestroy
+	public void removeDecorator() {
+		Schedulers.removeExecutorServiceDecorator(DECORATOR_KEY);
+	}
+
+}
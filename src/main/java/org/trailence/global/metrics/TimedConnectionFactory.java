@@ -0,0 +1,66 @@
+package org.trailence.global.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.ObjectProvider;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.Wrapped;
+import lombok.RequiredArgsConstructor;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * Connection pool recording the time to acquire a connection.<br/>
+ * The pool is still reachable with {@link Wrapped#unwrap()}, so its occupancy gauges are still registered.
+ */
+@RequiredArgsConstructor
+public class TimedConnectionFactory implements ConnectionFactory, Wrapped<ConnectionFactory>, Disposable {
+
+	private final ConnectionPool pool;
+	private final ObjectProvider<MeterRegistry> registry;
+	private Timer timer;
+
+	@Override
+	public Publisher<? extends Connection> create() {
+		return Mono.defer(() -> {
+			long start = System.nanoTime();
+			return pool.create().doOnNext(_ -> timer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+		});
+	}
+
+	private Timer timer() {
+		if (timer == null)
+			timer = Timer.builder("trailence.r2dbc.acquire")
+				.description("Time to acquire a connection from the pool")
+				.register(registry.getObject());
+		return timer;
+	}
+
+	@Override
+	public ConnectionFactoryMetadata getMetadata() {
+		return pool.getMetadata();
+	}
+
+	@Override
+	public ConnectionFactory unwrap() {
+		return pool;
+	}
+
+	@Override
+	public void dispose() {
+		pool.dispose();
+	}
+
+	@Override
+	public boolean isDisposed() {
+		return pool.isDisposed();
+	}
+
+}
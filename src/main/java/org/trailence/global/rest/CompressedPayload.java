@@ -0,0 +1,84 @@
+package org.trailence.global.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Immutable payload stored gzipped: it is compressed once with the best compression, then sent as is to the clients
+ * accepting gzip, and decompressed for the others.<br/>
+ * The digest of the content is kept with it, so conditional requests can be answered without reading the payload.
+ *
+ * @param gzip the compressed payload
+ * @param size the size of the payload before compression
+ * @param digest the digest of the payload before compression
+ */
+public record CompressedPayload(byte[] gzip, int size, String digest) {
+
+	public static final String GZIP = "gzip";
+
+	public static CompressedPayload compress(byte[] data) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+			gzip.write(data);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return new CompressedPayload(out.toByteArray(), data.length, Validated.digest(data));
+	}
+
+	public byte[] decompress() {
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+			return in.readNBytes(size);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/** Returns true if the given Accept-Encoding header accepts gzip. */
+	public static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) return false;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] params = coding.split(";");
+			String name = params[0].trim();
+			if (!name.equalsIgnoreCase(GZIP) && !name.equalsIgnoreCase("x-gzip") && !name.equals("*")) continue;
+			boolean accepted = true;
+			for (int i = 1; i < params.length; ++i) {
+				String param = params[i].trim();
+				if (param.startsWith("q=")) {
+					try {
+						accepted = Double.parseDouble(param.substring(2)) > 0;
+					} catch (NumberFormatException _) {
+						accepted = false;
+					}
+				}
+			}
+			if (accepted) return true;
+		}
+		return false;
+	}
+
+	/** Entity tag of the representation sent for the given Accept-Encoding: the compressed and plain bytes differ. */
+	public static String etag(String digest, String acceptEncoding) {
+		return acceptsGzip(acceptEncoding) ? digest + "-" + GZIP : digest;
+	}
+
+	public ResponseEntity<byte[]> toResponse(String acceptEncoding, MediaType contentType) {
+		return toResponse(ResponseEntity.ok(), acceptEncoding, contentType);
+	}
+
+	public ResponseEntity<byte[]> toResponse(ResponseEntity.BodyBuilder response, String acceptEncoding, MediaType contentType) {
+		response.contentType(contentType).eTag(etag(digest, acceptEncoding)).header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		if (acceptsGzip(acceptEncoding)) return response.header(HttpHeaders.CONTENT_ENCODING, GZIP).body(gzip);
+		return response.body(decompress());
+	}
+
+}
@@ -1,42 +1,26 @@
 package org.trailence.global.rest;
 
-import java.util.concurrent.TimeUnit;
-
-import org.apache.commons.lang3.mutable.MutableObject;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
 
-import lombok.extern.slf4j.Slf4j;
-import reactor.core.Disposable;
+import lombok.RequiredArgsConstructor;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.publisher.SignalType;
 
-@Slf4j
+@RequiredArgsConstructor
 public class HttpFilter implements WebFilter {
 
+	private final RequestWatchdog watchdog;
+
 	@Override
 	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
-		long start = System.currentTimeMillis();
-		MutableObject<Disposable> schedule = new MutableObject<>(null);
-		exchange.getResponse().beforeCommit(() -> Mono.fromRunnable(() -> {
-			Disposable d = schedule.get();
-			if (d != null && !d.isDisposed()) d.dispose();
-			long time = System.currentTimeMillis() - start;
-			if (time > 2000) log.info("Request took {} ms: {} {}", time, exchange.getRequest().getMethod(), exchange.getRequest().getPath());
-		}));
-		checkExchange(exchange, 10, schedule);
-		return chain.filter(exchange);
+		var request = watchdog.start(exchange.getRequest().getMethod().name(), exchange.getRequest().getPath().value());
+		exchange.getResponse().beforeCommit(() -> Mono.fromRunnable(() -> watchdog.end(request)));
+		return chain.filter(exchange)
+		.doFinally(signal -> {
+			if (signal == SignalType.CANCEL) watchdog.cancel(request);
+		});
 	}
-	
-	private void checkExchange(ServerWebExchange exchange, int seconds, MutableObject<Disposable> schedule) {
-		schedule.setValue(Schedulers.boundedElastic().schedule(() -> {
-			if (seconds < 10 * 60)
-				checkExchange(exchange, seconds * 2, schedule);
-			else
-				schedule.setValue(null);
-			log.warn("Request not comitted after {} seconds: {} {}", seconds, exchange.getRequest().getMethod(), exchange.getRequest().getPath());
-		}, 10, TimeUnit.SECONDS));
-	}
-	
+
 }
@@ -0,0 +1,62 @@
+package org.trailence.global.rest;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.trailence.global.TrailenceUtils;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/** Reject with 429 Too Many Requests the requests over the limits of the {@link RateLimiter}. It must be placed after the authentication. */
+@RequiredArgsConstructor
+@Slf4j
+public class RateLimitFilter implements WebFilter {
+
+	private final RateLimiter limiter;
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		if (!limiter.isEnabled()) return chain.filter(exchange);
+		var route = RateLimiter.classify(exchange.getRequest().getPath().value());
+		if (route == null) return chain.filter(exchange);
+		return ReactiveSecurityContextHolder.getContext()
+		.map(SecurityContext::getAuthentication)
+		.map(Authentication::getName)
+		.switchIfEmpty(Mono.fromSupplier(() -> clientAddress(exchange)))
+		.flatMap(client -> {
+			long wait = limiter.acquire(route, client);
+			if (wait > 0) return tooManyRequests(exchange, route, client, wait);
+			limiter.requestStarted();
+			return chain.filter(exchange).doFinally(_ -> limiter.requestEnded());
+		});
+	}
+
+	private static String clientAddress(ServerWebExchange exchange) {
+		InetSocketAddress address = exchange.getRequest().getRemoteAddress();
+		if (address == null) return "unknown";
+		return address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+	}
+
+	private static Mono<Void> tooManyRequests(ServerWebExchange exchange, RateLimiter.RouteClass route, String client, long waitNanos) {
+		long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999999999L));
+		log.debug("Too many requests on {} from {}, retry after {} seconds", route, client, seconds);
+		var response = exchange.getResponse();
+		response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+		response.getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+		response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+		byte[] body = TrailenceUtils.mapper.writeValueAsBytes(new ApiError(429, "too-many-requests", "Too many requests, retry after " + seconds + " seconds"));
+		return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+	}
+
+}
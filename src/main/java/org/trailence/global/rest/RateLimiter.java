@@ -0,0 +1,167 @@
+package org.trailence.global.rest;
+
+import java.security.SecureRandom;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Rate limits per client (user, or IP address for anonymous requests) and class of route.<br/>
+ * Each limit is a token bucket implemented with the generic cell rate algorithm: the state of a bucket is the
+ * theoretical arrival time of the next request, a single long updated without lock.<br/>
+ * The buckets are not stored per client, but in a count-min sketch of fixed size: a client is hashed to one cell per row,
+ * its state is the lowest of its cells, and an accepted request raises its cells to the new state (conservative update).
+ * The cells are raised by compare-and-set from the values read: if one of them changed meanwhile, the admission is evaluated
+ * again, so concurrent requests of a client cannot take the same token.
+ * Collisions can only make a client limited earlier, never later, and the memory does not depend on the number of clients.<br/>
+ * When too many requests are in progress, the rates of the anonymous routes are halved.
+ */
+@Component
+public class RateLimiter {
+
+	static final int DEPTH = 3;
+	static final int WIDTH = 1 << 16;
+	static final int OVERLOAD_IN_PROGRESS = 150;
+
+	@Getter
+	public enum RouteClass {
+		/** Authentication, registration and contact: anonymous, and expensive (password hashing, emails). */
+		AUTH(20, 0.5, true),
+		/** Public trails, trail links and public avatars. */
+		PUBLIC(100, 20, true),
+		/** Live groups, joined anonymously and updated periodically. */
+		LIVE_GROUP(30, 2, true),
+		/** Other routes, used by authenticated users, including the bulk synchronization. */
+		USER(300, 50, false);
+
+		private final int burst;
+		private final long intervalNanos;
+		private final boolean anonymous;
+
+		RouteClass(int burst, double perSecond, boolean anonymous) {
+			this.burst = burst;
+			this.intervalNanos = (long) (1000000000d / perSecond);
+			this.anonymous = anonymous;
+		}
+	}
+
+	private static final Set<String> AUTH_PATHS = Set.of(
+		"/api/auth/v1/login",
+		"/api/auth/v1/share",
+		"/api/auth/v1/init_renew",
+		"/api/auth/v1/renew",
+		"/api/auth/v1/captcha",
+		"/api/auth/v1/forgot",
+		"/api/user/v1/changePassword",
+		"/api/user/v1/resetPassword",
+		"/api/user/v1/sendRegisterCode",
+		"/api/user/v1/registerNewUser",
+		"/api/user/v1/sendDeletionCode",
+		"/api/contact/v1"
+	);
+
+	private final AtomicLongArray cells = new AtomicLongArray(DEPTH * WIDTH);
+	private final long seed = new SecureRandom().nextLong();
+	private final LongSupplier clock;
+	private final long origin;
+	private final AtomicInteger inProgress = new AtomicInteger();
+	private final AtomicLong rejected = new AtomicLong();
+
+	@Value("${trailence.rate-limit.enabled:false}")
+	@Getter
+	@Setter(AccessLevel.PACKAGE)
+	private boolean enabled = false;
+
+	public RateLimiter() {
+		this(System::nanoTime);
+	}
+
+	RateLimiter(LongSupplier nanoClock) {
+		this.clock = nanoClock;
+		// cells at 0 are empty buckets
+		this.origin = nanoClock.getAsLong() - 1000000000L * 3600;
+	}
+
+	/** Returns the class of the route, or null if it is not limited. */
+	public static RouteClass classify(String path) {
+		if (path.startsWith("/actuator/") || path.equals("/api/ping") || path.startsWith("/api/kofi/")) return null;
+		if (AUTH_PATHS.contains(path)) return RouteClass.AUTH;
+		if (path.startsWith("/api/public/") || path.startsWith("/api/trail-link/") || path.startsWith("/api/avatar/v1/public/") || path.equals("/api/donation/v1/status"))
+			return RouteClass.PUBLIC;
+		if (path.startsWith("/api/live-group/")) return RouteClass.LIVE_GROUP;
+		return RouteClass.USER;
+	}
+
+	/**
+	 * Take a token for the given client.
+	 * @return 0 if the request is accepted, else the number of nanoseconds before a token is available
+	 */
+	public long acquire(RouteClass route, String client) {
+		long interval = route.intervalNanos;
+		if (route.anonymous && inProgress.get() > OVERLOAD_IN_PROGRESS) interval *= 2;
+		long tolerance = interval * (route.burst - 1);
+		long now = clock.getAsLong() - origin;
+		long hash = hash(route, client);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		int[] indexes = new int[DEPTH];
+		for (int i = 0; i < DEPTH; ++i) indexes[i] = i * WIDTH + ((h1 + i * h2) & (WIDTH - 1));
+		long[] observed = new long[DEPTH];
+		while (true) {
+			long tat = Long.MAX_VALUE;
+			for (int i = 0; i < DEPTH; ++i) {
+				observed[i] = cells.get(indexes[i]);
+				tat = Math.min(tat, observed[i]);
+			}
+			tat = Math.max(tat, now);
+			long wait = tat - now - tolerance;
+			if (wait > 0) {
+				rejected.incrementAndGet();
+				return wait;
+			}
+			long next = tat + interval;
+			// cells only increase: a cell raised by a failed attempt can only make the client limited earlier
+			boolean admitted = true;
+			for (int i = 0; i < DEPTH && admitted; ++i)
+				if (observed[i] < next && !cells.compareAndSet(indexes[i], observed[i], next)) admitted = false;
+			if (admitted) return 0;
+		}
+	}
+
+	void requestStarted() {
+		inProgress.incrementAndGet();
+	}
+
+	void requestEnded() {
+		inProgress.decrementAndGet();
+	}
+
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	private long hash(RouteClass route, String client) {
+		// seeded FNV-1a, so clients cannot choose keys colliding with others
+		long h = seed ^ route.ordinal();
+		for (int i = 0; i < client.length(); ++i) {
+			h ^= client.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
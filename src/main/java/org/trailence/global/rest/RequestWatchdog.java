@@ -0,0 +1,165 @@
+package org.trailence.global.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Watchdog of the requests in progress.<br/>
+ * Instead of scheduling a task per request, the requests are placed in a hashed timer wheel, swept at a fixed resolution
+ * by a single thread. A request not committed after 10 seconds is reported, then again each time its duration doubles,
+ * until 10 minutes. Slow and stuck requests are kept in a ring buffer.
+ */
+@Component
+@Slf4j
+public class RequestWatchdog {
+
+	static final long RESOLUTION_MILLIS = 1000;
+	static final int WHEEL_SIZE = 512;
+	static final int FIRST_CHECK_SECONDS = 10;
+	static final int LAST_CHECK_SECONDS = 10 * 60;
+	static final long SLOW_MILLIS = 2000;
+	static final int MAX_EVENTS = 200;
+
+	public enum EventType { SLOW, STUCK }
+
+	public record Event(EventType type, String method, String path, long startedAt, long duration) {}
+
+	/** Request in progress. */
+	public static final class Request {
+		private final String method;
+		private final String path;
+		private final long startedAt;
+		private volatile boolean done = false;
+		private int checkSeconds = FIRST_CHECK_SECONDS;
+		private long rounds;
+
+		private Request(String method, String path, long startedAt) {
+			this.method = method;
+			this.path = path;
+			this.startedAt = startedAt;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private final ConcurrentLinkedQueue<Request>[] wheel = new ConcurrentLinkedQueue[WHEEL_SIZE];
+	private volatile long tick = 0;
+
+	private final Event[] events = new Event[MAX_EVENTS];
+	private long nbEvents = 0;
+
+	private final Scheduler scheduler;
+	private final Disposable sweeper;
+
+	public RequestWatchdog() {
+		this(true);
+	}
+
+	RequestWatchdog(boolean startSweeper) {
+		for (int i = 0; i < WHEEL_SIZE; ++i) wheel[i] = new ConcurrentLinkedQueue<>();
+		if (startSweeper) {
+			scheduler = Schedulers.newSingle("request-watchdog", true);
+			sweeper = scheduler.schedulePeriodically(this::sweep, RESOLUTION_MILLIS, RESOLUTION_MILLIS, TimeUnit.MILLISECONDS);
+		} else {
+			scheduler = null;
+			sweeper = null;
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (sweeper != null) sweeper.dispose();
+		if (scheduler != null) scheduler.dispose();
+	}
+
+	public Request start(String method, String path) {
+		Request request = new Request(method, path, System.currentTimeMillis());
+		schedule(request, FIRST_CHECK_SECONDS);
+		return request;
+	}
+
+	public void end(Request request) {
+		request.done = true;
+		long time = System.currentTimeMillis() - request.startedAt;
+		if (time > SLOW_MILLIS) {
+			log.info("Request took {} ms: {} {}", time, request.method, request.path);
+			addEvent(new Event(EventType.SLOW, request.method, request.path, request.startedAt, time));
+		}
+	}
+
+	/** Forget a request which will not be committed, without reporting it. */
+	public void cancel(Request request) {
+		request.done = true;
+	}
+
+	private void schedule(Request request, int delaySeconds) {
+		long ticks = Math.max(1, delaySeconds * 1000L / RESOLUTION_MILLIS);
+		request.rounds = (ticks - 1) / WHEEL_SIZE;
+		wheel[(int) ((tick + ticks) % WHEEL_SIZE)].add(request);
+	}
+
+	/** Advance the wheel by one tick. */
+	void sweep() {
+		try {
+			long t = tick + 1;
+			tick = t;
+			var it = wheel[(int) (t % WHEEL_SIZE)].iterator();
+			List<Request> rearm = new ArrayList<>();
+			while (it.hasNext()) {
+				Request request = it.next();
+				if (request.done) {
+					it.remove();
+				} else if (request.rounds > 0) {
+					request.rounds--;
+				} else {
+					it.remove();
+					long time = System.currentTimeMillis() - request.startedAt;
+					log.warn("Request not committed after {} seconds: {} {}", request.checkSeconds, request.method, request.path);
+					addEvent(new Event(EventType.STUCK, request.method, request.path, request.startedAt, time));
+					if (request.checkSeconds < LAST_CHECK_SECONDS) rearm.add(request);
+				}
+			}
+			// next report when the duration doubled
+			for (var request : rearm) {
+				int delay = request.checkSeconds;
+				request.checkSeconds *= 2;
+				schedule(request, delay);
+			}
+		} catch (Exception e) {
+			log.error("Error in request watchdog", e);
+		}
+	}
+
+	private void addEvent(Event event) {
+		synchronized (events) {
+			events[(int) (nbEvents++ % MAX_EVENTS)] = event;
+		}
+	}
+
+	/** Returns the last slow or stuck requests, the most recent first. */
+	public List<Event> getEvents() {
+		synchronized (events) {
+			int nb = (int) Math.min(nbEvents, MAX_EVENTS);
+			List<Event> list = new ArrayList<>(nb);
+			for (int i = 1; i <= nb; ++i) list.add(events[(int) ((nbEvents - i) % MAX_EVENTS)]);
+			return list;
+		}
+	}
+
+	/** Number of requests in the wheel, including the ones done but not yet swept. */
+	int size() {
+		int size = 0;
+		for (var bucket : wheel) size += bucket.size();
+		return size;
+	}
+
+}
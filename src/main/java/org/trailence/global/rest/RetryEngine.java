@@ -0,0 +1,213 @@
+package org.trailence.global.rest;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.trailence.global.exceptions.ServiceUnavailableException;
+
+import io.r2dbc.spi.R2dbcException;
+import io.r2dbc.spi.R2dbcNonTransientResourceException;
+import io.r2dbc.spi.R2dbcTransientException;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Retries the database operations failing with a transient error.<br/>
+ * <ul>
+ * <li>The errors are classified from their SQLSTATE: serialization failures, deadlocks and connection losses are retried.</li>
+ * <li>The delays use decorrelated jitter, so concurrent operations failing together do not retry together.</li>
+ * <li>Retries are taken from a process-wide token bucket: once it is empty, failures are not retried anymore,
+ * so the load during a database outage is at most the load without retry plus the budget.</li>
+ * <li>Consecutive connection failures open a circuit breaker: operations are then rejected without reaching the database,
+ * until a probe succeeds after a pause.</li>
+ * </ul>
+ */
+@Slf4j
+class RetryEngine {
+
+	enum Failure { SERIALIZATION, DEADLOCK, CONNECTION, TRANSIENT }
+
+	enum CircuitState { CLOSED, OPEN, HALF_OPEN }
+
+	record Settings(
+		int maxRetries,
+		Duration baseDelay,
+		Duration maxDelay,
+		int budgetCapacity,
+		double budgetPerSecond,
+		int breakerThreshold,
+		Duration breakerPause
+	) {}
+
+	static final Settings DEFAULT_SETTINGS = new Settings(2, Duration.ofMillis(10), Duration.ofSeconds(1), 30, 10, 20, Duration.ofSeconds(5));
+
+	private final Settings settings;
+	private final LongSupplier nanoClock;
+
+	private double tokens;
+	private long tokensUpdatedAt;
+
+	private CircuitState circuit = CircuitState.CLOSED;
+	private int consecutiveFailures = 0;
+	private long openedAt;
+	private boolean probing = false;
+
+	private final AtomicLong attempts = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong budgetExhausted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	RetryEngine(Settings settings, LongSupplier nanoClock) {
+		this.settings = settings;
+		this.nanoClock = nanoClock;
+		this.tokens = settings.budgetCapacity();
+		this.tokensUpdatedAt = nanoClock.getAsLong();
+	}
+
+	static Failure classify(Throwable t) {
+		for (Throwable cause = t; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+			if (!(cause instanceof R2dbcException e)) continue;
+			String state = e.getSqlState();
+			if (state != null) {
+				if (state.equals("40001")) return Failure.SERIALIZATION;
+				if (state.equals("40P01")) return Failure.DEADLOCK;
+				if (state.startsWith("08") || state.equals("57P01") || state.equals("57P02") || state.equals("57P03")) return Failure.CONNECTION;
+			}
+			// closed connections are reported without SQLSTATE
+			if (e instanceof R2dbcNonTransientResourceException && state == null) return Failure.CONNECTION;
+			if (e instanceof R2dbcTransientException) return Failure.TRANSIENT;
+			return null;
+		}
+		return null;
+	}
+
+	/**
+	 * Whether the error is an answer of the database, i.e. an R2dbcException carrying a SQLSTATE, possibly wrapped
+	 * in a DataAccessException. Other errors, such as a timeout or a failure of the application, say nothing on its health.
+	 */
+	static boolean isAnswered(Throwable t) {
+		for (Throwable cause = t; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+			if (cause instanceof R2dbcException e) return e.getSqlState() != null;
+		}
+		return false;
+	}
+
+	<T> Mono<T> retry(Mono<T> operation) {
+		return retry(Flux.from(operation)).singleOrEmpty();
+	}
+
+	<T> Flux<T> retry(Flux<T> operation) {
+		return attempt(operation, 0, settings.baseDelay().toNanos());
+	}
+
+	private <T> Flux<T> attempt(Flux<T> operation, int numRetry, long previousDelay) {
+		return Flux.defer(() -> {
+			if (!acquirePermission()) {
+				rejected.incrementAndGet();
+				return Flux.error(new ServiceUnavailableException("database-unavailable", "Database temporarily unavailable"));
+			}
+			attempts.incrementAndGet();
+			return operation
+			.doOnComplete(this::onSuccess)
+			.doOnCancel(this::onCancel)
+			.onErrorResume(error -> {
+				Failure failure = classify(error);
+				onFailure(failure, isAnswered(error));
+				if (failure == null || numRetry >= settings.maxRetries()) return Flux.error(error);
+				if (!takeToken()) {
+					budgetExhausted.incrementAndGet();
+					return Flux.error(error);
+				}
+				retries.incrementAndGet();
+				long delay = nextDelay(previousDelay);
+				return Mono.delay(Duration.ofNanos(delay)).thenMany(attempt(operation, numRetry + 1, delay));
+			});
+		});
+	}
+
+	private long nextDelay(long previousDelay) {
+		long base = settings.baseDelay().toNanos();
+		long max = Math.max(base + 1, previousDelay * 3);
+		return Math.min(settings.maxDelay().toNanos(), ThreadLocalRandom.current().nextLong(base, max));
+	}
+
+	private synchronized boolean takeToken() {
+		long now = nanoClock.getAsLong();
+		tokens = Math.min(settings.budgetCapacity(), tokens + (now - tokensUpdatedAt) * settings.budgetPerSecond() / 1000000000d);
+		tokensUpdatedAt = now;
+		if (tokens < 1) return false;
+		tokens -= 1;
+		return true;
+	}
+
+	private synchronized boolean acquirePermission() {
+		switch (circuit) {
+		case CLOSED: return true;
+		case OPEN:
+			if (nanoClock.getAsLong() - openedAt < settings.breakerPause().toNanos()) return false;
+			circuit = CircuitState.HALF_OPEN;
+			probing = true;
+			return true;
+		default:
+			if (probing) return false;
+			probing = true;
+			return true;
+		}
+	}
+
+	private synchronized void onSuccess() {
+		consecutiveFailures = 0;
+		if (circuit != CircuitState.CLOSED) {
+			log.info("Database circuit breaker closed");
+			circuit = CircuitState.CLOSED;
+			probing = false;
+		}
+	}
+
+	private synchronized void onCancel() {
+		if (circuit == CircuitState.HALF_OPEN) probing = false;
+	}
+
+	private synchronized void onFailure(Failure failure, boolean answered) {
+		if (failure != Failure.CONNECTION) {
+			if (answered) {
+				// the database answered
+				if (circuit != CircuitState.CLOSED || consecutiveFailures > 0) onSuccess();
+			} else if (circuit == CircuitState.HALF_OPEN) {
+				// unknown: another operation will probe
+				probing = false;
+			}
+			return;
+		}
+		if (circuit == CircuitState.HALF_OPEN || ++consecutiveFailures >= settings.breakerThreshold()) {
+			if (circuit != CircuitState.OPEN) log.warn("Database circuit breaker opened after {} connection failures", consecutiveFailures);
+			circuit = CircuitState.OPEN;
+			openedAt = nanoClock.getAsLong();
+			probing = false;
+		}
+	}
+
+	synchronized CircuitState getCircuitState() {
+		return circuit;
+	}
+
+	long getAttempts() {
+		return attempts.get();
+	}
+
+	long getRetries() {
+		return retries.get();
+	}
+
+	long getBudgetExhausted() {
+		return budgetExhausted.get();
+	}
+
+	long getRejected() {
+		return rejected.get();
+	}
+
+}
@@ -1,49 +1,26 @@
 package org.trailence.global.rest;
 
-import java.time.Duration;
-
-import org.apache.commons.lang3.RandomUtils;
-import org.springframework.r2dbc.UncategorizedR2dbcException;
-
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+/** Retry of the database operations, sharing a process-wide retry budget and circuit breaker (see {@link RetryEngine}). */
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public final class RetryRest {
 
+	private static final RetryEngine ENGINE = new RetryEngine(RetryEngine.DEFAULT_SETTINGS, System::nanoTime);
+
 	public static boolean isRetryable(Throwable t) {
-		return (t instanceof UncategorizedR2dbcException);
+		return RetryEngine.classify(t) != null;
 	}
 
 	public static <T> Mono<T> retry(Mono<T> transaction) {
-		return retry(transaction, 0);
-	}
-	
-	private static <T> Mono<T> retry(Mono<T> transaction, int numRetry) {
-		if (numRetry == 2) return transaction;
-		return transaction.onErrorResume(error -> {
-			if (isRetryable(error)) return delay(numRetry).then(retry(transaction, numRetry + 1));
-			return Mono.error(error);
-		});
+		return ENGINE.retry(transaction);
 	}
 	
 	public static <T> Flux<T> retry(Flux<T> transaction) {
-		return retry(transaction, 0);
-	}
-	
-	private static <T> Flux<T> retry(Flux<T> transaction, int numRetry) {
-		if (numRetry == 2) return transaction;
-		return transaction.onErrorResume(error -> {
-			if (isRetryable(error)) return delay(numRetry).thenMany(retry(transaction, numRetry + 1));
-			return Flux.error(error);
-		});
-	}
-	
-	private static Mono<Integer> delay(int numRetry) {
-		if (numRetry == 0) return Mono.just(1).delayElement(Duration.ofMillis(RandomUtils.insecure().randomLong(10, 200)));
-		return Mono.just(1).delayElement(Duration.ofMillis(RandomUtils.insecure().randomLong(numRetry * 10L, numRetry * 200L)));
+		return ENGINE.retry(transaction);
 	}
 	
 }
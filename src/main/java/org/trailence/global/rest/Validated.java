@@ -0,0 +1,71 @@
+package org.trailence.global.rest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.function.BiFunction;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * A response body with its strong validator.<br/>
+ * The validator is known before the body is built, so a conditional GET whose If-None-Match matches it is answered with
+ * 304 Not Modified without subscribing to the body: no decoding, storage read or serialization happens.
+ *
+ * @param etag the entity tag, without quotes
+ * @param body the body, subscribed only if the client does not have it yet
+ */
+public record Validated<T>(String etag, Mono<T> body) {
+
+	private static final int DIGEST_BYTES = 16;
+
+	public Mono<ResponseEntity<T>> toResponse(ServerWebExchange exchange) {
+		return toResponse(exchange, ResponseEntity.BodyBuilder::body);
+	}
+
+	public <R> Mono<ResponseEntity<R>> toResponse(ServerWebExchange exchange, BiFunction<ResponseEntity.BodyBuilder, T, ResponseEntity<R>> ok) {
+		if (exchange.checkNotModified(etag)) return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build());
+		return body.map(value -> ok.apply(ResponseEntity.ok().eTag(etag), value));
+	}
+
+	/** Returns true if the request carries a validator, so it is worth getting the validator before the body. */
+	public static boolean isConditional(ServerWebExchange exchange) {
+		return exchange.getRequest().getHeaders().containsHeader(HttpHeaders.IF_NONE_MATCH);
+	}
+
+	/** Digest of the given versions, to be used as an entity tag. */
+	public static String digest(Object... versions) {
+		MessageDigest digest = newDigest();
+		for (Object version : versions) {
+			digest.update(String.valueOf(version).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+		return toEntityTag(digest);
+	}
+
+	public static String digest(byte[] content) {
+		MessageDigest digest = newDigest();
+		digest.update(content);
+		return toEntityTag(digest);
+	}
+
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static String toEntityTag(MessageDigest digest) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest.digest(), DIGEST_BYTES));
+	}
+
+}
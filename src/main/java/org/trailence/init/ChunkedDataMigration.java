@@ -0,0 +1,213 @@
+package org.trailence.init;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+/**
+ * Migration rewriting the data of tables by chunks.<br/>
+ * Rows are read by chunks ordered by their key (keyset pagination), transformed in parallel, then updated with one statement
+ * per chunk. The key of the last row of each chunk is saved in the same transaction as the update, so if the migration is
+ * interrupted, it resumes after the last chunk done.<br/>
+ * A background migration does not block the startup: the application serves requests while the migration is running,
+ * so the application must support both the old and the new format of the data.
+ */
+@Slf4j
+public abstract class ChunkedDataMigration implements Migration {
+
+	/** Column with its SQL type, used to cast the bound values. */
+	public record TypedColumn(String name, String sqlType) {}
+
+	/**
+	 * Rewrite of a table.
+	 * The transform receives the key and input columns of a row, and returns the new values of the output columns,
+	 * or null if the row does not need to be updated.
+	 */
+	public record Pass(
+		String name, String table, List<TypedColumn> keys, List<String> inputColumns, List<TypedColumn> outputColumns,
+		Function<Map<String, Object>, Object[]> transform
+	) {}
+
+	protected abstract List<Pass> passes();
+
+	protected int chunkSize() {
+		return 200;
+	}
+
+	/** Pause between chunks, to limit the load of the database when running in background. */
+	protected Duration pauseBetweenChunks() {
+		return background() ? Duration.ofMillis(100) : Duration.ZERO;
+	}
+
+	@Override
+	public void execute(R2dbcEntityTemplate db, ApplicationContext context) throws Exception {
+		TransactionalOperator tx = TransactionalOperator.create(context.getBean(ReactiveTransactionManager.class));
+		Flux.fromIterable(passes()).concatMap(pass -> run(db, tx, pass)).then().block();
+	}
+
+	@AllArgsConstructor
+	private static final class State {
+		private String[] lastKey;
+		private long done;
+		private boolean finished;
+	}
+
+	private Mono<Long> run(R2dbcEntityTemplate db, TransactionalOperator tx, Pass pass) {
+		String checkpointId = id() + "/" + pass.name();
+		long start = System.currentTimeMillis();
+		return loadCheckpoint(db, checkpointId)
+		.flatMap(state -> db.getDatabaseClient().sql("SELECT count(*) FROM " + pass.table())
+			.map((row, _) -> row.get(0, Long.class)).one()
+			.flatMap(total -> {
+				if (state.done > 0) log.info("Migration {}: resuming after {} rows", checkpointId, state.done);
+				return Mono.just(state)
+				.expand(s -> s.finished ? Mono.empty() : processChunk(db, tx, pass, checkpointId, s, total, start))
+				.last();
+			})
+		)
+		.map(state -> {
+			log.info("Migration {}: {} rows processed in {} ms", checkpointId, state.done, System.currentTimeMillis() - start);
+			return state.done;
+		});
+	}
+
+	private Mono<State> processChunk(R2dbcEntityTemplate db, TransactionalOperator tx, Pass pass, String checkpointId, State state, long total, long start) {
+		return selectChunk(db, pass, state.lastKey).collectList()
+		.flatMap(rows -> {
+			if (rows.isEmpty()) return Mono.just(new State(state.lastKey, state.done, true));
+			Map<String, Object> last = rows.getLast();
+			String[] lastKey = pass.keys().stream().map(k -> String.valueOf(last.get(k.name()))).toArray(String[]::new);
+			long done = state.done + rows.size();
+			return Flux.fromIterable(rows)
+			.parallel()
+			.runOn(Schedulers.parallel())
+			.map(row -> Tuples.of(row, Optional.ofNullable(pass.transform().apply(row))))
+			.filter(t -> t.getT2().isPresent())
+			.map(t -> Tuples.of(t.getT1(), t.getT2().get()))
+			.sequential()
+			.collectList()
+			.flatMap(updates ->
+				update(db, pass, updates)
+				.then(saveCheckpoint(db, checkpointId, lastKey, done))
+				.as(tx::transactional)
+			)
+			.then(Mono.fromSupplier(() -> {
+				log.info("Migration {}: {} / {} rows ({} ms)", checkpointId, done, total, System.currentTimeMillis() - start);
+				return new State(lastKey, done, rows.size() < chunkSize());
+			}))
+			.delayElement(pauseBetweenChunks());
+		});
+	}
+
+	private Flux<Map<String, Object>> selectChunk(R2dbcEntityTemplate db, Pass pass, String[] lastKey) {
+		List<String> columns = new ArrayList<>();
+		for (var key : pass.keys()) columns.add(key.name());
+		columns.addAll(pass.inputColumns());
+		String keyList = String.join(",", pass.keys().stream().map(TypedColumn::name).toList());
+		StringBuilder sql = new StringBuilder(256)
+		.append("SELECT ").append(String.join(",", columns)).append(" FROM ").append(pass.table());
+		if (lastKey != null) {
+			sql.append(" WHERE (").append(keyList).append(") > (");
+			for (int i = 0; i < pass.keys().size(); ++i) {
+				if (i > 0) sql.append(',');
+				sql.append('$').append(i + 1).append("::").append(pass.keys().get(i).sqlType());
+			}
+			sql.append(')');
+		}
+		sql.append(" ORDER BY ").append(keyList).append(" LIMIT ").append(chunkSize());
+		GenericExecuteSpec spec = db.getDatabaseClient().sql(sql.toString());
+		if (lastKey != null)
+			for (int i = 0; i < lastKey.length; ++i) spec = spec.bind(i, lastKey[i]);
+		return spec.map((row, _) -> {
+			Map<String, Object> values = new HashMap<>();
+			for (String column : columns) {
+				Object value = row.get(column);
+				if (value instanceof ByteBuffer bb) {
+					byte[] bytes = new byte[bb.remaining()];
+					bb.get(bytes);
+					value = bytes;
+				}
+				values.put(column, value);
+			}
+			return values;
+		}).all();
+	}
+
+	private Mono<Void> update(R2dbcEntityTemplate db, Pass pass, List<Tuple2<Map<String, Object>, Object[]>> updates) {
+		if (updates.isEmpty()) return Mono.empty();
+		List<TypedColumn> columns = new ArrayList<>(pass.keys());
+		columns.addAll(pass.outputColumns());
+		StringBuilder sql = new StringBuilder(128 + updates.size() * columns.size() * 16)
+		.append("UPDATE ").append(pass.table()).append(" AS t SET ");
+		for (int i = 0; i < pass.outputColumns().size(); ++i) {
+			if (i > 0) sql.append(',');
+			String name = pass.outputColumns().get(i).name();
+			sql.append(name).append(" = v.").append(name);
+		}
+		sql.append(" FROM (VALUES ");
+		int index = 1;
+		for (int row = 0; row < updates.size(); ++row) {
+			if (row > 0) sql.append(',');
+			sql.append('(');
+			for (int i = 0; i < columns.size(); ++i) {
+				if (i > 0) sql.append(',');
+				sql.append('$').append(index++).append("::").append(columns.get(i).sqlType());
+			}
+			sql.append(')');
+		}
+		sql.append(") AS v(").append(String.join(",", columns.stream().map(TypedColumn::name).toList())).append(") WHERE ");
+		for (int i = 0; i < pass.keys().size(); ++i) {
+			if (i > 0) sql.append(" AND ");
+			String name = pass.keys().get(i).name();
+			sql.append("t.").append(name).append(" = v.").append(name);
+		}
+		GenericExecuteSpec spec = db.getDatabaseClient().sql(sql.toString());
+		index = 0;
+		for (var update : updates) {
+			for (var key : pass.keys()) spec = spec.bind(index++, update.getT1().get(key.name()));
+			for (int i = 0; i < pass.outputColumns().size(); ++i) {
+				Object value = update.getT2()[i];
+				if (value == null) spec = spec.bindNull(index++, Object.class);
+				else spec = spec.bind(index++, value);
+			}
+		}
+		return spec.then();
+	}
+
+	private Mono<State> loadCheckpoint(R2dbcEntityTemplate db, String checkpointId) {
+		return db.getDatabaseClient().sql("SELECT last_key, nb_done FROM migration_checkpoints WHERE id = $1")
+		.bind(0, checkpointId)
+		.map((row, _) -> new State(row.get(0, String[].class), row.get(1, Long.class), false))
+		.one()
+		.defaultIfEmpty(new State(null, 0, false));
+	}
+
+	private Mono<Void> saveCheckpoint(R2dbcEntityTemplate db, String checkpointId, String[] lastKey, long done) {
+		return db.getDatabaseClient().sql(
+			"INSERT INTO migration_checkpoints (id, last_key, nb_done) VALUES ($1, $2, $3)" +
+			" ON CONFLICT (id) DO UPDATE SET last_key = EXCLUDED.last_key, nb_done = EXCLUDED.nb_done"
+		)
+		.bind(0, checkpointId).bind(1, lastKey).bind(2, done)
+		.then();
+	}
+
+}
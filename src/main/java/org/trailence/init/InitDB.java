@@ -2,9 +2,13 @@ package org.trailence.init;
 
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,12 +20,14 @@ import org.trailence.global.TrailenceUtils;
 import org.trailence.init.migrations.AddLanguageAndTranslationsToPublicTrails;
 import org.trailence.init.migrations.InitDailyStats;
 import org.trailence.init.migrations.TrackStorageV1toV2Migration;
-import org.trailence.preferences.UserCommunityService;
 import org.trailence.quotas.QuotaService;
 import org.trailence.quotas.db.UserQuotaInit;
 import org.trailence.user.UserService;
 
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
 import reactor.util.function.Tuples;
 
 @Slf4j
@@ -32,7 +38,6 @@ public class InitDB {
 	@Autowired private UserService userService;
 	@Autowired private FreePlanProperties freePlan;
 	@Autowired private QuotaService quotaService;
-	@Autowired private UserCommunityService communityService;
 	
 	private static final String[] TABLES = {
 		"users", "user_keys", "user_preferences", "user_extensions",
@@ -40,9 +45,9 @@ public class InitDB {
 		"jobs_queue", "verification_codes", "files", "photos",
 		"user_quotas", "user_subscriptions", "plans", "donations", "donation_goals",
 		"contact_messages", "public_trails", "notifications", "moderation_messages",
-		"public_trail_feedback", "public_trail_feedback_reply",
+		"public_trail_feedback", "public_trail_feedback_reply", "public_trail_ratings",
 		"user_selection", "trail_links", "user_avatar", "live_groups", "user_community",
-		"daily_stats", "events",
+		"daily_stats", "events", "track_tiers", "public_track_payloads", "translation_memory", "migration_checkpoints",
 		"migrations"
 	};
 	
@@ -76,30 +81,90 @@ public class InitDB {
 		new DatabaseMigration("1.3_trails_source_url"),
 		new DatabaseMigration("1.3_preferences_add_trail_filters"),
 		new DatabaseMigration("1.5_trust_token"),
+		new DatabaseMigration("1.6_tracks_add_stats"),
+		new DatabaseMigration("1.6_tracks_add_tail_and_hashes"),
+		new DatabaseMigration("1.6_public_trail_ratings"),
+		new DatabaseMigration("1.6_public_track_payloads_add_digest"),
 		new TrackStorageV1toV2Migration(),
 		new InitDailyStats(),
 	};
 	
+	// to be incremented when the computation of quotas changes, so they are computed again at next startup
+	private static final String AGGREGATES_VERSION = "1";
+	private static final String FINGERPRINTS_TABLE = "init_fingerprints";
+	private static final String FINGERPRINT_AGGREGATES = "aggregates";
+	private static final String FINGERPRINT_TABLE_PREFIX = "table:";
+	
+	/**
+	 * Initialize the database.<br/>
+	 * A fingerprint of each schema script, and of the configuration used to compute aggregates, is stored so
+	 * that unchanged scripts are not executed again, and quotas are computed only when the free plan
+	 * or the set of migrations changed (or if the environment variable TRAILENCE_INIT_FULL is true).
+	 */
 	public void init(ApplicationContext context) {
-		for (var table : TABLES) createTable(table);
+		long start = System.currentTimeMillis();
+		boolean full = "true".equalsIgnoreCase(System.getenv("TRAILENCE_INIT_FULL"));
+		createTable(FINGERPRINTS_TABLE, null);
+		Map<String, String> fingerprints = full ? Map.of() : getFingerprints();
+		int nbTables = 0;
+		for (var table : TABLES) if (createTable(table, fingerprints)) nbTables++;
+		log.info("Tables created or updated: {} / {}", nbTables, TABLES.length);
 		doMigrations(context);
 		log.info("Configuring free plan: {}", freePlan);
 		setFreePlan();
-		quotaService.computeQuotas().block();
-		communityService.computeUserCommunity();
+		String aggregatesFingerprint = fingerprint(
+			AGGREGATES_VERSION + "\n" + freePlan.toString() + "\n" + String.join(",", Arrays.stream(migrations).map(Migration::id).toList())
+		);
+		if (aggregatesFingerprint.equals(fingerprints.get(FINGERPRINT_AGGREGATES))) {
+			log.info("Free plan and migrations unchanged, quotas are not computed");
+		} else {
+			long startAggregates = System.currentTimeMillis();
+			quotaService.computeQuotas().block();
+			saveFingerprint(FINGERPRINT_AGGREGATES, aggregatesFingerprint);
+			log.info("Quotas computed in {} ms", System.currentTimeMillis() - startAggregates);
+		}
 		if (System.getenv("TRAILENCE_INIT_USER") != null && System.getenv("TRAILENCE_INIT_PASSWORD") != null)
 			userService.createUser(System.getenv("TRAILENCE_INIT_USER"), System.getenv("TRAILENCE_INIT_PASSWORD"), true, List.of(Tuples.of(TrailenceUtils.FREE_PLAN, Optional.empty())))
 					.onErrorComplete(DuplicateKeyException.class)
 					.block();
+		log.info("Database initialized in {} ms", System.currentTimeMillis() - start);
 	}
 	
-	private void createTable(String tableName) {
-		log.info("Create table {}", tableName);
+	/** Execute the script of the given table if it changed since last time, and return true if it has been executed. */
+	private boolean createTable(String tableName, Map<String, String> fingerprints) {
 		try (InputStream in = InitDB.class.getClassLoader().getResourceAsStream("db_init/" + tableName + ".sql")) {
 			String sql = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+			String fingerprint = fingerprint(sql);
+			if (fingerprints != null && fingerprint.equals(fingerprints.get(FINGERPRINT_TABLE_PREFIX + tableName))) return false;
+			log.info("Create table {}", tableName);
 			db.getDatabaseClient().sql(sql).then().block();
+			if (fingerprints != null) saveFingerprint(FINGERPRINT_TABLE_PREFIX + tableName, fingerprint);
+			return true;
 		} catch (Exception e) {
 			log.error("Error creating table {}", tableName, e);
+			return false;
+		}
+	}
+	
+	private Map<String, String> getFingerprints() {
+		return db.getDatabaseClient().sql("SELECT id, fingerprint FROM " + FINGERPRINTS_TABLE)
+		.map((row, _) -> Tuples.of(row.get(0, String.class), row.get(1, String.class)))
+		.all()
+		.collectMap(Tuple2::getT1, Tuple2::getT2)
+		.block();
+	}
+	
+	private void saveFingerprint(String id, String fingerprint) {
+		db.getDatabaseClient().sql("INSERT INTO " + FINGERPRINTS_TABLE + " (id, fingerprint) VALUES ($1, $2) ON CONFLICT (id) DO UPDATE SET fingerprint = EXCLUDED.fingerprint")
+		.bind(0, id).bind(1, fingerprint)
+		.then().block();
+	}
+	
+	private static String fingerprint(String content) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
 		}
 	}
 	
@@ -109,18 +174,42 @@ public class InitDB {
 		List<String> done = db.getDatabaseClient().sql("SELECT id FROM migrations ORDER BY id").map((row,_) -> row.get(0, String.class)).all().collectList().block();
 		List<Migration> todo = new LinkedList<>(Arrays.asList(migrations).stream().filter(m -> !done.contains(m.id())).toList());
 		log.info("Migrations done: {}, to be executed: {}", done.size(), todo.size());
+		List<Migration> background = new LinkedList<>();
 		for (var migration : todo) {
+			if (migration.background()) {
+				background.add(migration);
+				continue;
+			}
 			try {
-				log.info("Doing migration {}", migration.id());
-				long start = System.currentTimeMillis();
-				migration.execute(db, context);
-				db.getDatabaseClient().sql("INSERT INTO migrations (id) VALUES ($1)").bind(0, migration.id()).then().block();
-				log.info("Migration done: {} in {} ms.", migration.id(), System.currentTimeMillis() - start);
+				doMigration(migration, context);
 			} catch (Exception e) {
 				log.error("Error doing migration {}", migration.id(), e);
 				throw new RuntimeException("Migration error");
 			}
 		}
+		if (!background.isEmpty()) {
+			log.info("Migrations to be executed in background: {}", background.size());
+			Mono.fromRunnable(() -> {
+				for (var migration : background) {
+					try {
+						doMigration(migration, context);
+					} catch (Exception e) {
+						// stop here, it will resume from its last checkpoint at next startup
+						log.error("Error doing background migration {}", migration.id(), e);
+						return;
+					}
+				}
+			}).subscribeOn(Schedulers.boundedElastic()).subscribe();
+		}
+	}
+	
+	@SuppressWarnings("java:S112") // generic Exception
+	private void doMigration(Migration migration, ApplicationContext context) throws Exception {
+		log.info("Doing migration {}", migration.id());
+		long start = System.currentTimeMillis();
+		migration.execute(db, context);
+		db.getDatabaseClient().sql("INSERT INTO migrations (id) VALUES ($1)").bind(0, migration.id()).then().block();
+		log.info("Migration done: {} in {} ms.", migration.id(), System.currentTimeMillis() - start);
 	}
 	
 	private void setFreePlan() {
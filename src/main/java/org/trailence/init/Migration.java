@@ -10,4 +10,9 @@ public interface Migration {
 	@SuppressWarnings("java:S112") // generic Exception: this is a generic interface
 	void execute(R2dbcEntityTemplate db, ApplicationContext context) throws Exception;
 	
+	/** A background migration is executed after the startup, while the application is running. */
+	default boolean background() {
+		return false;
+	}
+	
 }
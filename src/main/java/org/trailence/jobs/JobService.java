@@ -5,6 +5,7 @@ import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -16,7 +17,10 @@ import org.trailence.global.TrailenceUtils;
 import org.trailence.jobs.db.JobEntity;
 import org.trailence.jobs.db.JobRepository;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.r2dbc.postgresql.codec.Json;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
@@ -28,6 +32,7 @@ public class JobService {
 	
 	private final JobRepository repo;
 	private final R2dbcEntityTemplate r2dbc;
+	private final MeterRegistry meterRegistry;
 	
 	@Value("${trailence.jobs.delay:60}")
 	private long delay = 60;
@@ -38,11 +43,25 @@ public class JobService {
 	
 	private AtomicBoolean running = new AtomicBoolean(false);
 	private long lastCleaning = 0;
+	private final AtomicLong lag = new AtomicLong(0);
+	
+	@PostConstruct
+	public void registerMetrics() {
+		Gauge.builder("trailence.jobs.lag", lag, l -> l.get() / 1000.0d)
+		.description("Time since the oldest job waiting to be executed is ready")
+		.baseUnit("seconds")
+		.register(meterRegistry);
+	}
 	
 	@Scheduled(initialDelayString = "${trailence.jobs.initialDelay:60}", fixedDelayString = "${trailence.jobs.delay:60}", timeUnit = TimeUnit.SECONDS)
 	public void launch() {
 		if (!running.compareAndSet(false, true)) return;
-		execute(System.currentTimeMillis() - lastCleaning > 5L * 60000, System.currentTimeMillis())
+		long now = System.currentTimeMillis();
+		repo.findFirstByNextRetryAtLessThanOrderByNextRetryAtAsc(now)
+		.map(oldest -> now - oldest.getNextRetryAt())
+		.defaultIfEmpty(0L)
+		.doOnNext(lag::set)
+		.then(execute(now - lastCleaning > 5L * 60000, now))
 		.doFinally(_ -> running.set(false))
 		.checkpoint("Job processing")
 		.subscribe();
@@ -10,6 +10,8 @@ public interface JobRepository extends ReactiveCrudRepository<JobEntity, UUID> {
 
 	Mono<JobEntity> findFirstByNextRetryAtLessThanOrderByPriorityAscNextRetryAtAsc(long now);
 	
+	Mono<JobEntity> findFirstByNextRetryAtLessThanOrderByNextRetryAtAsc(long now);
+	
 	Mono<Void> deleteAllByExpiresAtLessThan(long now);
 	
 }
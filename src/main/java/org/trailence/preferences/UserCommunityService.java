@@ -50,27 +50,56 @@ public class UserCommunityService {
 		return repo.getUserCommunityFromPublicUuId(UUID.fromString(publicId));
 	}
 
-	private static final String QUERY_COMPUTE =
-		"WITH allUsers AS ("
+	public Mono<Void> removeCommentsOfTrail(UUID trailUuid) {
+		return repo.removeCommentsRatesOfTrail(trailUuid);
+	}
+
+	public static final int DRIFT_CHECK_SAMPLE_SIZE = 1000;
+	
+	// counters are maintained with the writes, this only compares them with the actual counts for a sample of users
+	private static final String QUERY_CHECK_DRIFT =
+		"WITH sample AS ("
+		+ "SELECT email FROM users ORDER BY random() LIMIT $1"
+		+ "), actual AS ("
 		+ "SELECT"
-		+ "  u.email,"
-		+ "  (SELECT count(*) FROM public_trails pt WHERE pt.author = u.email) as nb_publications,"
-		+ "  (SELECT count(*) FROM public_trail_feedback f WHERE f.email = u.email AND f.comment IS NOT NULL) as nb_comments,"
-		+ "  (SELECT count(*) FROM public_trail_feedback f WHERE f.email = u.email AND f.rate IS NOT NULL) as nb_rates"
-		+ " FROM users u"
+		+ "  s.email,"
+		+ "  (SELECT count(*) FROM public_trails pt WHERE pt.author = s.email) as nb_publications,"
+		+ "  (SELECT count(*) FROM public_trail_feedback f WHERE f.email = s.email AND f.comment IS NOT NULL) as nb_comments,"
+		+ "  (SELECT count(*) FROM public_trail_feedback f WHERE f.email = s.email AND f.rate IS NOT NULL) as nb_rates"
+		+ " FROM sample s"
 		+ ")"
-		+ "INSERT INTO user_community (email,nb_publications,nb_comments,nb_rates)"
-		+ " SELECT * FROM allUsers WHERE nb_publications > 0 OR nb_rates > 0 OR nb_comments > 0"
+		+ " SELECT a.email, COALESCE(c.nb_publications, 0), a.nb_publications, COALESCE(c.nb_comments, 0), a.nb_comments, COALESCE(c.nb_rates, 0), a.nb_rates"
+		+ " FROM actual a LEFT JOIN user_community c ON c.email = a.email"
+		+ " WHERE COALESCE(c.nb_publications, 0) <> a.nb_publications OR COALESCE(c.nb_comments, 0) <> a.nb_comments OR COALESCE(c.nb_rates, 0) <> a.nb_rates";
+	
+	private static final String QUERY_FIX =
+		"INSERT INTO user_community (email,nb_publications,nb_comments,nb_rates) VALUES ($1,$2,$3,$4)"
 		+ " ON CONFLICT (email) DO UPDATE"
 		+ " SET nb_publications = EXCLUDED.nb_publications, nb_comments = EXCLUDED.nb_comments, nb_rates = EXCLUDED.nb_rates";
 	
 	@Scheduled(initialDelayString = "1d", fixedDelayString = "1d")
-	public void computeUserCommunity() {
-		log.info("Computing user community counts");
+	public void scheduledDriftCheck() {
+		checkDrift(DRIFT_CHECK_SAMPLE_SIZE).block();
+	}
+	
+	/** Compare the counters of a random sample of users with the actual counts, log and fix the discrepancies, and return the number of users fixed. */
+	public Mono<Long> checkDrift(int sampleSize) {
 		long startTime = System.currentTimeMillis();
-		long nbUpdates = r2dbc.getDatabaseClient().sql(QUERY_COMPUTE).fetch().rowsUpdated().block();
-		long totalTime = System.currentTimeMillis() - startTime;
-		log.info("User community counts computed in {} ms. ({})", totalTime, nbUpdates);
+		return r2dbc.getDatabaseClient().sql(QUERY_CHECK_DRIFT)
+		.bind(0, sampleSize)
+		.map((row, _) -> new Object[] {
+			row.get(0, String.class), row.get(1, Long.class), row.get(2, Long.class), row.get(3, Long.class), row.get(4, Long.class), row.get(5, Long.class), row.get(6, Long.class)
+		})
+		.all()
+		.concatMap(d -> {
+			log.warn("User community counters drift for {}: publications {} instead of {}, comments {} instead of {}, rates {} instead of {}", d);
+			return r2dbc.getDatabaseClient().sql(QUERY_FIX)
+			.bind(0, d[0]).bind(1, ((Long) d[2]).intValue()).bind(2, ((Long) d[4]).intValue()).bind(3, ((Long) d[6]).intValue())
+			.then()
+			.thenReturn(d);
+		})
+		.count()
+		.doOnNext(nb -> log.info("User community counters checked for {} users in {} ms: {} discrepancies", sampleSize, System.currentTimeMillis() - startTime, nb));
 	}
 	
 }
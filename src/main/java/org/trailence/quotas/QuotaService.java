@@ -20,6 +20,7 @@ import org.springframework.data.relational.core.sql.Select;
 import org.springframework.data.relational.core.sql.SimpleFunction;
 import org.springframework.data.relational.core.sql.Table;
 import org.springframework.data.relational.core.sql.Update;
+import org.springframework.r2dbc.core.binding.MutableBindings;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
@@ -381,30 +382,39 @@ public class QuotaService {
 	
 	private Mono<Long> incrementQuota(String email, long nb, Column columnUsed, Column columnMax, String quotaType, boolean allowLess) {
 		if (nb == 0) return Mono.just(0L);
-		var newUsed = new PlusExpression(columnUsed, SQL.literalOf(nb));
-		var query = DbUtils.update(
-			Update.builder()
-			.table(UserQuotasEntity.TABLE)
-			.set(Assignments.value(columnUsed, newUsed))
-			.where(
-				Conditions.isEqual(UserQuotasEntity.COL_EMAIL, SQL.literalOf(email))
-				.and(Conditions.isLessOrEqualTo(newUsed, columnMax))
-			).build(),
-			null,
-			r2dbc
-		);
+		MutableBindings bindings = DbUtils.newBindings(r2dbc);
+		var nbMarker = SQL.bindMarker(bindings.bind(nb).getPlaceholder());
+		var emailMarker = SQL.bindMarker(bindings.bind(email).getPlaceholder());
+		var query = DbUtils.shape(List.of("incrementQuota", columnUsed.getName(), columnMax.getName()), bindings, () -> {
+			var newUsed = new PlusExpression(columnUsed, nbMarker);
+			return DbUtils.update(
+				Update.builder()
+				.table(UserQuotasEntity.TABLE)
+				.set(Assignments.value(columnUsed, newUsed))
+				.where(
+					Conditions.isEqual(UserQuotasEntity.COL_EMAIL, emailMarker)
+					.and(Conditions.isLessOrEqualTo(newUsed, columnMax))
+				).build(),
+				null,
+				r2dbc
+			).toQuery();
+		});
 		return r2dbc.getDatabaseClient().sql(query).fetch().rowsUpdated()
 		.flatMap(updated -> {
 			if (updated > 0) return Mono.just(nb);
 			if (nb == 1 || !allowLess) return Mono.error(new QuotaExceededException(quotaType));
+			MutableBindings selectBindings = DbUtils.newBindings(r2dbc);
+			var selectEmailMarker = SQL.bindMarker(selectBindings.bind(email).getPlaceholder());
 			return r2dbc.getDatabaseClient().sql(
-				DbUtils.select(
-					Select.builder().select(new AliasedExpression(new MinusExpression(columnMax, columnUsed), "remaining"))
-					.from(UserQuotasEntity.TABLE)
-					.limit(1)
-					.where(Conditions.isEqual(UserQuotasEntity.COL_EMAIL, SQL.literalOf(email)))
-					.build(),
-					null, r2dbc
+				DbUtils.shape(List.of("remainingQuota", columnUsed.getName(), columnMax.getName()), selectBindings, () ->
+					DbUtils.select(
+						Select.builder().select(new AliasedExpression(new MinusExpression(columnMax, columnUsed), "remaining"))
+						.from(UserQuotasEntity.TABLE)
+						.limit(1)
+						.where(Conditions.isEqual(UserQuotasEntity.COL_EMAIL, selectEmailMarker))
+						.build(),
+						null, r2dbc
+					).toQuery()
 				)
 			).fetch().first().map(row -> ((Number) row.get("remaining")).intValue())
 			.flatMap(remaining -> {
@@ -416,32 +426,42 @@ public class QuotaService {
 	
 	private Mono<Void> decrementQuota(String email, Column columnUsed, long nb) {
 		if (nb == 0) return Mono.empty();
-		var query = DbUtils.update(
-			Update.builder()
-			.table(UserQuotasEntity.TABLE)
-			.set(Assignments.value(columnUsed, SimpleFunction.create("GREATEST", List.of(SQL.literalOf(0), new MinusExpression(columnUsed, SQL.literalOf(nb))))))
-			.where(Conditions.isEqual(UserQuotasEntity.COL_EMAIL, SQL.literalOf(email)))
-			.build(),
-			null,
-			r2dbc
+		MutableBindings bindings = DbUtils.newBindings(r2dbc);
+		var nbMarker = SQL.bindMarker(bindings.bind(nb).getPlaceholder());
+		var emailMarker = SQL.bindMarker(bindings.bind(email).getPlaceholder());
+		var query = DbUtils.shape(List.of("decrementQuota", columnUsed.getName()), bindings, () ->
+			DbUtils.update(
+				Update.builder()
+				.table(UserQuotasEntity.TABLE)
+				.set(Assignments.value(columnUsed, SimpleFunction.create("GREATEST", List.of(SQL.literalOf(0), new MinusExpression(columnUsed, nbMarker)))))
+				.where(Conditions.isEqual(UserQuotasEntity.COL_EMAIL, emailMarker))
+				.build(),
+				null,
+				r2dbc
+			).toQuery()
 		);
 		return r2dbc.getDatabaseClient().sql(query).fetch().rowsUpdated().then();
 	}
 	
 	private Mono<Void> updateQuota(String email, Column columnUsed, Column columnMax, int diff, String quotaType) {
 		if (diff == 0) return Mono.empty();
-		var newUsed = diff < 0 ? SimpleFunction.create("GREATEST", List.of(SQL.literalOf(0), new MinusExpression(columnUsed, SQL.literalOf(-diff)))) : new PlusExpression(columnUsed, SQL.literalOf(diff));
-		Condition condition = Conditions.isEqual(UserQuotasEntity.COL_EMAIL, SQL.literalOf(email));
-		if (diff > 0) condition = condition.and(Conditions.isLessOrEqualTo(newUsed, columnMax));
-		var query = DbUtils.update(
-			Update.builder()
-			.table(UserQuotasEntity.TABLE)
-			.set(Assignments.value(columnUsed, newUsed))
-			.where(condition)
-			.build(),
-			null,
-			r2dbc
-		);
+		MutableBindings bindings = DbUtils.newBindings(r2dbc);
+		var diffMarker = SQL.bindMarker(bindings.bind(Math.abs(diff)).getPlaceholder());
+		var emailMarker = SQL.bindMarker(bindings.bind(email).getPlaceholder());
+		var query = DbUtils.shape(List.of("updateQuota", columnUsed.getName(), columnMax.getName(), diff < 0), bindings, () -> {
+			var newUsed = diff < 0 ? SimpleFunction.create("GREATEST", List.of(SQL.literalOf(0), new MinusExpression(columnUsed, diffMarker))) : new PlusExpression(columnUsed, diffMarker);
+			Condition condition = Conditions.isEqual(UserQuotasEntity.COL_EMAIL, emailMarker);
+			if (diff > 0) condition = condition.and(Conditions.isLessOrEqualTo(newUsed, columnMax));
+			return DbUtils.update(
+				Update.builder()
+				.table(UserQuotasEntity.TABLE)
+				.set(Assignments.value(columnUsed, newUsed))
+				.where(condition)
+				.build(),
+				null,
+				r2dbc
+			).toQuery();
+		});
 		return r2dbc.getDatabaseClient().sql(query).fetch().rowsUpdated()
 		.flatMap(updated -> updated > 0 ? Mono.empty() : Mono.error(new QuotaExceededException(quotaType)));
 	}
@@ -511,7 +531,7 @@ public class QuotaService {
 		+ "collections_used = (SELECT count(*) FROM collections WHERE collections.owner = user_quotas.email AND collections.type NOT IN " + TrailCollectionType.EXCLUDE_NOT_IN_QUOTA_TYPES + "),"
 		+ "trails_used = (SELECT count(*) FROM trails WHERE trails.owner = user_quotas.email),"
 		+ "tracks_used = (SELECT count(*) FROM tracks WHERE tracks.owner = user_quotas.email),"
-		+ "tracks_size_used = (SELECT COALESCE(sum(octet_length(tracks.data)), 0) FROM tracks WHERE tracks.owner = user_quotas.email),"
+		+ "tracks_size_used = (SELECT COALESCE(sum(octet_length(tracks.data) + COALESCE(octet_length(tracks.tail), 0)), 0) FROM tracks WHERE tracks.owner = user_quotas.email),"
 		+ "photos_used = (SELECT count(*) FROM photos WHERE photos.owner = user_quotas.email),"
 		+ "photos_size_used = (SELECT COALESCE(sum(files.size),0) FROM photos left join files on files.id = photos.file_id WHERE photos.owner = user_quotas.email),"
 		+ "tags_used = (SELECT count(*) FROM tags WHERE tags.owner = user_quotas.email),"
@@ -10,6 +10,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.trailence.global.exceptions.BadRequestException;
 import org.trailence.global.exceptions.NotFoundException;
+import org.trailence.global.metrics.ExternalCallMetrics;
 import org.trailence.storage.db.FileEntity;
 import org.trailence.storage.db.FileRepository;
 import org.trailence.storage.provider.fs.FileSystemProvider;
@@ -28,6 +29,7 @@ public class FileService {
 	
 	private final StorageProperties properties;
 	private final FileRepository repo;
+	private final ExternalCallMetrics metrics;
 	
 	private Mono<FileStorageProvider> provider;
 	
@@ -40,7 +42,7 @@ public class FileService {
 			if (properties.getType() != null)
 				switch (properties.getType()) {
 				case "fs": return new FileSystemProvider(properties.getRoot());
-				case "pcloud": return new PCloudProvider(properties.getUrl(), properties.getUsername(), properties.getPassword(), properties.getRoot().isBlank() ? 0 : Long.parseLong(properties.getRoot()));
+				case "pcloud": return new PCloudProvider(properties.getUrl(), properties.getUsername(), properties.getPassword(), properties.getRoot().isBlank() ? 0 : Long.parseLong(properties.getRoot()), metrics);
 				default: break;
 				}
 			throw new RuntimeException("Invalid storage type: " + properties.getType());
@@ -11,6 +11,7 @@ import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.BodyExtractors;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.trailence.global.metrics.ExternalCallMetrics;
 import org.trailence.storage.FileStorageProvider;
 import org.trailence.storage.provider.StorageUtils;
 import org.trailence.storage.provider.pcloud.dto.PCloudFileLinkResponse;
@@ -32,6 +33,7 @@ public class PCloudProvider implements FileStorageProvider {
 	private final String username;
 	private final String password;
 	private final long rootFolderId;
+	private final ExternalCallMetrics metrics;
 	private FolderCache root = null;
 	
 	private static final String PROTOCOL = "https://";
@@ -44,7 +46,7 @@ public class PCloudProvider implements FileStorageProvider {
 	private static final String QUERY_FILEID = "&" + PARAM_FILEID + "={" + PARAM_FILEID + "}";
 	
 	private WebClient getClient() {
-		return WebClient.builder().baseUrl(PROTOCOL + hostname).build();
+		return metrics.webClient("pcloud").baseUrl(PROTOCOL + hostname).build();
 	}
 
 	@Override
@@ -99,7 +101,7 @@ public class PCloudProvider implements FileStorageProvider {
 		return getFileUrl(Long.parseLong(fileId))
 		.flatMapMany(url -> {
 			log.info("Downloading file id {} from {}", fileId, path);
-			WebClient client = WebClient.builder().build();
+			WebClient client = metrics.webClient("pcloud").build();
 			return client.get().uri(url).exchangeToFlux(response -> response.body(BodyExtractors.toDataBuffers()))
 			.doOnComplete(() -> log.info("File downloaded: id {} from {}", fileId, path))
 			.doOnError(error -> log.warn("Error downloading file id {} from {}", fileId, path, error));
@@ -1,17 +1,20 @@
 package org.trailence.trail;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.function.BiConsumer;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
-import org.springframework.data.r2dbc.dialect.DialectResolver;
 import org.springframework.r2dbc.core.binding.MutableBindings;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
@@ -20,22 +23,20 @@ import org.trailence.global.TrailenceUtils;
 import org.trailence.global.db.DbUtils;
 import org.trailence.global.exceptions.ForbiddenException;
 import org.trailence.global.exceptions.NotFoundException;
+import org.trailence.global.rest.Validated;
 import org.trailence.notifications.NotificationsService;
 import org.trailence.preferences.UserCommunityService;
-import org.trailence.trail.db.PublicTrailEntity;
 import org.trailence.trail.db.PublicTrailFeedbackEntity;
 import org.trailence.trail.db.PublicTrailFeedbackReplyEntity;
 import org.trailence.trail.db.PublicTrailFeedbackReplyRepository;
 import org.trailence.trail.db.PublicTrailFeedbackRepository;
+import org.trailence.trail.db.PublicTrailRatingRepository;
 import org.trailence.trail.db.PublicTrailRepository;
 import org.trailence.trail.dto.CreateFeedbackRequest;
 import org.trailence.trail.dto.MyFeedback;
 import org.trailence.trail.dto.PublicTrailFeedback;
 import org.trailence.trail.dto.PublicTrailFeedback.Reply;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -47,6 +48,7 @@ public class FeedbackService {
 	private final PublicTrailFeedbackRepository feedbackRepo;
 	private final PublicTrailFeedbackReplyRepository feedbackReplyRepo;
 	private final PublicTrailRepository publicTrailRepo;
+	private final PublicTrailRatingRepository ratingRepo;
 	private final R2dbcEntityTemplate r2dbc;
 	private final NotificationsService notificationsService;
 	private final UserCommunityService userCommunityService;
@@ -115,16 +117,23 @@ public class FeedbackService {
 	}
 	
 	private Mono<Void> addRateToTrail(UUID trailUuid, int rate) {
-		String col = PublicTrailEntity.COL_NB_RATE_PREFIX + rate;
-		String sql = "UPDATE public_trails SET " + col + " = " + col + " + 1 WHERE uuid = '" + trailUuid.toString() + "'";
-		return r2dbc.getDatabaseClient().sql(sql).fetch().rowsUpdated().then();
+		long[] nb = new long[6];
+		nb[rate]++;
+		return addRates(trailUuid, nb);
 	}
 	
 	private Mono<Void> updateRate(PublicTrailFeedbackEntity entity, int newRate) {
-		String col1 = PublicTrailEntity.COL_NB_RATE_PREFIX + entity.getRate().intValue();
-		String col2 = PublicTrailEntity.COL_NB_RATE_PREFIX + newRate;
-		return r2dbc.getDatabaseClient().sql("UPDATE public_trail_feedback SET rate = " + newRate + " WHERE uuid = '" + entity.getUuid().toString() + "'").fetch().rowsUpdated()
-		.then(r2dbc.getDatabaseClient().sql("UPDATE public_trails SET " + col1 + " = " + col1 + " - 1, " + col2 + " = " + col2 + " + 1 WHERE uuid = '" + entity.getPublicTrailUuid().toString() + "'").fetch().rowsUpdated().then());
+		long[] nb = new long[6];
+		nb[entity.getRate().intValue()]--;
+		nb[newRate]++;
+		return r2dbc.getDatabaseClient().sql("UPDATE public_trail_feedback SET rate = $1 WHERE uuid = $2")
+		.bind(0, (short) newRate).bind(1, entity.getUuid())
+		.fetch().rowsUpdated()
+		.then(addRates(entity.getPublicTrailUuid(), nb));
+	}
+	
+	private Mono<Void> addRates(UUID trailUuid, long[] nb) {
+		return ratingRepo.addRates(trailUuid, nb[0], nb[1], nb[2], nb[3], nb[4], nb[5]);
 	}
 	
 	public Mono<PublicTrailFeedback.Reply> replyToFeedback(String feedbackUuid, String reply, Authentication auth) {
@@ -205,115 +214,122 @@ public class FeedbackService {
 		)).collectList();
 	}
 	
-	public Mono<List<PublicTrailFeedback>> getFeedbacks(String trailUuid, long pageFromDate, int size, String excludeFromStartingDate, Integer filterRate, Authentication auth) {
-		return this.fetchFeedbacks(trailUuid, (sql, _) -> {
-			if (pageFromDate > 0) {
-				sql.append(" AND public_trail_feedback.date <= ").append(pageFromDate);
+	/**
+	 * Get a page of comments with their replies, ordered by date and uuid descending.<br/>
+	 * The next page starts after the last comment of the previous page, given by pageFromDate and pageFromUuid.
+	 * For compatibility, pageFromDate can also be given with the list of uuids having this date to exclude.
+	 */
+	public Mono<List<PublicTrailFeedback>> getFeedbacks(
+		String trailUuid, long pageFromDate, String pageFromUuid, int size, String excludeFromStartingDate, Integer filterRate, Authentication auth
+	) {
+		return getFeedbacks(trailUuid, pageFromDate, pageFromUuid, size, excludeFromStartingDate, filterRate, auth, null);
+	}
+	
+	/**
+	 * The entity tag is a digest of the rows read, so a client already having the page gets a 304 Not Modified
+	 * without the page being serialized and sent again.
+	 */
+	public Mono<Validated<List<PublicTrailFeedback>>> getValidatedFeedbacks(
+		String trailUuid, long pageFromDate, String pageFromUuid, int size, String excludeFromStartingDate, Integer filterRate, Authentication auth
+	) {
+		return Mono.defer(() -> {
+			MessageDigest digest = Validated.newDigest();
+			return getFeedbacks(trailUuid, pageFromDate, pageFromUuid, size, excludeFromStartingDate, filterRate, auth, digest)
+			.map(list -> new Validated<>(Validated.toEntityTag(digest), Mono.just(list)));
+		});
+	}
+	
+	private Mono<List<PublicTrailFeedback>> getFeedbacks(
+		String trailUuid, long pageFromDate, String pageFromUuid, int size, String excludeFromStartingDate, Integer filterRate, Authentication auth,
+		MessageDigest digest
+	) {
+		Optional<UUID> fromUuid = pageFromUuid == null ? Optional.empty() : TrailenceUtils.ifUuid(pageFromUuid);
+		return this.fetchFeedbacks(trailUuid, (sql, bindings) -> {
+			if (pageFromDate > 0 && fromUuid.isPresent()) {
+				sql.append(" AND (public_trail_feedback.date, public_trail_feedback.uuid) < (")
+				.append(bindings.bind(pageFromDate).getPlaceholder()).append(',')
+				.append(bindings.bind(fromUuid.get()).getPlaceholder()).append(')');
+			} else if (pageFromDate > 0) {
+				sql.append(" AND public_trail_feedback.date <= ").append(bindings.bind(pageFromDate).getPlaceholder());
+				if (excludeFromStartingDate != null) {
+					UUID[] notIn = Stream.of(excludeFromStartingDate.split(","))
+						.map(TrailenceUtils::ifUuid).filter(Optional::isPresent)
+						.map(Optional::get)
+						.toArray(UUID[]::new);
+					if (notIn.length > 0)
+						sql.append(" AND public_trail_feedback.uuid <> ALL(").append(bindings.bind(notIn).getPlaceholder()).append(')');
+				}
 			}
 			if (filterRate != null) {
-				sql.append(" AND public_trail_feedback.rate = ").append(filterRate);
-			}
-			if (excludeFromStartingDate != null) {
-				String notIn = String.join(",",
-					Stream.of(excludeFromStartingDate.split(","))
-					.map(TrailenceUtils::ifUuid).filter(o -> o.isPresent())
-					.map(Optional::get)
-					.map(uuid -> "'" + uuid.toString() + "'").toList()
-				);
-				if (!notIn.isEmpty())
-					sql.append(" AND public_trail_feedback.uuid NOT IN (").append(notIn).append(')');
+				sql.append(" AND public_trail_feedback.rate = ").append(bindings.bind(filterRate).getPlaceholder());
 			}
-			sql.append(" ORDER BY public_trail_feedback.date DESC");
-			sql.append(" LIMIT ").append(size > 100 || size < 1 ? 100 : size);
-		}, auth);
+		}, size > 100 || size < 1 ? 100 : size, auth, digest);
+	}
+	
+	/**
+	 * Load comments and their replies in a single query.<br/>
+	 * The selected comments (limited by the given conditions and maximum number) are followed by their replies,
+	 * so each reply is attached to its comment while reading the rows.
+	 */
+	public Mono<List<PublicTrailFeedback>> fetchFeedbacks(String trailUuid, BiConsumer<StringBuilder, MutableBindings> addWhere, Integer limit, Authentication auth) {
+		return fetchFeedbacks(trailUuid, addWhere, limit, auth, null);
 	}
 	
-	public Mono<List<PublicTrailFeedback>> fetchFeedbacks(String trailUuid, BiConsumer<StringBuilder, MutableBindings> addWhereAndPaging, Authentication auth) {
+	/** If a digest is given, it is updated with the values of each row, in the order they are read. */
+	private Mono<List<PublicTrailFeedback>> fetchFeedbacks(
+		String trailUuid, BiConsumer<StringBuilder, MutableBindings> addWhere, Integer limit, Authentication auth, MessageDigest digest
+	) {
 		String youEmail = auth == null ? "" : TrailenceUtils.email(auth);
 		
-		var dialect = DialectResolver.getDialect(r2dbc.getDatabaseClient().getConnectionFactory());
-		MutableBindings bindings = new MutableBindings(dialect.getBindMarkersFactory().create());
+		MutableBindings bindings = DbUtils.newBindings(r2dbc);
 		var markerTrailUuid = bindings.bind(UUID.fromString(trailUuid));
-
-		String avatarCondition;
-		if (youEmail.isEmpty()) avatarCondition = "";
-		else {
-			var marker = bindings.bind(youEmail);
-			avatarCondition = "public_trail_feedback.email <> " + marker.getPlaceholder() + " AND ";
-		}
 		
 		var sql = new StringBuilder(2048)
-		.append("SELECT ")
-		.append("public_trail_feedback.uuid")
-		.append(",public_trail_feedback.date")
-		.append(",public_trail_feedback.rate")
-		.append(",public_trail_feedback.comment")
-		.append(",public_trail_feedback.reviewed")
+		.append("WITH page AS (SELECT uuid, date, rate, comment, reviewed, email FROM public_trail_feedback")
+		.append(" WHERE public_trail_feedback.public_trail_uuid = ").append(markerTrailUuid.getPlaceholder());
+		addWhere.accept(sql, bindings);
+		sql.append(" ORDER BY public_trail_feedback.date DESC, public_trail_feedback.uuid DESC");
+		if (limit != null) sql.append(" LIMIT ").append(limit.intValue());
+		sql.append("), items AS (")
+		.append("SELECT NULL::uuid AS reply_to, uuid, date, rate, comment, reviewed, email FROM page")
+		.append(" UNION ALL")
+		.append(" SELECT reply.reply_to, reply.uuid, reply.date, NULL, reply.comment, reply.reviewed, reply.email")
+		.append(" FROM public_trail_feedback_reply reply WHERE reply.reply_to IN (SELECT uuid FROM page)")
+		.append(") SELECT items.reply_to, items.uuid, items.date, items.rate, items.comment, items.reviewed, items.email")
 		.append(",user_preferences.alias")
 		.append(",user_avatar.public_uuid AS avatar_uuid")
-		.append(",public_trail_feedback.email")
-		.append(" FROM public_trail_feedback")
-		.append(" LEFT JOIN user_preferences ON user_preferences.email = public_trail_feedback.email")
-		.append(" LEFT JOIN user_avatar ON ").append(avatarCondition).append("user_avatar.email = public_trail_feedback.email AND user_avatar.current_file_id IS NOT NULL AND user_avatar.current_public = true")
-		.append(" WHERE public_trail_feedback.public_trail_uuid = ").append(markerTrailUuid.getPlaceholder());
-		addWhereAndPaging.accept(sql, bindings);
-		return r2dbc.query(DbUtils.operation(sql.toString(), bindings), row -> new PublicTrailFeedback(
-			row.get("uuid", UUID.class).toString(),
-			trailUuid,
-			row.get("alias", String.class),
-			optionalUuidToString(row.get("avatar_uuid", UUID.class)),
-			youEmail.equals(row.get("email", String.class)),
-			row.get("date", Long.class),
-			row.get("rate", Integer.class),
-			row.get("comment", String.class),
-			row.get("reviewed", Boolean.class),
-			new LinkedList<>()
-		)).all().collectList()
-		.flatMap(feedbacks -> {
-			if (feedbacks.isEmpty()) return Mono.just(feedbacks);
-			MutableBindings bindings2 = null;
-			String avatarCondition2;
-			if (youEmail.isEmpty()) avatarCondition2 = "";
-			else {
-				bindings2 = new MutableBindings(dialect.getBindMarkersFactory().create());
-				var marker = bindings2.bind(youEmail);
-				avatarCondition2 = "public_trail_feedback_reply.email <> " + marker.getPlaceholder() + " AND ";
-			}
-			
-			var sqlReplies = new StringBuilder(1024)
-			.append("SELECT ")
-			.append("public_trail_feedback_reply.reply_to")
-			.append(",public_trail_feedback_reply.uuid")
-			.append(",user_preferences.alias")
-			.append(",user_avatar.public_uuid AS avatar_uuid")
-			.append(",public_trail_feedback_reply.date")
-			.append(",public_trail_feedback_reply.comment")
-			.append(",public_trail_feedback_reply.email")
-			.append(",public_trail_feedback_reply.reviewed")
-			.append(" FROM public_trail_feedback_reply")
-			.append(" LEFT JOIN user_preferences ON user_preferences.email = public_trail_feedback_reply.email")
-			.append(" LEFT JOIN user_avatar ON ").append(avatarCondition2).append("user_avatar.email = public_trail_feedback_reply.email AND user_avatar.current_file_id IS NOT NULL AND user_avatar.current_public = true")
-			.append(" WHERE public_trail_feedback_reply.reply_to IN (")
-				.append(String.join(",", feedbacks.stream().map(f -> "'" + f.getUuid() + "'").collect(Collectors.toSet())))
-			.append(") ORDER BY public_trail_feedback_reply.date DESC").toString();
-			return r2dbc.query(DbUtils.operation(sqlReplies, bindings2), row -> new TmpReply(
-				row.get("reply_to", UUID.class).toString(),
-				row.get("uuid", UUID.class).toString(),
-				row.get("alias", String.class),
-				optionalUuidToString(row.get("avatar_uuid", UUID.class)),
-				youEmail.equals(row.get("email", String.class)),
-				row.get("date", Long.class),
-				row.get("comment", String.class),
-				row.get("reviewed", Boolean.class)
-			)).all().collectList()
-			.map(replies -> {
-				for (var reply : replies) {
-					var feedbackOpt = feedbacks.stream().filter(f -> f.getUuid().equals(reply.getCommentUuid())).findAny();
-					if (feedbackOpt.isPresent())
-						feedbackOpt.get().getReplies().add(new Reply(reply.getUuid(), reply.getAlias(), reply.getAvatarUuid(), reply.isYou(), reply.getDate(), reply.getComment(), reply.isReviewed()));
+		.append(" FROM items")
+		.append(" LEFT JOIN user_preferences ON user_preferences.email = items.email")
+		.append(" LEFT JOIN user_avatar ON ");
+		if (!youEmail.isEmpty()) sql.append("items.email <> ").append(bindings.bind(youEmail).getPlaceholder()).append(" AND ");
+		sql.append("user_avatar.email = items.email AND user_avatar.current_file_id IS NOT NULL AND user_avatar.current_public = true")
+		.append(" ORDER BY items.reply_to IS NOT NULL, items.date DESC, items.uuid DESC");
+		
+		return Mono.defer(() -> {
+			Map<String, PublicTrailFeedback> feedbacks = new LinkedHashMap<>();
+			return r2dbc.query(DbUtils.operation(sql.toString(), bindings), row -> {
+				UUID replyTo = row.get("reply_to", UUID.class);
+				String uuid = row.get("uuid", UUID.class).toString();
+				String alias = row.get("alias", String.class);
+				String avatarUuid = optionalUuidToString(row.get("avatar_uuid", UUID.class));
+				boolean you = youEmail.equals(row.get("email", String.class));
+				long date = row.get("date", Long.class);
+				String comment = row.get("comment", String.class);
+				boolean reviewed = Boolean.TRUE.equals(row.get("reviewed", Boolean.class));
+				Integer rate = replyTo == null ? row.get("rate", Integer.class) : null;
+				if (digest != null)
+					digest.update((replyTo + "|" + uuid + "|" + alias + "|" + avatarUuid + "|" + you + "|" + date + "|" + rate + "|" + reviewed + "|" + comment + "\n").getBytes(StandardCharsets.UTF_8));
+				if (replyTo == null) {
+					feedbacks.put(uuid, new PublicTrailFeedback(
+						uuid, trailUuid, alias, avatarUuid, you, date, rate, comment, reviewed, new LinkedList<>()
+					));
+				} else {
+					var feedback = feedbacks.get(replyTo.toString());
+					if (feedback != null) feedback.getReplies().add(new Reply(uuid, alias, avatarUuid, you, date, comment, reviewed));
 				}
-				return feedbacks;
-			});
+				return uuid;
+			}).all()
+			.then(Mono.fromSupplier(() -> new ArrayList<>(feedbacks.values())));
 		});
 	}
 	
@@ -321,19 +337,6 @@ public class FeedbackService {
 		return uuid == null ? null : uuid.toString();
 	}
 	
-	@Data
-	@NoArgsConstructor
-	@AllArgsConstructor
-	public static class TmpReply {
-		private String commentUuid;
-		private String uuid;
-		private String alias;
-		private String avatarUuid;
-		private boolean you;
-		private long date;
-		private String comment;
-		private boolean reviewed;
-	}
 	
 	@Transactional
 	public Mono<Void> deleteComment(String feedbackUuid, Authentication auth) {
@@ -369,12 +372,13 @@ public class FeedbackService {
 	}
 	
 	Mono<Void> publicTrailDeleted(UUID trailUuid) {
-		return feedbackRepo.findAllByPublicTrailUuid(trailUuid)
-		.flatMap(comment ->
-			feedbackReplyRepo.deleteAllByReplyTo(comment.getUuid())
-			.then(feedbackRepo.delete(comment))
-			.then(userCommunityService.removeComment(comment.getEmail(), comment.getComment() != null, comment.getRate() != null))
-		, 1, 1).then();
+		return userCommunityService.removeCommentsOfTrail(trailUuid)
+		.then(
+			r2dbc.getDatabaseClient().sql("DELETE FROM public_trail_feedback_reply WHERE reply_to IN (SELECT uuid FROM public_trail_feedback WHERE public_trail_uuid = $1)")
+			.bind(0, trailUuid).then()
+		)
+		.then(r2dbc.getDatabaseClient().sql("DELETE FROM public_trail_feedback WHERE public_trail_uuid = $1").bind(0, trailUuid).then())
+		.then(ratingRepo.deleteById(trailUuid));
 	}
 	
 }
@@ -208,11 +208,10 @@ public class ModerationService {
 			return publicTrailRepo.getTrailsNameAndDescription(trailsUuids)
 			.flatMap(trail -> {
 				FeedbackToReview result = new FeedbackToReview(trail.getUuid().toString(), trail.getName(), trail.getDescription(), new LinkedList<>());
-				return feedbackService.fetchFeedbacks(trail.getUuid().toString(), (sql, _) -> 
-					sql.append(" AND public_trail_feedback.uuid IN (")
-					.append(String.join(",",feedbackUuids.stream().filter(f -> f.getPublicTrailUuid().equals(trail.getUuid())).map(u -> "'" + u.getUuid() + "'").toList()))
-					.append(')')
-				, auth)
+				UUID[] uuids = feedbackUuids.stream().filter(f -> f.getPublicTrailUuid().equals(trail.getUuid())).map(UuidAndTrailUuid::getUuid).toArray(UUID[]::new);
+				return feedbackService.fetchFeedbacks(trail.getUuid().toString(), (sql, bindings) -> 
+					sql.append(" AND public_trail_feedback.uuid = ANY(").append(bindings.bind(uuids).getPlaceholder()).append(')')
+				, null, auth)
 				.map(feedbacks -> {
 					result.getFeedbacks().addAll(feedbacks);
 					return result;
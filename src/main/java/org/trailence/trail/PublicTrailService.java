@@ -3,6 +3,7 @@ package org.trailence.trail;
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -20,30 +21,26 @@ import org.springframework.data.domain.Sort.Order;
 import org.springframework.data.geo.Box;
 import org.springframework.data.geo.Point;
 import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
-import org.springframework.data.r2dbc.dialect.DialectResolver;
-import org.springframework.data.relational.core.sql.CaseExpression;
 import org.springframework.data.relational.core.sql.Column;
 import org.springframework.data.relational.core.sql.Condition;
 import org.springframework.data.relational.core.sql.Conditions;
 import org.springframework.data.relational.core.sql.Expression;
 import org.springframework.data.relational.core.sql.Expressions;
 import org.springframework.data.relational.core.sql.SQL;
-import org.springframework.data.relational.core.sql.When;
 import org.springframework.r2dbc.core.binding.MutableBindings;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.trailence.global.TrailenceUtils;
 import org.trailence.global.db.DbUtils;
-import org.trailence.global.db.DivideFloatExpression;
 import org.trailence.global.db.MinusExpression;
-import org.trailence.global.db.MultiplyExpression;
-import org.trailence.global.db.PlusExpression;
 import org.trailence.global.db.SqlBuilder;
 import org.trailence.global.exceptions.BadRequestException;
 import org.trailence.global.exceptions.ForbiddenException;
 import org.trailence.global.exceptions.NotFoundException;
 import org.trailence.global.exceptions.ValidationUtils;
+import org.trailence.global.rest.CompressedPayload;
+import org.trailence.global.rest.Validated;
 import org.trailence.notifications.NotificationsService;
 import org.trailence.preferences.UserCommunityService;
 import org.trailence.preferences.dto.UserCommunity;
@@ -55,7 +52,11 @@ import org.trailence.trail.db.PublicPhotoEntity;
 import org.trailence.trail.db.PublicPhotoRepository;
 import org.trailence.trail.db.PublicTrackEntity;
 import org.trailence.trail.db.PublicTrackRepository;
+import org.trailence.trail.db.PublicTrackTierEntity;
+import org.trailence.trail.db.PublicTrackTierRepository;
 import org.trailence.trail.db.PublicTrailEntity;
+import org.trailence.trail.db.PublicTrailRatingEntity;
+import org.trailence.trail.db.PublicTrailRatingRepository;
 import org.trailence.trail.db.PublicTrailRepository;
 import org.trailence.trail.db.PublicTrailRepository.SlugAndDate;
 import org.trailence.trail.db.TrailRepository;
@@ -63,6 +64,8 @@ import org.trailence.trail.dto.CreatePublicTrailRequest;
 import org.trailence.trail.dto.MyPublicTrail;
 import org.trailence.trail.dto.PatchPublicTrailRequest;
 import org.trailence.trail.dto.PublicTrack;
+import org.trailence.trail.dto.TrackDetail;
+import org.trailence.trail.dto.TrackStats;
 import org.trailence.trail.dto.PublicTrail;
 import org.trailence.trail.dto.PublicTrailSearch;
 import org.trailence.trail.dto.PublicTrailSearch.Filters;
@@ -83,6 +86,7 @@ import reactor.util.function.Tuple2;
 import reactor.util.function.Tuple3;
 import reactor.util.function.Tuples;
 import tools.jackson.core.type.TypeReference;
+import tools.jackson.databind.json.JsonMapper;
 
 @Service
 @RequiredArgsConstructor
@@ -92,6 +96,8 @@ public class PublicTrailService {
 	private final PublicTrailRepository publicTrailRepo;
 	private final PublicPhotoRepository publicPhotoRepo;
 	private final PublicTrackRepository publicTrackRepo;
+	private final PublicTrackTierRepository publicTrackTierRepo;
+	private final PublicTrailRatingRepository ratingRepo;
 	private final TrailRepository trailRepo;
 	private final R2dbcEntityTemplate r2dbc;
 	private final PhotoService photoService;
@@ -101,6 +107,7 @@ public class PublicTrailService {
 	private final ModerationMessageRepository messageRepo;
 	private final FeedbackService feedbackService;
 	private final UserCommunityService userCommunityService;
+	private final JsonMapper jsonMapper;
 	
 	private static final Map<String, String> TEXT_SEARCH_LANGS = Map.of("fr", "french", "en", "english");
 	
@@ -114,6 +121,8 @@ public class PublicTrailService {
 		else newData = publicTrailRepo.findFirst1ByAuthorAndAuthorUuid(author, UUID.fromString(authorUuid))
 			.flatMap(existing -> 
 				publicTrackRepo.deleteById(existing.getUuid())
+				.then(publicTrackTierRepo.deleteAllByTrailUuid(existing.getUuid()))
+				.then(deleteTrackPayloads(existing.getUuid()))
 				.then(publicPhotoRepo.deleteAllByTrailUuid(existing.getUuid()))
 				.then(publicTrailRepo.deleteById(existing.getUuid()))
 				.then(userCommunityService.removePublication(author))
@@ -126,6 +135,7 @@ public class PublicTrailService {
 			.switchIfEmpty(Mono.error(new TrailNotFound(request.getTrailUuid(), author)))
 			.flatMap(fromTrail ->
 				r2dbc.insert(toTrackEntity(tuple.getT1(), request))
+				.thenMany(Flux.fromIterable(toTrackTiers(tuple.getT1(), request)).concatMap(r2dbc::insert))
 				.then(Flux.fromIterable(request.getPhotos()).flatMap(p -> photoService.transferToPublic(UUID.fromString(p.getUuid()), author, tuple.getT1(), p), 1, 1).then())
 				.then(r2dbc.insert(toTrailEntity(tuple.getT1(), tuple.getT2(), tuple.getT3().orElse(null), request)).flatMap(this::updateTextSearch))
 				.then(trailService.delete(Flux.just(fromTrail), author))
@@ -223,12 +233,6 @@ public class PublicTrailService {
 			request.getTile128ByZoom().get(8),
 			request.getTile128ByZoom().get(9),
 			request.getSimplifiedPath().stream().map(v -> (int) Math.floor(v * 1000000)).toArray(size -> new Integer[size]),
-			existing != null ? existing.getNbRate0() : 0L,
-			existing != null ? existing.getNbRate1() : 0L,
-			existing != null ? existing.getNbRate2() : 0L,
-			existing != null ? existing.getNbRate3() : 0L,
-			existing != null ? existing.getNbRate4() : 0L,
-			existing != null ? existing.getNbRate5() : 0L,
 			request.getLang(),
 			nameTranslations,
 			descriptionTranslations,
@@ -237,8 +241,7 @@ public class PublicTrailService {
 	}
 	
 	private Mono<Void> updateTextSearch(PublicTrailEntity entity) {
-		var dialect = DialectResolver.getDialect(r2dbc.getDatabaseClient().getConnectionFactory());
-		MutableBindings bindings = new MutableBindings(dialect.getBindMarkersFactory().create());
+		MutableBindings bindings = DbUtils.newBindings(r2dbc);
 		
 		Map<String, String> nameTranslations = new HashMap<>();
 		try {
@@ -274,23 +277,36 @@ public class PublicTrailService {
 	
 	private static PublicTrackEntity toTrackEntity(UUID uuid, CreatePublicTrailRequest request) {
 		try {
+			StoredData data = new StoredData(request.getFullTrack(), request.getWayPoints());
 			return new PublicTrackEntity(
 				uuid,
-				TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(request.getFullTrack(), request.getWayPoints()))
+				TrackStorage.V1V2Bridge.v1DtoToV2(data),
+				TrackStatsCalculator.toJson(TrackStatsCalculator.compute(data))
 			);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
 	
+	private static List<PublicTrackTierEntity> toTrackTiers(UUID uuid, CreatePublicTrailRequest request) {
+		StoredData data = new StoredData(request.getFullTrack(), request.getWayPoints());
+		List<PublicTrackTierEntity> tiers = new ArrayList<>(TrackDetail.TIERS.length);
+		try {
+			for (var detail : TrackDetail.TIERS)
+				tiers.add(new PublicTrackTierEntity(uuid, (short) detail.getTier(), TrackSimplifier.encodeTier(data, detail)));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return tiers;
+	}
+	
 	public Mono<SearchByTileResponse> searchByTiles(SearchByTileRequest request) {
 		if (request.getZoom() < 1 || request.getZoom() > 10) return Mono.error(new BadRequestException("invalid-zoom", "Invalid zoom level"));
 		if (request.getTiles().size() > 1000) return Mono.error(new BadRequestException("too-many-tiles", "Maximum 1000 tiles by request"));
 
 		Column zoomColumn = Column.create("tile_zoom" + request.getZoom(), PublicTrailEntity.TABLE);
 		
-		var dialect = DialectResolver.getDialect(r2dbc.getDatabaseClient().getConnectionFactory());
-		MutableBindings bindings = new MutableBindings(dialect.getBindMarkersFactory().create()); 
+		MutableBindings bindings = DbUtils.newBindings(r2dbc);
 		Condition where = getConditionOnTilesAndFilters(zoomColumn, request.getTiles(), request.getFilters(), bindings);
 		
 		String sql = new SqlBuilder()
@@ -326,8 +342,7 @@ public class PublicTrailService {
 	}
 	
 	private Mono<List<String>> getUuidsFromTilesSearch(Column zoomColumn, List<Integer> tiles, Filters filters) {
-		var dialect = DialectResolver.getDialect(r2dbc.getDatabaseClient().getConnectionFactory());
-		MutableBindings bindings = new MutableBindings(dialect.getBindMarkersFactory().create()); 
+		MutableBindings bindings = DbUtils.newBindings(r2dbc);
 		String sql = new SqlBuilder()
 		.select(PublicTrailEntity.COL_UUID)
 		.from(PublicTrailEntity.TABLE)
@@ -377,57 +392,19 @@ public class PublicTrailService {
 		return where;
 	}
 	
+	/**
+	 * The average rate is maintained in the ratings table, so the filter is a sub-query using the index on the average.
+	 * Trails without rate are excluded when a minimum is given, and included when only a maximum is given.
+	 */
 	private Condition applyFilterRate(Condition where, PublicTrailSearch.FilterNumeric filter) {
 		if (filter == null) return where;
 		if (filter.getFrom() == null && filter.getTo() == null) return where;
-		Expression ratesCount = new PlusExpression(
-			PublicTrailEntity.COL_NB_RATE0,
-			new PlusExpression(
-				PublicTrailEntity.COL_NB_RATE1,
-				new PlusExpression(
-					PublicTrailEntity.COL_NB_RATE2,
-					new PlusExpression(
-						PublicTrailEntity.COL_NB_RATE3,
-						new PlusExpression(
-							PublicTrailEntity.COL_NB_RATE4,
-							PublicTrailEntity.COL_NB_RATE5
-						)
-					)
-				)
-			)
-		);
-		Expression ratesTotal = new PlusExpression(
-			PublicTrailEntity.COL_NB_RATE1,
-			new PlusExpression(
-				new MultiplyExpression(PublicTrailEntity.COL_NB_RATE2, SQL.literalOf(2)),
-				new PlusExpression(
-					new MultiplyExpression(PublicTrailEntity.COL_NB_RATE3, SQL.literalOf(3)),
-					new PlusExpression(
-						new MultiplyExpression(PublicTrailEntity.COL_NB_RATE4, SQL.literalOf(4)),
-						new MultiplyExpression(PublicTrailEntity.COL_NB_RATE5, SQL.literalOf(5))
-					)
-				)
-			)
-		);
-		Expression rateValue = new DivideFloatExpression(ratesTotal, ratesCount);
 		if (filter.getFrom() != null) {
-			where = where.and(Conditions.isGreater(ratesCount, SQL.literalOf(0)));
-			where = where.and(Conditions.isGreaterOrEqualTo(rateValue, SQL.literalOf(filter.getFrom())));
-			if (filter.getTo() != null) {
-				where = where.and(Conditions.isLessOrEqualTo(rateValue, SQL.literalOf(filter.getTo())));
-			}
-		} else {
-			where = where.and(
-				Conditions.isEqual(
-					CaseExpression.create(
-						When.when(Conditions.isEqual(ratesCount, SQL.literalOf(0)), SQL.literalOf(true))
-					)
-					.elseExpression(Conditions.isLessOrEqualTo(rateValue, SQL.literalOf(filter.getTo()))),
-					SQL.literalOf(true)
-				)
-			);
+			String rateCondition = "average >= " + filter.getFrom().doubleValue();
+			if (filter.getTo() != null) rateCondition += " AND average <= " + filter.getTo().doubleValue();
+			return where.and(Conditions.just("uuid IN (SELECT trail_uuid FROM public_trail_ratings WHERE " + rateCondition + ")"));
 		}
-		return where;
+		return where.and(Conditions.just("uuid NOT IN (SELECT trail_uuid FROM public_trail_ratings WHERE average > " + filter.getTo().doubleValue() + ")"));
 	}
 	
 	public Mono<SearchByBoundsResponse> searchByBounds(SearchByBoundsRequest request) {
@@ -465,12 +442,16 @@ public class PublicTrailService {
 	}
 	
 	public Mono<PublicTrail> getById(String uuid, Authentication auth) {
+		return getValidatedById(uuid, auth).flatMap(Validated::body);
+	}
+	
+	public Mono<Validated<PublicTrail>> getValidatedById(String uuid, Authentication auth) {
 		return publicTrailRepo.findById(UUID.fromString(uuid))
 		.switchIfEmpty(Mono.error(new PublicTrailNotFound(uuid)))
 		.flatMap(trail -> toDto(trail, auth));
 	}
 	
-	public Mono<PublicTrail> getBySlug(String slug, Authentication auth) {
+	public Mono<Validated<PublicTrail>> getValidatedBySlug(String slug, Authentication auth) {
 		return publicTrailRepo.findOneBySlug(slug)
 		.switchIfEmpty(Mono.defer(() -> {
 			String slug2 = URLEncoder.encode(slug, StandardCharsets.UTF_8);
@@ -488,27 +469,47 @@ public class PublicTrailService {
 		.flatMap(trails -> toDtos(trails, auth));
 	}
 
-	private Mono<PublicTrail> toDto(PublicTrailEntity entity, Authentication auth) {
+	/**
+	 * The entity tag is derived from the versions of the rows the trail is built from: the trail itself (its photos
+	 * only change when it is published again), its ratings, and the community data of its author.
+	 */
+	private Mono<Validated<PublicTrail>> toDto(PublicTrailEntity entity, Authentication auth) {
 		return publicPhotoRepo.findAllByTrailUuid(entity.getUuid()).collectList()
 		.flatMap(photos ->
-			userCommunityService.getUserCommunity(entity.getAuthor())
-			.map(userCommunity -> this.toPublicTrailDto(entity, photos.stream(), userCommunity, auth))
+			ratingRepo.findById(entity.getUuid()).switchIfEmpty(Mono.fromSupplier(PublicTrailRatingEntity::new))
+			.flatMap(rating ->
+				userCommunityService.getUserCommunity(entity.getAuthor())
+				.map(userCommunity -> new Validated<>(
+					Validated.digest(
+						entity.getUuid(), entity.getUpdatedAt(), photos.size(),
+						rating.getNbRate0(), rating.getNbRate1(), rating.getNbRate2(), rating.getNbRate3(), rating.getNbRate4(), rating.getNbRate5(),
+						userCommunity,
+						auth == null ? null : auth.getPrincipal().toString().equals(entity.getAuthor())
+					),
+					Mono.fromSupplier(() -> this.toPublicTrailDto(entity, photos.stream(), rating, userCommunity, auth))
+				))
+			)
 		);
 	}
 	
 	private Mono<List<PublicTrail>> toDtos(List<PublicTrailEntity> trails, Authentication auth) {
-		return publicPhotoRepo.findAllByTrailUuidIn(trails.stream().map(PublicTrailEntity::getUuid).toList()).collectList()
+		List<UUID> uuids = trails.stream().map(PublicTrailEntity::getUuid).toList();
+		return publicPhotoRepo.findAllByTrailUuidIn(uuids).collectList()
 		.flatMap(photos ->
-			userCommunityService.getUsersCommunity(trails.stream().map(t -> t.getAuthor()).toList()).collectList()
-			.map(usersCommunity ->
-				trails.stream()
-				.map(trail -> this.toPublicTrailDto(
-					trail,
-					photos.stream().filter(p -> p.getTrailUuid().equals(trail.getUuid())),
-					usersCommunity.stream().filter(a -> a.getEmail().equals(trail.getAuthor())).findAny().orElse(new UserCommunity()),
-					auth
-				))
-				.toList()
+			ratingRepo.findAllById(uuids).collectMap(PublicTrailRatingEntity::getTrailUuid)
+			.flatMap(ratings ->
+				userCommunityService.getUsersCommunity(trails.stream().map(t -> t.getAuthor()).toList()).collectList()
+				.map(usersCommunity ->
+					trails.stream()
+					.map(trail -> this.toPublicTrailDto(
+						trail,
+						photos.stream().filter(p -> p.getTrailUuid().equals(trail.getUuid())),
+						ratings.getOrDefault(trail.getUuid(), new PublicTrailRatingEntity()),
+						usersCommunity.stream().filter(a -> a.getEmail().equals(trail.getAuthor())).findAny().orElse(new UserCommunity()),
+						auth
+					))
+					.toList()
+				)
 			)
 		);
 	}
@@ -528,7 +529,7 @@ public class PublicTrailService {
 		.switchIfEmpty(Mono.defer(() -> Mono.just(new UserTrails(List.of(), null, null, null, null, null))));
 	}
 	
-	private PublicTrail toPublicTrailDto(PublicTrailEntity entity, Stream<PublicPhotoEntity> photos, UserCommunity authorCommunity, Authentication auth) {
+	private PublicTrail toPublicTrailDto(PublicTrailEntity entity, Stream<PublicPhotoEntity> photos, PublicTrailRatingEntity rating, UserCommunity authorCommunity, Authentication auth) {
 		Map<String, String> nameTranslations = new HashMap<>();
 		Map<String, String> descriptionTranslations = new HashMap<>();
 		try {
@@ -572,12 +573,12 @@ public class PublicTrailService {
 			entity.getBounds().getSecond().getY(),
 			entity.getBounds().getFirst().getX(),
 			entity.getBounds().getSecond().getX(),
-			entity.getNbRate0(),
-			entity.getNbRate1(),
-			entity.getNbRate2(),
-			entity.getNbRate3(),
-			entity.getNbRate4(),
-			entity.getNbRate5(),
+			rating.getNbRate0(),
+			rating.getNbRate1(),
+			rating.getNbRate2(),
+			rating.getNbRate3(),
+			rating.getNbRate4(),
+			rating.getNbRate5(),
 			Arrays.stream(entity.getSimplifiedPath()).map(i -> i.doubleValue() / 1000000).toList(),
 			photos.map(pe -> new PublicTrail.Photo(
 				pe.getUuid().toString(),
@@ -594,26 +595,110 @@ public class PublicTrailService {
 		);
 	}
 	
-	public Mono<Flux<DataBuffer>> getPhotoFileContent(String trailUuid, String photoUuid) {
+	/** A public photo is immutable, its content only changes with its file. */
+	public Mono<Validated<Flux<DataBuffer>>> getPhotoFileContent(String trailUuid, String photoUuid) {
 		return publicPhotoRepo.findById(UUID.fromString(photoUuid))
 		.filter(p -> p.getTrailUuid().toString().equals(trailUuid))
 		.switchIfEmpty(Mono.error(new NotFoundException("photo", trailUuid + "/" + photoUuid)))
-		.flatMap(photo -> Mono.just(fileService.getFileContent(photo.getFileId())));
+		.map(photo -> new Validated<>(
+			Validated.digest(photo.getUuid(), photo.getFileId()),
+			Mono.fromSupplier(() -> fileService.getFileContent(photo.getFileId()))
+		));
 	}
 	
-	public Mono<PublicTrack> getTrack(String trailUuid) {
-		return publicTrackRepo.findById(UUID.fromString(trailUuid))
+	public Mono<PublicTrack> getTrack(String trailUuid, TrackDetail detail) {
+		UUID uuid = UUID.fromString(trailUuid);
+		Mono<byte[]> full = publicTrackRepo.findById(uuid).map(PublicTrackEntity::getData);
+		Mono<byte[]> data;
+		if (detail == null || TrackDetail.FULL.equals(detail)) data = full;
+		else data = publicTrackTierRepo.findOneByTrailUuidAndTier(uuid, (short) detail.getTier())
+			.map(PublicTrackTierEntity::getData)
+			.switchIfEmpty(full.map(bytes -> {
+				try {
+					return TrackSimplifier.encodeTier(TrackStorage.V1V2Bridge.v2ToV1Dto(bytes), detail);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}));
+		return data
 		.switchIfEmpty(Mono.error(new NotFoundException("track", trailUuid)))
-		.map(track -> {
+		.map(bytes -> {
 			try {
-				return TrackStorage.V1V2Bridge.v2ToV1Dto(track.getData());
+				return TrackStorage.V1V2Bridge.v2ToV1Dto(bytes);
 			} catch (IOException e) {
 				throw new RuntimeException(e);
 			}
 		})
-		.map(data -> new PublicTrack(data.s, data.wp));
+		.map(d -> new PublicTrack(d.s, d.wp));
+	}
+	
+	/**
+	 * Returns the JSON of the public track, compressed.<br/>
+	 * A public track is immutable until it is published again, so it is serialized and compressed on the first request,
+	 * then stored.
+	 */
+	public Mono<CompressedPayload> getTrackPayload(String trailUuid, TrackDetail detail) {
+		UUID uuid = UUID.fromString(trailUuid);
+		short tier = (short) (detail == null ? TrackDetail.FULL : detail).getTier();
+		return r2dbc.getDatabaseClient()
+		.sql("SELECT gzip, size, digest FROM public_track_payloads WHERE trail_uuid = $1 AND tier = $2")
+		.bind(0, uuid).bind(1, tier)
+		.map((row, _) -> new CompressedPayload(row.get("gzip", byte[].class), row.get("size", Integer.class), row.get("digest", String.class)))
+		.first()
+		.switchIfEmpty(Mono.defer(() ->
+			getTrack(trailUuid, detail)
+			.map(track -> CompressedPayload.compress(jsonMapper.writeValueAsBytes(track)))
+			.flatMap(payload ->
+				r2dbc.getDatabaseClient()
+				.sql("INSERT INTO public_track_payloads (trail_uuid, tier, gzip, size, digest) VALUES ($1, $2, $3, $4, $5) ON CONFLICT DO NOTHING")
+				.bind(0, uuid).bind(1, tier).bind(2, payload.gzip()).bind(3, payload.size()).bind(4, payload.digest())
+				.fetch().rowsUpdated()
+				.thenReturn(payload)
+			)
+		));
+	}
+	
+	/** Returns the digest of the stored track payload, storing it first if needed. */
+	public Mono<String> getTrackDigest(String trailUuid, TrackDetail detail) {
+		UUID uuid = UUID.fromString(trailUuid);
+		short tier = (short) (detail == null ? TrackDetail.FULL : detail).getTier();
+		return r2dbc.getDatabaseClient()
+		.sql("SELECT digest FROM public_track_payloads WHERE trail_uuid = $1 AND tier = $2")
+		.bind(0, uuid).bind(1, tier)
+		.map((row, _) -> row.get("digest", String.class))
+		.first()
+		.switchIfEmpty(Mono.defer(() -> getTrackPayload(trailUuid, detail).map(CompressedPayload::digest)));
+	}
+	
+	private Mono<Long> deleteTrackPayloads(UUID trailUuid) {
+		return r2dbc.getDatabaseClient()
+		.sql("DELETE FROM public_track_payloads WHERE trail_uuid = $1")
+		.bind(0, trailUuid)
+		.fetch().rowsUpdated();
 	}
 	
+	public Mono<TrackStats> getTrackStats(String trailUuid) {
+		UUID uuid = UUID.fromString(trailUuid);
+		// data is only loaded if the statistics were not yet computed
+		return r2dbc.getDatabaseClient()
+		.sql("SELECT stats, CASE WHEN stats IS NULL THEN data END AS data FROM public_tracks WHERE trail_uuid = $1")
+		.bind(0, uuid)
+		.map((row, _) -> Tuples.of(Optional.ofNullable(row.get("stats", Json.class)), Optional.ofNullable(row.get("data", byte[].class))))
+		.first()
+		.switchIfEmpty(Mono.error(new NotFoundException("track", trailUuid)))
+		.flatMap(row -> {
+			if (row.getT1().isPresent()) return Mono.just(TrackStatsCalculator.fromJson(row.getT1().get()));
+			return Mono.fromCallable(() -> TrackStatsCalculator.compute(TrackStorage.V1V2Bridge.v2ToV1Dto(row.getT2().orElseThrow())))
+			.flatMap(stats ->
+				r2dbc.getDatabaseClient().sql("UPDATE public_tracks SET stats = $1 WHERE trail_uuid = $2")
+				.bind(0, TrackStatsCalculator.toJson(stats)).bind(1, uuid)
+				.fetch().rowsUpdated()
+				.thenReturn(stats)
+			);
+		});
+	}
+	
+	@Transactional
 	public Mono<Void> deletePublicTrailAsModerator(String uuid) {
 		UUID trailUuid = UUID.fromString(uuid);
 		return publicTrailRepo.findById(trailUuid)
@@ -621,6 +706,8 @@ public class PublicTrailService {
 		.flatMap(trail ->
 			publicTrailRepo.delete(trail)
 			.then(publicTrackRepo.deleteByTrailUuid(trailUuid))
+			.then(publicTrackTierRepo.deleteAllByTrailUuid(trailUuid))
+			.then(deleteTrackPayloads(trailUuid))
 			.then(
 				publicPhotoRepo.findAllByTrailUuid(trailUuid)
 				.flatMap(photo ->
@@ -642,6 +729,8 @@ public class PublicTrailService {
 		.switchIfEmpty(Mono.error(new TrailNotFound(uuid, "trailence")))
 		.flatMap(trail -> {
 			if (request.getLoopType() != null) trail.setLoopType(request.getLoopType());
+			// the entity tag of the trail is derived from updatedAt
+			trail.setUpdatedAt(System.currentTimeMillis());
 			return publicTrailRepo.save(trail);
 		})
 		.flatMap(_ -> this.getById(uuid, auth))
@@ -1,11 +1,17 @@
 package org.trailence.trail;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang3.time.DateFormatUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.trailence.global.TrailenceUtils;
+import org.trailence.global.rest.CompressedPayload;
 
 import lombok.RequiredArgsConstructor;
 import reactor.core.publisher.Flux;
@@ -39,6 +45,34 @@ public class SiteMapService {
 	
 	private static final int MAX_TRAILS_BY_SITEMAP = 1000; // around 1MB for each 1000 trails
 	
+	private static final Duration CACHE_DURATION = Duration.ofHours(1);
+	private static final int MAX_CACHED_PAGES = 1000;
+	private static final int INDEX_KEY = 0;
+	
+	/** Compressed sitemaps, generated once per hour, the index under the key 0. */
+	private final Map<Integer, Mono<CompressedPayload>> cache = new ConcurrentHashMap<>();
+	
+	public Mono<CompressedPayload> getSiteMapIndex() {
+		return cached(INDEX_KEY, this::generateSiteMapIndex);
+	}
+	
+	public Mono<CompressedPayload> getSiteMapPage(int page) {
+		return cached(page, () -> generateSiteMapPage(page));
+	}
+	
+	private Mono<CompressedPayload> cached(int key, Supplier<Flux<byte[]>> generator) {
+		if (cache.size() >= MAX_CACHED_PAGES) cache.clear();
+		return cache.computeIfAbsent(key, _ ->
+			Flux.defer(generator)
+			.reduce(new ByteArrayOutputStream(), (out, bytes) -> {
+				out.writeBytes(bytes);
+				return out;
+			})
+			.map(out -> CompressedPayload.compress(out.toByteArray()))
+			.cache(_ -> CACHE_DURATION, _ -> Duration.ZERO, () -> Duration.ZERO)
+		);
+	}
+	
 	public Flux<byte[]> generateSiteMapIndex() {
 		return Flux.concat(
 			Mono.just(XML_HEADER),
@@ -2,9 +2,11 @@ package org.trailence.trail;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
@@ -76,10 +78,11 @@ public class TagService {
 		return collectionRepo.findExistingUuidsNotPublication(collectionsUuids, owner)
 		.collectList()
 		.flatMap(existingCollections -> {
+			Set<String> existing = existingCollections.stream().map(UUID::toString).collect(Collectors.toSet());
 			Set<UUID> uuids = new HashSet<>();
 			for (var it = valid.iterator(); it.hasNext(); ) {
 				var dto = it.next();
-				if (existingCollections.stream().noneMatch(uuid -> uuid.toString().equals(dto.getCollectionUuid()))) {
+				if (!existing.contains(dto.getCollectionUuid())) {
 					errors.add(new NotFoundException("collection", dto.getCollectionUuid()));
 					it.remove();
 				} else {
@@ -96,10 +99,11 @@ public class TagService {
 			.map(known -> {
 				List<TagEntity> created = new LinkedList<>();
 				List<Tag> toCreate = new LinkedList<>();
+				Map<String, TagEntity> knownByUuid = known.stream().collect(Collectors.toMap(entity -> entity.getUuid().toString(), entity -> entity));
 				valid.forEach(dto -> {
-					var existing = known.stream().filter(entity -> entity.getUuid().toString().equals(dto.getUuid())).findAny();
-					if (existing.isPresent()) {
-						created.add(existing.get());
+					var existing = knownByUuid.get(dto.getUuid());
+					if (existing != null) {
+						created.add(existing);
 					} else {
 						toCreate.add(dto);
 					}
@@ -136,9 +140,12 @@ public class TagService {
 			return Mono.empty();
     	List<Tag> canCreate = new LinkedList<>();
     	List<Tag> remaining = new LinkedList<>();
+    	Map<String, TagEntity> known = new HashMap<>();
+    	tuple.getT1().forEach(entity -> known.put(entity.getUuid().toString(), entity));
     	tuple.getT3().forEach(dto -> {
-    		if (dto.getParentUuid() == null || tuple.getT1().stream().anyMatch(
-    				entity -> entity.getUuid().toString().equals(dto.getParentUuid()) && entity.getCollectionUuid().toString().equals(dto.getCollectionUuid())
+    		TagEntity parent;
+    		if (dto.getParentUuid() == null || (
+    			(parent = known.get(dto.getParentUuid())) != null && parent.getCollectionUuid().toString().equals(dto.getCollectionUuid())
     		))
     			canCreate.add(dto);
     		else
@@ -226,8 +233,10 @@ public class TagService {
 			if (errors.isEmpty()) return Flux.empty();
 			return Flux.error(errors.getFirst());
 		}
+		Map<String, Tag> validByUuid = new HashMap<>();
+		valid.forEach(dto -> validByUuid.putIfAbsent(dto.getUuid(), dto));
 		return repo.findAllByUuidInAndOwner(uuids, owner)
-		.flatMap(entity -> associateEntityWithDto(entity, valid), 2, 4)
+		.flatMap(entity -> associateEntityWithDto(entity, validByUuid), 2, 4)
 		.collectList()
 		.flatMapMany(tuples -> {
 			Set<UUID> newParents = new HashSet<>();
@@ -236,8 +245,8 @@ public class TagService {
 					newParents.add(UUID.fromString(tuple.getT1().getParentUuid()));
 				}
 			});
-			Mono<List<TagEntity>> getExistingParents =
-				newParents.isEmpty() ? Mono.just(Collections.<TagEntity>emptyList()) : repo.findAllByUuidInAndOwner(newParents, owner).collectList();
+			Mono<Set<UUID>> getExistingParents =
+				newParents.isEmpty() ? Mono.just(Collections.<UUID>emptySet()) : repo.findAllByUuidInAndOwner(newParents, owner).map(TagEntity::getUuid).collect(Collectors.toSet());
 			return getExistingParents.flatMapMany(existingParents ->
 				Flux.fromIterable(tuples)
 				.flatMap(tuple -> doUpdate(tuple.getT2(), tuple.getT1(), existingParents), 2, 4)
@@ -255,13 +264,13 @@ public class TagService {
 		});
 	}
 	
-	private Mono<Tuple2<Tag, TagEntity>> associateEntityWithDto(TagEntity entity, Collection<Tag> dtos) {
-		var dtoOpt = dtos.stream().filter(dto -> entity.getUuid().toString().equals(dto.getUuid())).findAny();
-		if (dtoOpt.isEmpty()) return Mono.empty();
-		return Mono.just(Tuples.of(dtoOpt.get(), entity));
+	private Mono<Tuple2<Tag, TagEntity>> associateEntityWithDto(TagEntity entity, Map<String, Tag> dtos) {
+		var dto = dtos.get(entity.getUuid().toString());
+		if (dto == null) return Mono.empty();
+		return Mono.just(Tuples.of(dto, entity));
 	}
 	
-	private Mono<Object> doUpdate(TagEntity entity, Tag dto, List<TagEntity> existingParents) {
+	private Mono<Object> doUpdate(TagEntity entity, Tag dto, Set<UUID> existingParents) {
 		if (dto.getVersion() != entity.getVersion()) return Mono.just(entity.getUuid());
 		boolean updated = false;
 		if (!entity.getName().equals(dto.getName())) {
@@ -270,7 +279,7 @@ public class TagService {
 		}
 		UUID newParent = dto.getParentUuid() != null ? UUID.fromString(dto.getParentUuid()) : null;
 		if (!Objects.equals(entity.getParentUuid(), newParent)) {
-			if (newParent != null && existingParents.stream().noneMatch(e -> e.getUuid().equals(newParent))) {
+			if (newParent != null && !existingParents.contains(newParent)) {
 				return Mono.just(new NotFoundException("tag", newParent.toString()));
 			}
 			entity.setParentUuid(newParent);
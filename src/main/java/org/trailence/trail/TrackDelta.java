@@ -0,0 +1,283 @@
+package org.trailence.trail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.trailence.trail.TrackStorage.V1.StoredData;
+import org.trailence.trail.db.TrackEntity;
+import org.trailence.trail.dto.Track.Point;
+import org.trailence.trail.dto.Track.Segment;
+import org.trailence.trail.dto.Track.WayPoint;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * Incremental updates of tracks.<br/>
+ * Each stored track keeps a content hash of each segment and each way point, so an update can detect unchanged parts
+ * without encoding the track.<br/>
+ * When an update only adds points at the end of the track (typically during a recording), the new points are stored
+ * in a small separate tail instead of re-encoding the full track. The tail is merged with the main data when reading,
+ * and compacted into the main data once it becomes larger than 4KB or 1/8 of the main data, so the cost of an update
+ * remains proportional to the size of the added points.<br/>
+ * The tail is a flag byte followed by V2 data containing only segments. If the flag is set, the first segment of the tail
+ * continues the last segment of the main data, so its first point contains differences like any following point.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class TrackDelta {
+
+	private static final int MIN_TAIL_SIZE_BEFORE_COMPACT = 4 * 1024;
+
+	private static final int TAIL_CONTINUES_SEGMENT = 0x01;
+	private static final long NULL_VALUE = 0x8000_0000_0000_0001L;
+	private static final long HEADING = 0x4845_4144_494E_4701L;
+	private static final long SPEED = 0x5350_4545_4401_0001L;
+
+	/** Content hashes of a track: for each segment its number of points and a hash of its points, and a hash of each way point. */
+	@Getter
+	@AllArgsConstructor
+	public static class Hashes {
+		private int[] segmentSizes;
+		private long[] segmentHashes;
+		private long[] wayPointHashes;
+
+		public static Hashes of(StoredData data) {
+			int[] sizes = new int[data.s.length];
+			long[] segments = new long[data.s.length];
+			for (int i = 0; i < data.s.length; ++i) {
+				Point[] points = data.s[i].getP();
+				sizes[i] = points.length;
+				segments[i] = hashPoints(0, points, 0, points.length, 0);
+			}
+			long[] wayPoints = new long[data.wp.length];
+			for (int i = 0; i < data.wp.length; ++i) wayPoints[i] = hash(data.wp[i]);
+			return new Hashes(sizes, segments, wayPoints);
+		}
+
+		public byte[] encode() {
+			ByteBuffer buffer = ByteBuffer.allocate(8 + segmentSizes.length * 12 + wayPointHashes.length * 8);
+			buffer.putInt(segmentSizes.length);
+			for (int i = 0; i < segmentSizes.length; ++i) {
+				buffer.putInt(segmentSizes[i]);
+				buffer.putLong(segmentHashes[i]);
+			}
+			buffer.putInt(wayPointHashes.length);
+			for (long h : wayPointHashes) buffer.putLong(h);
+			return buffer.array();
+		}
+
+		public static Hashes decode(byte[] bytes) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			int nb = buffer.getInt();
+			int[] sizes = new int[nb];
+			long[] segments = new long[nb];
+			for (int i = 0; i < nb; ++i) {
+				sizes[i] = buffer.getInt();
+				segments[i] = buffer.getLong();
+			}
+			long[] wayPoints = new long[buffer.getInt()];
+			for (int i = 0; i < wayPoints.length; ++i) wayPoints[i] = buffer.getLong();
+			return new Hashes(sizes, segments, wayPoints);
+		}
+
+		/** Hashes after appending the given points. */
+		public Hashes append(Appended appended) {
+			int nb = segmentSizes.length + appended.s.length - (appended.continueSegment ? 1 : 0);
+			int[] sizes = Arrays.copyOf(segmentSizes, nb);
+			long[] segments = Arrays.copyOf(segmentHashes, nb);
+			int index = segmentSizes.length;
+			for (int i = 0; i < appended.s.length; ++i) {
+				Point[] points = appended.s[i].getP();
+				if (i == 0 && appended.continueSegment) {
+					segments[index - 1] = hashPoints(segments[index - 1], points, 0, points.length, sizes[index - 1]);
+					sizes[index - 1] += points.length;
+				} else {
+					sizes[index] = points.length;
+					segments[index] = hashPoints(0, points, 0, points.length, 0);
+					index++;
+				}
+			}
+			return new Hashes(sizes, segments, wayPointHashes);
+		}
+	}
+
+	/** Points added at the end of a track. */
+	@Getter
+	@AllArgsConstructor
+	public static class Appended {
+		/** If true, the first segment continues the last segment of the track. */
+		private boolean continueSegment;
+		private Segment[] s;
+
+		public boolean isEmpty() {
+			return s.length == 0;
+		}
+	}
+
+	/**
+	 * Compare a new version of a track with the stored hashes.
+	 * @return null if the track was modified, else the points added at the end of the track (empty if unchanged).
+	 */
+	public static Appended detectAppend(Hashes stored, StoredData data, Hashes hashes) {
+		if (!Arrays.equals(stored.wayPointHashes, hashes.wayPointHashes)) return null;
+		int nb = stored.segmentSizes.length;
+		if (hashes.segmentSizes.length < nb) return null;
+		for (int i = 0; i < nb - 1; ++i)
+			if (stored.segmentSizes[i] != hashes.segmentSizes[i] || stored.segmentHashes[i] != hashes.segmentHashes[i]) return null;
+		Segment[] added = new Segment[hashes.segmentSizes.length - nb];
+		boolean continueSegment = false;
+		if (nb > 0) {
+			int size = stored.segmentSizes[nb - 1];
+			Point[] points = data.s[nb - 1].getP();
+			if (points.length < size) return null;
+			if (points.length == size) {
+				if (stored.segmentHashes[nb - 1] != hashes.segmentHashes[nb - 1]) return null;
+			} else {
+				if (size == 0 || stored.segmentHashes[nb - 1] != hashPoints(0, points, 0, size, 0)) return null;
+				continueSegment = true;
+				added = new Segment[added.length + 1];
+				added[0] = new Segment(Arrays.copyOfRange(points, size, points.length));
+			}
+		}
+		int offset = continueSegment ? 1 : 0;
+		for (int i = nb; i < data.s.length; ++i) added[i - nb + offset] = data.s[i];
+		return new Appended(continueSegment, added);
+	}
+
+	/** Add points to the existing tail, and return the new tail. */
+	public static byte[] appendToTail(byte[] tail, Appended appended) throws IOException {
+		boolean continues;
+		Segment[] segments;
+		if (tail == null) {
+			continues = appended.continueSegment;
+			segments = appended.s;
+		} else {
+			continues = (tail[0] & TAIL_CONTINUES_SEGMENT) != 0;
+			Segment[] existing = decodeTail(tail).s;
+			if (existing.length == 0) {
+				continues = appended.continueSegment;
+				segments = appended.s;
+			} else {
+				segments = concat(existing, appended);
+			}
+		}
+		byte[] data = TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(segments, new WayPoint[0]));
+		byte[] result = new byte[data.length + 1];
+		result[0] = (byte) (continues ? TAIL_CONTINUES_SEGMENT : 0);
+		System.arraycopy(data, 0, result, 1, data.length);
+		return result;
+	}
+
+	/** Return true if the tail should be merged into the main data. */
+	public static boolean shouldCompact(int dataSize, int tailSize) {
+		return tailSize > Math.max(MIN_TAIL_SIZE_BEFORE_COMPACT, dataSize / 8);
+	}
+
+	/** Decode the data of a track, including its tail if any. */
+	public static StoredData decode(byte[] data, byte[] tail) throws IOException {
+		StoredData main = TrackStorage.V1V2Bridge.v2ToV1Dto(data);
+		if (tail == null) return main;
+		boolean continues = (tail[0] & TAIL_CONTINUES_SEGMENT) != 0;
+		return new StoredData(concat(main.s, new Appended(continues && main.s.length > 0, decodeTail(tail).s)), main.wp);
+	}
+
+	public static StoredData decode(TrackEntity entity) throws IOException {
+		return decode(entity.getData(), entity.getTail());
+	}
+
+	/** Size used in storage by a track. */
+	public static int storedSize(TrackEntity entity) {
+		return entity.getData().length + (entity.getTail() != null ? entity.getTail().length : 0);
+	}
+
+	private static StoredData decodeTail(byte[] tail) throws IOException {
+		return TrackStorage.V1V2Bridge.v2ToV1Dto(Arrays.copyOfRange(tail, 1, tail.length));
+	}
+
+	static Segment[] concat(Segment[] segments, Appended appended) {
+		int offset = appended.continueSegment ? 1 : 0;
+		Segment[] result = Arrays.copyOf(segments, segments.length + appended.s.length - offset);
+		if (appended.continueSegment) {
+			Point[] last = segments[segments.length - 1].getP();
+			Point[] added = appended.s[0].getP();
+			Point[] points = Arrays.copyOf(last, last.length + added.length);
+			System.arraycopy(added, 0, points, last.length, added.length);
+			result[segments.length - 1] = new Segment(points);
+		}
+		System.arraycopy(appended.s, offset, result, segments.length, appended.s.length - offset);
+		return result;
+	}
+
+	/**
+	 * Chain the hashes of points, starting from the given hash.
+	 * Points after the first one contain differences, so a null value is the same as 0.<br/>
+	 * Heading and speed are instantaneous values, mixed only when known so the hashes of points without them are unchanged.
+	 */
+	private static long hashPoints(long hash, Point[] points, int from, int to, int firstIndex) {
+		for (int i = from; i < to; ++i) {
+			Point p = points[i];
+			boolean delta = firstIndex + i - from > 0;
+			hash = mix(hash, p.getL() == null ? 0 : p.getL().longValue());
+			hash = mix(hash, p.getN() == null ? 0 : p.getN().longValue());
+			hash = mix(hash, value(p.getE(), delta));
+			hash = mix(hash, value(p.getT(), delta));
+			hash = mix(hash, value(p.getPa(), delta));
+			hash = mix(hash, value(p.getEa(), delta));
+			if (p.getH() != null) hash = mix(hash, mix(HEADING, p.getH().longValue()));
+			if (p.getS() != null) hash = mix(hash, mix(SPEED, p.getS().longValue()));
+		}
+		return hash;
+	}
+
+	private static long hash(WayPoint wp) {
+		long hash = 0;
+		hash = mix(hash, value(wp.getL(), false));
+		hash = mix(hash, value(wp.getN(), false));
+		hash = mix(hash, value(wp.getE(), false));
+		hash = mix(hash, value(wp.getT(), false));
+		hash = mix(hash, hash(wp.getNa()));
+		hash = mix(hash, hash(wp.getDe()));
+		hash = mix(hash, hash(wp.getNt()));
+		hash = mix(hash, hash(wp.getDt()));
+		return hash;
+	}
+
+	private static long hash(String s) {
+		if (s == null) return NULL_VALUE;
+		// String.hashCode collides too easily (Aa and BB), an update would be considered as unchanged
+		try {
+			return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8))).getLong();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static long hash(Map<String, String> map) {
+		if (map == null) return NULL_VALUE;
+		long hash = map.size();
+		for (var entry : new TreeMap<>(map).entrySet()) {
+			hash = mix(hash, hash(entry.getKey()));
+			hash = mix(hash, hash(entry.getValue()));
+		}
+		return hash;
+	}
+
+	private static long value(Long value, boolean delta) {
+		if (value == null) return delta ? 0 : NULL_VALUE;
+		return value.longValue();
+	}
+
+	private static long mix(long hash, long value) {
+		long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 29);
+	}
+
+}
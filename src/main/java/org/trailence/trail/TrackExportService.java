@@ -0,0 +1,53 @@
+package org.trailence.trail;
+
+import java.util.UUID;
+
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.trailence.global.TrailenceUtils;
+import org.trailence.global.exceptions.ValidationUtils;
+import org.trailence.trail.TrackExporter.ExportedTrail;
+import org.trailence.trail.dto.ExportFormat;
+
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+
+@Service
+@RequiredArgsConstructor
+public class TrackExportService {
+
+	private final R2dbcEntityTemplate r2dbc;
+	
+	// number of rows fetched at once from the database, to keep memory bounded whatever the number of trails
+	private static final int FETCH_SIZE = 20;
+	
+	public Flux<byte[]> export(String collectionUuid, ExportFormat format, boolean zip, Authentication auth) {
+		ValidationUtils.field("format", format).notNull();
+		ValidationUtils.field("collection", collectionUuid).isUuid();
+		String owner = TrailenceUtils.email(auth);
+		Flux<ExportedTrail> trails = Flux.defer(() -> {
+			GenericExecuteSpec spec = r2dbc.getDatabaseClient().sql(
+				"SELECT trails.uuid, trails.name, trails.description, tracks.data, tracks.tail" +
+				" FROM trails INNER JOIN tracks ON tracks.uuid = trails.current_track_uuid AND tracks.owner = trails.owner" +
+				" WHERE trails.owner = $1" + (collectionUuid != null ? " AND trails.collection_uuid = $2" : "") +
+				" ORDER BY trails.uuid"
+			)
+			.bind(0, owner);
+			if (collectionUuid != null) spec = spec.bind(1, UUID.fromString(collectionUuid));
+			return spec
+			.filter(statement -> statement.fetchSize(FETCH_SIZE))
+			.map((row, _) -> new ExportedTrail(
+				row.get("uuid", UUID.class),
+				row.get("name", String.class),
+				row.get("description", String.class),
+				row.get("data", byte[].class),
+				row.get("tail", byte[].class)
+			))
+			.all();
+		});
+		return TrackExporter.export(trails, format, zip);
+	}
+	
+}
@@ -0,0 +1,372 @@
+package org.trailence.trail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.trailence.global.AccessibleByteArrayOutputStream;
+import org.trailence.global.TrailenceUtils;
+import org.trailence.trail.TrackStorage.V1.StoredData;
+import org.trailence.trail.dto.ExportFormat;
+import org.trailence.trail.dto.Track.Point;
+import org.trailence.trail.dto.Track.Segment;
+import org.trailence.trail.dto.Track.WayPoint;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Streaming export of trails into GPX, KML or GeoJSON, either as a single document or zipped with one file by trail.<br/>
+ * Each trail is decoded and written on its own, and the produced bytes are emitted as soon as the trail is written,
+ * so the memory used does not depend on the number of trails.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class TrackExporter {
+
+	@Data
+	@AllArgsConstructor
+	public static class ExportedTrail {
+		private UUID uuid;
+		private String name;
+		private String description;
+		private byte[] data;
+		private byte[] tail;
+	}
+
+	/**
+	 * Export the given trails.<br/>
+	 * For a single GPX document, way points must be written before tracks, so the trails are subscribed twice.
+	 */
+	public static Flux<byte[]> export(Flux<ExportedTrail> trails, ExportFormat format, boolean zip) {
+		return Flux.defer(() -> {
+			if (zip) {
+				ZipExport export = new ZipExport(format);
+				return Flux.concat(trails.map(export::entry), Mono.fromCallable(export::finish));
+			}
+			FormatWriter writer = writer(format);
+			Flux<byte[]> content;
+			if (writer.wayPointsFirst())
+				content = Flux.concat(trails.map(t -> writer.trail(t, true, false)), trails.map(t -> writer.trail(t, false, true)));
+			else
+				content = trails.map(t -> writer.trail(t, true, true));
+			return Flux.concat(Mono.fromCallable(writer::header), content, Mono.fromCallable(writer::footer));
+		});
+	}
+
+	private static FormatWriter writer(ExportFormat format) {
+		return switch (format) {
+			case GPX -> new GpxWriter();
+			case KML -> new KmlWriter();
+			case GEOJSON -> new GeoJsonWriter();
+		};
+	}
+
+	private static final class ZipExport {
+		private final ExportFormat format;
+		private final AccessibleByteArrayOutputStream bos = new AccessibleByteArrayOutputStream(65536);
+		private final ZipOutputStream zip = new ZipOutputStream(bos);
+		private final Set<String> names = new HashSet<>();
+
+		private ZipExport(ExportFormat format) {
+			this.format = format;
+			// favor speed, the export is generated on the fly
+			zip.setLevel(Deflater.BEST_SPEED);
+		}
+
+		@SuppressWarnings("java:S112") // generic exception
+		private byte[] entry(ExportedTrail trail) {
+			FormatWriter writer = writer(format);
+			try {
+				zip.putNextEntry(new ZipEntry(fileName(trail)));
+				zip.write(writer.header());
+				zip.write(writer.trail(trail, true, true));
+				zip.write(writer.footer());
+				zip.closeEntry();
+				return flush();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		private byte[] finish() throws IOException {
+			zip.finish();
+			return flush();
+		}
+
+		private byte[] flush() {
+			byte[] bytes = bos.toByteArray();
+			bos.reset();
+			return bytes;
+		}
+
+		private String fileName(ExportedTrail trail) {
+			String name = trail.getName() == null || trail.getName().isBlank() ? "trail" : trail.getName().trim().replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_");
+			if (name.length() > 100) name = name.substring(0, 100);
+			String fileName = name + "." + format.getExtension();
+			if (!names.add(fileName)) {
+				fileName = name + "-" + trail.getUuid().toString().substring(0, 8) + "." + format.getExtension();
+				names.add(fileName);
+			}
+			return fileName;
+		}
+	}
+
+	/** Absolute position while iterating on points, which contain differences with the previous point. */
+	private static final class Position {
+		private long lat;
+		private long lng;
+		private Long ele;
+		private Long time;
+
+		private void next(Point p) {
+			if (p.getL() != null) lat += p.getL();
+			if (p.getN() != null) lng += p.getN();
+			if (p.getE() != null) ele = ele == null ? p.getE() : ele + p.getE();
+			if (p.getT() != null) time = time == null ? p.getT() : time + p.getT();
+		}
+	}
+
+	private abstract static class FormatWriter {
+		protected abstract byte[] header();
+		protected abstract byte[] footer();
+		protected abstract void trail(StringBuilder s, ExportedTrail trail, StoredData data, boolean wayPoints, boolean track);
+
+		protected boolean wayPointsFirst() {
+			return false;
+		}
+
+		@SuppressWarnings("java:S112") // generic exception
+		private byte[] trail(ExportedTrail trail, boolean wayPoints, boolean track) {
+			StoredData data;
+			try {
+				data = TrackDelta.decode(trail.getData(), trail.getTail());
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			StringBuilder s = new StringBuilder(16384);
+			trail(s, trail, data, wayPoints, track);
+			return s.toString().getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	private static final class GpxWriter extends FormatWriter {
+		@Override
+		protected byte[] header() {
+			return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<gpx version=\"1.1\" creator=\"Trailence\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n".getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		protected byte[] footer() {
+			return "</gpx>\n".getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		protected boolean wayPointsFirst() {
+			return true;
+		}
+
+		@Override
+		protected void trail(StringBuilder s, ExportedTrail trail, StoredData data, boolean wayPoints, boolean track) {
+			if (wayPoints)
+				for (WayPoint wp : data.wp) {
+					point(s, "wpt", wp.getL(), wp.getN(), wp.getE(), wp.getT());
+					if (StringUtils.isNotEmpty(wp.getNa())) s.append("<name>").append(escapeXml(wp.getNa())).append("</name>");
+					if (StringUtils.isNotEmpty(wp.getDe())) s.append("<desc>").append(escapeXml(wp.getDe())).append("</desc>");
+					s.append("</wpt>\n");
+				}
+			if (!track) return;
+			s.append("<trk>");
+			if (StringUtils.isNotEmpty(trail.getName())) s.append("<name>").append(escapeXml(trail.getName())).append("</name>");
+			if (StringUtils.isNotEmpty(trail.getDescription())) s.append("<desc>").append(escapeXml(trail.getDescription())).append("</desc>");
+			s.append('\n');
+			for (Segment segment : data.s) {
+				s.append("<trkseg>\n");
+				Position pos = new Position();
+				for (Point p : segment.getP()) {
+					pos.next(p);
+					point(s, "trkpt", pos.lat, pos.lng, pos.ele, pos.time);
+					s.append("</trkpt>\n");
+				}
+				s.append("</trkseg>\n");
+			}
+			s.append("</trk>\n");
+		}
+
+		private static void point(StringBuilder s, String tag, Long lat, Long lng, Long ele, Long time) {
+			s.append('<').append(tag).append(" lat=\"");
+			appendDecimal(s, lat == null ? 0 : lat, 7).append("\" lon=\"");
+			appendDecimal(s, lng == null ? 0 : lng, 7).append("\">");
+			if (ele != null) appendDecimal(s.append("<ele>"), ele, 1).append("</ele>");
+			if (time != null) s.append("<time>").append(Instant.ofEpochMilli(time)).append("</time>");
+		}
+	}
+
+	private static final class KmlWriter extends FormatWriter {
+		@Override
+		protected byte[] header() {
+			return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<kml xmlns=\"http://www.opengis.net/kml/2.2\"><Document>\n".getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		protected byte[] footer() {
+			return "</Document></kml>\n".getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		protected void trail(StringBuilder s, ExportedTrail trail, StoredData data, boolean wayPoints, boolean track) {
+			s.append("<Folder>");
+			name(s, trail.getName(), trail.getDescription());
+			s.append('\n');
+			s.append("<Placemark>");
+			name(s, trail.getName(), trail.getDescription());
+			s.append("<MultiGeometry>\n");
+			for (Segment segment : data.s) {
+				s.append("<LineString><coordinates>");
+				Position pos = new Position();
+				for (Point p : segment.getP()) {
+					pos.next(p);
+					coordinates(s, pos.lat, pos.lng, pos.ele);
+					s.append(' ');
+				}
+				s.append("</coordinates></LineString>\n");
+			}
+			s.append("</MultiGeometry></Placemark>\n");
+			for (WayPoint wp : data.wp) {
+				s.append("<Placemark>");
+				name(s, wp.getNa(), wp.getDe());
+				s.append("<Point><coordinates>");
+				coordinates(s, wp.getL() == null ? 0 : wp.getL(), wp.getN() == null ? 0 : wp.getN(), wp.getE());
+				s.append("</coordinates></Point></Placemark>\n");
+			}
+			s.append("</Folder>\n");
+		}
+
+		private static void name(StringBuilder s, String name, String description) {
+			if (StringUtils.isNotEmpty(name)) s.append("<name>").append(escapeXml(name)).append("</name>");
+			if (StringUtils.isNotEmpty(description)) s.append("<description>").append(escapeXml(description)).append("</description>");
+		}
+
+		private static void coordinates(StringBuilder s, long lat, long lng, Long ele) {
+			appendDecimal(s, lng, 7).append(',');
+			appendDecimal(s, lat, 7);
+			if (ele != null) appendDecimal(s.append(','), ele, 1);
+		}
+	}
+
+	private static final class GeoJsonWriter extends FormatWriter {
+		private boolean first = true;
+
+		@Override
+		protected byte[] header() {
+			return "{\"type\":\"FeatureCollection\",\"features\":[\n".getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		protected byte[] footer() {
+			return "\n]}\n".getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		protected void trail(StringBuilder s, ExportedTrail trail, StoredData data, boolean wayPoints, boolean track) {
+			startFeature(s);
+			s.append("{\"type\":\"Feature\",\"properties\":{");
+			properties(s, trail.getName(), trail.getDescription());
+			s.append("},\"geometry\":{\"type\":\"MultiLineString\",\"coordinates\":[");
+			for (int i = 0; i < data.s.length; ++i) {
+				if (i > 0) s.append(',');
+				s.append('[');
+				Position pos = new Position();
+				Point[] points = data.s[i].getP();
+				for (int j = 0; j < points.length; ++j) {
+					pos.next(points[j]);
+					if (j > 0) s.append(',');
+					coordinates(s, pos.lat, pos.lng, pos.ele);
+				}
+				s.append(']');
+			}
+			s.append("]}}");
+			for (WayPoint wp : data.wp) {
+				startFeature(s);
+				s.append("{\"type\":\"Feature\",\"properties\":{");
+				properties(s, wp.getNa(), wp.getDe());
+				s.append("},\"geometry\":{\"type\":\"Point\",\"coordinates\":");
+				coordinates(s, wp.getL() == null ? 0 : wp.getL(), wp.getN() == null ? 0 : wp.getN(), wp.getE());
+				s.append("}}");
+			}
+		}
+
+		private void startFeature(StringBuilder s) {
+			if (first) first = false;
+			else s.append(",\n");
+		}
+
+		private static void properties(StringBuilder s, String name, String description) {
+			s.append("\"name\":").append(TrailenceUtils.mapper.writeValueAsString(name));
+			if (StringUtils.isNotEmpty(description)) s.append(",\"description\":").append(TrailenceUtils.mapper.writeValueAsString(description));
+		}
+
+		private static void coordinates(StringBuilder s, long lat, long lng, Long ele) {
+			s.append('[');
+			appendDecimal(s, lng, 7).append(',');
+			appendDecimal(s, lat, 7);
+			if (ele != null) appendDecimal(s.append(','), ele, 1);
+			s.append(']');
+		}
+	}
+
+	/** Append a value stored with the given number of decimals, without going through floating point. */
+	static StringBuilder appendDecimal(StringBuilder s, long value, int decimals) {
+		if (value < 0) {
+			s.append('-');
+			value = -value;
+		}
+		long factor = 1;
+		for (int i = 0; i < decimals; ++i) factor *= 10;
+		s.append(value / factor);
+		long fraction = value % factor;
+		if (fraction == 0) return s;
+		s.append('.');
+		int digits = decimals;
+		while (fraction % 10 == 0) {
+			fraction /= 10;
+			digits--;
+		}
+		String f = Long.toString(fraction);
+		for (int i = f.length(); i < digits; ++i) s.append('0');
+		return s.append(f);
+	}
+
+	static String escapeXml(String s) {
+		StringBuilder result = null;
+		for (int i = 0; i < s.length(); ++i) {
+			char c = s.charAt(i);
+			String replacement = switch (c) {
+				case '&' -> "&amp;";
+				case '<' -> "&lt;";
+				case '>' -> "&gt;";
+				case '"' -> "&quot;";
+				case '\'' -> "&apos;";
+				default -> null;
+			};
+			if (replacement == null) {
+				if (result != null) result.append(c);
+			} else {
+				if (result == null) result = new StringBuilder(s.length() + 16).append(s, 0, i);
+				result.append(replacement);
+			}
+		}
+		return result == null ? s : result.toString();
+	}
+
+}
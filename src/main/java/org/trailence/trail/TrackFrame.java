@@ -0,0 +1,109 @@
+package org.trailence.trail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import org.springframework.http.MediaType;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Binary frame containing a track as stored, so it can be sent without decoding it.<br/>
+ * All numbers are big-endian:
+ * <ul>
+ * <li>int: length of the frame, excluding these 4 bytes</li>
+ * <li>16 bytes: uuid</li>
+ * <li>short: length of the owner, followed by the owner in UTF-8</li>
+ * <li>long: version, long: creation date, long: last update date</li>
+ * <li>int: length of the data, followed by the V2 data (raw deflate, or a coder marker, see {@link TrackStorage.V1V2Bridge.Coder})</li>
+ * <li>int: length of the tail (0 if none), followed by the tail (see {@link TrackDelta})</li>
+ * <li>optional int: size used by the track, only present in single track responses</li>
+ * </ul>
+ * A single frame is also the body of the track endpoints when the content type {@link #MEDIA_TYPE} is negotiated,
+ * so a track is transmitted column by column as encoded by {@link TrackStorage.V1V2Bridge}, instead of JSON.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackFrame {
+
+	public static final String MEDIA_TYPE_VALUE = "application/x-trailence-track";
+	public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(MEDIA_TYPE_VALUE);
+
+	private UUID uuid;
+	private String owner;
+	private long version;
+	private long createdAt;
+	private long updatedAt;
+	private byte[] data;
+	private byte[] tail;
+	private Integer sizeUsed;
+
+	public TrackFrame(UUID uuid, String owner, long version, long createdAt, long updatedAt, byte[] data, byte[] tail) {
+		this(uuid, owner, version, createdAt, updatedAt, data, tail, null);
+	}
+
+	public byte[] encode() {
+		byte[] ownerBytes = (owner != null ? owner : "").getBytes(StandardCharsets.UTF_8);
+		int tailLength = tail != null ? tail.length : 0;
+		int length = 16 + 2 + ownerBytes.length + 24 + 4 + data.length + 4 + tailLength + (sizeUsed != null ? 4 : 0);
+		ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+		buffer.putInt(length);
+		buffer.putLong(uuid.getMostSignificantBits());
+		buffer.putLong(uuid.getLeastSignificantBits());
+		buffer.putShort((short) ownerBytes.length);
+		buffer.put(ownerBytes);
+		buffer.putLong(version);
+		buffer.putLong(createdAt);
+		buffer.putLong(updatedAt);
+		buffer.putInt(data.length);
+		buffer.put(data);
+		buffer.putInt(tailLength);
+		if (tail != null) buffer.put(tail);
+		if (sizeUsed != null) buffer.putInt(sizeUsed);
+		return buffer.array();
+	}
+
+	// uuid, owner length, version, dates, data length and tail length
+	private static final int HEADER_LENGTH = 16 + 2 + 24 + 4 + 4;
+
+	/**
+	 * Decode the next frame, or return null if the buffer does not contain a complete frame.
+	 * @throws IllegalArgumentException if a length is not consistent with the length of the frame
+	 */
+	public static TrackFrame decode(ByteBuffer buffer) {
+		if (buffer.remaining() < 4) return null;
+		int length = buffer.getInt(buffer.position());
+		if (length < HEADER_LENGTH) throw new IllegalArgumentException("Invalid frame length: " + length);
+		if (buffer.remaining() - 4 < length) return null;
+		buffer.getInt();
+		int end = buffer.position() + length;
+		TrackFrame frame = new TrackFrame();
+		frame.uuid = new UUID(buffer.getLong(), buffer.getLong());
+		byte[] ownerBytes = new byte[checkLength(buffer.getShort() & 0xFFFF, buffer, end - 24 - 4 - 4)];
+		buffer.get(ownerBytes);
+		frame.owner = new String(ownerBytes, StandardCharsets.UTF_8);
+		frame.version = buffer.getLong();
+		frame.createdAt = buffer.getLong();
+		frame.updatedAt = buffer.getLong();
+		frame.data = new byte[checkLength(buffer.getInt(), buffer, end - 4)];
+		buffer.get(frame.data);
+		int tailLength = checkLength(buffer.getInt(), buffer, end);
+		if (tailLength > 0) {
+			frame.tail = new byte[tailLength];
+			buffer.get(frame.tail);
+		}
+		if (end - buffer.position() >= 4) frame.sizeUsed = buffer.getInt();
+		buffer.position(end);
+		return frame;
+	}
+
+	/** Check a length read from the frame before allocating it: the bytes must end before the given limit. */
+	private static int checkLength(int length, ByteBuffer buffer, int limit) {
+		if (length < 0 || length > limit - buffer.position()) throw new IllegalArgumentException("Invalid length in frame: " + length);
+		return length;
+	}
+}
@@ -1,7 +1,12 @@
 package org.trailence.trail;
 
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
@@ -32,13 +37,20 @@ import org.trailence.trail.TrackStorage.V1.StoredData;
 import org.trailence.trail.db.ShareRecipientEntity;
 import org.trailence.trail.db.TrackEntity;
 import org.trailence.trail.db.TrackRepository;
+import org.trailence.trail.db.TrackTierEntity;
+import org.trailence.trail.db.TrackTierRepository;
 import org.trailence.trail.db.TrailEntity;
 import org.trailence.trail.dto.Track;
+import org.trailence.trail.dto.TrackAppend;
+import org.trailence.trail.dto.TrackDetail;
+import org.trailence.trail.dto.TrackStats;
 
+import io.r2dbc.postgresql.codec.Json;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
 import reactor.util.function.Tuples;
 
 @Service
@@ -47,6 +59,7 @@ import reactor.util.function.Tuples;
 public class TrackService {
 
 	private final TrackRepository repo;
+	private final TrackTierRepository tierRepo;
 	private final R2dbcEntityTemplate r2dbc;
 	private final QuotaService quotaService;
 	private final ShareService shareService;
@@ -55,45 +68,67 @@ public class TrackService {
 	private TrackService self;
 	
 	private static final long MAX_DATA_SIZE = 512L * 1024;
+	private static final int MAX_BULK_GET = 1000;
+	// maximum number of points and way points in a track received as a binary frame: a recorded point takes about 34 bytes in JSON,
+	// so no more than this can be sent as JSON within the 2MB limit of the request body
+	static final int MAX_FRAME_ITEMS = 65536;
+	// number of rows fetched at once from the database, so memory remains bounded while streaming tracks
+	private static final int BULK_GET_FETCH_SIZE = 50;
 	
 	public Mono<Track> createTrack(Track track, Authentication auth) {
-		return Mono.fromCallable(() -> {
-			validate(track);
-			TrackEntity entity = new TrackEntity();
-			entity.setUuid(UUID.fromString(track.getUuid()));
-			entity.setOwner(auth.getPrincipal().toString());
-			entity.setCreatedAt(System.currentTimeMillis());
-			entity.setUpdatedAt(entity.getCreatedAt());
-			entity.setData(TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(track.getS(), track.getWp())));
-			if (entity.getData().length > MAX_DATA_SIZE) throw new BadRequestException("track-too-large", "Track data max size exceeded (" + entity.getData().length + " > " + MAX_DATA_SIZE + ")");
-			return entity;
-		})
-		.flatMap(self::createTrackWithQuota)
+		return Mono.fromCallable(() -> toNewEntity(track, null, auth.getPrincipal().toString()))
+		.flatMap(entity -> self.createTrackWithQuota(entity.getT1(), entity.getT2()))
 		.map(this::toDTO);
 	}
 	
-	public Mono<Track> createTrackAsSuperUser(Track track) {
+	/**
+	 * Create a track received as a binary frame, and respond with a frame.<br/>
+	 * The data is stored as received, it is decoded only to validate it and compute statistics, tiers and hashes.
+	 */
+	public Mono<TrackFrame> createTrackFromFrame(byte[] body, Authentication auth) {
 		return Mono.fromCallable(() -> {
-			validate(track);
-			TrackEntity entity = new TrackEntity();
-			entity.setUuid(UUID.fromString(track.getUuid()));
-			entity.setOwner(track.getOwner());
-			entity.setCreatedAt(System.currentTimeMillis());
-			entity.setUpdatedAt(entity.getCreatedAt());
-			entity.setData(TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(track.getS(), track.getWp())));
-			if (entity.getData().length > MAX_DATA_SIZE) throw new BadRequestException("track-too-large", "Track data max size exceeded (" + entity.getData().length + " > " + MAX_DATA_SIZE + ")");
-			return entity;
+			var received = fromFrame(body);
+			return toNewEntity(received.track(), received.data(), auth.getPrincipal().toString());
 		})
-		.flatMap(self::createTrackWithQuota)
+		.flatMap(entity -> self.createTrackWithQuota(entity.getT1(), entity.getT2()))
+		.map(TrackService::toFrame);
+	}
+	
+	public Mono<Track> createTrackAsSuperUser(Track track) {
+		return Mono.fromCallable(() -> toNewEntity(track, null, track.getOwner()))
+		.flatMap(entity -> self.createTrackWithQuota(entity.getT1(), entity.getT2()))
 		.map(this::toDTO);
 	}
 	
+	private Tuple2<TrackEntity, List<TrackTierEntity>> toNewEntity(Track track, byte[] encoded, String owner) throws IOException {
+		validate(track);
+		TrackEntity entity = new TrackEntity();
+		entity.setUuid(UUID.fromString(track.getUuid()));
+		entity.setOwner(owner);
+		entity.setCreatedAt(System.currentTimeMillis());
+		entity.setUpdatedAt(entity.getCreatedAt());
+		StoredData data = new StoredData(track.getS(), track.getWp());
+		entity.setData(encoded != null ? encoded : TrackStorage.V1V2Bridge.v1DtoToV2(data));
+		if (entity.getData().length > MAX_DATA_SIZE) throw new BadRequestException("track-too-large", "Track data max size exceeded (" + entity.getData().length + " > " + MAX_DATA_SIZE + ")");
+		entity.setStats(TrackStatsCalculator.toJson(TrackStatsCalculator.compute(data)));
+		entity.setHashes(TrackDelta.Hashes.of(data).encode());
+		return Tuples.of(entity, computeTiers(entity, data));
+	}
+	
+	private static List<TrackTierEntity> computeTiers(TrackEntity entity, StoredData data) throws IOException {
+		List<TrackTierEntity> tiers = new ArrayList<>(TrackDetail.TIERS.length);
+		for (var detail : TrackDetail.TIERS)
+			tiers.add(new TrackTierEntity(entity.getUuid(), entity.getOwner(), (short) detail.getTier(), TrackSimplifier.encodeTier(data, detail)));
+		return tiers;
+	}
+	
 	@Transactional
-	public Mono<TrackEntity> createTrackWithQuota(TrackEntity entity) {
+	public Mono<TrackEntity> createTrackWithQuota(TrackEntity entity, List<TrackTierEntity> tiers) {
 		return repo.findByUuidAndOwner(entity.getUuid(), entity.getOwner())
 		.switchIfEmpty(Mono.defer(() ->
 			r2dbc.insert(entity)
 			.flatMap(e -> quotaService.addTrack(entity.getOwner(), entity.getData().length).thenReturn(e))
+			.flatMap(e -> Flux.fromIterable(tiers).concatMap(r2dbc::insert).then(Mono.just(e)))
 		));
 	}
 	
@@ -103,26 +138,114 @@ public class TrackService {
 	
 	@Transactional
 	public Mono<Track> updateTrack(Track track, Authentication auth) {
+		return updateTrack(track, null, auth).map(this::toDTO);
+	}
+	
+	/** Update a track received as a binary frame, and respond with a frame. */
+	@Transactional
+	public Mono<TrackFrame> updateTrackFromFrame(byte[] body, Authentication auth) {
+		return Mono.fromCallable(() -> fromFrame(body))
+		.flatMap(received -> updateTrack(received.track(), received.data(), auth))
+		.map(TrackService::toFrame);
+	}
+	
+	private Mono<TrackEntity> updateTrack(Track track, byte[] encoded, Authentication auth) {
 		validate(track);
 		return repo.findByUuidAndOwner(UUID.fromString(track.getUuid()), TrailenceUtils.email(auth))
 		.switchIfEmpty(Mono.error(new TrackNotFound(TrailenceUtils.email(auth), track.getUuid())))
 		.flatMap(entity -> {
 			if (track.getVersion() != entity.getVersion()) return Mono.just(entity);
-			int previousDataSize = entity.getData().length;
+			var data = new StoredData(track.getS(), track.getWp());
+			var hashes = TrackDelta.Hashes.of(data);
+			if (entity.getHashes() != null) {
+				// compare hashes first, to avoid encoding the full track if nothing changed or if points were only added at the end
+				var appended = TrackDelta.detectAppend(TrackDelta.Hashes.decode(entity.getHashes()), data, hashes);
+				if (appended != null && appended.isEmpty()) return Mono.just(entity);
+				if (appended != null) {
+					try {
+						byte[] tail = TrackDelta.appendToTail(entity.getTail(), appended);
+						if (!TrackDelta.shouldCompact(entity.getData().length, tail.length))
+							return updateTail(entity, tail, hashes).then(repo.findByUuidAndOwner(entity.getUuid(), entity.getOwner()));
+					} catch (Exception e) {
+						return Mono.error(e);
+					}
+				}
+			}
+			return updateFullData(entity, data, encoded, hashes);
+		});
+	}
+	
+	/** Add points at the end of a track, without sending and encoding the full track. */
+	@Transactional
+	public Mono<Versioned> appendToTrack(TrackAppend append, Authentication auth) {
+		ValidationUtils.field("uuid", append.getUuid()).notNull().isUuid();
+		ValidationUtils.field("s", append.getS()).notNull();
+		String owner = TrailenceUtils.email(auth);
+		return repo.findByUuidAndOwner(UUID.fromString(append.getUuid()), owner)
+		.switchIfEmpty(Mono.error(new TrackNotFound(owner, append.getUuid())))
+		.flatMap(entity -> {
+			if (append.getVersion() != entity.getVersion() || append.getS().length == 0) return Mono.just(entity);
+			var appended = new TrackDelta.Appended(append.isContinueSegment(), append.getS());
 			try {
-				var newData = TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(track.getS(), track.getWp()));
-				if (newData.length > MAX_DATA_SIZE) throw new BadRequestException("track-too-large", "Track data max size exceeded (" + newData.length + " > " + MAX_DATA_SIZE + ")");
-				if (Arrays.equals(newData, entity.getData())) return Mono.just(entity);
-				entity.setData(newData);
+				if (entity.getHashes() != null) {
+					var hashes = TrackDelta.Hashes.decode(entity.getHashes());
+					if (appended.isContinueSegment() && hashes.getSegmentSizes().length == 0)
+						return Mono.error(new BadRequestException("invalid-append", "No segment to continue"));
+					byte[] tail = TrackDelta.appendToTail(entity.getTail(), appended);
+					if (!TrackDelta.shouldCompact(entity.getData().length, tail.length))
+						return updateTail(entity, tail, hashes.append(appended)).then(repo.findByUuidAndOwner(entity.getUuid(), entity.getOwner()));
+				}
+				// tail too large or track stored before hashes: compact everything into the main data
+				var existing = TrackDelta.decode(entity);
+				if (appended.isContinueSegment() && existing.s.length == 0)
+					return Mono.error(new BadRequestException("invalid-append", "No segment to continue"));
+				var data = new StoredData(TrackDelta.concat(existing.s, appended), existing.wp);
+				return updateFullData(entity, data, null, TrackDelta.Hashes.of(data));
 			} catch (Exception e) {
 				return Mono.error(e);
 			}
-			return DbUtils.updateByUuidAndOwner(r2dbc, entity).flatMap(nb -> nb == 0 ? Mono.just(entity) :
-				quotaService.updateTrackSize(entity.getOwner(), entity.getData().length - previousDataSize)
-				.then(repo.findByUuidAndOwner(entity.getUuid(), entity.getOwner()))
-			);
 		})
-		.map(this::toDTO);
+		.map(entity -> new Versioned(entity.getUuid().toString(), entity.getOwner(), entity.getVersion()));
+	}
+	
+	private Mono<TrackEntity> updateFullData(TrackEntity entity, StoredData data, byte[] encoded, TrackDelta.Hashes hashes) {
+		int previousDataSize = TrackDelta.storedSize(entity);
+		List<TrackTierEntity> tiers;
+		try {
+			var newData = encoded != null ? encoded : TrackStorage.V1V2Bridge.v1DtoToV2(data);
+			if (newData.length > MAX_DATA_SIZE) throw new BadRequestException("track-too-large", "Track data max size exceeded (" + newData.length + " > " + MAX_DATA_SIZE + ")");
+			if (entity.getTail() == null && Arrays.equals(newData, entity.getData())) return Mono.just(entity);
+			entity.setData(newData);
+			entity.setTail(null);
+			entity.setHashes(hashes.encode());
+			entity.setStats(TrackStatsCalculator.toJson(TrackStatsCalculator.compute(data)));
+			tiers = computeTiers(entity, data);
+		} catch (Exception e) {
+			return Mono.error(e);
+		}
+		return DbUtils.updateByUuidAndOwner(r2dbc, entity).flatMap(nb -> nb == 0 ? Mono.just(entity) :
+			quotaService.updateTrackSize(entity.getOwner(), entity.getData().length - previousDataSize)
+			.then(tierRepo.deleteAllByUuidAndOwner(entity.getUuid(), entity.getOwner()))
+			.thenMany(Flux.fromIterable(tiers).concatMap(r2dbc::insert))
+			.then(repo.findByUuidAndOwner(entity.getUuid(), entity.getOwner()))
+		);
+	}
+	
+	/** Update only the tail, the main data is not sent back to the database. Tiers and statistics will be computed again on the next read. */
+	private Mono<Void> updateTail(TrackEntity entity, byte[] tail, TrackDelta.Hashes hashes) {
+		int sizeDiff = tail.length - (entity.getTail() != null ? entity.getTail().length : 0);
+		if (entity.getData().length + tail.length > MAX_DATA_SIZE)
+			return Mono.error(new BadRequestException("track-too-large", "Track data max size exceeded (" + (entity.getData().length + tail.length) + " > " + MAX_DATA_SIZE + ")"));
+		return r2dbc.getDatabaseClient()
+		.sql("UPDATE tracks SET tail = $1, hashes = $2, stats = NULL, version = version + 1, updated_at = $3 WHERE uuid = $4 AND owner = $5 AND version = $6")
+		.bind(0, tail).bind(1, hashes.encode()).bind(2, System.currentTimeMillis())
+		.bind(3, entity.getUuid()).bind(4, entity.getOwner()).bind(5, entity.getVersion())
+		.fetch().rowsUpdated()
+		.flatMap(nb -> nb == 0 ? Mono.empty() :
+			quotaService.updateTrackSize(entity.getOwner(), sizeDiff)
+			.then(tierRepo.deleteAllByUuidAndOwner(entity.getUuid(), entity.getOwner()))
+		)
+		.then();
 	}
 	
 	public Mono<Void> bulkDelete(Collection<String> uuids, Authentication auth) {
@@ -132,14 +255,16 @@ public class TrackService {
 	public Mono<Void> deleteTracksWithQuota(Set<UUID> uuids, String owner) {
 		log.info("Deleting {} tracks for {}", uuids.size(), owner);
 		return repo.findAllByUuidInAndOwner(uuids, owner)
-		.flatMap(entity -> self.deleteTrackWithQuota(entity.getUuid(), owner, entity.getData().length), 1, 1)
+		.flatMap(entity -> self.deleteTrackWithQuota(entity.getUuid(), owner, TrackDelta.storedSize(entity)), 1, 1)
 		.then(Mono.fromRunnable(() -> log.info("Tracks deleted ({} for {})", uuids.size(), owner)));
 	}
 	
 	@Transactional
 	public Mono<Void> deleteTrackWithQuota(UUID uuid, String owner, int dataSize) {
 		return repo.deleteByUuidAndOwner(uuid, owner)
-		.flatMap(nb -> nb == 0 ? Mono.empty() : quotaService.tracksDeleted(owner, 1, dataSize));
+		.flatMap(nb -> nb == 0 ? Mono.empty() : quotaService.tracksDeleted(owner, 1, dataSize))
+		.then(tierRepo.deleteAllByUuidAndOwner(uuid, owner))
+		.then();
 	}
 	
 	@SuppressWarnings("java:S2445") // synchronized on a parameter
@@ -201,11 +326,51 @@ public class TrackService {
     	return List.of(owned, sharedWithMe);
 	}
 	
-	public Mono<Track> getTrack(String uuid, String owner, Authentication auth) {
+	public Mono<Track> getTrack(String uuid, String owner, TrackDetail detail, Authentication auth) {
 		String email = owner.toLowerCase();
 		Mono<Track> getFromDB = repo.findByUuidAndOwner(UUID.fromString(uuid), email)
-			.map(this::toDTO)
+			.flatMap(entity -> toDTO(entity, detail))
+			.switchIfEmpty(Mono.error(new TrackNotFound(email, uuid)));
+		return withAccess(uuid, owner, auth, getFromDB);
+	}
+	
+	/** Get a track as a binary frame: the full track is sent as stored, without being decoded. */
+	public Mono<TrackFrame> getTrackFrame(String uuid, String owner, TrackDetail detail, Authentication auth) {
+		String email = owner.toLowerCase();
+		Mono<TrackFrame> getFromDB = repo.findByUuidAndOwner(UUID.fromString(uuid), email)
+			.flatMap(entity -> {
+				if (detail == null || TrackDetail.FULL.equals(detail)) return Mono.just(toFrame(entity));
+				return getTier(entity, detail).map(data -> toFrame(entity, data, null));
+			})
 			.switchIfEmpty(Mono.error(new TrackNotFound(email, uuid)));
+		return withAccess(uuid, owner, auth, getFromDB);
+	}
+	
+	public Mono<TrackStats> getTrackStats(String uuid, String owner, Authentication auth) {
+		String email = owner.toLowerCase();
+		UUID id = UUID.fromString(uuid);
+		// data is only loaded if the statistics were not yet computed
+		Mono<TrackStats> getFromDB = r2dbc.getDatabaseClient()
+			.sql("SELECT stats, CASE WHEN stats IS NULL THEN data END AS data, CASE WHEN stats IS NULL THEN tail END AS tail FROM tracks WHERE uuid = $1 AND owner = $2")
+			.bind(0, id).bind(1, email)
+			.map((row, _) -> Tuples.of(Optional.ofNullable(row.get("stats", Json.class)), Optional.ofNullable(row.get("data", byte[].class)), Optional.ofNullable(row.get("tail", byte[].class))))
+			.first()
+			.switchIfEmpty(Mono.error(new TrackNotFound(email, uuid)))
+			.flatMap(row -> {
+				if (row.getT1().isPresent()) return Mono.just(TrackStatsCalculator.fromJson(row.getT1().get()));
+				return Mono.fromCallable(() -> TrackStatsCalculator.compute(TrackDelta.decode(row.getT2().orElseThrow(), row.getT3().orElse(null))))
+				.flatMap(stats ->
+					r2dbc.getDatabaseClient().sql("UPDATE tracks SET stats = $1 WHERE uuid = $2 AND owner = $3")
+					.bind(0, TrackStatsCalculator.toJson(stats)).bind(1, id).bind(2, email)
+					.fetch().rowsUpdated()
+					.thenReturn(stats)
+				);
+			});
+		return withAccess(uuid, owner, auth, getFromDB);
+	}
+	
+	private <T> Mono<T> withAccess(String uuid, String owner, Authentication auth, Mono<T> getFromDB) {
+		String email = owner.toLowerCase();
 		String user = TrailenceUtils.email(auth);
 		if (email.equals(user)) return getFromDB;
 		
@@ -228,22 +393,172 @@ public class TrackService {
 		});
 	}
 	
+	/**
+	 * Get several tracks at once, as binary frames containing the data as stored (see {@link TrackFrame}).<br/>
+	 * Access is checked with one query for all requested tracks shared with the user, and tracks are streamed
+	 * without being decoded. Tracks not found or not accessible are omitted.
+	 */
+	public Flux<byte[]> bulkGet(List<UuidAndOwner> requested, Authentication auth) {
+		ValidationUtils.field("tracks", requested).notNull();
+		if (requested.size() > MAX_BULK_GET)
+			return Flux.error(new BadRequestException("too-many-tracks", "Maximum " + MAX_BULK_GET + " tracks can be requested at once"));
+		String user = TrailenceUtils.email(auth);
+		Set<UuidAndOwner> owned = new HashSet<>();
+		Set<UuidAndOwner> others = new HashSet<>();
+		for (var item : requested) {
+			ValidationUtils.field("uuid", item.getUuid()).notNull().isUuid();
+			ValidationUtils.field("owner", item.getOwner()).notNull();
+			var key = new UuidAndOwner(UUID.fromString(item.getUuid()).toString(), item.getOwner().toLowerCase());
+			if (key.getOwner().equals(user)) owned.add(key);
+			else others.add(key);
+		}
+		Mono<Set<UuidAndOwner>> accessible;
+		if (others.isEmpty()) {
+			accessible = Mono.just(owned);
+		} else {
+			Select sharedWithMe = shareService.selectSharedElementsWithMe(
+				user,
+				new Expression[] { TrackEntity.COL_UUID, TrackEntity.COL_OWNER },
+				TrackEntity.TABLE,
+				Conditions.isEqual(TrailEntity.COL_OWNER, TrackEntity.COL_OWNER)
+				.and(
+					Conditions.isEqual(TrailEntity.COL_ORIGINAL_TRACK_UUID, TrackEntity.COL_UUID)
+					.or(Conditions.isEqual(TrailEntity.COL_CURRENT_TRACK_UUID, TrackEntity.COL_UUID))
+				),
+				Conditions.in(TrackEntity.COL_UUID, others.stream().map(item -> SQL.literalOf(item.getUuid())).distinct().toList())
+			);
+			accessible = r2dbc.getDatabaseClient().sql(DbUtils.select(sharedWithMe, null, r2dbc))
+			.map((row, _) -> new UuidAndOwner(row.get(0, UUID.class).toString(), row.get(1, String.class)))
+			.all()
+			.filter(others::contains)
+			.collect(Collectors.toCollection(() -> owned));
+		}
+		return accessible.flatMapMany(allowed -> {
+			if (allowed.isEmpty()) return Flux.empty();
+			UUID[] uuids = new UUID[allowed.size()];
+			String[] owners = new String[allowed.size()];
+			int i = 0;
+			for (var item : allowed) {
+				uuids[i] = UUID.fromString(item.getUuid());
+				owners[i++] = item.getOwner();
+			}
+			return r2dbc.getDatabaseClient().sql(
+				"SELECT t.uuid, t.owner, t.version, t.created_at, t.updated_at, t.data, t.tail" +
+				" FROM tracks t INNER JOIN unnest($1::uuid[], $2::varchar[]) AS r(uuid, owner) ON t.uuid = r.uuid AND t.owner = r.owner"
+			)
+			.bind(0, uuids).bind(1, owners)
+			.filter(statement -> statement.fetchSize(BULK_GET_FETCH_SIZE))
+			.map((row, _) -> new TrackFrame(
+				row.get("uuid", UUID.class),
+				row.get("owner", String.class),
+				row.get("version", Long.class),
+				row.get("created_at", Long.class),
+				row.get("updated_at", Long.class),
+				row.get("data", byte[].class),
+				row.get("tail", byte[].class)
+			).encode())
+			.all();
+		});
+	}
+
 	@SuppressWarnings("java:S112") // generic exception
 	public Track toDTO(TrackEntity entity) {
+		try {
+			return toDTO(entity, TrackDelta.decode(entity));
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/** Convert to DTO with the requested level of detail, simplifying on the fly if the tier was not yet computed. */
+	public Mono<Track> toDTO(TrackEntity entity, TrackDetail detail) {
+		if (detail == null || TrackDetail.FULL.equals(detail)) return Mono.fromCallable(() -> toDTO(entity));
+		return getTier(entity, detail)
+		.map(data -> {
+			try {
+				return toDTO(entity, TrackStorage.V1V2Bridge.v2ToV1Dto(data));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+	}
+	
+	/**
+	 * Get a tier of the track. Tiers are removed when points are appended to the tail, so a missing tier is computed
+	 * and saved, unless the track has been modified in the meantime.
+	 */
+	private Mono<byte[]> getTier(TrackEntity entity, TrackDetail detail) {
+		return tierRepo.findOneByUuidAndOwnerAndTier(entity.getUuid(), entity.getOwner(), (short) detail.getTier())
+		.map(TrackTierEntity::getData)
+		.switchIfEmpty(Mono.defer(() -> {
+			byte[] data;
+			try {
+				data = TrackSimplifier.encodeTier(TrackDelta.decode(entity), detail);
+			} catch (Exception e) {
+				return Mono.error(e);
+			}
+			// the track row is locked so a concurrent update removes the tier after it is inserted, or the tier is not inserted
+			return r2dbc.getDatabaseClient()
+			.sql("INSERT INTO track_tiers (uuid, owner, tier, data) SELECT $1, $2, $3, $4"
+				+ " WHERE EXISTS (SELECT 1 FROM tracks WHERE uuid = $1 AND owner = $2 AND version = $5 FOR SHARE)"
+				+ " ON CONFLICT DO NOTHING")
+			.bind(0, entity.getUuid()).bind(1, entity.getOwner()).bind(2, (short) detail.getTier()).bind(3, data).bind(4, entity.getVersion())
+			.fetch().rowsUpdated()
+			.thenReturn(data);
+		}));
+	}
+	
+	private static TrackFrame toFrame(TrackEntity entity) {
+		return toFrame(entity, entity.getData(), entity.getTail());
+	}
+	
+	private static TrackFrame toFrame(TrackEntity entity, byte[] data, byte[] tail) {
+		return new TrackFrame(
+			entity.getUuid(), entity.getOwner(), entity.getVersion(), entity.getCreatedAt(), entity.getUpdatedAt(),
+			data, tail, TrackDelta.storedSize(entity)
+		);
+	}
+	
+	/** Track received as a binary frame, with its data as encoded by the client. */
+	public record ReceivedTrack(Track track, byte[] data) {}
+	
+	/** Decode a track received as a binary frame. The data is checked before being decoded. */
+	public static ReceivedTrack fromFrame(byte[] body) {
+		TrackFrame frame;
+		try {
+			frame = TrackFrame.decode(ByteBuffer.wrap(body));
+		} catch (BufferUnderflowException | IllegalArgumentException _) {
+			frame = null;
+		}
+		if (frame == null) throw new BadRequestException("invalid-track", "Invalid track frame");
+		if (frame.getTail() != null) throw new BadRequestException("invalid-track", "A track frame sent to the server cannot have a tail");
+		if (frame.getData().length > MAX_DATA_SIZE) throw new BadRequestException("track-too-large", "Track data max size exceeded (" + frame.getData().length + " > " + MAX_DATA_SIZE + ")");
+		StoredData data;
+		try {
+			// stored as received, and sent back to clients which only know deflate
+			var coder = TrackStorage.V1V2Bridge.Coder.of(frame.getData());
+			if (coder != TrackStorage.V1V2Bridge.Coder.DEFLATE) throw new IOException("unsupported coder " + coder);
+			data = TrackStorage.V1V2Bridge.v2ToV1Dto(frame.getData(), MAX_FRAME_ITEMS);
+		} catch (IOException | RuntimeException e) {
+			throw new BadRequestException("invalid-track", "Invalid track data: " + e.getMessage());
+		}
+		return new ReceivedTrack(new Track(
+			frame.getUuid().toString(), frame.getOwner().isEmpty() ? null : frame.getOwner(),
+			frame.getVersion(), frame.getCreatedAt(), frame.getUpdatedAt(),
+			data.s, data.wp, null
+		), frame.getData());
+	}
+	
+	private Track toDTO(TrackEntity entity, StoredData data) {
 		Track dto = new Track();
 		dto.setUuid(entity.getUuid().toString());
 		dto.setOwner(entity.getOwner());
 		dto.setVersion(entity.getVersion());
 		dto.setCreatedAt(entity.getCreatedAt());
 		dto.setUpdatedAt(entity.getUpdatedAt());
-		try {
-			var data = TrackStorage.V1V2Bridge.v2ToV1Dto(entity.getData());
-			dto.setS(data.s);
-			dto.setWp(data.wp);
-			dto.setSizeUsed(entity.getData().length);
-		} catch (Exception e) {
-			throw new RuntimeException(e);
-		}
+		dto.setS(data.s);
+		dto.setWp(data.wp);
+		dto.setSizeUsed(TrackDelta.storedSize(entity));
 		return dto;
 	}
 	
@@ -0,0 +1,141 @@
+package org.trailence.trail;
+
+import java.io.IOException;
+
+import org.trailence.trail.TrackStorage.V1.StoredData;
+import org.trailence.trail.dto.TrackDetail;
+import org.trailence.trail.dto.Track.Point;
+import org.trailence.trail.dto.Track.Segment;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Douglas-Peucker simplification of tracks.<br/>
+ * In the track DTO, the first point of a segment contains absolute values, and each following point contains
+ * the difference with the previous point for latitude, longitude, elevation, time and accuracies (null meaning no change).
+ * Heading and speed are instantaneous values.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class TrackSimplifier {
+
+	// latitude and longitude are stored with a factor 10000000
+	private static final double METERS_PER_UNIT = 6371008.8d * Math.PI / 180 / 10000000;
+
+	public static byte[] encodeTier(StoredData data, TrackDetail detail) throws IOException {
+		return TrackStorage.V1V2Bridge.v1DtoToV2(simplify(data, detail.getToleranceMeters()));
+	}
+
+	public static StoredData simplify(StoredData data, double toleranceMeters) {
+		Segment[] segments = new Segment[data.s.length];
+		for (int i = 0; i < segments.length; ++i)
+			segments[i] = new Segment(simplify(data.s[i].getP(), toleranceMeters));
+		return new StoredData(segments, data.wp);
+	}
+
+	public static Point[] simplify(Point[] points, double toleranceMeters) {
+		if (points == null || points.length < 3) return points;
+		return rebuild(points, keep(points, toleranceMeters));
+	}
+
+	/** Project the points on a local plane, in meters. */
+	static void project(Point[] points, double[] x, double[] y) {
+		long lat = 0;
+		long lng = 0;
+		double cos = 0;
+		for (int i = 0; i < points.length; ++i) {
+			Point p = points[i];
+			if (p.getL() != null) lat += p.getL().longValue();
+			if (p.getN() != null) lng += p.getN().longValue();
+			if (i == 0) cos = Math.cos(Math.toRadians(lat / 10000000d));
+			x[i] = lng * METERS_PER_UNIT * cos;
+			y[i] = lat * METERS_PER_UNIT;
+		}
+	}
+
+	/** Select the points to keep, so that no removed point is further than the tolerance from the simplified path. */
+	static boolean[] keep(Point[] points, double toleranceMeters) {
+		int n = points.length;
+		double[] x = new double[n];
+		double[] y = new double[n];
+		project(points, x, y);
+		boolean[] keep = new boolean[n];
+		keep[0] = true;
+		keep[n - 1] = true;
+		double tolerance2 = toleranceMeters * toleranceMeters;
+		// iterative to avoid deep recursion on long recordings
+		int[] stack = new int[2 * n];
+		int sp = 0;
+		stack[sp++] = 0;
+		stack[sp++] = n - 1;
+		while (sp > 0) {
+			int last = stack[--sp];
+			int first = stack[--sp];
+			double max = -1;
+			int index = -1;
+			for (int i = first + 1; i < last; ++i) {
+				double d = distance2(x[i], y[i], x[first], y[first], x[last], y[last]);
+				if (d > max) {
+					max = d;
+					index = i;
+				}
+			}
+			if (index > 0 && max > tolerance2) {
+				keep[index] = true;
+				stack[sp++] = first;
+				stack[sp++] = index;
+				stack[sp++] = index;
+				stack[sp++] = last;
+			}
+		}
+		return keep;
+	}
+
+	/** Square of the distance between point (px,py) and segment (ax,ay)-(bx,by). */
+	static double distance2(double px, double py, double ax, double ay, double bx, double by) {
+		double dx = bx - ax;
+		double dy = by - ay;
+		double len2 = dx * dx + dy * dy;
+		double t = len2 == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / len2;
+		if (t < 0) t = 0;
+		else if (t > 1) t = 1;
+		double ex = ax + t * dx - px;
+		double ey = ay + t * dy - py;
+		return ex * ex + ey * ey;
+	}
+
+	private static Point[] rebuild(Point[] points, boolean[] keep) {
+		int nb = 0;
+		for (boolean k : keep) if (k) nb++;
+		Point[] result = new Point[nb];
+		result[0] = points[0];
+		int pos = 1;
+		Long[] deltas = new Long[6];
+		int merged = 0;
+		for (int i = 1; i < points.length; ++i) {
+			Point p = points[i];
+			deltas[0] = add(deltas[0], p.getL());
+			deltas[1] = add(deltas[1], p.getN());
+			deltas[2] = add(deltas[2], p.getE());
+			deltas[3] = add(deltas[3], p.getT());
+			deltas[4] = add(deltas[4], p.getPa());
+			deltas[5] = add(deltas[5], p.getEa());
+			merged++;
+			if (!keep[i]) continue;
+			if (merged == 1)
+				result[pos++] = p;
+			else
+				result[pos++] = new Point(deltas[0], deltas[1], deltas[2], deltas[3], deltas[4], deltas[5], p.getH(), p.getS());
+			for (int j = 0; j < deltas.length; ++j) deltas[j] = null;
+			merged = 0;
+		}
+		return result;
+	}
+
+	private static Long add(Long sum, Long value) {
+		if (value == null) return sum;
+		if (sum == null) return value;
+		return sum.longValue() + value.longValue();
+	}
+
+}
@@ -0,0 +1,186 @@
+package org.trailence.trail;
+
+import org.trailence.global.TrailenceUtils;
+import org.trailence.trail.TrackStorage.V1.StoredData;
+import org.trailence.trail.dto.Track.Point;
+import org.trailence.trail.dto.Track.Segment;
+import org.trailence.trail.dto.TrackStats;
+
+import io.r2dbc.postgresql.codec.Json;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Compute the statistics and the elevation profile of a track, so clients do not need to download and decode the full track.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class TrackStatsCalculator {
+
+	public static final int MAX_PROFILE_SAMPLES = 200;
+	private static final int MIN_PROFILE_STEP = 10;
+	// ignore elevation variations below 3 meters, to avoid counting GPS noise
+	private static final long ELEVATION_THRESHOLD = 30;
+	private static final double EARTH_RADIUS = 6371008.8d;
+
+	public static TrackStats compute(StoredData data) {
+		Accumulator acc = new Accumulator();
+		int nbPoints = 0;
+		for (Segment segment : data.s) {
+			acc.startSegment();
+			for (Point p : segment.getP()) acc.add(p);
+			nbPoints += segment.getP().length;
+		}
+		acc.endSegment();
+
+		TrackStats stats = new TrackStats();
+		stats.setDistance(Math.round(acc.distance));
+		if (acc.hasTime) {
+			stats.setDuration(acc.duration);
+			stats.setStartDate(acc.startDate);
+			stats.setEndDate(acc.endDate);
+		}
+		if (acc.minElevation != null) {
+			stats.setPositiveElevation(acc.positiveElevation);
+			stats.setNegativeElevation(acc.negativeElevation);
+			stats.setMinElevation(acc.minElevation);
+			stats.setMaxElevation(acc.maxElevation);
+		}
+		computeProfile(data, stats, nbPoints);
+		return stats;
+	}
+
+	private static void computeProfile(StoredData data, TrackStats stats, int nbPoints) {
+		int step = (int) Math.ceil(stats.getDistance() / (double) MAX_PROFILE_SAMPLES / MIN_PROFILE_STEP) * MIN_PROFILE_STEP;
+		if (step < MIN_PROFILE_STEP) step = MIN_PROFILE_STEP;
+		stats.setProfileStep(step);
+		if (nbPoints == 0) {
+			stats.setProfileDistance(new long[0]);
+			stats.setProfileElevation(new Long[0]);
+			return;
+		}
+		int nbSamples = (int) (stats.getDistance() / step) + 1;
+		if ((long) (nbSamples - 1) * step < stats.getDistance()) nbSamples++;
+		long[] distances = new long[nbSamples];
+		Long[] elevations = new Long[nbSamples];
+		int sample = 0;
+		double distance = 0;
+		double previousDistance = 0;
+		Long previousElevation = null;
+		for (Segment segment : data.s) {
+			Position pos = new Position();
+			for (Point p : segment.getP()) {
+				if (pos.next(p)) distance += pos.lastDistance;
+				Long elevation = pos.elevation;
+				// emit all the samples located between the previous point and this one
+				while (sample < nbSamples - 1 && (long) sample * step <= distance) {
+					double d = (double) sample * step;
+					distances[sample] = (long) sample * step;
+					elevations[sample] = interpolate(previousDistance, previousElevation, distance, elevation, d);
+					sample++;
+				}
+				previousDistance = distance;
+				if (elevation != null) previousElevation = elevation;
+			}
+		}
+		distances[nbSamples - 1] = stats.getDistance();
+		elevations[nbSamples - 1] = previousElevation;
+		stats.setProfileDistance(distances);
+		stats.setProfileElevation(elevations);
+	}
+
+	private static Long interpolate(double d1, Long e1, double d2, Long e2, double d) {
+		if (e1 == null) return e2;
+		if (e2 == null || d2 <= d1) return e1;
+		return Math.round(e1 + (e2 - e1) * (d - d1) / (d2 - d1));
+	}
+
+	public static Json toJson(TrackStats stats) {
+		return Json.of(TrailenceUtils.mapper.writeValueAsString(stats));
+	}
+
+	public static TrackStats fromJson(Json json) {
+		return TrailenceUtils.mapper.readValue(json.asString(), TrackStats.class);
+	}
+
+	static double distance(long lat1, long lng1, long lat2, long lng2) {
+		double phi1 = Math.toRadians(lat1 / 10000000d);
+		double phi2 = Math.toRadians(lat2 / 10000000d);
+		double dphi = phi2 - phi1;
+		double dlambda = Math.toRadians((lng2 - lng1) / 10000000d);
+		double a = Math.sin(dphi / 2) * Math.sin(dphi / 2) + Math.cos(phi1) * Math.cos(phi2) * Math.sin(dlambda / 2) * Math.sin(dlambda / 2);
+		return 2 * EARTH_RADIUS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+	}
+
+	/** Absolute position while iterating on the points of a segment, which contain differences with the previous point. */
+	private static final class Position {
+		private long lat;
+		private long lng;
+		private Long elevation;
+		private Long time;
+		private boolean hasPosition = false;
+		private double lastDistance;
+
+		/** Move to the next point, returns true if a distance was travelled. */
+		private boolean next(Point p) {
+			long newLat = lat + (p.getL() != null ? p.getL().longValue() : 0);
+			long newLng = lng + (p.getN() != null ? p.getN().longValue() : 0);
+			if (p.getE() != null) elevation = elevation == null ? p.getE() : elevation + p.getE();
+			if (p.getT() != null) time = time == null ? p.getT() : time + p.getT();
+			boolean moved = hasPosition;
+			if (moved) lastDistance = distance(lat, lng, newLat, newLng);
+			lat = newLat;
+			lng = newLng;
+			hasPosition = true;
+			return moved;
+		}
+	}
+
+	private static final class Accumulator {
+		private double distance = 0;
+		private boolean hasTime = false;
+		private long duration = 0;
+		private Long startDate;
+		private Long endDate;
+		private long positiveElevation = 0;
+		private long negativeElevation = 0;
+		private Long minElevation;
+		private Long maxElevation;
+		private Long referenceElevation;
+
+		private Position pos;
+		private Long segmentStart;
+
+		private void startSegment() {
+			endSegment();
+			pos = new Position();
+			segmentStart = null;
+		}
+
+		private void endSegment() {
+			if (pos != null && segmentStart != null && pos.time != null) duration += pos.time - segmentStart;
+		}
+
+		private void add(Point p) {
+			if (pos.next(p)) distance += pos.lastDistance;
+			if (pos.time != null) {
+				hasTime = true;
+				if (segmentStart == null) segmentStart = pos.time;
+				if (startDate == null || pos.time < startDate) startDate = pos.time;
+				if (endDate == null || pos.time > endDate) endDate = pos.time;
+			}
+			Long e = pos.elevation;
+			if (e == null) return;
+			if (minElevation == null || e < minElevation) minElevation = e;
+			if (maxElevation == null || e > maxElevation) maxElevation = e;
+			if (referenceElevation == null) referenceElevation = e;
+			else if (e - referenceElevation >= ELEVATION_THRESHOLD) {
+				positiveElevation += e - referenceElevation;
+				referenceElevation = e;
+			} else if (referenceElevation - e >= ELEVATION_THRESHOLD) {
+				negativeElevation += referenceElevation - e;
+				referenceElevation = e;
+			}
+		}
+	}
+
+}
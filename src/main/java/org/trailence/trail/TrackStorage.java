@@ -1,17 +1,16 @@
 package org.trailence.trail;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.Inflater;
@@ -21,6 +20,7 @@ import org.trailence.global.AccessibleByteArrayOutputStream;
 import org.trailence.global.TrailenceUtils;
 import org.trailence.global.io.IOEncoding;
 import org.trailence.global.io.IOUtils;
+import org.trailence.global.io.RangeCoder;
 import org.trailence.trail.dto.Track;
 import org.trailence.trail.dto.Track.Segment;
 import org.trailence.trail.dto.Track.WayPoint;
@@ -70,6 +70,84 @@ public final class TrackStorage {
 		
 		private static final int WP_BYTES = 4 + 4 + 3 + 8;
 		
+		// a raw deflate stream never starts with bits 1-2 set (BTYPE 11 is reserved),
+		// so a first byte xxxxx110 is a marker giving the coder in bits 3-7
+		private static final int CODER_MARKER = 0x06;
+		private static final int CODER_MARKER_MASK = 0x07;
+		
+		/** Entropy coder applied to the encoded columns. */
+		@AllArgsConstructor
+		public enum Coder {
+			/** Raw deflate at best compression, without marker: data written before the coders were pluggable. */
+			DEFLATE(-1) {
+				@Override
+				void encode(byte[] columns, int len, OutputStream out) throws IOException {
+					Deflater def = new Deflater(Deflater.BEST_COMPRESSION, true);
+					try {
+						def.setInput(columns, 0, len);
+						def.finish();
+						byte[] buffer = new byte[4096];
+						while (!def.finished()) {
+							int nb = def.deflate(buffer);
+							out.write(buffer, 0, nb);
+						}
+					} finally {
+						def.end();
+					}
+				}
+				
+				@Override
+				InputStream decoder(byte[] data) {
+					Inflater inf = new Inflater(true);
+					return new InflaterInputStream(new ByteArrayInputStream(data), inf, 4096) {
+						@Override
+						public void close() throws IOException {
+							try {
+								super.close();
+							} finally {
+								inf.end();
+							}
+						}
+					};
+				}
+			},
+			/**
+			 * Order-1 adaptive range coder: the marker is followed by the length of the columns.<br/>
+			 * Experimental: the server never writes it, and refuses it in the frames sent by the clients, until the clients can decode it.
+			 */
+			RANGE(1) {
+				@Override
+				void encode(byte[] columns, int len, OutputStream out) throws IOException {
+					out.write(CODER_MARKER | (id << 3));
+					IOEncoding.encodeInteger2to4(len, out);
+					var encoder = new RangeCoder.Encoder(out);
+					encoder.encode(columns, 0, len);
+					encoder.finish();
+				}
+				
+				@Override
+				InputStream decoder(byte[] data) throws IOException {
+					var in = new ByteArrayInputStream(data, 1, data.length - 1);
+					return new RangeCoder.Decoder(in, IOEncoding.decodeInteger2to4(in));
+				}
+			};
+			
+			protected final int id;
+			
+			abstract void encode(byte[] columns, int len, OutputStream out) throws IOException;
+			
+			abstract InputStream decoder(byte[] data) throws IOException;
+			
+			/** Coder used by the given data. */
+			public static Coder of(byte[] data) throws IOException {
+				if (data.length == 0 || (data[0] & CODER_MARKER_MASK) != CODER_MARKER) return DEFLATE;
+				int id = (data[0] & 0xFF) >> 3;
+				for (var coder : values())
+					if (coder.id == id) return coder;
+				throw new IOException("Unknown track data coder: " + id);
+			}
+		}
+		
 		private static class Info {
 			boolean hasElevation = false;
 			boolean hasTime = false;
@@ -77,6 +155,9 @@ public final class TrackStorage {
 			boolean hasEa = false;
 			int nbSegments = 0;
 			int nbWaypoints = 0;
+			// the header byte is full: heading and speed are flagged in an optional byte after the way points
+			boolean hasHeading = false;
+			boolean hasSpeed = false;
 			
 			public void encode(OutputStream out) throws IOException {
 				int i = (hasElevation ? 0x01 : 0) |
@@ -122,15 +203,32 @@ public final class TrackStorage {
 				}
 				return info;
 			}
+			
+			public void encodeChannels(OutputStream out) throws IOException {
+				out.write((hasHeading ? 0x01 : 0) | (hasSpeed ? 0x02 : 0));
+			}
+			
+			/** Return false if the data ends after the way points, as written before heading and speed were stored. */
+			public boolean decodeChannels(InputStream in) throws IOException {
+				int i = in.read();
+				if (i == -1) return false;
+				if ((i & 0x01) != 0) hasHeading = true;
+				if ((i & 0x02) != 0) hasSpeed = true;
+				return true;
+			}
+			
+			private boolean hasAll() {
+				return hasElevation && hasTime && hasPa && hasEa && hasHeading && hasSpeed;
+			}
 		}
 		
 		public static byte[] v1DtoToV2(V1.StoredData value) throws IOException {
+			return v1DtoToV2(value, Coder.DEFLATE);
+		}
+		
+		public static byte[] v1DtoToV2(V1.StoredData value, Coder coder) throws IOException {
 			try (AccessibleByteArrayOutputStream bos = new AccessibleByteArrayOutputStream(8192)) {
-				try (
-					Deflater def = new Deflater(Deflater.BEST_COMPRESSION, true);
-					DeflaterOutputStream gos = new DeflaterOutputStream(bos, def, 2048);
-					BufferedOutputStream out = new BufferedOutputStream(gos, 8192)
-				) {
+				try (AccessibleByteArrayOutputStream out = new AccessibleByteArrayOutputStream(8192)) {
 					Info info = new Info();
 					info.nbSegments = value.s.length;
 					info.nbWaypoints = value.wp.length;
@@ -140,9 +238,11 @@ public final class TrackStorage {
 							if (!info.hasTime && point.getT() != null) info.hasTime = true;
 							if (!info.hasPa && point.getPa() != null) info.hasPa = true;
 							if (!info.hasEa && point.getEa() != null) info.hasEa = true;
-							if (info.hasElevation && info.hasTime && info.hasPa && info.hasEa) break;
+							if (!info.hasHeading && point.getH() != null) info.hasHeading = true;
+							if (!info.hasSpeed && point.getS() != null) info.hasSpeed = true;
+							if (info.hasAll()) break;
 						}
-						if (info.hasElevation && info.hasTime && info.hasPa && info.hasEa) break;
+						if (info.hasAll()) break;
 					}
 					info.encode(out);
 					for (var segment : value.s) {
@@ -158,7 +258,7 @@ public final class TrackStorage {
 						// time is 64 bits integer
 						// posAccuracy, with factor 100: 10km would be 1000000 => 24 bits integer
 						// eleAccuracy, with factor 100: same 24 bits integer
-						// forget about heading and speed
+						// heading and speed are stored after the way points
 
 						Long v = points[0].getL();
 						long l = v == null ? 0 : v.longValue();
@@ -265,6 +365,23 @@ public final class TrackStorage {
 							encodeStringMap(out, wp.getDt());
 						}
 					}
+					if (info.hasHeading || info.hasSpeed) {
+						info.encodeChannels(out);
+						for (var segment : value.s) {
+							var points = segment.getP();
+							if (points.length == 0) continue;
+							Long[] values = new Long[points.length];
+							if (info.hasHeading) {
+								for (int i = 0; i < points.length; ++i) values[i] = points[i].getH();
+								encodeInstantaneous(out, values);
+							}
+							if (info.hasSpeed) {
+								for (int i = 0; i < points.length; ++i) values[i] = points[i].getS();
+								encodeInstantaneous(out, values);
+							}
+						}
+					}
+					coder.encode(out.getData(), out.getLength(), bos);
 				}
 				byte[] result = bos.getData();
 				int len = bos.getLength();
@@ -276,16 +393,22 @@ public final class TrackStorage {
 		}
 		
 		public static V1.StoredData v2ToV1Dto(byte[] v2) throws IOException {
-			try (ByteArrayInputStream bis = new ByteArrayInputStream(v2)) {
-				try (
-					Inflater inf = new Inflater(true);
-					InflaterInputStream gis = new InflaterInputStream(bis, inf, 4096);
-					BufferedInputStream in = new BufferedInputStream(gis, 8192)
-				) {
+			return v2ToV1Dto(v2, Integer.MAX_VALUE);
+		}
+		
+		/** Decode data received from a client: the number of points and way points is checked before allocating them. */
+		public static V1.StoredData v2ToV1Dto(byte[] v2, int maxItems) throws IOException {
+			try (InputStream decoder = Coder.of(v2).decoder(v2)) {
+				try (BufferedInputStream in = new BufferedInputStream(decoder, 8192)) {
 					Info info = Info.decode(in);
+					long nbItems = (long) info.nbSegments + info.nbWaypoints;
+					if (nbItems > maxItems) throw new IOException("Too many items: " + nbItems);
 					Track.Point[][] segments = new Track.Point[info.nbSegments][];
 					for (int i = 0; i < info.nbSegments; ++i) {
-						segments[i] = new Track.Point[IOEncoding.decodeInteger2to4(in)];
+						int nb = IOEncoding.decodeInteger2to4(in);
+						nbItems += nb;
+						if (nbItems > maxItems) throw new IOException("Too many items: " + nbItems);
+						segments[i] = new Track.Point[nb];
 					}
 					for (int s = 0; s < info.nbSegments; ++s) {
 						int nb = segments[s].length;
@@ -358,6 +481,22 @@ public final class TrackStorage {
 							v1.wp[i].setDt(decodeStringMap(in));
 						}
 					}
+					
+					if (info.decodeChannels(in) && (info.hasHeading || info.hasSpeed)) {
+						for (var points : segments) {
+							if (points.length == 0) continue;
+							Long[] values = new Long[points.length];
+							if (info.hasHeading) {
+								decodeInstantaneous(in, values);
+								for (int i = 0; i < points.length; ++i) points[i].setH(values[i]);
+							}
+							if (info.hasSpeed) {
+								Arrays.fill(values, null);
+								decodeInstantaneous(in, values);
+								for (int i = 0; i < points.length; ++i) points[i].setS(values[i]);
+							}
+						}
+					}
 
 					return v1;
 				}
@@ -887,6 +1026,92 @@ public final class TrackStorage {
 			decodeSplitBitsNumbers(bits, values, encodingLength, hasNegative, isNull, addLastDigit, 1L << (encodingLength * 8 + 7));
 		}
 		
+		private static void encodeInstantaneous(OutputStream out, Long[] values) throws IOException {
+			// heading and speed are instantaneous values: unlike the other values of the DTO, the values after the first point
+			// are not differences, and null means unknown. They are encoded like accuracies, on the differences between known values.
+
+			IOEncoding.BitEncoder bits = new IOEncoding.BitEncoder(out);
+			
+			int nbNull = 0;
+			for (var v : values) if (v == null) nbNull++;
+			if (nbNull == 0) {
+				bits.encode(false);
+			} else {
+				bits.encode(true);
+				for (var v : values) bits.encode(v == null);
+			}
+			Long[] deltas = new Long[values.length - nbNull];
+			int pos = 0;
+			long previous = 0;
+			for (var v : values) {
+				if (v == null) continue;
+				deltas[pos++] = v - previous;
+				previous = v;
+			}
+			if (deltas.length == 0) {
+				bits.close();
+				return;
+			}
+			boolean hasNegative = false;
+			for (long l : deltas) if (l < 0) { hasNegative = true; break; }
+			bits.encode(hasNegative);
+			
+			for (int i = 0; i < 2; ++i) {
+				boolean hasLastDigit = false;
+				for (long l : deltas) if ((l % 10) != 0) { hasLastDigit = true; break; }
+				bits.encode(hasLastDigit);
+				if (hasLastDigit) break;
+				for (int j = 0; j < deltas.length; ++j) deltas[j] = deltas[j] / 10;
+			}
+			
+			long maxAbs = 0;
+			for (var v : deltas) {
+				long l = Math.abs(v.longValue());
+				if (l < 0) l = Long.MAX_VALUE;
+				if (l > maxAbs) maxAbs = l;
+			}
+			int encodingLength = 0;
+			while (encodingLength < 7 && maxAbs >= (hasNegative ? 0x80L : 0x100L) << (encodingLength * 8)) encodingLength++;
+			bits.encode((encodingLength & 1) != 0);
+			bits.encode((encodingLength & 2) != 0);
+			bits.encode((encodingLength & 4) != 0);
+			encodeSplitBitsNumbers(bits, deltas, encodingLength, hasNegative, 1L << (encodingLength * 8 + 7));
+			bits.close();
+		}
+
+		private static void decodeInstantaneous(InputStream in, Long[] values) throws IOException {
+			IOEncoding.BitDecoder bits = new IOEncoding.BitDecoder(in);
+			
+			boolean hasNull = bits.decode();
+			boolean[] isNull = new boolean[values.length];
+			boolean allNull = hasNull;
+			if (hasNull) {
+				for (int i = 0; i < values.length; ++i) {
+					isNull[i] = bits.decode();
+					allNull = allNull && isNull[i];
+				}
+			}
+			if (allNull) return;
+
+			boolean hasNegative = bits.decode();
+			int addLastDigit = 0;
+			for (int i = 0; i < 2; ++i) {
+				boolean b = bits.decode();
+				if (b) break;
+				addLastDigit++;
+			}
+
+			int encodingLength = (bits.decode() ? 1 : 0) | (bits.decode() ? 2 : 0) | (bits.decode() ? 4 : 0);
+			
+			decodeSplitBitsNumbers(bits, values, encodingLength, hasNegative, isNull, addLastDigit, 1L << (encodingLength * 8 + 7));
+			long previous = 0;
+			for (int i = 0; i < values.length; ++i) {
+				if (isNull[i]) continue;
+				previous += values[i];
+				values[i] = previous;
+			}
+		}
+		
 		private static void encodeString(OutputStream out, String s) throws IOException {
 			if (s == null || s.isEmpty()) {
 				IOEncoding.encodeInteger2(0, out);
@@ -95,8 +95,14 @@ public class TrailCollectionService {
     	return quotaService.addCollections(owner, entities.size())
     	.flatMap(nb -> {
     		var toCreate = nb == entities.size() ? entities : entities.subList(0, nb);
-    		return DbUtils.insertMany(r2dbc, toCreate);
-    	});
+    		return DbUtils.insertIgnoringConflicts(r2dbc, toCreate, "uuid", "owner");
+    	})
+    	// collections created concurrently are returned as they are in the database
+    	.flatMap(result -> result.conflicts().isEmpty() ? Mono.just(result.inserted()) :
+    		quotaService.collectionsDeleted(owner, result.conflicts().size())
+    		.then(repo.findAllByUuidInAndOwner(result.conflicts().stream().map(TrailCollectionEntity::getUuid).toList(), owner).collectList())
+    		.map(existing -> result.withConflicts(existing).all())
+    	);
     }
     
     @Transactional
@@ -149,7 +149,7 @@ public class TrailLinkService {
 	private TrailLinkContent toTrailLinkContent(String link, TrailEntity trail, TrackEntity track, List<PhotoEntity> photos) {
 		StoredData trackData;
 		try {
-			trackData = TrackStorage.V1V2Bridge.v2ToV1Dto(track.getData());
+			trackData = TrackDelta.decode(track);
 		} catch (IOException _) {
 			throw new  NotFoundException("trail-link", link);
 		}
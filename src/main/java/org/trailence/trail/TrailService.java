@@ -29,6 +29,7 @@ import org.trailence.global.db.BulkGetUpdates;
 import org.trailence.global.db.BulkUtils;
 import org.trailence.global.db.BulkUtils.ChecksAndActions;
 import org.trailence.global.db.DbUtils;
+import org.trailence.global.db.DbUtils.InsertResult;
 import org.trailence.global.db.SqlBuilder;
 import org.trailence.global.dto.UpdateResponse;
 import org.trailence.global.dto.Versioned;
@@ -46,7 +47,6 @@ import org.trailence.trail.db.PublicTrailRepository;
 import org.trailence.trail.db.ShareElementEntity;
 import org.trailence.trail.db.ShareEntity;
 import org.trailence.trail.db.ShareRecipientEntity;
-import org.trailence.trail.db.TrackRepository;
 import org.trailence.trail.db.TrailCollectionEntity;
 import org.trailence.trail.db.TrailCollectionRepository;
 import org.trailence.trail.db.TrailEntity;
@@ -61,7 +61,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 import reactor.util.function.Tuples;
 import tools.jackson.core.type.TypeReference;
 
@@ -71,7 +70,6 @@ import tools.jackson.core.type.TypeReference;
 public class TrailService {
 
     private final TrailRepository repo;
-    private final TrackRepository trackRepo;
     private final TrailCollectionRepository collectionRepo;
     private final ModerationMessageRepository moderationMessageRepo;
     private final PublicTrailRepository publicTrailRepo;
@@ -82,6 +80,7 @@ public class TrailService {
     private final TrailTagService trailTagService;
     private final TrackService trackService;
     private final NotificationsService notifService;
+    private final TrailValidation validation;
     
     @Autowired @Lazy @SuppressWarnings("java:S6813")
     private TrailService self;
@@ -122,6 +121,14 @@ public class TrailService {
 
     public Mono<List<Trail>> bulkCreate(List<Trail> dtos, Authentication auth) {
     	String owner = TrailenceUtils.email(auth);
+    	// resolved once, and shared with the single creations in case of fallback
+    	Mono<TrailValidation.Context> context = Mono.defer(() -> validation.load(
+    		owner,
+    		TrailValidation.uuids(dtos.stream().map(Trail::getCollectionUuid)),
+    		TrailValidation.uuids(dtos.stream().flatMap(dto -> Stream.of(dto.getOriginalTrackUuid(), dto.getCurrentTrackUuid())))
+    	)).cache();
+    	Map<String, Trail> dtosByUuid = new HashMap<>();
+    	dtos.forEach(dto -> dtosByUuid.putIfAbsent(dto.getUuid(), dto));
     	return BulkUtils.bulkCreate(
     		dtos, owner,
     		this::validateCreate,
@@ -158,63 +165,61 @@ public class TrailService {
                 entity.setUpdatedAt(entity.getCreatedAt());
                 return entity;
     		},
-    		entities -> self.createTrailsWithQuota(entities, owner, dtos),
+    		entities -> context.flatMap(ctx -> self.createTrailsWithQuota(entities, owner, dtosByUuid, ctx))
+    			.doOnNext(result -> handleFollowedTrails(result.inserted(), owner))
+    			.doOnNext(result -> handleNotificationsForNewTrails(result.inserted(), owner))
+    			.map(InsertResult::all),
     		repo
     	)
-    	.doOnNext(trails -> handleFollowedTrails(trails, owner))
-    	.doOnNext(trails -> handleNotificationsForNewTrails(trails, owner))
     	.map(list -> list.stream().map(this::toDTO).toList());
     }
     
     @Transactional
-    public Mono<List<TrailEntity>> createTrailsWithQuota(List<TrailEntity> entities, String owner, List<Trail> dtos) {
-    	Set<UUID> collectionsUuids = new HashSet<>();
-    	Set<UUID> tracksUuids = new HashSet<>();
-    	entities.forEach(entity -> {
-    		collectionsUuids.add(entity.getCollectionUuid());
-    		tracksUuids.add(entity.getOriginalTrackUuid());
-    		tracksUuids.add(entity.getCurrentTrackUuid());
-    	});
-    	
-    	return Mono.zip(
-    		collectionRepo.findAllByUuidInAndOwner(collectionsUuids, owner).collectList().publishOn(Schedulers.parallel()),
-    		trackRepo.findExistingUuids(tracksUuids, owner).collectList().publishOn(Schedulers.parallel())
-    	).flatMap(tuple -> {
-    		List<TrailCollectionEntity> existingCollections = tuple.getT1();
-    		List<UUID> existingTracksUuids = tuple.getT2();
+    public Mono<InsertResult<TrailEntity>> createTrailsWithQuota(List<TrailEntity> entities, String owner, Map<String, Trail> dtosByUuid, TrailValidation.Context context) {
+    	return Mono.defer(() -> {
     		List<Throwable> errors = new LinkedList<>();
     		List<TrailEntity> toCreate = new LinkedList<>();
-    		List<Mono<Void>> actions = new LinkedList<>();
+    		Map<UUID, ModerationMessageEntity> moderationMessages = new HashMap<>();
     		for (var entity : entities) {
-    			var collectionOpt = existingCollections.stream().filter(c -> c.getUuid().equals(entity.getCollectionUuid())).findAny();
-    			if (collectionOpt.isEmpty()) {
+    			var collection = context.collection(entity.getCollectionUuid());
+    			if (collection == null) {
     				errors.add(new NotFoundException("collection", entity.getCollectionUuid().toString()));
     				continue;
     			}
-    			var collection = collectionOpt.get();
     			if (!TrailCollectionType.PUBLICATION_TYPES.contains(collection.getType()))
     				entity.setPublishedFromUuid(null);
     			if (TrailCollectionType.PUB_SUBMIT.equals(collection.getType())) {
-    				var dto = dtos.stream().filter(d -> d.getUuid().equals(entity.getUuid().toString())).findAny().get();
+    				var dto = dtosByUuid.get(entity.getUuid().toString());
     				if (dto.getPublicationMessageFromAuthor() != null && !dto.getPublicationMessageFromAuthor().isBlank())
-    					actions.add(r2dbc.insert(new ModerationMessageEntity(entity.getUuid(), entity.getOwner(), dto.getPublicationMessageFromAuthor(), null, ModerationMessageEntity.TYPE_PUBLISH)).then());
+    					moderationMessages.put(entity.getUuid(), new ModerationMessageEntity(entity.getUuid(), entity.getOwner(), dto.getPublicationMessageFromAuthor(), null, ModerationMessageEntity.TYPE_PUBLISH));
     			}
     			if (!ALLOWED_CREATE_COLLECTION_TYPES.contains(collection.getType()))
     				errors.add(new ForbiddenException("Cannot create a trail in this type of collection"));
-    			else if (!existingTracksUuids.contains(entity.getOriginalTrackUuid()))
+    			else if (!context.trackExists(entity.getOriginalTrackUuid()))
     				errors.add(new TrackNotFound(owner, entity.getOriginalTrackUuid().toString()));
-    			else if (!existingTracksUuids.contains(entity.getCurrentTrackUuid()))
+    			else if (!context.trackExists(entity.getCurrentTrackUuid()))
     				errors.add(new TrackNotFound(owner, entity.getCurrentTrackUuid().toString()));
     			else
     				toCreate.add(entity);
     		}
     		if (toCreate.isEmpty()) return Mono.error(errors.getFirst());
-    		return (actions.isEmpty() ? Mono.empty() : Flux.fromIterable(actions).flatMap(a -> a, 1, 1).then())
-    		.then(quotaService.addTrails(owner, toCreate.size()))
+    		return quotaService.addTrails(owner, toCreate.size())
 	    	.flatMap(nb -> {
 	    		var toCreate2 = nb == toCreate.size() ? toCreate : toCreate.subList(0, nb);
-	    		return DbUtils.insertMany(r2dbc, toCreate2);
-	    	});
+	    		return DbUtils.insertIgnoringConflicts(r2dbc, toCreate2, "uuid", "owner");
+	    	})
+	    	// trails created concurrently are returned as they are in the database
+	    	.flatMap(result -> result.conflicts().isEmpty() ? Mono.just(result) :
+	    		quotaService.trailsDeleted(owner, result.conflicts().size())
+	    		.then(repo.findAllByUuidInAndOwner(result.conflicts().stream().map(TrailEntity::getUuid).toList(), owner).collectList())
+	    		.map(result::withConflicts)
+	    	)
+	    	// moderation messages only for the trails actually created
+	    	.flatMap(result -> moderationMessages.isEmpty() ? Mono.just(result) :
+	    		Flux.fromIterable(result.inserted()).mapNotNull(entity -> moderationMessages.get(entity.getUuid()))
+	    		.concatMap(r2dbc::insert)
+	    		.then(Mono.just(result))
+	    	);
     	});
     }
     
@@ -272,11 +277,29 @@ public class TrailService {
     	return BulkUtils.bulkUpdate(
     		dtos, owner,
     		this::validate,
-    		(entity, dto, checksAndActions) -> this.updateEntity(entity, dto, checksAndActions, owner, true),
+    		entities -> loadContext(entities, dtos, owner),
+    		context -> (entity, dto, checksAndActions) -> this.updateEntity(entity, dto, checksAndActions, owner, true, context),
     		repo, r2dbc
     	).map(this::toDTO);
     }
     
+    /** Resolve the current and target collections, and the new tracks, of the trails to update. */
+    private Mono<TrailValidation.Context> loadContext(List<TrailEntity> entities, List<Trail> dtos, String owner) {
+    	Map<String, Trail> dtosByUuid = new HashMap<>();
+    	dtos.forEach(dto -> dtosByUuid.putIfAbsent(dto.getUuid(), dto));
+    	Set<UUID> collectionsUuids = new HashSet<>();
+    	List<String> tracksUuids = new LinkedList<>();
+    	for (var entity : entities) {
+    		collectionsUuids.add(entity.getCollectionUuid());
+    		var dto = dtosByUuid.get(entity.getUuid().toString());
+    		if (dto == null) continue;
+    		collectionsUuids.addAll(TrailValidation.uuids(Stream.of(dto.getCollectionUuid())));
+    		if (dto.getCurrentTrackUuid() != null && !dto.getCurrentTrackUuid().equals(entity.getCurrentTrackUuid().toString()))
+    			tracksUuids.add(dto.getCurrentTrackUuid());
+    	}
+    	return validation.load(owner, collectionsUuids, TrailValidation.uuids(tracksUuids.stream()));
+    }
+    
     public Mono<Trail> updateTrailAsModerator(TrailEntity entity, Trail dto, boolean isReject) {
     	ChecksAndActions checksAndActions = new ChecksAndActions();
     	Mono<Void> before = Mono.empty();
@@ -295,8 +318,8 @@ public class TrailService {
 	    		}))
 	    		.doOnNext(col -> dto.setCollectionUuid(col.getUuid().toString()))
 	    		.then();
-    	return before.then(Mono.defer(() -> {
-    		boolean updated = this.updateEntity(entity, dto, checksAndActions, entity.getOwner(), false);
+    	return before.then(Mono.defer(() -> loadContext(List.of(entity), List.of(dto), entity.getOwner()))).flatMap(context -> {
+    		boolean updated = this.updateEntity(entity, dto, checksAndActions, entity.getOwner(), false, context);
     		if (!updated) return Mono.just(dto);
     		return checksAndActions.execute(DbUtils.updateByUuidAndOwner(r2dbc, entity), nb -> nb > 0)
             .flatMap(nb -> nb == 0 ? Mono.error(new ConflictException("trail-conflict", "Conflict with another version")) : repo.findByUuidAndOwner(entity.getUuid(), entity.getOwner()))
@@ -308,27 +331,24 @@ public class TrailService {
         			response.setPublicationMessageFromModerator(messageEntity.getModeratorMessage());
             	}).thenReturn(response)
             );
-    	}));
+    	});
     }
     
     @SuppressWarnings("java:S3776")
-    private boolean updateEntity(TrailEntity entity, Trail dto, ChecksAndActions checksAndActions, String owner, boolean fromOwner) {
+    private boolean updateEntity(TrailEntity entity, Trail dto, ChecksAndActions checksAndActions, String owner, boolean fromOwner, TrailValidation.Context context) {
     	var allowedCollectionFrom = fromOwner ? ALLOWED_OWNER_UPDATE_COLLECTION_TYPES : ALLOWED_MODERATOR_UPDATE_COLLECTION_TYPES;
-    	checksAndActions.addCheck(
-    		collectionRepo.findByUuidAndOwner(entity.getCollectionUuid(), owner)
-    		.map(col -> {
-    			if (allowedCollectionFrom.contains(col.getType())) return Optional.<Throwable>empty();
-    			return Optional.<Throwable>of(new ForbiddenException());
-    		})
-    		.switchIfEmpty(Mono.just(Optional.<Throwable>of(new NotFoundException("collection", entity.getCollectionUuid().toString()))))
-    	);
+    	var currentCollection = context.collection(entity.getCollectionUuid());
+    	if (currentCollection == null)
+    		checksAndActions.addCheck(Mono.just(Optional.of(new NotFoundException("collection", entity.getCollectionUuid().toString()))));
+    	else if (!allowedCollectionFrom.contains(currentCollection.getType()))
+    		checksAndActions.addCheck(Mono.just(Optional.of(new ForbiddenException())));
     	
         var changed = false;
         if (dto.getCollectionUuid() != null && !dto.getCollectionUuid().equals(entity.getCollectionUuid().toString())) {
         	var newUuid = UUID.fromString(dto.getCollectionUuid());
         	var allowedTargetTypes = fromOwner ? ALLOWED_OWNER_MOVE_TO_COLLECTION_TYPES : ALLOWED_MODERATOR_MOVE_TO_COLLECTION_TYPES;
         	checksAndActions.addCheck(
-        		collectionRepo.findByUuidAndOwner(newUuid, owner)
+        		Mono.justOrEmpty(context.collection(newUuid))
         		.flatMap(col -> {
         			Mono<Void> action = Mono.empty();
         			if (fromOwner && TrailCollectionType.PUB_SUBMIT.equals(col.getType())) {
@@ -369,10 +389,8 @@ public class TrailService {
         }
         if (dto.getCurrentTrackUuid() != null && !dto.getCurrentTrackUuid().equals(entity.getCurrentTrackUuid().toString())) {
         	var newUuid = UUID.fromString(dto.getCurrentTrackUuid());
-        	checksAndActions.addCheck(
-        		trackRepo.existsByUuidAndOwner(newUuid, owner)
-        		.map(exists -> exists.booleanValue() ? Optional.empty() : Optional.of(new TrackNotFound(owner, newUuid.toString())))
-        	);
+        	if (!context.trackExists(newUuid))
+        		checksAndActions.addCheck(Mono.just(Optional.of(new TrackNotFound(owner, newUuid.toString()))));
         	if (!entity.getCurrentTrackUuid().equals(entity.getOriginalTrackUuid()))
         		checksAndActions.addActionOnSuccess(trackService.deleteTracksWithQuota(Set.of(entity.getCurrentTrackUuid()), owner));
             entity.setCurrentTrackUuid(newUuid);
@@ -1,16 +1,17 @@
 package org.trailence.trail;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
 import org.springframework.data.relational.core.sql.Conditions;
 import org.springframework.data.relational.core.sql.SQL;
@@ -19,6 +20,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.trailence.global.db.BulkUtils;
 import org.trailence.global.db.DbUtils;
+import org.trailence.global.db.DbUtils.InsertResult;
 import org.trailence.global.db.SqlBuilder;
 import org.trailence.global.exceptions.BadRequestException;
 import org.trailence.global.exceptions.ValidationUtils;
@@ -27,7 +29,9 @@ import org.trailence.quotas.QuotaService;
 import org.trailence.trail.db.ShareElementEntity;
 import org.trailence.trail.db.ShareEntity;
 import org.trailence.trail.db.ShareRecipientEntity;
+import org.trailence.trail.db.TagEntity;
 import org.trailence.trail.db.TagRepository;
+import org.trailence.trail.db.TrailEntity;
 import org.trailence.trail.db.TrailRepository;
 import org.trailence.trail.db.TrailTagEntity;
 import org.trailence.trail.db.TrailTagRepository;
@@ -66,7 +70,7 @@ public class TrailTagService {
 		String owner = auth.getPrincipal().toString();
 		Set<UUID> tagsUuids = new HashSet<>();
 		Set<UUID> trailsUuids = new HashSet<>();
-		Set<Tuple2<UUID, UUID>> pairs = new HashSet<>();
+		Map<Tuple2<UUID, UUID>, TrailTag> pairs = new HashMap<>();
 		List<Throwable> errors = new LinkedList<>();
 		dtos.forEach(dto -> {
 			try {
@@ -76,7 +80,7 @@ public class TrailTagService {
 				tagsUuids.add(tagUuid);
 				var trailUuid = UUID.fromString(dto.getTrailUuid());
 				trailsUuids.add(trailUuid);
-				pairs.add(Tuples.of(tagUuid, trailUuid));
+				pairs.putIfAbsent(Tuples.of(tagUuid, trailUuid), dto);
 			} catch (Exception e) {
 				errors.add(e);
 			}
@@ -89,35 +93,36 @@ public class TrailTagService {
 			trailRepo.findAllByUuidInAndOwner(trailsUuids, owner).collectList().publishOn(Schedulers.parallel()),
 			tagRepo.findAllByUuidInAndOwner(tagsUuids, owner).collectList().publishOn(Schedulers.parallel())
 		).flatMapMany(existing -> {
-			var valid = pairs.stream().filter(tuple -> {
-				var trail = existing.getT1().stream().filter(t -> t.getUuid().equals(tuple.getT2())).findAny();
-				if (trail.isEmpty()) return false;
-				var tag = existing.getT2().stream().filter(t -> t.getUuid().equals(tuple.getT1())).findAny();
-				if (tag.isEmpty()) return false;
-				return trail.get().getCollectionUuid().equals(tag.get().getCollectionUuid());
+			Map<UUID, TrailEntity> trails = existing.getT1().stream().collect(Collectors.toMap(TrailEntity::getUuid, t -> t));
+			Map<UUID, TagEntity> tags = existing.getT2().stream().collect(Collectors.toMap(TagEntity::getUuid, t -> t));
+			var valid = pairs.entrySet().stream().filter(entry -> {
+				var trail = trails.get(entry.getKey().getT2());
+				if (trail == null) return false;
+				var tag = tags.get(entry.getKey().getT1());
+				if (tag == null) return false;
+				return trail.getCollectionUuid().equals(tag.getCollectionUuid());
 			}).toList();
 			if (valid.isEmpty()) return Flux.error(new BadRequestException("invalid-input", "trailUuid or tagUuid not found, or they do not belong to the same collection"));
 			return Flux.fromIterable(valid);
-		}).map(tuple -> {
-			var dto = dtos.stream().filter(d -> tuple.getT1().toString().equals(d.getTagUuid()) && tuple.getT2().toString().equals(d.getTrailUuid())).findAny();
-			return toEntity(dto.get(), owner);
-		});
-		return BulkUtils.handleOperationsResult(
-			BulkUtils.parallelSingleOperations(
-				entities,
-				entity -> self.createWithQuota(entity).onErrorResume(DuplicateKeyException.class, _ -> Mono.just(entity))
-			),
+		}).map(entry -> toEntity(entry.getValue(), owner));
+		return entities.collectList()
+		.flatMap(list -> BulkUtils.bulkFallbackWithSingleOperation(
+			list,
+			toCreate -> self.createWithQuota(toCreate, owner)
+				.doOnNext(result -> handleNotificationsForNewTrailTags(result.inserted(), owner))
+				.map(InsertResult::all),
 			List.<TrailTagEntity>of(),
 			errors
-		)
-		.doOnNext(list -> handleNotificationsForNewTrailTags(list, owner))
+		))
 		.map(list -> list.stream().map(this::toDto).toList());
 	}
 	
+	/** Create the trail tags, ignoring the ones already existing: a conflicting trail tag has the same key, so it is returned as given. */
 	@Transactional
-	public Mono<TrailTagEntity> createWithQuota(TrailTagEntity entity) {
-		return quotaService.addTrailTags(entity.getOwner(), 1)
-		.flatMap(_ -> r2dbc.insert(entity));
+	public Mono<InsertResult<TrailTagEntity>> createWithQuota(List<TrailTagEntity> entities, String owner) {
+		return quotaService.addTrailTags(owner, entities.size())
+		.flatMap(nb -> DbUtils.insertIgnoringConflicts(r2dbc, nb == entities.size() ? entities : entities.subList(0, nb), "tagUuid", "trailUuid", "owner"))
+		.flatMap(result -> result.conflicts().isEmpty() ? Mono.just(result) : quotaService.trailTagsDeleted(owner, result.conflicts().size()).thenReturn(result));
 	}
 	
 	@Transactional
@@ -0,0 +1,63 @@
+package org.trailence.trail;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.springframework.stereotype.Component;
+import org.trailence.trail.db.TrackRepository;
+import org.trailence.trail.db.TrailCollectionEntity;
+import org.trailence.trail.db.TrailCollectionRepository;
+
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Resolves the collections and tracks referenced by a bulk operation on trails, with one query per type,
+ * so the validation of each trail does not need its own queries.
+ */
+@Component
+@RequiredArgsConstructor
+public class TrailValidation {
+
+	private final TrailCollectionRepository collectionRepo;
+	private final TrackRepository trackRepo;
+
+	public record Context(Map<UUID, TrailCollectionEntity> collections, Set<UUID> tracks) {
+		public TrailCollectionEntity collection(UUID uuid) {
+			return collections.get(uuid);
+		}
+
+		public boolean trackExists(UUID uuid) {
+			return tracks.contains(uuid);
+		}
+	}
+
+	public Mono<Context> load(String owner, Collection<UUID> collectionsUuids, Collection<UUID> tracksUuids) {
+		Mono<Map<UUID, TrailCollectionEntity>> collections = collectionsUuids.isEmpty() ? Mono.just(Map.of()) :
+			collectionRepo.findAllByUuidInAndOwner(collectionsUuids, owner).collectMap(TrailCollectionEntity::getUuid);
+		Mono<Set<UUID>> tracks = tracksUuids.isEmpty() ? Mono.just(Set.of()) :
+			trackRepo.findExistingUuids(tracksUuids, owner).collect(HashSet::new, Set::add);
+		return Mono.zip(collections.publishOn(Schedulers.parallel()), tracks.publishOn(Schedulers.parallel()))
+		.map(tuple -> new Context(tuple.getT1(), tuple.getT2()));
+	}
+
+	/** Parse the given uuids, ignoring null and invalid ones which are rejected by the validation of the DTOs. */
+	public static Set<UUID> uuids(Stream<String> uuids) {
+		Set<UUID> result = new HashSet<>();
+		uuids.forEach(uuid -> {
+			if (uuid == null) return;
+			try {
+				result.add(UUID.fromString(uuid));
+			} catch (IllegalArgumentException e) {
+				// ignore
+			}
+		});
+		return result;
+	}
+
+}
@@ -0,0 +1,21 @@
+package org.trailence.trail.db;
+
+import java.util.UUID;
+
+import org.springframework.data.relational.core.mapping.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Table("public_track_tiers")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PublicTrackTierEntity {
+
+	private UUID trailUuid;
+	private short tier;
+	private byte[] data;
+
+}
@@ -0,0 +1,15 @@
+package org.trailence.trail.db;
+
+import java.util.UUID;
+
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+
+import reactor.core.publisher.Mono;
+
+public interface PublicTrackTierRepository extends ReactiveCrudRepository<PublicTrackTierEntity, UUID> {
+
+	Mono<PublicTrackTierEntity> findOneByTrailUuidAndTier(UUID trailUuid, short tier);
+	
+	Mono<Long> deleteAllByTrailUuid(UUID trailUuid);
+	
+}
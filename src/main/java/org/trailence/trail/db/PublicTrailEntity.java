@@ -58,13 +58,6 @@ public class PublicTrailEntity {
 	
 	private Integer[] simplifiedPath;
 	
-	private long nbRate0;
-	private long nbRate1;
-	private long nbRate2;
-	private long nbRate3;
-	private long nbRate4;
-	private long nbRate5;
-	
 	private String lang;
 	private Json nameTranslations;
 	private Json descriptionTranslations;
@@ -81,12 +74,5 @@ public class PublicTrailEntity {
 	public static final Column COL_NEGATIVE_ELEVATION = Column.create("negative_elevation", TABLE);
 	public static final Column COL_LOOP_TYPE = Column.create("loop_type", TABLE);
 	public static final Column COL_ACTIVITY = Column.create("activity", TABLE);
-	public static final String COL_NB_RATE_PREFIX = "nb_rate";
-	public static final Column COL_NB_RATE0 = Column.create(COL_NB_RATE_PREFIX + "0", TABLE);
-	public static final Column COL_NB_RATE1 = Column.create(COL_NB_RATE_PREFIX + "1", TABLE);
-	public static final Column COL_NB_RATE2 = Column.create(COL_NB_RATE_PREFIX + "2", TABLE);
-	public static final Column COL_NB_RATE3 = Column.create(COL_NB_RATE_PREFIX + "3", TABLE);
-	public static final Column COL_NB_RATE4 = Column.create(COL_NB_RATE_PREFIX + "4", TABLE);
-	public static final Column COL_NB_RATE5 = Column.create(COL_NB_RATE_PREFIX + "5", TABLE);
 	
 }
@@ -0,0 +1,30 @@
+package org.trailence.trail.db;
+
+import java.util.UUID;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.ReadOnlyProperty;
+import org.springframework.data.relational.core.mapping.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Table("public_trail_ratings")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PublicTrailRatingEntity {
+
+	@Id
+	private UUID trailUuid;
+	private long nbRate0;
+	private long nbRate1;
+	private long nbRate2;
+	private long nbRate3;
+	private long nbRate4;
+	private long nbRate5;
+	@ReadOnlyProperty
+	private Double average;
+	
+}
@@ -0,0 +1,25 @@
+package org.trailence.trail.db;
+
+import java.util.UUID;
+
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+
+import reactor.core.publisher.Mono;
+
+public interface PublicTrailRatingRepository extends ReactiveCrudRepository<PublicTrailRatingEntity, UUID> {
+
+	/** Atomically add the given number of rates for each value (negative to remove rates). */
+	@Modifying
+	@Query("INSERT INTO public_trail_ratings (trail_uuid,nb_rate0,nb_rate1,nb_rate2,nb_rate3,nb_rate4,nb_rate5) VALUES (:trailUuid,:nb0,:nb1,:nb2,:nb3,:nb4,:nb5)"
+		+ " ON CONFLICT (trail_uuid) DO UPDATE SET"
+		+ " nb_rate0 = public_trail_ratings.nb_rate0 + EXCLUDED.nb_rate0,"
+		+ " nb_rate1 = public_trail_ratings.nb_rate1 + EXCLUDED.nb_rate1,"
+		+ " nb_rate2 = public_trail_ratings.nb_rate2 + EXCLUDED.nb_rate2,"
+		+ " nb_rate3 = public_trail_ratings.nb_rate3 + EXCLUDED.nb_rate3,"
+		+ " nb_rate4 = public_trail_ratings.nb_rate4 + EXCLUDED.nb_rate4,"
+		+ " nb_rate5 = public_trail_ratings.nb_rate5 + EXCLUDED.nb_rate5")
+	Mono<Void> addRates(UUID trailUuid, long nb0, long nb1, long nb2, long nb3, long nb4, long nb5);
+	
+}
@@ -4,6 +4,7 @@ import org.springframework.data.relational.core.mapping.Table;
 import org.springframework.data.relational.core.sql.Column;
 import org.trailence.global.db.AbstractEntityUuidOwner;
 
+import io.r2dbc.postgresql.codec.Json;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
@@ -15,6 +16,9 @@ import lombok.NoArgsConstructor;
 public class TrackEntity extends AbstractEntityUuidOwner {
 
 	private byte[] data;
+	private Json stats;
+	private byte[] tail;
+	private byte[] hashes;
 	
     public static final org.springframework.data.relational.core.sql.Table TABLE = org.springframework.data.relational.core.sql.Table.create("tracks");
     public static final Column COL_UUID = Column.create("uuid", TABLE);
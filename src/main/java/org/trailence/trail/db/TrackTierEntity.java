@@ -0,0 +1,22 @@
+package org.trailence.trail.db;
+
+import java.util.UUID;
+
+import org.springframework.data.relational.core.mapping.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Table("track_tiers")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackTierEntity {
+
+	private UUID uuid;
+	private String owner;
+	private short tier;
+	private byte[] data;
+
+}
@@ -0,0 +1,15 @@
+package org.trailence.trail.db;
+
+import java.util.UUID;
+
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+
+import reactor.core.publisher.Mono;
+
+public interface TrackTierRepository extends ReactiveCrudRepository<TrackTierEntity, UUID> {
+
+	Mono<TrackTierEntity> findOneByUuidAndOwnerAndTier(UUID uuid, String owner, short tier);
+	
+	Mono<Long> deleteAllByUuidAndOwner(UUID uuid, String owner);
+	
+}
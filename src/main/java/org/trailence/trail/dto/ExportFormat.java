@@ -0,0 +1,17 @@
+package org.trailence.trail.dto;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum ExportFormat {
+
+	GPX("gpx", "application/gpx+xml"),
+	KML("kml", "application/vnd.google-earth.kml+xml"),
+	GEOJSON("geojson", "application/geo+json");
+	
+	private final String extension;
+	private final String contentType;
+	
+}
@@ -0,0 +1,24 @@
+package org.trailence.trail.dto;
+
+import org.trailence.trail.dto.Track.Segment;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Points to add at the end of a track, typically sent periodically during a recording.<br/>
+ * If continueSegment is true, the first segment continues the last segment of the track, so its first point contains
+ * the differences with the last point of the track. Else all segments are new segments.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackAppend {
+
+	private String uuid;
+	private long version;
+	private boolean continueSegment;
+	private Segment[] s;
+
+}
@@ -0,0 +1,28 @@
+package org.trailence.trail.dto;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Level of detail of a track.<br/>
+ * Simplified tiers are precomputed when a track is stored, with a tolerance adapted to a range of map zoom levels.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum TrackDetail {
+
+	/** Full resolution, as stored. */
+	FULL(0, 0),
+	/** Zoom 15 and more: 2 meters tolerance. */
+	HIGH(1, 2),
+	/** Zoom 12 to 14: 10 meters tolerance. */
+	MEDIUM(2, 10),
+	/** Zoom 11 and less: 50 meters tolerance. */
+	LOW(3, 50);
+	
+	private final int tier;
+	private final double toleranceMeters;
+	
+	public static final TrackDetail[] TIERS = { HIGH, MEDIUM, LOW };
+	
+}
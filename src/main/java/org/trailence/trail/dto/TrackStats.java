@@ -0,0 +1,33 @@
+package org.trailence.trail.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Statistics and elevation profile of a track.<br/>
+ * Distances are in meters, elevations use the same scale as the track (decimeters), times are in milliseconds.
+ * Values are null when the track does not contain the information.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackStats {
+
+	private long distance;
+	private Long duration;
+	private Long startDate;
+	private Long endDate;
+	private Long positiveElevation;
+	private Long negativeElevation;
+	private Long minElevation;
+	private Long maxElevation;
+	
+	/** Distance between 2 samples of the profile. */
+	private int profileStep;
+	/** Cumulative distance of each sample, the last one being the end of the track. */
+	private long[] profileDistance;
+	/** Elevation at each sample. */
+	private Long[] profileElevation;
+	
+}
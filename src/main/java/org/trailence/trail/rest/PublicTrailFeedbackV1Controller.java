@@ -2,6 +2,7 @@ package org.trailence.trail.rest;
 
 import java.util.List;
 
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -11,6 +12,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
 import org.trailence.trail.FeedbackService;
 import org.trailence.trail.dto.CreateFeedbackRequest;
 import org.trailence.trail.dto.MyFeedback;
@@ -57,15 +59,18 @@ public class PublicTrailFeedbackV1Controller {
 	}
 	
 	@GetMapping("/{trailUuid}")
-	public Mono<List<PublicTrailFeedback>> getFeedbacks(
+	public Mono<ResponseEntity<List<PublicTrailFeedback>>> getFeedbacks(
 		@PathVariable("trailUuid") String trailUuid,
 		@RequestParam(name = "pageFromDate", required = false, defaultValue = "0") long pageFromDate,
+		@RequestParam(name = "pageFromUuid", required = false) String pageFromUuid,
 		@RequestParam(name = "size", required = false, defaultValue = "25") int size,
 		@RequestParam(name = "pageFromDateExclude", required = false, defaultValue = "") String excludeFromStartingDate,
 		@RequestParam(name = "filterRate", required = false) Integer filterRate,
-		Authentication auth
+		Authentication auth,
+		ServerWebExchange exchange
 	) {
-		return service.getFeedbacks(trailUuid, pageFromDate, size, excludeFromStartingDate, filterRate, auth);
+		return service.getValidatedFeedbacks(trailUuid, pageFromDate, pageFromUuid, size, excludeFromStartingDate, filterRate, auth)
+		.flatMap(feedbacks -> feedbacks.toResponse(exchange));
 	}
 	
 	@GetMapping("/{trailUuid}/mine")
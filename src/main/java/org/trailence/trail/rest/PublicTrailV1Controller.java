@@ -5,8 +5,7 @@ import java.util.List;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DefaultDataBuffer;
-import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -16,21 +15,26 @@ import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
 import org.trailence.global.TrailenceUtils;
 import org.trailence.global.exceptions.UnauthorizedException;
+import org.trailence.global.rest.CompressedPayload;
+import org.trailence.global.rest.Validated;
 import org.trailence.trail.PublicTrailService;
 import org.trailence.trail.SiteMapService;
 import org.trailence.trail.dto.MyPublicTrail;
 import org.trailence.trail.dto.PatchPublicTrailRequest;
-import org.trailence.trail.dto.PublicTrack;
 import org.trailence.trail.dto.PublicTrail;
 import org.trailence.trail.dto.PublicTrailSearch.SearchByBoundsRequest;
 import org.trailence.trail.dto.PublicTrailSearch.SearchByBoundsResponse;
 import org.trailence.trail.dto.PublicTrailSearch.SearchByTileRequest;
 import org.trailence.trail.dto.PublicTrailSearch.SearchByTileResponse;
+import org.trailence.trail.dto.TrackDetail;
+import org.trailence.trail.dto.TrackStats;
 import org.trailence.trail.dto.UserTrails;
 
 import lombok.RequiredArgsConstructor;
@@ -56,13 +60,13 @@ public class PublicTrailV1Controller {
 	}
 	
 	@GetMapping("/trailById/{uuid}")
-	public Mono<PublicTrail> getById(@PathVariable("uuid") String uuid, Authentication auth) {
-		return service.getById(uuid, auth);
+	public Mono<ResponseEntity<PublicTrail>> getById(@PathVariable("uuid") String uuid, Authentication auth, ServerWebExchange exchange) {
+		return service.getValidatedById(uuid, auth).flatMap(trail -> trail.toResponse(exchange));
 	}
 	
 	@GetMapping("/trailBySlug/{slug}")
-	public Mono<PublicTrail> getBySlug(@PathVariable("slug") String slug, Authentication auth) {
-		return service.getBySlug(slug, auth);
+	public Mono<ResponseEntity<PublicTrail>> getBySlug(@PathVariable("slug") String slug, Authentication auth, ServerWebExchange exchange) {
+		return service.getValidatedBySlug(slug, auth).flatMap(trail -> trail.toResponse(exchange));
 	}
 	
 	@PostMapping("/trailsByIds")
@@ -86,21 +90,36 @@ public class PublicTrailV1Controller {
 	@GetMapping("/photo/{trailUuid}/{photoUuid}")
 	public Mono<ResponseEntity<Flux<DataBuffer>>> getPhotoContent(
 		@PathVariable("trailUuid") String trailUuid,
-		@PathVariable("photoUuid") String photoUuid
+		@PathVariable("photoUuid") String photoUuid,
+		ServerWebExchange exchange
 	) {
 		return service.getPhotoFileContent(trailUuid, photoUuid)
-		.map(flux -> ResponseEntity
-			.ok()
+		.flatMap(photo -> photo.toResponse(exchange, (response, flux) -> response
 			.contentType(MediaType.APPLICATION_OCTET_STREAM)
 			.header("Cache-Control", "public, max-age=" + PHOTO_CACHE_SECONDS)
 			.header("Expires", Instant.now().plusSeconds(PHOTO_CACHE_SECONDS).toString())
 			.body(flux)
-		);
+		));
 	}
 	
 	@GetMapping("/track/{trailUuid}")
-	public Mono<PublicTrack> getTrack(@PathVariable("trailUuid") String trailUuid) {
-		return service.getTrack(trailUuid);
+	public Mono<ResponseEntity<byte[]>> getTrack(
+		@PathVariable("trailUuid") String trailUuid,
+		@RequestParam(name = "detail", required = false) TrackDetail detail,
+		@RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+		ServerWebExchange exchange
+	) {
+		if (!Validated.isConditional(exchange))
+			return service.getTrackPayload(trailUuid, detail).map(payload -> payload.toResponse(acceptEncoding, MediaType.APPLICATION_JSON));
+		// get the digest first, so the payload is not read if the client already has it
+		return service.getTrackDigest(trailUuid, detail)
+		.map(digest -> new Validated<>(CompressedPayload.etag(digest, acceptEncoding), service.getTrackPayload(trailUuid, detail)))
+		.flatMap(track -> track.toResponse(exchange, (response, payload) -> payload.toResponse(response, acceptEncoding, MediaType.APPLICATION_JSON)));
+	}
+	
+	@GetMapping("/track/{trailUuid}/stats")
+	public Mono<TrackStats> getTrackStats(@PathVariable("trailUuid") String trailUuid) {
+		return service.getTrackStats(trailUuid);
 	}
 	
 	@PatchMapping("/trail/{trailUuid}")
@@ -153,19 +172,16 @@ public class PublicTrailV1Controller {
 	}
 	
 	@GetMapping("/sitemap.xml")
-	public Mono<ResponseEntity<Flux<DefaultDataBuffer>>> sitemapIndex() {
-		return Mono.just(ResponseEntity.ok()
-			.contentType(MediaType.APPLICATION_XML)
-			.body(sitemap.generateSiteMapIndex().map(DefaultDataBufferFactory.sharedInstance::wrap))
-		);
+	public Mono<ResponseEntity<byte[]>> sitemapIndex(@RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+		return sitemap.getSiteMapIndex().map(payload -> payload.toResponse(acceptEncoding, MediaType.APPLICATION_XML));
 	}
 	
 	@GetMapping("/sitemaps/{page}/sitemap.xml")
-	public Mono<ResponseEntity<Flux<DefaultDataBuffer>>> sitemapPage(@PathVariable("page") int page) {
-		return Mono.just(ResponseEntity.ok()
-			.contentType(MediaType.APPLICATION_XML)
-			.body(sitemap.generateSiteMapPage(page).map(DefaultDataBufferFactory.sharedInstance::wrap))
-		);
+	public Mono<ResponseEntity<byte[]>> sitemapPage(
+		@PathVariable("page") int page,
+		@RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+	) {
+		return sitemap.getSiteMapPage(page).map(payload -> payload.toResponse(acceptEncoding, MediaType.APPLICATION_XML));
 	}
 	
 	@GetMapping("/examples")
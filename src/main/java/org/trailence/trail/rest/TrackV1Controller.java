@@ -2,6 +2,11 @@ package org.trailence.trail.rest;
 
 import java.util.List;
 
+import org.springframework.core.io.buffer.DefaultDataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -9,15 +14,22 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
 import org.trailence.global.dto.UpdateResponse;
 import org.trailence.global.dto.UuidAndOwner;
 import org.trailence.global.dto.Versioned;
 import org.trailence.global.rest.RetryRest;
+import org.trailence.trail.TrackFrame;
 import org.trailence.trail.TrackService;
 import org.trailence.trail.dto.Track;
+import org.trailence.trail.dto.TrackAppend;
+import org.trailence.trail.dto.TrackDetail;
+import org.trailence.trail.dto.TrackStats;
 
 import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @RestController
@@ -28,8 +40,17 @@ public class TrackV1Controller {
 	private final TrackService service;
 
 	@GetMapping("/{owner}/{uuid}")
-	public Mono<Track> getTrack(@PathVariable("uuid") String uuid, @PathVariable("owner") String owner, Authentication auth) {
-		return RetryRest.retry(service.getTrack(uuid, owner, auth));
+	public Mono<ResponseEntity<Object>> getTrack(
+		@PathVariable("uuid") String uuid, @PathVariable("owner") String owner, @RequestParam(name = "detail", required = false) TrackDetail detail,
+		Authentication auth, ServerWebExchange exchange
+	) {
+		if (acceptsFrame(exchange)) return frame(RetryRest.retry(service.getTrackFrame(uuid, owner, detail, auth)));
+		return json(RetryRest.retry(service.getTrack(uuid, owner, detail, auth)));
+	}
+	
+	@GetMapping("/{owner}/{uuid}/stats")
+	public Mono<TrackStats> getTrackStats(@PathVariable("uuid") String uuid, @PathVariable("owner") String owner, Authentication auth) {
+		return RetryRest.retry(service.getTrackStats(uuid, owner, auth));
 	}
 	
 	@PostMapping()
@@ -37,19 +58,57 @@ public class TrackV1Controller {
 		return RetryRest.retry(service.createTrack(track, auth));
 	}
 	
+	@PostMapping(consumes = TrackFrame.MEDIA_TYPE_VALUE, produces = TrackFrame.MEDIA_TYPE_VALUE)
+	public Mono<byte[]> createFromFrame(@RequestBody byte[] body, Authentication auth) {
+		return RetryRest.retry(service.createTrackFromFrame(body, auth)).map(TrackFrame::encode);
+	}
+	
 	@PutMapping()
 	public Mono<Track> update(@RequestBody Track track, Authentication auth) {
 		return RetryRest.retry(service.updateTrack(track, auth));
 	}
 	
+	@PutMapping(consumes = TrackFrame.MEDIA_TYPE_VALUE, produces = TrackFrame.MEDIA_TYPE_VALUE)
+	public Mono<byte[]> updateFromFrame(@RequestBody byte[] body, Authentication auth) {
+		return RetryRest.retry(service.updateTrackFromFrame(body, auth)).map(TrackFrame::encode);
+	}
+	
+	@PutMapping("/_append")
+	public Mono<Versioned> append(@RequestBody TrackAppend append, Authentication auth) {
+		return RetryRest.retry(service.appendToTrack(append, auth));
+	}
+	
 	@PostMapping("/_bulkDelete")
 	public Mono<Void> bulkDelete(@RequestBody List<String> uuids, Authentication auth) {
 		return RetryRest.retry(service.bulkDelete(uuids, auth));
 	}
 	
+	@PostMapping("/_bulkGet")
+	public Mono<ResponseEntity<Flux<DefaultDataBuffer>>> bulkGet(@RequestBody List<UuidAndOwner> tracks, Authentication auth) {
+		return Mono.just(ResponseEntity.ok()
+			.contentType(MediaType.APPLICATION_OCTET_STREAM)
+			.body(service.bulkGet(tracks, auth).map(DefaultDataBufferFactory.sharedInstance::wrap))
+		);
+	}
+	
 	@PostMapping("/_bulkGetUpdates")
 	public Mono<UpdateResponse<UuidAndOwner>> bulkGetUpdates(@RequestBody List<Versioned> known, Authentication auth) {
 		return RetryRest.retry(service.getUpdates(known, auth));
 	}
 	
+	/** The binary format is used only if the client explicitly accepts it, JSON remains the default: both responses vary on Accept. */
+	private static boolean acceptsFrame(ServerWebExchange exchange) {
+		for (var type : exchange.getRequest().getHeaders().getAccept())
+			if (TrackFrame.MEDIA_TYPE.equalsTypeAndSubtype(type) && type.getQualityValue() > 0) return true;
+		return false;
+	}
+	
+	private static Mono<ResponseEntity<Object>> frame(Mono<TrackFrame> frame) {
+		return frame.map(f -> ResponseEntity.ok().contentType(TrackFrame.MEDIA_TYPE).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).body(f.encode()));
+	}
+	
+	private static Mono<ResponseEntity<Object>> json(Mono<Track> track) {
+		return track.map(t -> ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).body(t));
+	}
+	
 }
@@ -2,16 +2,26 @@ package org.trailence.trail.rest;
 
 import java.util.List;
 
+import org.springframework.core.io.buffer.DefaultDataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.trailence.global.dto.UpdateResponse;
 import org.trailence.global.dto.Versioned;
 import org.trailence.global.rest.RetryRest;
+import org.trailence.trail.TrackExportService;
 import org.trailence.trail.TrailService;
+import org.trailence.trail.dto.ExportFormat;
 import org.trailence.trail.dto.Trail;
 
 import lombok.RequiredArgsConstructor;
@@ -24,6 +34,7 @@ import reactor.core.publisher.Mono;
 public class TrailV1Controller {
 
 	private final TrailService service;
+	private final TrackExportService exportService;
 	
 	@PostMapping("/_bulkCreate")
 	public Mono<List<Trail>> bulkCreate(@RequestBody List<Trail> trails, Authentication auth) {
@@ -40,6 +51,21 @@ public class TrailV1Controller {
 		return RetryRest.retry(service.bulkDelete(uuids, auth));
 	}
 	
+	@GetMapping("/_export")
+	public Mono<ResponseEntity<Flux<DefaultDataBuffer>>> export(
+		@RequestParam(name = "format") ExportFormat format,
+		@RequestParam(name = "zip", required = false, defaultValue = "false") boolean zip,
+		@RequestParam(name = "collection", required = false) String collectionUuid,
+		Authentication auth
+	) {
+		String fileName = "trailence." + (zip ? "zip" : format.getExtension());
+		return Mono.just(ResponseEntity.ok()
+			.contentType(MediaType.parseMediaType(zip ? "application/zip" : format.getContentType()))
+			.header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+			.body(exportService.export(collectionUuid, format, zip, auth).map(DefaultDataBufferFactory.sharedInstance::wrap))
+		);
+	}
+	
 	@PostMapping("/_bulkGetUpdates")
 	public Mono<UpdateResponse<Trail>> bulkGetUpdates(@RequestBody List<Versioned> known, Authentication auth) {
 		return RetryRest.retry(service.getUpdates(known, auth));
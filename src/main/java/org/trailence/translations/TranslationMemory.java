@@ -0,0 +1,132 @@
+package org.trailence.translations;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * Memory of previous translations and language detections, so the same text is sent only once to the remote services.<br/>
+ * Entries are identified by the kind of operation, a hash of the normalized text, the source and the target language.
+ * Recent entries are kept in memory, and all entries are stored in the database.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TranslationMemory {
+
+	public static final String KIND_DETECT = "detect";
+	public static final String KIND_TRANSLATE = "translate";
+	public static final String KIND_AI = "ai";
+
+	private final R2dbcEntityTemplate r2dbc;
+
+	@Value("${trailence.translations.memory-size:10000}")
+	private int memorySize;
+
+	private final Map<String, String> memory = new LinkedHashMap<>(256, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > memorySize;
+		}
+	};
+
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong databaseHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Return the result from the memory if known, else call the remote service and remember its result.
+	 * Empty results are not remembered, so they are requested again next time.
+	 */
+	public Mono<String> get(String kind, String text, String source, String target, Supplier<Mono<String>> remote) {
+		if (text == null || text.isBlank()) return remote.get();
+		byte[] hash = hash(text);
+		String s = source != null ? source : "";
+		String t = target != null ? target : "";
+		String key = kind + '|' + s + '|' + t + '|' + HexFormat.of().formatHex(hash);
+		String known;
+		synchronized (memory) {
+			known = memory.get(key);
+		}
+		if (known != null) {
+			memoryHits.incrementAndGet();
+			return Mono.just(known);
+		}
+		return r2dbc.getDatabaseClient()
+		.sql("SELECT result FROM translation_memory WHERE kind = $1 AND text_hash = $2 AND source = $3 AND target = $4")
+		.bind(0, kind).bind(1, hash).bind(2, s).bind(3, t)
+		.map((row, _) -> row.get(0, String.class))
+		.one()
+		.doOnNext(_ -> databaseHits.incrementAndGet())
+		.onErrorResume(e -> {
+			log.warn("Error reading translation memory", e);
+			return Mono.empty();
+		})
+		.switchIfEmpty(Mono.defer(() -> {
+			misses.incrementAndGet();
+			return remote.get().filter(result -> !result.isEmpty()).flatMap(result -> store(kind, hash, s, t, result));
+		}))
+		.doOnNext(result -> {
+			synchronized (memory) {
+				memory.put(key, result);
+			}
+		});
+	}
+
+	private Mono<String> store(String kind, byte[] hash, String source, String target, String result) {
+		return r2dbc.getDatabaseClient()
+		.sql("INSERT INTO translation_memory (kind, text_hash, source, target, result, created_at) VALUES ($1, $2, $3, $4, $5, $6) ON CONFLICT DO NOTHING")
+		.bind(0, kind).bind(1, hash).bind(2, source).bind(3, target).bind(4, result).bind(5, System.currentTimeMillis())
+		.then()
+		.onErrorResume(e -> {
+			log.warn("Error storing translation memory", e);
+			return Mono.empty();
+		})
+		.thenReturn(result);
+	}
+
+	/** Hash of the text, ignoring differences of Unicode normalization, leading and trailing white spaces, and runs of spaces or tabs. Line breaks are kept. */
+	static byte[] hash(String text) {
+		String normalized = Normalizer.normalize(text, Normalizer.Form.NFC).strip().replaceAll("\\h+", " ");
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public long getMemoryHits() {
+		return memoryHits.get();
+	}
+
+	public long getDatabaseHits() {
+		return databaseHits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public void clearMemory() {
+		synchronized (memory) {
+			memory.clear();
+		}
+	}
+
+}
@@ -4,9 +4,11 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.trailence.external.aistudio.AIStudioService;
+import org.trailence.global.metrics.ExternalCallMetrics;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
+import jakarta.annotation.PostConstruct;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -20,13 +22,25 @@ import reactor.core.publisher.Mono;
 @RequiredArgsConstructor
 public class TranslationService {
 	
+	private final ExternalCallMetrics metrics;
 	private final AIStudioService ai;
+	private final TranslationMemory memory;
 
 	@Value("${trailence.translations.url:}")
 	private String baseUrl;
 	
+	private WebClient client;
+	
+	@PostConstruct
+	public void init() {
+		client = metrics.webClient("translations").baseUrl(baseUrl).build();
+	}
+	
 	public Mono<String> detectLanguage(String text) {
-		WebClient client = WebClient.builder().baseUrl(baseUrl).build();
+		return memory.get(TranslationMemory.KIND_DETECT, text, null, null, () -> detectLanguageRemote(text));
+	}
+	
+	private Mono<String> detectLanguageRemote(String text) {
 		return client.post().uri("/detect").bodyValue(new DetectRequest(text))
 		.exchangeToFlux(response -> {
 			if (response.statusCode().is2xxSuccessful())
@@ -61,7 +75,10 @@ public class TranslationService {
 	}
 	
 	public Mono<String> translate(String text, String from, String to) {
-		WebClient client = WebClient.builder().baseUrl(baseUrl).build();
+		return memory.get(TranslationMemory.KIND_TRANSLATE, text, from, to, () -> translateRemote(text, from, to));
+	}
+	
+	private Mono<String> translateRemote(String text, String from, String to) {
 		return client.post().uri("/translate").bodyValue(new TranslateRequest(text, from, to, "text", 0))
 		.exchangeToMono(response -> {
 			if (response.statusCode().is2xxSuccessful())
@@ -77,7 +94,8 @@ public class TranslationService {
 	}
 	
 	public Mono<String> translateWithAI(String text) {
-		return this.ai.generateContent(text);
+		// the prompt contains the target language, so no source and target are needed to identify the result
+		return memory.get(TranslationMemory.KIND_AI, text, null, null, () -> this.ai.generateContent(text)).defaultIfEmpty("");
 	}
 	
 	@Data
@@ -0,0 +1,5 @@
+CREATE TABLE IF NOT EXISTS public.init_fingerprints
+(
+    id character varying(100) NOT NULL PRIMARY KEY,
+    fingerprint character varying(64) NOT NULL
+)
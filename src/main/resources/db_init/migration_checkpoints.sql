@@ -0,0 +1,6 @@
+CREATE TABLE IF NOT EXISTS public.migration_checkpoints
+(
+    id character varying(150) NOT NULL PRIMARY KEY,
+    last_key character varying(250)[],
+    nb_done bigint NOT NULL
+)
@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS public.public_track_payloads
+(
+    trail_uuid uuid NOT NULL,
+    tier smallint NOT NULL,
+    gzip bytea NOT NULL,
+    size integer NOT NULL,
+    digest character varying(32) NOT NULL,
+    CONSTRAINT public_track_payloads_pkey PRIMARY KEY (trail_uuid, tier)
+);
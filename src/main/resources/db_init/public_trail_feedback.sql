@@ -8,3 +8,11 @@ CREATE TABLE IF NOT EXISTS public.public_trail_feedback
     comment character varying(50000) COLLATE pg_catalog."default" DEFAULT NULL,
     reviewed boolean DEFAULT FALSE
 );
+
+CREATE INDEX IF NOT EXISTS public_trail_feedback_trail_date
+    ON public.public_trail_feedback USING btree
+    (public_trail_uuid, date DESC, uuid DESC);
+
+CREATE INDEX IF NOT EXISTS public_trail_feedback_email
+    ON public.public_trail_feedback USING btree
+    (email);
@@ -0,0 +1,21 @@
+CREATE TABLE IF NOT EXISTS public.public_trail_ratings
+(
+    trail_uuid uuid NOT NULL PRIMARY KEY,
+    nb_rate0 bigint NOT NULL DEFAULT 0,
+    nb_rate1 bigint NOT NULL DEFAULT 0,
+    nb_rate2 bigint NOT NULL DEFAULT 0,
+    nb_rate3 bigint NOT NULL DEFAULT 0,
+    nb_rate4 bigint NOT NULL DEFAULT 0,
+    nb_rate5 bigint NOT NULL DEFAULT 0,
+    nb_rates bigint GENERATED ALWAYS AS (nb_rate0 + nb_rate1 + nb_rate2 + nb_rate3 + nb_rate4 + nb_rate5) STORED,
+    sum_rates bigint GENERATED ALWAYS AS (nb_rate1 + 2 * nb_rate2 + 3 * nb_rate3 + 4 * nb_rate4 + 5 * nb_rate5) STORED,
+    average double precision GENERATED ALWAYS AS (
+        CASE WHEN nb_rate0 + nb_rate1 + nb_rate2 + nb_rate3 + nb_rate4 + nb_rate5 > 0
+        THEN (nb_rate1 + 2 * nb_rate2 + 3 * nb_rate3 + 4 * nb_rate4 + 5 * nb_rate5)::double precision / (nb_rate0 + nb_rate1 + nb_rate2 + nb_rate3 + nb_rate4 + nb_rate5)
+        END
+    ) STORED
+);
+
+CREATE INDEX IF NOT EXISTS public_trail_ratings_average
+    ON public.public_trail_ratings USING btree
+    (average);
@@ -32,12 +32,6 @@ CREATE TABLE IF NOT EXISTS public.public_trails
     tile_zoom9 int NOT NULL,
     tile_zoom10 int NOT NULL,
     simplified_path int[] NOT NULL,
-    nb_rate0 bigint DEFAULT 0,
-    nb_rate1 bigint DEFAULT 0,
-    nb_rate2 bigint DEFAULT 0,
-    nb_rate3 bigint DEFAULT 0,
-    nb_rate4 bigint DEFAULT 0,
-    nb_rate5 bigint DEFAULT 0,
     lang character varying(2) NOT NULL DEFAULT 'fr',
     name_translations jsonb,
     description_translations jsonb,
@@ -46,6 +40,9 @@ CREATE TABLE IF NOT EXISTS public.public_trails
     search_text_en tsvector DEFAULT NULL
 );
 
+CREATE INDEX IF NOT EXISTS public_trails_author
+    ON public.public_trails USING btree
+    (author);
 CREATE INDEX IF NOT EXISTS public_trails_bounds
     ON public.public_trails USING gist
     (bounds box_ops);
@@ -120,7 +117,8 @@ CREATE EXTENSION IF NOT EXISTS unaccent;
 CREATE TABLE IF NOT EXISTS public.public_tracks
 (
 	trail_uuid uuid NOT NULL PRIMARY KEY,
-	data bytea NOT NULL
+	data bytea NOT NULL,
+	stats jsonb DEFAULT NULL
 );
 
 CREATE TABLE IF NOT EXISTS public.public_photos
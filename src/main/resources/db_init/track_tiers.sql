@@ -0,0 +1,16 @@
+CREATE TABLE IF NOT EXISTS public.track_tiers
+(
+    uuid uuid NOT NULL,
+    owner character varying(250) COLLATE pg_catalog."default" NOT NULL,
+    tier smallint NOT NULL,
+    data bytea NOT NULL,
+    CONSTRAINT track_tiers_pkey PRIMARY KEY (uuid, owner, tier)
+);
+
+CREATE TABLE IF NOT EXISTS public.public_track_tiers
+(
+    trail_uuid uuid NOT NULL,
+    tier smallint NOT NULL,
+    data bytea NOT NULL,
+    CONSTRAINT public_track_tiers_pkey PRIMARY KEY (trail_uuid, tier)
+);
@@ -6,5 +6,8 @@ CREATE TABLE IF NOT EXISTS public.tracks
     created_at bigint NOT NULL,
     updated_at bigint NOT NULL,
     data bytea NOT NULL,
+    stats jsonb DEFAULT NULL,
+    tail bytea DEFAULT NULL,
+    hashes bytea DEFAULT NULL,
     CONSTRAINT tracks_pkey PRIMARY KEY (uuid, owner)
 )
\ No newline at end of file
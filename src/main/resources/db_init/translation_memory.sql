@@ -0,0 +1,10 @@
+CREATE TABLE IF NOT EXISTS public.translation_memory
+(
+    kind character varying(16) COLLATE pg_catalog."default" NOT NULL,
+    text_hash bytea NOT NULL,
+    source character varying(16) COLLATE pg_catalog."default" NOT NULL,
+    target character varying(16) COLLATE pg_catalog."default" NOT NULL,
+    result text COLLATE pg_catalog."default" NOT NULL,
+    created_at bigint NOT NULL,
+    CONSTRAINT translation_memory_pkey PRIMARY KEY (kind, text_hash, source, target)
+);
@@ -0,0 +1,3 @@
+ALTER TABLE public.public_track_payloads ADD COLUMN IF NOT EXISTS digest character varying(32);
+DELETE FROM public.public_track_payloads WHERE digest IS NULL;
+ALTER TABLE public.public_track_payloads ALTER COLUMN digest SET NOT NULL;
@@ -0,0 +1,20 @@
+INSERT INTO public.public_trail_ratings (trail_uuid, nb_rate0, nb_rate1, nb_rate2, nb_rate3, nb_rate4, nb_rate5)
+SELECT public_trail_uuid,
+    count(*) FILTER (WHERE rate = 0),
+    count(*) FILTER (WHERE rate = 1),
+    count(*) FILTER (WHERE rate = 2),
+    count(*) FILTER (WHERE rate = 3),
+    count(*) FILTER (WHERE rate = 4),
+    count(*) FILTER (WHERE rate = 5)
+FROM public.public_trail_feedback
+WHERE rate IS NOT NULL
+GROUP BY public_trail_uuid
+ON CONFLICT (trail_uuid) DO NOTHING;
+
+ALTER TABLE public.public_trails
+    DROP COLUMN IF EXISTS nb_rate0,
+    DROP COLUMN IF EXISTS nb_rate1,
+    DROP COLUMN IF EXISTS nb_rate2,
+    DROP COLUMN IF EXISTS nb_rate3,
+    DROP COLUMN IF EXISTS nb_rate4,
+    DROP COLUMN IF EXISTS nb_rate5;
@@ -0,0 +1,2 @@
+ALTER TABLE public.tracks ADD COLUMN IF NOT EXISTS stats jsonb DEFAULT NULL;
+ALTER TABLE public.public_tracks ADD COLUMN IF NOT EXISTS stats jsonb DEFAULT NULL;
\ No newline at end of file
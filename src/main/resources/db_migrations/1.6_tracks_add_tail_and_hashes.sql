@@ -0,0 +1,2 @@
+ALTER TABLE public.tracks ADD COLUMN IF NOT EXISTS tail bytea DEFAULT NULL;
+ALTER TABLE public.tracks ADD COLUMN IF NOT EXISTS hashes bytea DEFAULT NULL;
\ No newline at end of file
@@ -0,0 +1,92 @@
+package org.trailence.global.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.trailence.trail.db.TrailCollectionEntity;
+import org.trailence.trail.dto.TrailCollectionType;
+import org.trailence.test.AbstractTest;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class TestBulkInsert extends AbstractTest {
+
+	@Autowired private R2dbcEntityTemplate r2dbc;
+
+	private static List<TrailCollectionEntity> collections(String owner, int nb) {
+		List<TrailCollectionEntity> list = new ArrayList<>(nb);
+		for (int i = 0; i < nb; ++i) {
+			TrailCollectionEntity entity = new TrailCollectionEntity();
+			entity.setUuid(UUID.randomUUID());
+			entity.setOwner(owner);
+			entity.setName("Collection " + i + (i % 10 == 0 ? " with\ttab, new\nline and back\\slash" : ""));
+			entity.setType(TrailCollectionType.CUSTOM);
+			entity.setCreatedAt(System.currentTimeMillis());
+			entity.setUpdatedAt(entity.getCreatedAt());
+			list.add(entity);
+		}
+		return list;
+	}
+
+	@Test
+	void copyAndConflicts() {
+		String owner = "bulk-insert-" + UUID.randomUUID() + "@synthetic.test";
+		var first = collections(owner, 200);
+		var result = DbUtils.insertIgnoringConflicts(r2dbc, first, true, "uuid", "owner").block();
+		assertThat(result.inserted()).containsExactlyElementsOf(first);
+		assertThat(result.conflicts()).isEmpty();
+		assertThat(first).allMatch(c -> c.getVersion() == 1);
+
+		// half of the entities already exist
+		var second = new ArrayList<>(first.subList(0, 100));
+		second.addAll(collections(owner, 100));
+		result = DbUtils.insertIgnoringConflicts(r2dbc, second, true, "uuid", "owner").block();
+		assertThat(result.conflicts()).containsExactlyElementsOf(first.subList(0, 100));
+		assertThat(result.inserted()).containsExactlyElementsOf(second.subList(100, 200));
+
+		// same with a multi-row INSERT
+		var third = new ArrayList<>(second.subList(100, 120));
+		third.addAll(collections(owner, 20));
+		result = DbUtils.insertIgnoringConflicts(r2dbc, third, false, "uuid", "owner").block();
+		assertThat(result.conflicts()).containsExactlyElementsOf(second.subList(100, 120));
+		assertThat(result.inserted()).containsExactlyElementsOf(third.subList(20, 40));
+
+		var names = r2dbc.getDatabaseClient().sql("SELECT name FROM collections WHERE owner = $1").bind(0, owner)
+			.map((row, _) -> row.get(0, String.class)).all().collectList().block();
+		assertThat(names).hasSize(320).contains("Collection 0 with\ttab, new\nline and back\\slash");
+		r2dbc.getDatabaseClient().sql("DELETE FROM collections WHERE owner = $1").bind(0, owner).then().block();
+	}
+
+	@Test
+	void benchmark() {
+		String owner = "bulk-insert-" + UUID.randomUUID() + "@synthetic.test";
+		for (int nb : new int[] { 100, 1000, 10000 }) {
+			var copy = collections(owner, nb);
+			long start = System.currentTimeMillis();
+			DbUtils.insertIgnoringConflicts(r2dbc, copy, true, "uuid", "owner").block();
+			long copyTime = System.currentTimeMillis() - start;
+			String values = "n/a (too many parameters)";
+			if (nb * 8 < 65536) {
+				var insert = collections(owner, nb);
+				start = System.currentTimeMillis();
+				DbUtils.insertIgnoringConflicts(r2dbc, insert, false, "uuid", "owner").block();
+				values = (System.currentTimeMillis() - start) + " ms";
+			}
+			// single inserts, as done when a bulk insert failed
+			var single = collections(owner, Math.min(nb, 1000));
+			start = System.currentTimeMillis();
+			BulkUtils.bulkToSingleOperationToList(single, r2dbc::insert, List.of(), new ArrayList<>()).block();
+			long singleTime = (System.currentTimeMillis() - start) * nb / single.size();
+			log.info("Insert {} collections: COPY {} ms, multi-row INSERT {}, single inserts {} ms", nb, copyTime, values, singleTime);
+		}
+		r2dbc.getDatabaseClient().sql("DELETE FROM collections WHERE owner = $1").bind(0, owner).then().block();
+	}
+
+}
@@ -0,0 +1,87 @@
+package org.trailence.global.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.trailence.global.dto.Versioned;
+import org.trailence.trail.db.TrailCollectionEntity;
+import org.trailence.trail.dto.TrailCollection;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/** Matching of DTOs with entities, without database. */
+@Slf4j
+class TestBulkMatching {
+
+	private static final String OWNER = "user@trailence.org";
+
+	@Test
+	void matchingScalesLinearly() {
+		for (int n : new int[] { 1000, 5000, 10000, 50000 }) {
+			List<TrailCollectionEntity> entities = new ArrayList<>(n);
+			List<TrailCollection> dtos = new ArrayList<>(n);
+			for (int i = 0; i < n; ++i) {
+				var entity = entity(i);
+				entities.add(entity);
+				dtos.add(new TrailCollection(entity.getUuid().toString(), OWNER, i % 2 == 0 ? 1 : 2, 0, 0, "c" + i, null));
+			}
+			// half of the DTOs are known
+			List<TrailCollectionEntity> known = entities.subList(0, n / 2);
+
+			long start = System.nanoTime();
+			var unknown = BulkUtils.unknown(dtos, known);
+			long unknownTime = System.nanoTime() - start;
+			assertThat(unknown).hasSize(n - n / 2).containsExactlyElementsOf(dtos.subList(n / 2, n));
+
+			String legacy = "-";
+			if (n <= 10000) {
+				start = System.nanoTime();
+				var expected = dtos.stream().filter(dto -> known.stream().noneMatch(entity -> entity.getUuid().toString().equals(dto.getUuid()))).toList();
+				legacy = (System.nanoTime() - start) / 1000000 + " ms";
+				assertThat(unknown).isEqualTo(expected);
+			}
+
+			start = System.nanoTime();
+			var updated = BulkUtils.bulkUpdate(
+				dtos,
+				dto -> UUID.fromString(dto.getUuid()),
+				uuids -> Flux.fromIterable(entities).filter(e -> uuids.contains(e.getUuid())),
+				AbstractEntityUuidOwner::getUuid,
+				(entity, dto) -> dto.getName().equals(entity.getName()) ? Mono.just(entity) : Mono.empty()
+			).count().block();
+			long updateTime = System.nanoTime() - start;
+			assertThat(updated).isEqualTo(n);
+
+			List<Versioned> versions = new ArrayList<>(n);
+			for (int i = n / 4; i < n + n / 4; ++i) versions.add(new Versioned(entity(i).getUuid().toString(), OWNER.toUpperCase(), 1));
+			start = System.nanoTime();
+			var response = BulkGetUpdates.bulkGetUpdates(Flux.fromIterable(entities), versions, TrailCollectionEntity::getName).block();
+			long getUpdatesTime = System.nanoTime() - start;
+			assertThat(response.getCreated()).hasSize(n / 4);
+			assertThat(response.getDeleted()).hasSize(n / 4);
+			// entities with an odd index have version 2
+			assertThat(response.getUpdated()).hasSize((n - n / 4) / 2);
+
+			log.info(
+				"{} items: unknown {} ms (legacy {}), bulkUpdate {} ms, bulkGetUpdates {} ms",
+				n, unknownTime / 1000000, legacy, updateTime / 1000000, getUpdatesTime / 1000000
+			);
+		}
+	}
+
+	private static TrailCollectionEntity entity(int i) {
+		var entity = new TrailCollectionEntity();
+		entity.setUuid(new UUID(0, i));
+		entity.setOwner(OWNER);
+		entity.setVersion(i % 2 == 0 ? 1 : 2);
+		entity.setName("c" + i);
+		return entity;
+	}
+
+}
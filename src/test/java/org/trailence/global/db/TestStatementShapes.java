@@ -0,0 +1,99 @@
+package org.trailence.global.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.relational.core.sql.Assignments;
+import org.springframework.data.relational.core.sql.Conditions;
+import org.springframework.data.relational.core.sql.SQL;
+import org.springframework.data.relational.core.sql.Update;
+import org.springframework.r2dbc.core.PreparedOperation;
+import org.trailence.quotas.db.UserQuotasEntity;
+import org.trailence.test.AbstractTest;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class TestStatementShapes extends AbstractTest {
+
+	@Autowired private R2dbcEntityTemplate r2dbc;
+
+	private static final int NB = 2000;
+
+	private PreparedOperation<?> withLiterals(String email, long nb) {
+		var newUsed = new PlusExpression(UserQuotasEntity.COL_COLLECTIONS_USED, SQL.literalOf(nb));
+		return DbUtils.update(
+			Update.builder()
+			.table(UserQuotasEntity.TABLE)
+			.set(Assignments.value(UserQuotasEntity.COL_COLLECTIONS_USED, newUsed))
+			.where(Conditions.isEqual(UserQuotasEntity.COL_EMAIL, SQL.literalOf(email)).and(Conditions.isLessOrEqualTo(newUsed, UserQuotasEntity.COL_COLLECTIONS_MAX)))
+			.build(),
+			null, r2dbc
+		);
+	}
+
+	private PreparedOperation<?> withShape(String email, long nb) {
+		var bindings = DbUtils.newBindings(r2dbc);
+		var nbMarker = SQL.bindMarker(bindings.bind(nb).getPlaceholder());
+		var emailMarker = SQL.bindMarker(bindings.bind(email).getPlaceholder());
+		return DbUtils.shape(List.of("testShapes"), bindings, () -> {
+			var newUsed = new PlusExpression(UserQuotasEntity.COL_COLLECTIONS_USED, nbMarker);
+			return DbUtils.update(
+				Update.builder()
+				.table(UserQuotasEntity.TABLE)
+				.set(Assignments.value(UserQuotasEntity.COL_COLLECTIONS_USED, newUsed))
+				.where(Conditions.isEqual(UserQuotasEntity.COL_EMAIL, emailMarker).and(Conditions.isLessOrEqualTo(newUsed, UserQuotasEntity.COL_COLLECTIONS_MAX)))
+				.build(),
+				null, r2dbc
+			).toQuery();
+		});
+	}
+
+	@Test
+	void renderingAndExecution() {
+		String[] emails = new String[10];
+		for (int i = 0; i < emails.length; ++i) emails[i] = "shape-" + i + "@synthetic.test";
+		for (String email : emails)
+			r2dbc.getDatabaseClient().sql("INSERT INTO user_quotas (email, collections_max) VALUES ($1, 1000000000)").bind(0, email).then().block();
+		try {
+			// rendering only
+			long start = System.nanoTime();
+			for (int i = 0; i < NB; ++i) withLiterals(emails[i % emails.length], i + 1L).toQuery();
+			long renderLiterals = System.nanoTime() - start;
+			long misses = DbUtils.getShapeMisses();
+			long hits = DbUtils.getShapeHits();
+			start = System.nanoTime();
+			for (int i = 0; i < NB; ++i) withShape(emails[i % emails.length], i + 1L).toQuery();
+			long renderShape = System.nanoTime() - start;
+			assertThat(DbUtils.getShapeMisses() - misses).isLessThanOrEqualTo(1);
+			assertThat(DbUtils.getShapeHits() - hits).isGreaterThanOrEqualTo(NB - 1L);
+
+			// execution: each statement with literals is parsed and planned, the shape is prepared once per connection
+			start = System.nanoTime();
+			for (int i = 0; i < NB; ++i) r2dbc.getDatabaseClient().sql(withLiterals(emails[i % emails.length], i + 1L)).then().block();
+			long executeLiterals = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < NB; ++i) r2dbc.getDatabaseClient().sql(withShape(emails[i % emails.length], i + 1L)).then().block();
+			long executeShape = System.nanoTime() - start;
+
+			log.info(
+				"{} quota updates: rendering {} ms with literals, {} ms with shape; execution {} ms with literals, {} ms with shape",
+				NB, renderLiterals / 1000000, renderShape / 1000000, executeLiterals / 1000000, executeShape / 1000000
+			);
+
+			// both ways produce the same result
+			long expected = 0;
+			for (int i = 0; i < NB; ++i) if (i % emails.length == 0) expected += 2L * (i + 1);
+			assertThat(
+				r2dbc.getDatabaseClient().sql("SELECT collections_used FROM user_quotas WHERE email = $1").bind(0, emails[0]).map((row, _) -> row.get(0, Long.class)).one().block()
+			).isEqualTo(expected);
+		} finally {
+			r2dbc.getDatabaseClient().sql("DELETE FROM user_quotas WHERE email LIKE 'shape-%'").then().block();
+		}
+	}
+
+}
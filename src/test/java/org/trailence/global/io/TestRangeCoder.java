@@ -0,0 +1,67 @@
+package org.trailence.global.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class TestRangeCoder {
+
+	@Test
+	void testRoundTrip() throws IOException {
+		Random random = new Random(1);
+		byte[] randomBytes = new byte[10000];
+		random.nextBytes(randomBytes);
+		byte[] runs = new byte[10000];
+		for (int i = 0; i < runs.length; ++i) runs[i] = (byte) (i / 1000);
+		byte[] small = new byte[10000];
+		for (int i = 0; i < small.length; ++i) small[i] = (byte) random.nextInt(4);
+
+		assertThat(roundTrip(new byte[0])).isEmpty();
+		assertThat(roundTrip(new byte[] { 0 })).containsExactly(0);
+		assertThat(roundTrip(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF })).containsExactly(0xFF, 0xFF, 0xFF);
+		assertThat(roundTrip(randomBytes)).isEqualTo(randomBytes);
+		assertThat(roundTrip(runs)).isEqualTo(runs);
+		assertThat(roundTrip(small)).isEqualTo(small);
+
+		// incompressible data expands slightly, as the probabilities keep adapting
+		assertThat(encode(randomBytes).length).isLessThan(randomBytes.length * 101 / 100);
+		assertThat(encode(runs).length).isLessThan(runs.length / 20);
+		assertThat(encode(small).length).isLessThan(small.length / 3);
+	}
+
+	@Test
+	void testTruncated() throws IOException {
+		byte[] bytes = new byte[1000];
+		new Random(2).nextBytes(bytes);
+		byte[] encoded = encode(bytes);
+		byte[] truncated = Arrays.copyOf(encoded, encoded.length / 2);
+		assertThrows(EOFException.class, () -> new RangeCoder.Decoder(new ByteArrayInputStream(truncated), bytes.length).readAllBytes());
+		assertThrows(IOException.class, () -> new RangeCoder.Decoder(new ByteArrayInputStream(new byte[] { 1, 0, 0, 0, 0 }), 1));
+	}
+
+	private static byte[] encode(byte[] bytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RangeCoder.Encoder encoder = new RangeCoder.Encoder(out);
+		encoder.encode(bytes, 0, bytes.length);
+		encoder.finish();
+		return out.toByteArray();
+	}
+
+	private static byte[] roundTrip(byte[] bytes) throws IOException {
+		byte[] encoded = encode(bytes);
+		try (RangeCoder.Decoder decoder = new RangeCoder.Decoder(new ByteArrayInputStream(encoded), bytes.length)) {
+			byte[] decoded = decoder.readAllBytes();
+			assertThat(decoder.read()).isEqualTo(-1);
+			return decoded;
+		}
+	}
+
+}
@@ -0,0 +1,48 @@
+package org.trailence.global.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.trailence.test.AbstractTest;
+import org.trailence.test.stubs.TranslationStub;
+import org.trailence.translations.TranslationService;
+
+import io.restassured.RestAssured;
+
+class TestMetrics extends AbstractTest {
+
+	@Autowired private TranslationService translations;
+
+	@Test
+	void scrapeContainsApplicationSeries() {
+		var user = test.createUserAndLogin();
+		user.createTrail(user.getMyTrails(), true);
+		assertThat(RestAssured.given().get("/api/ping").statusCode()).isEqualTo(200);
+		String text = "Bonjour " + RandomStringUtils.insecure().nextAlphanumeric(20);
+		var stub = TranslationStub.stubTranslate(wireMockServer, text, "Hello");
+		assertThat(translations.translate(text, "fr", "en").block()).isEqualTo("Hello");
+		wireMockServer.removeStubMapping(stub);
+
+		var response = RestAssured.given().get("/actuator/prometheus");
+		assertThat(response.statusCode()).isEqualTo(200);
+		String scrape = response.getBody().asString();
+		// latency histograms per route template and status
+		assertThat(scrape)
+		.containsPattern("http_server_requests_seconds_bucket\\{.*status=\"200\".*uri=\"/api/ping\"")
+		.containsPattern("http_server_requests_seconds_bucket\\{.*uri=\"/api/trail/v1/_bulkCreate\"")
+		// connection pool
+		.contains("trailence_r2dbc_acquire_seconds_bucket")
+		.contains("r2dbc_pool_acquired")
+		.contains("r2dbc_pool_pending")
+		// scheduler
+		.contains("trailence_scheduler_queued{scheduler=\"boundedElastic\"")
+		.contains("trailence_scheduler_active{scheduler=\"boundedElastic\"")
+		// jobs
+		.contains("trailence_jobs_lag_seconds")
+		// external calls
+		.containsPattern("trailence_external_requests_seconds_bucket\\{integration=\"translations\",.*status=\"200\"");
+	}
+
+}
@@ -0,0 +1,70 @@
+package org.trailence.global.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.trailence.global.db.proxy.QueryExecution;
+
+class TestQueryFingerprint {
+
+	@Test
+	void literalsAndParametersAreNormalized() {
+		assertThat(QueryProfiler.fingerprint("SELECT * FROM trails WHERE owner = 'a@b.c' AND updated_at > 1234 AND uuid = $1"))
+		.isEqualTo("SELECT * FROM trails WHERE owner = ? AND updated_at > ? AND uuid = ?");
+		assertThat(QueryProfiler.fingerprint("SELECT * FROM trails WHERE owner = 'it''s me'\n\t  LIMIT 100"))
+		.isEqualTo(QueryProfiler.fingerprint("SELECT * FROM trails WHERE owner = 'other' LIMIT 5"));
+		// identifiers and casts are kept
+		assertThat(QueryProfiler.fingerprint("SELECT t1.col2::float8 FROM table1 t1 WHERE t1.x = -1.5"))
+		.isEqualTo("SELECT t1.col2::float8 FROM table1 t1 WHERE t1.x = ?");
+	}
+
+	@Test
+	void listsAreCollapsed() {
+		String expected = "SELECT * FROM tracks WHERE uuid IN (...) AND owner = ?";
+		assertThat(QueryProfiler.fingerprint("SELECT * FROM tracks WHERE uuid IN ($1, $2) AND owner = $3")).isEqualTo(expected);
+		assertThat(QueryProfiler.fingerprint("SELECT * FROM tracks WHERE uuid IN ($1,$2,$3,$4,$5) AND owner = $6")).isEqualTo(expected);
+		assertThat(QueryProfiler.fingerprint("SELECT * FROM tracks WHERE uuid = ANY(ARRAY['a','b','c'])"))
+		.isEqualTo("SELECT * FROM tracks WHERE uuid = ANY(ARRAY[...])");
+		assertThat(QueryProfiler.fingerprint("INSERT INTO tags (uuid,owner,name) VALUES ($1,$2,$3),($4,$5,$6),($7,$8,$9) ON CONFLICT DO NOTHING"))
+		.isEqualTo(QueryProfiler.fingerprint("INSERT INTO tags (uuid,owner,name) VALUES ($1,$2,$3) ON CONFLICT DO NOTHING"))
+		.isEqualTo("INSERT INTO tags (uuid,owner,name) VALUES (...) ON CONFLICT DO NOTHING");
+	}
+
+	@Test
+	void statsPerShape() {
+		var profiler = new QueryProfiler();
+		profiler.setExplainThresholdMillis(Long.MAX_VALUE);
+		for (int i = 1; i <= 100; ++i)
+			profiler.afterQuery(new QueryExecution("SELECT * FROM trails WHERE owner = '" + i + "'", Map.of(), i * 1000000L, i * 1000000L, 2, i != 50, null));
+		profiler.afterQuery(new QueryExecution("DELETE FROM trails WHERE owner = $1", Map.of(), 1000000L, 1000000L, 3, true, null));
+		var stats = profiler.getStats();
+		assertThat(stats).hasSize(2);
+		var select = stats.getFirst();
+		assertThat(select.shape()).isEqualTo("SELECT * FROM trails WHERE owner = ?");
+		assertThat(select.count()).isEqualTo(100);
+		assertThat(select.errors()).isEqualTo(1);
+		assertThat(select.rows()).isEqualTo(200);
+		assertThat(select.p50Millis()).isEqualTo(50);
+		assertThat(select.p95Millis()).isEqualTo(95);
+		assertThat(select.p99Millis()).isEqualTo(99);
+		assertThat(select.maxMillis()).isEqualTo(100);
+		assertThat(select.totalMillis()).isEqualTo(5050);
+		assertThat(stats.get(1).rows()).isEqualTo(3);
+		profiler.reset();
+		assertThat(profiler.getStats()).isEmpty();
+	}
+
+	@Test
+	void consumerTimeIsNotCounted() {
+		var profiler = new QueryProfiler();
+		profiler.setExplainThresholdMillis(10);
+		// a result streamed during 5 seconds to the caller, the first row received after 1 ms: no plan requested
+		profiler.afterQuery(new QueryExecution("SELECT data FROM tracks WHERE owner = $1", Map.of(), 1000000L, 5000000000L, 10000, true, null));
+		var stats = profiler.getStats().getFirst();
+		assertThat(stats.maxMillis()).isEqualTo(1);
+		assertThat(stats.plan()).isNull();
+	}
+
+}
@@ -0,0 +1,74 @@
+package org.trailence.global.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.trailence.test.AbstractTest;
+import org.trailence.test.TestService.TestUserLoggedIn;
+
+import io.restassured.common.mapper.TypeRef;
+
+class TestQueryProfiler extends AbstractTest {
+
+	private static final String PATH = "/api/admin/database/v1/queries";
+
+	@Autowired private QueryProfiler profiler;
+
+	@Test
+	void shapesAndPlansAreExposedToAdmins() throws InterruptedException {
+		var user = test.createUserAndLogin();
+		user.createTrails(user.getMyTrails(), 3, true);
+		user.getTrails();
+
+		assertThat(user.get(PATH).statusCode()).isEqualTo(403);
+		var stats = getStats();
+		assertThat(stats).isNotEmpty();
+		assertThat(stats).allSatisfy(s -> {
+			assertThat(s.shape()).doesNotContain("$1").doesNotContain(user.getEmail().toLowerCase());
+			assertThat(s.count()).isPositive();
+			assertThat(s.p50Millis()).isLessThanOrEqualTo(s.p99Millis());
+			assertThat(s.p99Millis()).isLessThanOrEqualTo(s.maxMillis());
+		});
+		assertThat(stats).anySatisfy(s -> {
+			assertThat(s.shape()).startsWith("SELECT").contains("trails");
+			assertThat(s.rows()).isPositive();
+		});
+		assertThat(stats).anySatisfy(s -> assertThat(s.shape()).startsWith("INSERT INTO trails"));
+
+		// capture the plans of all selects, without executing them again
+		long threshold = profiler.getExplainThresholdMillis();
+		profiler.setExplainThresholdMillis(0);
+		try {
+			String plan = capturePlan(user);
+			assertThat(plan).contains("cost=").doesNotContain("actual time");
+
+			profiler.setExplainAnalyze(true);
+			plan = capturePlan(user);
+			assertThat(plan).contains("Execution Time").contains("Planning");
+		} finally {
+			profiler.setExplainThresholdMillis(threshold);
+			profiler.setExplainAnalyze(false);
+		}
+	}
+
+	private String capturePlan(TestUserLoggedIn user) throws InterruptedException {
+		assertThat(test.asAdmin().delete(PATH).statusCode()).isEqualTo(200);
+		String plan = null;
+		for (int trial = 0; trial < 20 && plan == null; ++trial) {
+			user.getTrails();
+			Thread.sleep(500);
+			plan = getStats().stream().filter(s -> s.plan() != null && s.shape().contains("trails")).map(QueryProfiler.QueryStats::plan).findAny().orElse(null);
+		}
+		return plan;
+	}
+
+	private List<QueryProfiler.QueryStats> getStats() {
+		var response = test.asAdmin().get(PATH);
+		assertThat(response.statusCode()).isEqualTo(200);
+		return response.as(new TypeRef<List<QueryProfiler.QueryStats>>() {});
+	}
+
+}
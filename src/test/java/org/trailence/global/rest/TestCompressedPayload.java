@@ -0,0 +1,111 @@
+package org.trailence.global.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.trailence.global.TrailenceUtils;
+import org.trailence.trail.dto.PublicTrack;
+import org.trailence.trail.dto.Track.Point;
+import org.trailence.trail.dto.Track.Segment;
+import org.trailence.trail.dto.Track.WayPoint;
+
+import com.sun.management.ThreadMXBean;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class TestCompressedPayload {
+
+	@Test
+	void acceptEncoding() {
+		assertThat(CompressedPayload.acceptsGzip(null)).isFalse();
+		assertThat(CompressedPayload.acceptsGzip("")).isFalse();
+		assertThat(CompressedPayload.acceptsGzip("identity")).isFalse();
+		assertThat(CompressedPayload.acceptsGzip("br")).isFalse();
+		assertThat(CompressedPayload.acceptsGzip("gzip")).isTrue();
+		assertThat(CompressedPayload.acceptsGzip("gzip, deflate, br, zstd")).isTrue();
+		assertThat(CompressedPayload.acceptsGzip("br;q=1.0, GZIP;q=0.5")).isTrue();
+		assertThat(CompressedPayload.acceptsGzip("x-gzip")).isTrue();
+		assertThat(CompressedPayload.acceptsGzip("*")).isTrue();
+		assertThat(CompressedPayload.acceptsGzip("gzip;q=0")).isFalse();
+		assertThat(CompressedPayload.acceptsGzip("gzip; q=0.000, deflate")).isFalse();
+		assertThat(CompressedPayload.acceptsGzip("gzip;q=abc")).isFalse();
+	}
+
+	@Test
+	void response() {
+		var payload = CompressedPayload.compress(json(1000));
+		var compressed = payload.toResponse("gzip, deflate", MediaType.APPLICATION_JSON);
+		assertThat(compressed.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+		assertThat(compressed.getHeaders().getFirst(HttpHeaders.VARY)).isEqualTo(HttpHeaders.ACCEPT_ENCODING);
+		assertThat(compressed.getBody()).isSameAs(payload.gzip());
+		var identity = payload.toResponse(null, MediaType.APPLICATION_JSON);
+		assertThat(identity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+		assertThat(identity.getBody()).isEqualTo(json(1000));
+	}
+
+	@Test
+	void bytesAndCpuPerRequest() throws IOException {
+		var threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		byte[] json = json(5000);
+		var payload = CompressedPayload.compress(json);
+		int nb = 100;
+		long[] cpu = new long[3];
+		long[] bytes = new long[3];
+		for (int round = 0; round < 2; ++round) {
+			cpu[0] = cpu[1] = cpu[2] = bytes[0] = bytes[1] = bytes[2] = 0;
+			for (int i = 0; i < nb; ++i) {
+				// identity: serialization only
+				long start = threads.getCurrentThreadCpuTime();
+				bytes[0] += TrailenceUtils.mapper.writeValueAsBytes(track(5000)).length;
+				cpu[0] += threads.getCurrentThreadCpuTime() - start;
+				// compressed on the fly, with the default level as the HTTP server does
+				start = threads.getCurrentThreadCpuTime();
+				var out = new ByteArrayOutputStream();
+				try (var gzip = new GZIPOutputStream(out)) {
+					gzip.write(TrailenceUtils.mapper.writeValueAsBytes(track(5000)));
+				}
+				bytes[1] += out.size();
+				cpu[1] += threads.getCurrentThreadCpuTime() - start;
+				// precompressed: the stored payload is sent as is
+				start = threads.getCurrentThreadCpuTime();
+				bytes[2] += payload.toResponse("gzip", MediaType.APPLICATION_JSON).getBody().length;
+				cpu[2] += threads.getCurrentThreadCpuTime() - start;
+			}
+			log.info("Public track of 5000 points, per request: identity {} bytes {} µs CPU, gzip on the fly {} bytes {} µs CPU, precompressed {} bytes {} µs CPU",
+				bytes[0] / nb, cpu[0] / nb / 1000, bytes[1] / nb, cpu[1] / nb / 1000, bytes[2] / nb, cpu[2] / nb / 1000);
+		}
+		assertThat(bytes[2]).isLessThanOrEqualTo(bytes[1]).isLessThan(bytes[0] / 3);
+		assertThat(cpu[2]).isLessThan(cpu[1]);
+	}
+
+	private static byte[] json(int nbPoints) {
+		return TrailenceUtils.mapper.writeValueAsBytes(track(nbPoints));
+	}
+
+	private static PublicTrack track(int nbPoints) {
+		var random = new Random(nbPoints);
+		Point[] points = new Point[nbPoints];
+		for (int i = 0; i < nbPoints; ++i)
+			points[i] = new Point(
+				i == 0 ? 45123456L : (long) random.nextInt(200) - 100,
+				i == 0 ? 5123456L : (long) random.nextInt(200) - 100,
+				i == 0 ? 35000L : (long) random.nextInt(60) - 30,
+				i == 0 ? 1700000000000L : 1000L + random.nextInt(5000),
+				(long) random.nextInt(50),
+				(long) random.nextInt(50),
+				null,
+				null
+			);
+		return new PublicTrack(new Segment[] { new Segment(points) }, new WayPoint[0]);
+	}
+
+}
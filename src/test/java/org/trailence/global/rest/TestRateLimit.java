@@ -0,0 +1,35 @@
+package org.trailence.global.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.TestPropertySource;
+import org.trailence.test.AbstractTest;
+
+import io.restassured.RestAssured;
+
+@TestPropertySource(properties = "trailence.rate-limit.enabled=true")
+class TestRateLimit extends AbstractTest {
+
+	private static final String PATH = "/api/auth/v1/captcha";
+
+	@Test
+	void anonymousClientIsLimited() {
+		for (int i = 0; i < RateLimiter.RouteClass.AUTH.getBurst(); ++i)
+			assertThat(RestAssured.given().get(PATH).statusCode()).isEqualTo(200);
+
+		var response = RestAssured.given().get(PATH);
+		assertThat(response.statusCode()).isEqualTo(429);
+		assertThat(Long.parseLong(response.getHeader(HttpHeaders.RETRY_AFTER))).isPositive();
+		assertThat(response.getBody().asString()).contains("too-many-requests");
+
+		// forwarded headers are not trusted by default
+		assertThat(RestAssured.given().header("X-Forwarded-For", "1.2.3.4").get(PATH).statusCode()).isEqualTo(429);
+
+		// other classes of routes are not affected
+		assertThat(RestAssured.given().get("/api/ping").statusCode()).isEqualTo(200);
+		assertThat(RestAssured.given().get("/api/public/trails/v1/trailBySlug/unknown").statusCode()).isNotEqualTo(429);
+	}
+
+}
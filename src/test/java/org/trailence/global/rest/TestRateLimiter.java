@@ -0,0 +1,201 @@
+package org.trailence.global.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import org.trailence.global.rest.RateLimiter.RouteClass;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Slf4j
+class TestRateLimiter {
+
+	@Test
+	void routeClasses() {
+		assertThat(RateLimiter.classify("/api/auth/v1/login")).isEqualTo(RouteClass.AUTH);
+		assertThat(RateLimiter.classify("/api/user/v1/registerNewUser")).isEqualTo(RouteClass.AUTH);
+		assertThat(RateLimiter.classify("/api/public/trails/v1/trail/abc")).isEqualTo(RouteClass.PUBLIC);
+		assertThat(RateLimiter.classify("/api/trail-link/v1/trail/abc")).isEqualTo(RouteClass.PUBLIC);
+		assertThat(RateLimiter.classify("/api/live-group/v1/join/abc")).isEqualTo(RouteClass.LIVE_GROUP);
+		assertThat(RateLimiter.classify("/api/trail/v1/_bulkGetUpdates")).isEqualTo(RouteClass.USER);
+		assertThat(RateLimiter.classify("/api/ping")).isNull();
+		assertThat(RateLimiter.classify("/actuator/prometheus")).isNull();
+	}
+
+	@Test
+	void tokenBucketPerClient() {
+		var clock = new AtomicLong(1000);
+		var limiter = new RateLimiter(clock::get);
+		for (int i = 0; i < RouteClass.AUTH.getBurst(); ++i) assertThat(limiter.acquire(RouteClass.AUTH, "1.2.3.4")).isZero();
+		long wait = limiter.acquire(RouteClass.AUTH, "1.2.3.4");
+		assertThat(wait).isEqualTo(RouteClass.AUTH.getIntervalNanos());
+		// other clients and other routes are not affected
+		assertThat(limiter.acquire(RouteClass.AUTH, "1.2.3.5")).isZero();
+		assertThat(limiter.acquire(RouteClass.PUBLIC, "1.2.3.4")).isZero();
+		// one token after the interval
+		clock.addAndGet(wait);
+		assertThat(limiter.acquire(RouteClass.AUTH, "1.2.3.4")).isZero();
+		assertThat(limiter.acquire(RouteClass.AUTH, "1.2.3.4")).isPositive();
+		// the bucket is full again after burst * interval
+		clock.addAndGet(RouteClass.AUTH.getIntervalNanos() * RouteClass.AUTH.getBurst());
+		for (int i = 0; i < RouteClass.AUTH.getBurst(); ++i) assertThat(limiter.acquire(RouteClass.AUTH, "1.2.3.4")).isZero();
+		assertThat(limiter.getRejected()).isEqualTo(2);
+	}
+
+	@Test
+	void concurrentRequestsCannotTakeTheSameToken() throws Exception {
+		var clock = new AtomicLong(1000);
+		var limiter = new RateLimiter(clock::get);
+		int nbThreads = 8;
+		var accepted = new AtomicInteger();
+		var start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < nbThreads; ++t)
+				futures.add(executor.submit(() -> {
+					start.await();
+					for (int i = 0; i < 1000; ++i)
+						if (limiter.acquire(RouteClass.USER, "same-client") == 0) accepted.incrementAndGet();
+					return null;
+				}));
+			start.countDown();
+			for (var future : futures) future.get();
+		} finally {
+			executor.shutdownNow();
+		}
+		// the clock does not move: exactly the burst is accepted
+		assertThat(accepted.get()).isEqualTo(RouteClass.USER.getBurst());
+		assertThat(limiter.getRejected()).isEqualTo(nbThreads * 1000L - RouteClass.USER.getBurst());
+	}
+
+	@Test
+	void sketchScalesToManyClients() {
+		var clock = new AtomicLong(0);
+		var limiter = new RateLimiter(clock::get);
+		int nb = 1000000;
+		for (int i = 0; i < nb; ++i) limiter.acquire(RouteClass.PUBLIC, "client-" + i);
+		// a million clients sharing 3 x 65536 cells, without time passing: none of them is limited by collisions
+		assertThat(limiter.getRejected()).isZero();
+		for (int i = 0; i < 10; ++i) limiter.acquire(RouteClass.AUTH, "client-" + i);
+		assertThat(limiter.getRejected()).isZero();
+	}
+
+	@Test
+	void filterAnswers429WithRetryAfter() {
+		var limiter = new RateLimiter();
+		limiter.setEnabled(true);
+		var filter = new RateLimitFilter(limiter);
+		WebFilterChain chain = _ -> Mono.empty();
+		for (int i = 0; i < RouteClass.AUTH.getBurst(); ++i) {
+			var exchange = exchange("/api/auth/v1/login", "10.0.0.1");
+			filter.filter(exchange, chain).block();
+			assertThat(exchange.getResponse().getStatusCode()).isNotEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+		}
+		var exchange = exchange("/api/auth/v1/login", "10.0.0.1");
+		filter.filter(exchange, chain).block();
+		assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+		assertThat(exchange.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+		assertThat(exchange.getResponse().getBodyAsString().block()).contains("too-many-requests");
+		// not limited
+		exchange = exchange("/api/ping", "10.0.0.1");
+		filter.filter(exchange, chain).block();
+		assertThat(exchange.getResponse().getStatusCode()).isNotEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+	}
+
+	@Test
+	void wellBehavedClientLatencyUnderAbusiveTraffic() {
+		List<Long> without = simulate(false);
+		List<Long> with = simulate(true);
+		long p99Without = percentile(without, 99);
+		long p99With = percentile(with, 99);
+		log.info("Well-behaved client latency under abusive traffic: without rate limit p50 {} us p99 {} us, with rate limit p50 {} us p99 {} us",
+			percentile(without, 50) / 1000, p99Without / 1000, percentile(with, 50) / 1000, p99With / 1000);
+		assertThat(p99With).isLessThan(p99Without);
+		assertThat(percentile(with, 50)).isLessThan(percentile(without, 50));
+	}
+
+	/** A backend of 4 workers spending 1ms per request, an abusive client sending 64 concurrent requests with a round trip of 5ms, and a client sending 1 request every 5ms. */
+	private List<Long> simulate(boolean rateLimit) {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		Scheduler backend = Schedulers.fromExecutorService(executor);
+		try {
+			var limiter = new RateLimiter();
+			limiter.setEnabled(true);
+			var filter = new RateLimitFilter(limiter);
+			WebFilterChain chain = _ -> Mono.<Void>fromRunnable(() -> {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException _) {
+					Thread.currentThread().interrupt();
+				}
+			}).subscribeOn(backend);
+			WebFilterChain entry = rateLimit ? exchange -> filter.filter(exchange, chain) : chain;
+			var stop = new AtomicBoolean(false);
+			// each request of the abusive client includes a network round trip
+			var abuse = Flux.range(0, 64)
+				.flatMap(_ -> Mono.delay(Duration.ofMillis(5)).then(Mono.defer(() -> entry.filter(exchange("/api/public/trails/v1/trail/x", "10.6.6.6"))))
+					.repeat(() -> !stop.get()), 64)
+				.subscribeOn(Schedulers.boundedElastic())
+				.subscribe();
+			try {
+				// let the abusive client consume its burst
+				Thread.sleep(200);
+				List<Long> latencies = new ArrayList<>();
+				for (int i = 0; i < 200; ++i) {
+					long start = System.nanoTime();
+					entry.filter(exchange("/api/public/trails/v1/trail/y", "10.1.1.1")).block(Duration.ofSeconds(10));
+					latencies.add(System.nanoTime() - start);
+					Thread.sleep(5);
+				}
+				return latencies;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return List.of();
+			} finally {
+				stop.set(true);
+				abuse.dispose();
+			}
+		} finally {
+			backend.dispose();
+			executor.shutdownNow();
+			try {
+				executor.awaitTermination(5, TimeUnit.SECONDS);
+			} catch (InterruptedException _) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static long percentile(List<Long> values, int percentile) {
+		var sorted = values.stream().sorted().toList();
+		return sorted.get(Math.min(sorted.size() - 1, (int) Math.ceil(sorted.size() * percentile / 100.0) - 1));
+	}
+
+	private static MockServerWebExchange exchange(String path, String ip) {
+		return MockServerWebExchange.from(MockServerHttpRequest.get(path).remoteAddress(new InetSocketAddress(ip, 12345)));
+	}
+
+}
@@ -0,0 +1,78 @@
+package org.trailence.global.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.trailence.global.rest.RequestWatchdog.EventType;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+@Slf4j
+class TestRequestWatchdog {
+
+	@Test
+	void stuckRequestIsReportedWhenItsDurationDoubles() {
+		var watchdog = new RequestWatchdog(false);
+		var stuck = watchdog.start("GET", "/stuck");
+		var fast = watchdog.start("GET", "/fast");
+		watchdog.end(fast);
+		List<Integer> reportedAt = new ArrayList<>();
+		for (int second = 1; second <= 1000; ++second) {
+			int before = watchdog.getEvents().size();
+			watchdog.sweep();
+			if (watchdog.getEvents().size() > before) reportedAt.add(second);
+		}
+		assertThat(reportedAt).containsExactly(10, 20, 40, 80, 160, 320, 640);
+		assertThat(watchdog.getEvents()).hasSize(7).allMatch(e -> e.type() == EventType.STUCK && e.path().equals("/stuck"));
+		assertThat(watchdog.size()).isZero();
+
+		// once committed, it is not reported anymore
+		stuck = watchdog.start("GET", "/committed");
+		for (int i = 0; i < 5; ++i) watchdog.sweep();
+		watchdog.end(stuck);
+		for (int i = 0; i < 1000; ++i) watchdog.sweep();
+		assertThat(watchdog.getEvents()).hasSize(7);
+	}
+
+	@Test
+	void ringBufferKeepsLastEvents() {
+		var watchdog = new RequestWatchdog(false);
+		for (int i = 0; i < RequestWatchdog.MAX_EVENTS + 50; ++i) watchdog.start("GET", "/" + i);
+		for (int i = 0; i < 10; ++i) watchdog.sweep();
+		var events = watchdog.getEvents();
+		assertThat(events).hasSize(RequestWatchdog.MAX_EVENTS);
+		assertThat(events.getFirst().path()).isEqualTo("/" + (RequestWatchdog.MAX_EVENTS + 49));
+		assertThat(events.getLast().path()).isEqualTo("/50");
+	}
+
+	@Test
+	void overheadPerRequest() {
+		int nb = 200000;
+		// previous implementation: one delayed task per request on the bounded elastic scheduler, disposed on commit
+		for (int round = 0; round < 2; ++round) {
+			long start = System.nanoTime();
+			for (int i = 0; i < nb; ++i) {
+				Disposable task = Schedulers.boundedElastic().schedule(() -> {}, 10, TimeUnit.SECONDS);
+				task.dispose();
+			}
+			long before = System.nanoTime() - start;
+
+			var watchdog = new RequestWatchdog(false);
+			start = System.nanoTime();
+			for (int i = 0; i < nb; ++i) {
+				var request = watchdog.start("GET", "/test");
+				watchdog.end(request);
+				if (i % 1000 == 0) watchdog.sweep();
+			}
+			long after = System.nanoTime() - start;
+			log.info("Watchdog overhead per request: scheduled task {} ns, timer wheel {} ns", before / nb, after / nb);
+		}
+	}
+
+}
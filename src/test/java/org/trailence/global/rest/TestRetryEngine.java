@@ -0,0 +1,212 @@
+package org.trailence.global.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.BadSqlGrammarException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.trailence.global.exceptions.ServiceUnavailableException;
+import org.trailence.global.rest.RetryEngine.CircuitState;
+import org.trailence.global.rest.RetryEngine.Failure;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.R2dbcBadGrammarException;
+import io.r2dbc.spi.R2dbcNonTransientResourceException;
+import io.r2dbc.spi.R2dbcRollbackException;
+import io.r2dbc.spi.R2dbcTransientResourceException;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class TestRetryEngine {
+
+	private static RetryEngine.Settings settings(int budget, double budgetPerSecond, int breakerThreshold) {
+		return new RetryEngine.Settings(2, Duration.ofMillis(1), Duration.ofMillis(10), budget, budgetPerSecond, breakerThreshold, Duration.ofSeconds(5));
+	}
+
+	/** Connection factory whose statements fail according to the given function of the execution number. */
+	private static final class StubDatabase {
+		private final AtomicInteger executions = new AtomicInteger();
+		private volatile IntFunction<Throwable> failure;
+		private final DatabaseClient client;
+
+		private StubDatabase(IntFunction<Throwable> failure) {
+			this.failure = failure;
+			ConnectionFactoryMetadata metadata = () -> "PostgreSQL";
+			ConnectionFactory factory = new ConnectionFactory() {
+				@Override
+				public Mono<Connection> create() {
+					return Mono.just(connection());
+				}
+				@Override
+				public ConnectionFactoryMetadata getMetadata() {
+					return metadata;
+				}
+			};
+			client = DatabaseClient.create(factory);
+		}
+
+		private Connection connection() {
+			return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class }, (_, method, _) -> {
+				if (method.getName().equals("createStatement")) return statement();
+				if (method.getName().equals("isAutoCommit")) return true;
+				return Mono.empty();
+			});
+		}
+
+		private Statement statement() {
+			return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Statement.class }, (proxy, method, _) -> {
+				if (!method.getName().equals("execute")) return proxy;
+				return Mono.defer(() -> {
+					Throwable error = failure.apply(executions.incrementAndGet());
+					if (error != null) return Mono.error(error);
+					return Mono.just(result());
+				});
+			});
+		}
+
+		private Result result() {
+			return (Result) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Result.class }, (_, _, _) -> Mono.just(1L));
+		}
+
+		private Mono<Long> operation() {
+			return client.sql("UPDATE test SET value = 1").fetch().rowsUpdated();
+		}
+	}
+
+	@Test
+	void classification() {
+		assertThat(RetryEngine.classify(new R2dbcRollbackException("serialization", "40001"))).isEqualTo(Failure.SERIALIZATION);
+		assertThat(RetryEngine.classify(new RuntimeException(new R2dbcTransientResourceException("deadlock", "40P01")))).isEqualTo(Failure.DEADLOCK);
+		assertThat(RetryEngine.classify(new R2dbcNonTransientResourceException("connection failure", "08006"))).isEqualTo(Failure.CONNECTION);
+		assertThat(RetryEngine.classify(new R2dbcNonTransientResourceException("closed"))).isEqualTo(Failure.CONNECTION);
+		assertThat(RetryEngine.classify(new R2dbcNonTransientResourceException("shutdown", "57P01"))).isEqualTo(Failure.CONNECTION);
+		assertThat(RetryEngine.classify(new R2dbcTransientResourceException("rollback", "40000"))).isEqualTo(Failure.TRANSIENT);
+		assertThat(RetryEngine.classify(new R2dbcBadGrammarException("syntax", "42601"))).isNull();
+		assertThat(RetryEngine.classify(new IllegalStateException())).isNull();
+
+		assertThat(RetryEngine.isAnswered(new R2dbcBadGrammarException("syntax", "42601"))).isTrue();
+		assertThat(RetryEngine.isAnswered(new BadSqlGrammarException("update", "UPDATE", new R2dbcBadGrammarException("syntax", "42601")))).isTrue();
+		assertThat(RetryEngine.isAnswered(new R2dbcNonTransientResourceException("closed"))).isFalse();
+		assertThat(RetryEngine.isAnswered(new IllegalStateException())).isFalse();
+		assertThat(RetryEngine.isAnswered(new TimeoutException())).isFalse();
+	}
+
+	@Test
+	void transientFailuresAreRetried() {
+		var db = new StubDatabase(n -> n % 2 == 1 ? new R2dbcRollbackException("could not serialize access", "40001") : null);
+		var engine = new RetryEngine(settings(100, 0, 10), System::nanoTime);
+		for (int i = 0; i < 20; ++i) assertThat(engine.retry(db.operation()).block()).isEqualTo(1L);
+		assertThat(db.executions.get()).isEqualTo(40);
+		assertThat(engine.getRetries()).isEqualTo(20);
+		assertThat(engine.getCircuitState()).isEqualTo(CircuitState.CLOSED);
+	}
+
+	@Test
+	void nonRetryableFailuresAreNotRetried() {
+		var db = new StubDatabase(_ -> new R2dbcBadGrammarException("syntax error", "42601"));
+		var engine = new RetryEngine(settings(100, 0, 10), System::nanoTime);
+		assertThat(engine.retry(db.operation()).onErrorResume(_ -> Mono.empty()).block()).isNull();
+		assertThat(db.executions.get()).isEqualTo(1);
+	}
+
+	@Test
+	void budgetBoundsAmplification() {
+		// serialization failures do not open the circuit: only the budget limits the retries
+		var db = new StubDatabase(_ -> new R2dbcRollbackException("could not serialize access", "40001"));
+		var engine = new RetryEngine(settings(30, 0, 10), System::nanoTime);
+		int nb = 500;
+		var failures = new AtomicInteger();
+		Flux.range(0, nb).flatMap(_ -> engine.retry(db.operation()).doOnError(_ -> failures.incrementAndGet()).onErrorResume(_ -> Mono.empty()), 100).blockLast();
+		assertThat(failures.get()).isEqualTo(nb);
+		// without budget, each operation would have been executed 3 times
+		assertThat(db.executions.get()).isEqualTo(nb + 30);
+		assertThat(engine.getRetries()).isEqualTo(30);
+		assertThat(engine.getBudgetExhausted()).isBetween(nb - 30L / 2, (long) nb);
+	}
+
+	@Test
+	void budgetIsRefilledOverTime() {
+		var clock = new AtomicLong();
+		var db = new StubDatabase(_ -> new R2dbcRollbackException("could not serialize access", "40001"));
+		var engine = new RetryEngine(settings(4, 2, 10), clock::get);
+		for (int i = 0; i < 10; ++i) engine.retry(db.operation()).onErrorResume(_ -> Mono.empty()).block();
+		assertThat(engine.getRetries()).isEqualTo(4);
+		clock.addAndGet(Duration.ofSeconds(1).toNanos());
+		for (int i = 0; i < 10; ++i) engine.retry(db.operation()).onErrorResume(_ -> Mono.empty()).block();
+		assertThat(engine.getRetries()).isEqualTo(6);
+		clock.addAndGet(Duration.ofHours(1).toNanos());
+		for (int i = 0; i < 10; ++i) engine.retry(db.operation()).onErrorResume(_ -> Mono.empty()).block();
+		assertThat(engine.getRetries()).isEqualTo(10);
+	}
+
+	@Test
+	void circuitBreakerShedsLoadDuringOutage() {
+		var clock = new AtomicLong();
+		var db = new StubDatabase(_ -> new R2dbcNonTransientResourceException("connection refused", "08001"));
+		var engine = new RetryEngine(settings(30, 0, 20), clock::get);
+		int nb = 1000;
+		var unavailable = new AtomicInteger();
+		Flux.range(0, nb).flatMap(_ -> engine.retry(db.operation())
+			.doOnError(ServiceUnavailableException.class, _ -> unavailable.incrementAndGet())
+			.onErrorResume(_ -> Mono.empty()), 100).blockLast();
+		assertThat(engine.getCircuitState()).isEqualTo(CircuitState.OPEN);
+		// only the attempts until the circuit opened reached the database
+		assertThat(db.executions.get()).isLessThanOrEqualTo(20 + 100 * 3);
+		assertThat(unavailable.get()).isGreaterThanOrEqualTo(nb - 100);
+
+		// still open: rejected without reaching the database
+		int executions = db.executions.get();
+		clock.addAndGet(Duration.ofSeconds(4).toNanos());
+		assertThat(engine.retry(db.operation()).onErrorResume(ServiceUnavailableException.class, _ -> Mono.just(-1L)).block()).isEqualTo(-1L);
+		assertThat(db.executions.get()).isEqualTo(executions);
+
+		// after the pause, a probe failing opens the circuit again
+		clock.addAndGet(Duration.ofSeconds(2).toNanos());
+		engine.retry(db.operation()).onErrorResume(_ -> Mono.empty()).block();
+		assertThat(db.executions.get()).isEqualTo(executions + 1);
+		assertThat(engine.getCircuitState()).isEqualTo(CircuitState.OPEN);
+
+		// database is back: the probe closes the circuit
+		db.failure = _ -> null;
+		clock.addAndGet(Duration.ofSeconds(6).toNanos());
+		assertThat(engine.retry(db.operation()).block()).isEqualTo(1L);
+		assertThat(engine.getCircuitState()).isEqualTo(CircuitState.CLOSED);
+		assertThat(Flux.range(0, 50).flatMap(_ -> engine.retry(db.operation())).count().block()).isEqualTo(50);
+	}
+
+	@Test
+	void errorsNotFromTheDatabaseDoNotCloseTheCircuit() {
+		var clock = new AtomicLong();
+		var db = new StubDatabase(_ -> new R2dbcNonTransientResourceException("connection refused", "08001"));
+		var engine = new RetryEngine(settings(0, 0, 3), clock::get);
+		for (int i = 0; i < 3; ++i) engine.retry(db.operation()).onErrorResume(_ -> Mono.empty()).block();
+		assertThat(engine.getCircuitState()).isEqualTo(CircuitState.OPEN);
+
+		// the probe fails without an answer of the database: the circuit stays half-open, and the next operation probes
+		db.failure = _ -> new IllegalStateException("application failure");
+		clock.addAndGet(Duration.ofSeconds(6).toNanos());
+		engine.retry(db.operation()).onErrorResume(_ -> Mono.empty()).block();
+		assertThat(engine.getCircuitState()).isEqualTo(CircuitState.HALF_OPEN);
+		int executions = db.executions.get();
+		engine.retry(db.operation()).onErrorResume(_ -> Mono.empty()).block();
+		assertThat(db.executions.get()).isEqualTo(executions + 1);
+		assertThat(engine.getCircuitState()).isEqualTo(CircuitState.HALF_OPEN);
+
+		// an error answered by the database closes it
+		db.failure = _ -> new R2dbcBadGrammarException("syntax error", "42601");
+		engine.retry(db.operation()).onErrorResume(_ -> Mono.empty()).block();
+		assertThat(engine.getCircuitState()).isEqualTo(CircuitState.CLOSED);
+	}
+
+}
@@ -0,0 +1,93 @@
+package org.trailence.global.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.trailence.global.TrailenceUtils;
+import org.trailence.trail.TrackStorage;
+import org.trailence.trail.dto.Track;
+
+import reactor.core.publisher.Mono;
+
+class TestValidated {
+
+	@Test
+	void matchingValidatorDoesNotSubscribeToTheBody() {
+		AtomicInteger decoded = new AtomicInteger();
+		String etag = Validated.digest("trail", 1L, 2L);
+		var validated = new Validated<>(etag, Mono.fromSupplier(() -> {
+			decoded.incrementAndGet();
+			return "body";
+		}));
+
+		var response = validated.toResponse(exchange(null)).block();
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getETag()).isEqualTo("\"" + etag + "\"");
+		assertThat(response.getBody()).isEqualTo("body");
+		assertThat(decoded.get()).isEqualTo(1);
+
+		for (String ifNoneMatch : new String[] { "\"" + etag + "\"", "W/\"" + etag + "\"", "\"other\", \"" + etag + "\"" }) {
+			response = validated.toResponse(exchange(ifNoneMatch)).block();
+			assertThat(response.getStatusCode()).as(ifNoneMatch).isEqualTo(HttpStatus.NOT_MODIFIED);
+			assertThat(response.getBody()).isNull();
+		}
+		assertThat(decoded.get()).isEqualTo(1);
+
+		response = validated.toResponse(exchange("\"other\"")).block();
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(decoded.get()).isEqualTo(2);
+	}
+
+	@Test
+	void conditionalTrackRequestSkipsTheDecoder() throws Exception {
+		var data = new TrackStorage.V1.StoredData();
+		data.s = new Track.Segment[] { new Track.Segment(new Track.Point[] { new Track.Point(45000000L, 5000000L, 1000L, 1700000000000L, 10L, null, null, null) }) };
+		data.wp = new Track.WayPoint[0];
+		byte[] stored = TrackStorage.V1V2Bridge.v1DtoToV2(data);
+		AtomicInteger decoded = new AtomicInteger();
+		Mono<CompressedPayload> payload = Mono.fromCallable(() -> {
+			decoded.incrementAndGet();
+			var dto = TrackStorage.V1V2Bridge.v2ToV1Dto(stored);
+			return CompressedPayload.compress(TrailenceUtils.mapper.writeValueAsBytes(dto.s));
+		});
+		String digest = payload.block().digest();
+		decoded.set(0);
+
+		String etag = CompressedPayload.etag(digest, "gzip");
+		var response = new Validated<>(etag, payload)
+			.toResponse(exchange("\"" + etag + "\""), (builder, p) -> p.toResponse(builder, "gzip", MediaType.APPLICATION_JSON))
+			.block();
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+		assertThat(decoded.get()).isZero();
+
+		// the plain representation has a different validator
+		response = new Validated<>(CompressedPayload.etag(digest, null), payload)
+			.toResponse(exchange("\"" + etag + "\""), (builder, p) -> p.toResponse(builder, null, MediaType.APPLICATION_JSON))
+			.block();
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getETag()).isEqualTo("\"" + digest + "\"");
+		assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+		assertThat(decoded.get()).isEqualTo(1);
+	}
+
+	@Test
+	void digestDependsOnEachVersion() {
+		assertThat(Validated.digest("a", 1L)).isEqualTo(Validated.digest("a", 1L)).hasSize(22);
+		assertThat(Validated.digest("a", 1L)).isNotEqualTo(Validated.digest("a", 2L));
+		assertThat(Validated.digest("a1", null)).isNotEqualTo(Validated.digest("a", "1"));
+	}
+
+	private static MockServerWebExchange exchange(String ifNoneMatch) {
+		var request = MockServerHttpRequest.get("/test");
+		if (ifNoneMatch != null) request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+		return MockServerWebExchange.from(request);
+	}
+
+}
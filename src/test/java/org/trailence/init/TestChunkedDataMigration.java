@@ -0,0 +1,95 @@
+package org.trailence.init;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.trailence.test.AbstractTest;
+
+import lombok.AllArgsConstructor;
+
+class TestChunkedDataMigration extends AbstractTest {
+
+	@Autowired private ApplicationContext context;
+	@Autowired private R2dbcEntityTemplate r2dbc;
+
+	@AllArgsConstructor
+	private static class TestMigration extends ChunkedDataMigration {
+		private long failAt;
+
+		@Override
+		public String id() {
+			return "test_chunked_migration";
+		}
+
+		@Override
+		protected int chunkSize() {
+			return 100;
+		}
+
+		@Override
+		protected List<Pass> passes() {
+			return List.of(new Pass(
+				"values", "test_chunked_migration",
+				List.of(new TypedColumn("id", "bigint")),
+				List.of("value", "nb_transforms"),
+				List.of(new TypedColumn("value", "bigint"), new TypedColumn("nb_transforms", "int")),
+				this::transform
+			));
+		}
+
+		private Object[] transform(Map<String, Object> row) {
+			long id = (Long) row.get("id");
+			if (id == failAt) throw new IllegalStateException("Simulated crash");
+			if (id % 10 == 0) return null; // nothing to update
+			return new Object[] { ((Long) row.get("value")) * 2, ((Integer) row.get("nb_transforms")) + 1 };
+		}
+	}
+
+	@Test
+	void interruptAndResume() throws Exception {
+		r2dbc.getDatabaseClient().sql(
+			"CREATE TABLE test_chunked_migration (id bigint PRIMARY KEY, value bigint NOT NULL, nb_transforms int NOT NULL)"
+		).then().block();
+		r2dbc.getDatabaseClient().sql(
+			"INSERT INTO test_chunked_migration (id, value, nb_transforms) SELECT i, i, 0 FROM generate_series(1, 2000) i"
+		).then().block();
+		try {
+			// crash in the 11th chunk
+			assertThatThrownBy(() -> new TestMigration(1050).execute(r2dbc, context)).hasMessageContaining("Simulated crash");
+			assertThat(checkpoint()).isEqualTo(1000);
+			assertThat(count("id <= 1000 AND id % 10 <> 0 AND nb_transforms = 1 AND value = id * 2")).isEqualTo(900);
+			assertThat(count("(id > 1000 OR id % 10 = 0) AND nb_transforms = 0 AND value = id")).isEqualTo(1100);
+
+			// resume
+			new TestMigration(-1).execute(r2dbc, context);
+			assertThat(checkpoint()).isEqualTo(2000);
+			assertThat(count("id % 10 <> 0 AND nb_transforms = 1 AND value = id * 2")).isEqualTo(1800);
+			assertThat(count("id % 10 = 0 AND nb_transforms = 0 AND value = id")).isEqualTo(200);
+
+			// running it again does not transform anything
+			new TestMigration(-1).execute(r2dbc, context);
+			assertThat(count("nb_transforms > 1")).isZero();
+		} finally {
+			r2dbc.getDatabaseClient().sql("DROP TABLE test_chunked_migration").then().block();
+			r2dbc.getDatabaseClient().sql("DELETE FROM migration_checkpoints WHERE id LIKE 'test_chunked_migration/%'").then().block();
+		}
+	}
+
+	private long checkpoint() {
+		return r2dbc.getDatabaseClient().sql("SELECT nb_done FROM migration_checkpoints WHERE id = 'test_chunked_migration/values'")
+			.map((row, _) -> row.get(0, Long.class)).one().block();
+	}
+
+	private long count(String where) {
+		return r2dbc.getDatabaseClient().sql("SELECT count(*) FROM test_chunked_migration WHERE " + where)
+			.map((row, _) -> row.get(0, Long.class)).one().block();
+	}
+
+}
@@ -0,0 +1,112 @@
+package org.trailence.init;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.trailence.test.AbstractTest;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+@Slf4j
+class TestInitDB extends AbstractTest {
+
+	@Autowired private ApplicationContext context;
+	@Autowired private R2dbcEntityTemplate r2dbc;
+
+	@Test
+	void aggregatesAreComputedOnlyWhenTheirFingerprintChanged() {
+		insertSyntheticUsers(3);
+		try {
+			// wrong aggregates, that only a full computation fixes
+			r2dbc.getDatabaseClient().sql("UPDATE user_quotas SET collections_used = 42, trails_used = 42 WHERE email LIKE 'initdb-%@synthetic.test'").then().block();
+			Map<String, String> fingerprints = fingerprints();
+			assertThat(fingerprints).containsKey("aggregates");
+			assertThat(fingerprints.keySet()).anyMatch(id -> id.startsWith("table:"));
+			List<String> migrations = migrations();
+
+			// nothing changed since application startup
+			init();
+			assertThat(fingerprints()).isEqualTo(fingerprints);
+			assertThat(migrations()).isEqualTo(migrations);
+			assertThat(syntheticQuotas()).containsOnly(Tuples.of(42, 42));
+
+			// aggregates fingerprint unknown: full computation
+			r2dbc.getDatabaseClient().sql("DELETE FROM init_fingerprints WHERE id = 'aggregates'").then().block();
+			init();
+			assertThat(fingerprints()).isEqualTo(fingerprints);
+			assertThat(migrations()).isEqualTo(migrations);
+			assertThat(syntheticQuotas()).containsOnly(Tuples.of(0, 0));
+		} finally {
+			deleteSyntheticUsers();
+		}
+	}
+
+	@Test
+	@Tag("benchmark")
+	void startupOnLargeDatabase() {
+		insertSyntheticUsers(20000);
+		try {
+			long start = System.currentTimeMillis();
+			init();
+			long fastPath = System.currentTimeMillis() - start;
+			r2dbc.getDatabaseClient().sql("DELETE FROM init_fingerprints WHERE id = 'aggregates'").then().block();
+			start = System.currentTimeMillis();
+			init();
+			long full = System.currentTimeMillis() - start;
+			log.info("Init with 20000 synthetic users: {} ms without change, {} ms with full computation", fastPath, full);
+		} finally {
+			deleteSyntheticUsers();
+		}
+	}
+
+	private void init() {
+		InitDB init = new InitDB();
+		context.getAutowireCapableBeanFactory().autowireBean(init);
+		init.init(context);
+	}
+
+	private void insertSyntheticUsers(int nb) {
+		r2dbc.getDatabaseClient().sql(
+			"INSERT INTO users (email, password, created_at) SELECT 'initdb-' || i || '@synthetic.test', NULL, 0 FROM generate_series(1, $1) i"
+		).bind(0, nb).then().block();
+		r2dbc.getDatabaseClient().sql(
+			"INSERT INTO user_quotas (email) SELECT 'initdb-' || i || '@synthetic.test' FROM generate_series(1, $1) i"
+		).bind(0, nb).then().block();
+	}
+
+	private void deleteSyntheticUsers() {
+		r2dbc.getDatabaseClient().sql("DELETE FROM user_quotas WHERE email LIKE 'initdb-%@synthetic.test'").then().block();
+		r2dbc.getDatabaseClient().sql("DELETE FROM users WHERE email LIKE 'initdb-%@synthetic.test'").then().block();
+	}
+
+	private Map<String, String> fingerprints() {
+		return r2dbc.getDatabaseClient().sql("SELECT id, fingerprint FROM init_fingerprints")
+		.map((row, _) -> Tuples.of(row.get(0, String.class), row.get(1, String.class)))
+		.all()
+		.collectMap(Tuple2::getT1, Tuple2::getT2)
+		.block();
+	}
+
+	private List<String> migrations() {
+		return r2dbc.getDatabaseClient().sql("SELECT id FROM migrations ORDER BY id").map((row, _) -> row.get(0, String.class)).all().collectList().block();
+	}
+
+	/** Collections and trails used by the synthetic users. */
+	private List<Tuple2<Integer, Integer>> syntheticQuotas() {
+		return r2dbc.getDatabaseClient().sql("SELECT collections_used, trails_used FROM user_quotas WHERE email LIKE 'initdb-%@synthetic.test'")
+		.map((row, _) -> Tuples.of(row.get(0, Integer.class), row.get(1, Integer.class)))
+		.all()
+		.collectList()
+		.block();
+	}
+
+}
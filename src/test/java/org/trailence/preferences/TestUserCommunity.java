@@ -0,0 +1,122 @@
+package org.trailence.preferences;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.trailence.test.AbstractTest;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class TestUserCommunity extends AbstractTest {
+
+	@Autowired private UserCommunityService service;
+	@Autowired private R2dbcEntityTemplate r2dbc;
+
+	// full recompute done at every startup and every day before counters were fully incremental
+	private static final String LEGACY_FULL_RECOMPUTE =
+		"WITH allUsers AS ("
+		+ "SELECT"
+		+ "  u.email,"
+		+ "  (SELECT count(*) FROM public_trails pt WHERE pt.author = u.email) as nb_publications,"
+		+ "  (SELECT count(*) FROM public_trail_feedback f WHERE f.email = u.email AND f.comment IS NOT NULL) as nb_comments,"
+		+ "  (SELECT count(*) FROM public_trail_feedback f WHERE f.email = u.email AND f.rate IS NOT NULL) as nb_rates"
+		+ " FROM users u"
+		+ ")"
+		+ "INSERT INTO user_community (email,nb_publications,nb_comments,nb_rates)"
+		+ " SELECT * FROM allUsers WHERE nb_publications > 0 OR nb_rates > 0 OR nb_comments > 0"
+		+ " ON CONFLICT (email) DO UPDATE"
+		+ " SET nb_publications = EXCLUDED.nb_publications, nb_comments = EXCLUDED.nb_comments, nb_rates = EXCLUDED.nb_rates";
+
+	@Test
+	void incrementalCountersAndDriftCheck() {
+		UUID trailUuid = insertFeedbacks(20, 2000);
+		try {
+			var before = service.getUserCommunity("community-1@synthetic.test").block();
+			service.addComment("community-1@synthetic.test", true, true).block();
+			var added = service.getUserCommunity("community-1@synthetic.test").block();
+			assertThat(added.getNbComments()).isEqualTo(before.getNbComments() + 1);
+			assertThat(added.getNbRates()).isEqualTo(before.getNbRates() + 1);
+			service.removeComment("community-1@synthetic.test", true, true).block();
+			var removed = service.getUserCommunity("community-1@synthetic.test").block();
+			assertThat(removed.getNbComments()).isEqualTo(before.getNbComments());
+			assertThat(removed.getNbRates()).isEqualTo(before.getNbRates());
+
+			// the counters of the authors follow the deletion of the comments of a trail
+			service.removeCommentsOfTrail(trailUuid).block();
+			r2dbc.getDatabaseClient().sql("DELETE FROM public_trail_feedback WHERE public_trail_uuid = $1").bind(0, trailUuid).then().block();
+			assertThat(service.checkDrift(100000).block()).isZero();
+
+			// corrupted counters are reported and fixed
+			r2dbc.getDatabaseClient().sql(
+				"UPDATE user_community SET nb_comments = nb_comments + 7 WHERE email IN ('community-10@synthetic.test', 'community-20@synthetic.test')"
+			).then().block();
+			assertThat(service.checkDrift(100000).block()).isEqualTo(2);
+			assertThat(service.checkDrift(100000).block()).isZero();
+		} finally {
+			deleteFeedbacks();
+		}
+	}
+
+	@Test
+	@Tag("benchmark")
+	void millionFeedbacks() {
+		UUID trailUuid = insertFeedbacks(1000, 1000000);
+		try {
+			long start = System.currentTimeMillis();
+			service.addComment("community-1@synthetic.test", true, true).block();
+			long incremental = System.currentTimeMillis() - start;
+			service.removeComment("community-1@synthetic.test", true, true).block();
+			
+			start = System.currentTimeMillis();
+			service.removeCommentsOfTrail(trailUuid).block();
+			r2dbc.getDatabaseClient().sql("DELETE FROM public_trail_feedback WHERE public_trail_uuid = $1").bind(0, trailUuid).then().block();
+			long trailDeletion = System.currentTimeMillis() - start;
+			
+			start = System.currentTimeMillis();
+			service.checkDrift(UserCommunityService.DRIFT_CHECK_SAMPLE_SIZE).block();
+			long driftCheck = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			r2dbc.getDatabaseClient().sql(LEGACY_FULL_RECOMPUTE).then().block();
+			long fullRecompute = System.currentTimeMillis() - start;
+			log.info(
+				"With 1M feedbacks: incremental update {} ms, trail deletion {} ms, drift check on {} users {} ms, legacy full recompute {} ms",
+				incremental, trailDeletion, UserCommunityService.DRIFT_CHECK_SAMPLE_SIZE, driftCheck, fullRecompute
+			);
+		} finally {
+			deleteFeedbacks();
+		}
+	}
+
+	/** Synthetic users with feedbacks spread over them, one out of 100 on the returned trail. */
+	private UUID insertFeedbacks(int nbUsers, int nbFeedbacks) {
+		r2dbc.getDatabaseClient().sql(
+			"INSERT INTO users (email, password, created_at) SELECT 'community-' || i || '@synthetic.test', NULL, 0 FROM generate_series(1, $1) i"
+		).bind(0, nbUsers).then().block();
+		UUID trailUuid = UUID.randomUUID();
+		r2dbc.getDatabaseClient().sql(
+			"INSERT INTO public_trail_feedback (uuid, public_trail_uuid, email, date, rate, comment, reviewed)" +
+			" SELECT gen_random_uuid(), CASE WHEN i % 100 = 0 THEN $1 ELSE gen_random_uuid() END, 'community-' || (i % $2 + 1) || '@synthetic.test', i," +
+			" CASE WHEN i % 3 = 0 THEN NULL ELSE (i % 6) END, CASE WHEN i % 2 = 0 THEN 'comment' ELSE NULL END, true" +
+			" FROM generate_series(1, $3) i"
+		).bind(0, trailUuid).bind(1, nbUsers).bind(2, nbFeedbacks).then().block();
+		r2dbc.getDatabaseClient().sql(
+			"INSERT INTO user_community (email, nb_publications, nb_comments, nb_rates)" +
+			" SELECT email, 0, count(comment), count(rate) FROM public_trail_feedback WHERE email LIKE 'community-%' GROUP BY email"
+		).then().block();
+		return trailUuid;
+	}
+
+	private void deleteFeedbacks() {
+		r2dbc.getDatabaseClient().sql("DELETE FROM public_trail_feedback WHERE email LIKE 'community-%'").then().block();
+		r2dbc.getDatabaseClient().sql("DELETE FROM user_community WHERE email LIKE 'community-%'").then().block();
+		r2dbc.getDatabaseClient().sql("DELETE FROM users WHERE email LIKE 'community-%'").then().block();
+	}
+
+}
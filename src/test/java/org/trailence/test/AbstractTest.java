@@ -58,7 +58,8 @@ import reactor.util.function.Tuples;
 	"trailence.extensions.allowed.[thunderforest.com].enabled=true",
 	"trailence.extensions.allowed.[thunderforest.com].role=thunderforest",
 	"trailence.extensions.allowed.[thunderforest.com].content.apikey.pattern=[0-9a-f]{32}",
-	"trailence.external.kofi.verificationToken=05ae7a8e-e497-4bec-8919-79c56bf097df"
+	"trailence.external.kofi.verificationToken=05ae7a8e-e497-4bec-8919-79c56bf097df",
+	"trailence.rate-limit.enabled=false"
 })
 @Slf4j
 public abstract class AbstractTest {
@@ -141,6 +142,15 @@ public abstract class AbstractTest {
 		start();
 		registry.add("trailence.external.currency.url", () -> wireMockServer.url("/currency"));
 	}
+
+	@DynamicPropertySource
+	static void translationProperties(DynamicPropertyRegistry registry) {
+		start();
+		registry.add("trailence.translations.url", () -> wireMockServer.url("/translations"));
+		registry.add("trailence.external.aistudio.baseUrl", () -> wireMockServer.url("/aistudio"));
+		registry.add("trailence.external.aistudio.apiKey", () -> "aiKey");
+		registry.add("trailence.external.aistudio.models", () -> "model1");
+	}
 	
 	protected RequestSpecification mailHogRequest() {
 		return RestAssured.given().baseUri("http://" + smtp.getHost() + ":" + smtp.getMappedPort(8025) + "/api");
@@ -333,6 +333,11 @@ public class TestService {
 		}
 		
 		public List<Trail> createTrails(TrailCollection collection, int nbTrails, boolean sameCurrentAndOriginalTracks) {
+			return createTrails(generateTrails(collection, nbTrails, sameCurrentAndOriginalTracks));
+		}
+		
+		/** Create the tracks, and return trails referencing them which are not yet created. */
+		public List<Trail> generateTrails(TrailCollection collection, int nbTrails, boolean sameCurrentAndOriginalTracks) {
 			var trails = new LinkedList<Trail>();
 			for (int i = 0; i < nbTrails; ++i) {
 				var track1 = createTrack();
@@ -353,6 +358,11 @@ public class TestService {
 				);
 				trails.add(trail);
 			}
+			return trails;
+		}
+		
+		public List<Trail> createTrails(List<Trail> trails) {
+			int nbTrails = trails.size();
 			var response = post("/api/trail/v1/_bulkCreate", trails);
 			assertThat(response.statusCode()).isEqualTo(200);
 			var list = response.getBody().as(Trail[].class);
@@ -0,0 +1,56 @@
+package org.trailence.test.stubs;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class TranslationStub {
+
+	public static StubMapping stubDetect(WireMockServer server, String text, String language) {
+		return server.stubFor(
+			post(urlEqualTo("/translations/detect"))
+			.withRequestBody(containing(text))
+			.willReturn(
+				aResponse()
+				.withStatus(200)
+				.withBody("[{\"confidence\": 90.0, \"language\": \"" + language + "\"}]")
+				.withHeader("Content-Type", "application/json")
+			)
+		);
+	}
+	
+	public static StubMapping stubTranslate(WireMockServer server, String text, String translated) {
+		return server.stubFor(
+			post(urlEqualTo("/translations/translate"))
+			.withRequestBody(containing(text))
+			.willReturn(
+				aResponse()
+				.withStatus(200)
+				.withBody("{\"translatedText\": \"" + translated + "\"}")
+				.withHeader("Content-Type", "application/json")
+			)
+		);
+	}
+	
+	public static StubMapping stubAI(WireMockServer server, String text, String translated) {
+		return server.stubFor(
+			post(urlEqualTo("/aistudio/model1:generateContent"))
+			.withRequestBody(containing(text))
+			.willReturn(
+				aResponse()
+				.withStatus(200)
+				.withBody("{\"candidates\": [{\"content\": {\"parts\": [{\"text\": \"" + translated + "\"}]}}]}")
+				.withHeader("Content-Type", "application/json")
+			)
+		);
+	}
+	
+}
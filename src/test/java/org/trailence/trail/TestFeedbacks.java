@@ -0,0 +1,136 @@
+package org.trailence.trail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.trailence.test.AbstractTest;
+import org.trailence.trail.db.PublicTrailRatingRepository;
+import org.trailence.trail.dto.PublicTrailFeedback;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+
+@Slf4j
+class TestFeedbacks extends AbstractTest {
+
+	@Autowired private FeedbackService service;
+	@Autowired private R2dbcEntityTemplate r2dbc;
+	@Autowired private PublicTrailRatingRepository ratingRepo;
+
+	@Test
+	void pageThousandsOfComments() {
+		UUID trailUuid = UUID.randomUUID();
+		// 3000 comments, 10 per date, 2 replies for each comment with rate 1
+		r2dbc.getDatabaseClient().sql(
+			"INSERT INTO public_trail_feedback (uuid, public_trail_uuid, email, date, rate, comment, reviewed)" +
+			" SELECT gen_random_uuid(), $1, 'user' || i || '@test.com', 1000000 + i / 10, (i % 5) + 1, 'comment ' || i, true" +
+			" FROM generate_series(1, 3000) i"
+		).bind(0, trailUuid).then().block();
+		r2dbc.getDatabaseClient().sql(
+			"INSERT INTO public_trail_feedback_reply (uuid, reply_to, email, date, comment, reviewed)" +
+			" SELECT gen_random_uuid(), f.uuid, 'reply' || n || '@test.com', f.date + n, 'reply ' || n, true" +
+			" FROM public_trail_feedback f, generate_series(1, 2) n WHERE f.public_trail_uuid = $1 AND f.rate = 1"
+		).bind(0, trailUuid).then().block();
+
+		Set<String> uuids = new HashSet<>();
+		PublicTrailFeedback last = null;
+		int nbReplies = 0;
+		int nbPages = 0;
+		long start = System.currentTimeMillis();
+		do {
+			List<PublicTrailFeedback> page = service.getFeedbacks(
+				trailUuid.toString(), last == null ? 0 : last.getDate(), last == null ? null : last.getUuid(), 100, null, null, null
+			).block();
+			if (page.isEmpty()) break;
+			nbPages++;
+			for (var feedback : page) {
+				if (last != null) {
+					assertThat(feedback.getDate()).isLessThanOrEqualTo(last.getDate());
+					if (feedback.getDate() == last.getDate()) assertThat(feedback.getUuid()).isLessThan(last.getUuid());
+				}
+				assertThat(uuids.add(feedback.getUuid())).isTrue();
+				assertThat(feedback.getReplies()).hasSize(feedback.getRate() == 1 ? 2 : 0);
+				if (!feedback.getReplies().isEmpty())
+					assertThat(feedback.getReplies().get(0).getDate()).isGreaterThan(feedback.getReplies().get(1).getDate());
+				nbReplies += feedback.getReplies().size();
+				last = feedback;
+			}
+		} while (true);
+		log.info("3000 comments and {} replies read in {} pages in {} ms", nbReplies, nbPages, System.currentTimeMillis() - start);
+		assertThat(uuids).hasSize(3000);
+		assertThat(nbPages).isEqualTo(30);
+		assertThat(nbReplies).isEqualTo(1200);
+
+		// filter on rate
+		var page = service.getFeedbacks(trailUuid.toString(), 0, null, 1000, null, 1, null).block();
+		assertThat(page).hasSize(100).allMatch(f -> f.getRate() == 1 && f.getReplies().size() == 2);
+	}
+
+	@Test
+	void concurrentRates() {
+		UUID trailUuid = UUID.randomUUID();
+		Random random = new Random();
+		long[] expected = new long[] { 100, 100, 100, 100, 100, 100 };
+		ratingRepo.addRates(trailUuid, 100, 100, 100, 100, 100, 100).block();
+		List<long[]> updates = new ArrayList<>();
+		for (int i = 0; i < 500; ++i) {
+			long[] nb = new long[6];
+			int rate = random.nextInt(6);
+			nb[rate]++;
+			if (i % 5 == 0) {
+				// change of a previous rate
+				int previous = random.nextInt(6);
+				nb[previous]--;
+			}
+			for (int j = 0; j < 6; ++j) expected[j] += nb[j];
+			updates.add(nb);
+		}
+		Flux.fromIterable(updates)
+		.flatMap(nb -> ratingRepo.addRates(trailUuid, nb[0], nb[1], nb[2], nb[3], nb[4], nb[5]), 32)
+		.then().block();
+		
+		var rating = ratingRepo.findById(trailUuid).block();
+		assertThat(new long[] { rating.getNbRate0(), rating.getNbRate1(), rating.getNbRate2(), rating.getNbRate3(), rating.getNbRate4(), rating.getNbRate5() })
+		.containsExactly(expected);
+		long count = 0;
+		long sum = 0;
+		for (int i = 0; i < 6; ++i) {
+			count += expected[i];
+			sum += i * expected[i];
+		}
+		assertThat(rating.getAverage()).isCloseTo(((double) sum) / count, within(0.0001));
+		ratingRepo.deleteById(trailUuid).block();
+	}
+	
+	@Test
+	void searchOnAverageRate() {
+		// 20000 rated trails with random rates
+		List<UUID> uuids = r2dbc.getDatabaseClient().sql(
+			"INSERT INTO public_trail_ratings (trail_uuid, nb_rate0, nb_rate1, nb_rate2, nb_rate3, nb_rate4, nb_rate5)" +
+			" SELECT gen_random_uuid(), 0, (random() * 10)::int, (random() * 10)::int, (random() * 10)::int, (random() * 10)::int, (random() * 10)::int + 1" +
+			" FROM generate_series(1, 20000) RETURNING trail_uuid"
+		).map((row, _) -> row.get(0, UUID.class)).all().collectList().block();
+		long start = System.currentTimeMillis();
+		long nb = 0;
+		for (int i = 0; i < 100; ++i)
+			nb = r2dbc.getDatabaseClient().sql("SELECT count(*) FROM public_trail_ratings WHERE average >= 4.5")
+			.map((row, _) -> row.get(0, Long.class)).one().block();
+		log.info("100 searches of trails with average rate >= 4.5 ({} found) in {} ms", nb, System.currentTimeMillis() - start);
+		long expected = r2dbc.getDatabaseClient().sql(
+			"SELECT count(*) FROM public_trail_ratings WHERE (nb_rate1 + 2 * nb_rate2 + 3 * nb_rate3 + 4 * nb_rate4 + 5 * nb_rate5)::float / (nb_rate0 + nb_rate1 + nb_rate2 + nb_rate3 + nb_rate4 + nb_rate5) >= 4.5"
+		).map((row, _) -> row.get(0, Long.class)).one().block();
+		assertThat(nb).isEqualTo(expected);
+		r2dbc.getDatabaseClient().sql("DELETE FROM public_trail_ratings WHERE trail_uuid = ANY($1)").bind(0, uuids.toArray(new UUID[0])).then().block();
+	}
+
+}
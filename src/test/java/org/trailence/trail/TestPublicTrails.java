@@ -0,0 +1,53 @@
+package org.trailence.trail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.http.HttpHeaders;
+import org.trailence.test.AbstractTest;
+import org.trailence.trail.dto.PatchPublicTrailRequest;
+import org.trailence.trail.dto.PublicTrail;
+
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+
+class TestPublicTrails extends AbstractTest {
+
+	@Autowired private R2dbcEntityTemplate r2dbc;
+
+	@Test
+	void conditionalGetAfterPatch() {
+		var author = test.createUserAndLogin();
+		UUID uuid = UUID.randomUUID();
+		r2dbc.getDatabaseClient().sql(
+			"INSERT INTO public_trails (uuid, author, created_at, updated_at, slug, name, description, location, date, distance, breaks_duration, estimated_duration," +
+			" loop_type, activity, bounds, tile_zoom1, tile_zoom2, tile_zoom3, tile_zoom4, tile_zoom5, tile_zoom6, tile_zoom7, tile_zoom8, tile_zoom9, tile_zoom10," +
+			" simplified_path, name_translations, description_translations)" +
+			" VALUES ($1, $2, 1000, 1000, $3, 'test', '', 'here', 1000, 5000, 0, 3600000, 'L', 'hiking', box '((1,1),(0,0))', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0," +
+			" '{0,0,1,1}', '{}', '{}')"
+		).bind(0, uuid).bind(1, author.getEmail()).bind(2, "test-" + uuid).then().block();
+		String path = "/api/public/trails/v1/trailById/" + uuid;
+
+		var response = RestAssured.given().get(path);
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.getBody().as(PublicTrail.class).getLoopType()).isEqualTo("L");
+		String etag = response.getHeader(HttpHeaders.ETAG);
+		assertThat(etag).isNotNull();
+		assertThat(RestAssured.given().header(HttpHeaders.IF_NONE_MATCH, etag).get(path).statusCode()).isEqualTo(304);
+
+		response = test.asAdmin().request().contentType(ContentType.JSON).body(new PatchPublicTrailRequest("OW")).patch("/api/public/trails/v1/trail/" + uuid);
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.getBody().as(PublicTrail.class).getLoopType()).isEqualTo("OW");
+
+		// the copy held by the client is stale
+		response = RestAssured.given().header(HttpHeaders.IF_NONE_MATCH, etag).get(path);
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.getBody().as(PublicTrail.class).getLoopType()).isEqualTo("OW");
+		assertThat(response.getHeader(HttpHeaders.ETAG)).isNotEqualTo(etag);
+	}
+
+}
@@ -0,0 +1,185 @@
+package org.trailence.trail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.trailence.trail.TrackDelta.Appended;
+import org.trailence.trail.TrackDelta.Hashes;
+import org.trailence.trail.TrackStorage.V1.StoredData;
+import org.trailence.trail.dto.Track.Point;
+import org.trailence.trail.dto.Track.Segment;
+import org.trailence.trail.dto.Track.WayPoint;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class TestTrackDelta {
+
+	@Test
+	void testDetectChanges() {
+		Random random = new Random(1);
+		StoredData data = new StoredData(new Segment[] { new Segment(points(random, 100)), new Segment(points(random, 50)) }, new WayPoint[] { wayPoint("test") });
+		Hashes stored = Hashes.of(data);
+
+		// unchanged
+		StoredData same = new StoredData(new Segment[] { new Segment(data.s[0].getP().clone()), new Segment(data.s[1].getP().clone()) }, new WayPoint[] { wayPoint("test") });
+		Appended appended = TrackDelta.detectAppend(stored, same, Hashes.of(same));
+		assertThat(appended).isNotNull();
+		assertThat(appended.isEmpty()).isTrue();
+
+		// points added to the last segment, and a new segment
+		Point[] added = points(random, 20);
+		Point[] last = concat(data.s[1].getP(), Arrays.copyOfRange(added, 1, 20));
+		Point[] newSegment = points(random, 10);
+		StoredData longer = new StoredData(new Segment[] { data.s[0], new Segment(last), new Segment(newSegment) }, data.wp);
+		appended = TrackDelta.detectAppend(stored, longer, Hashes.of(longer));
+		assertThat(appended).isNotNull();
+		assertThat(appended.isContinueSegment()).isTrue();
+		assertThat(appended.getS()).hasSize(2);
+		assertThat(appended.getS()[0].getP()).containsExactly(Arrays.copyOfRange(added, 1, 20));
+		assertThat(appended.getS()[1].getP()).isSameAs(newSegment);
+		assertThat(stored.append(appended).encode()).isEqualTo(Hashes.of(longer).encode());
+
+		// point modified
+		Point[] modified = data.s[0].getP().clone();
+		modified[50] = new Point(modified[50].getL() + 1, modified[50].getN(), modified[50].getE(), modified[50].getT(), null, null, null, null);
+		StoredData changed = new StoredData(new Segment[] { new Segment(modified), data.s[1] }, data.wp);
+		assertThat(TrackDelta.detectAppend(stored, changed, Hashes.of(changed))).isNull();
+
+		// way point modified
+		changed = new StoredData(data.s, new WayPoint[] { wayPoint("test2") });
+		assertThat(TrackDelta.detectAppend(stored, changed, Hashes.of(changed))).isNull();
+
+		// way point renamed to a string with the same String.hashCode
+		assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+		StoredData named = new StoredData(data.s, new WayPoint[] { wayPoint("Aa") });
+		changed = new StoredData(data.s, new WayPoint[] { wayPoint("BB") });
+		assertThat(TrackDelta.detectAppend(Hashes.of(named), changed, Hashes.of(changed))).isNull();
+
+		// point removed
+		changed = new StoredData(new Segment[] { data.s[0], new Segment(Arrays.copyOf(data.s[1].getP(), 49)) }, data.wp);
+		assertThat(TrackDelta.detectAppend(stored, changed, Hashes.of(changed))).isNull();
+
+		// null and 0 are the same for differences
+		Point[] withZero = data.s[1].getP().clone();
+		withZero[10] = new Point(withZero[10].getL(), withZero[10].getN(), withZero[10].getE(), withZero[10].getT(), 0L, 0L, null, null);
+		changed = new StoredData(new Segment[] { data.s[0], new Segment(withZero) }, data.wp);
+		assertThat(TrackDelta.detectAppend(stored, changed, Hashes.of(changed)).isEmpty()).isTrue();
+
+		// heading or speed modified
+		Point[] withHeading = data.s[1].getP().clone();
+		withHeading[10] = new Point(withHeading[10].getL(), withHeading[10].getN(), withHeading[10].getE(), withHeading[10].getT(), null, null, 9000L, null);
+		changed = new StoredData(new Segment[] { data.s[0], new Segment(withHeading) }, data.wp);
+		assertThat(TrackDelta.detectAppend(stored, changed, Hashes.of(changed))).isNull();
+		Point[] withSpeed = data.s[1].getP().clone();
+		withSpeed[10] = new Point(withSpeed[10].getL(), withSpeed[10].getN(), withSpeed[10].getE(), withSpeed[10].getT(), null, null, null, 9000L);
+		changed = new StoredData(new Segment[] { data.s[0], new Segment(withSpeed) }, data.wp);
+		assertThat(TrackDelta.detectAppend(stored, changed, Hashes.of(changed))).isNull();
+		assertThat(Hashes.of(changed).getSegmentHashes()[1]).isNotEqualTo(Hashes.of(new StoredData(new Segment[] { data.s[0], new Segment(withHeading) }, data.wp)).getSegmentHashes()[1]);
+
+		// encoding
+		assertThat(Hashes.decode(stored.encode()).encode()).isEqualTo(stored.encode());
+	}
+
+	@Test
+	void testTail() throws IOException {
+		Random random = new Random(2);
+		Point[] points = points(random, 1000);
+		StoredData initial = new StoredData(new Segment[] { new Segment(Arrays.copyOf(points, 400)) }, new WayPoint[] { wayPoint("start") });
+		byte[] data = TrackStorage.V1V2Bridge.v1DtoToV2(initial);
+		byte[] tail = TrackDelta.appendToTail(null, new Appended(true, new Segment[] { new Segment(Arrays.copyOfRange(points, 400, 700)) }));
+		Point[] second = points(random, 100);
+		tail = TrackDelta.appendToTail(tail, new Appended(true, new Segment[] { new Segment(Arrays.copyOfRange(points, 700, 1000)), new Segment(second) }));
+
+		StoredData expected = TrackStorage.V1V2Bridge.v2ToV1Dto(TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(new Segment[] { new Segment(points), new Segment(second) }, initial.wp)));
+		StoredData decoded = TrackDelta.decode(data, tail);
+		assertThat(decoded.s).hasSize(2);
+		assertThat(decoded.s[0].getP()).containsExactly(expected.s[0].getP());
+		assertThat(decoded.s[1].getP()).containsExactly(expected.s[1].getP());
+		assertThat(decoded.wp).containsExactly(expected.wp);
+
+		// new segment in the tail
+		tail = TrackDelta.appendToTail(null, new Appended(false, new Segment[] { new Segment(second) }));
+		decoded = TrackDelta.decode(data, tail);
+		assertThat(decoded.s).hasSize(2);
+		assertThat(decoded.s[0].getP()).hasSize(400);
+		assertThat(decoded.s[1].getP()).containsExactly(expected.s[1].getP());
+	}
+
+	@Test
+	void simulateLiveRecording() throws IOException {
+		// first run for warm up
+		simulateLiveRecording(false);
+		simulateLiveRecording(true);
+	}
+
+	private void simulateLiveRecording(boolean check) throws IOException {
+		// 3 hours at 1 point per second, uploaded every 3 minutes
+		Random random = new Random(3);
+		Point[] points = points(random, 3 * 3600);
+		int chunk = 180;
+
+		long fullTime = 0;
+		long fullBytes = 0;
+		long tailTime = 0;
+		long tailBytes = 0;
+		int compactions = 0;
+		byte[] data = null;
+		byte[] tail = null;
+		Hashes hashes = null;
+		for (int end = chunk; end <= points.length; end += chunk) {
+			StoredData current = new StoredData(new Segment[] { new Segment(Arrays.copyOf(points, end)) }, new WayPoint[0]);
+
+			// full re-encode on each update
+			long start = System.nanoTime();
+			byte[] full = TrackStorage.V1V2Bridge.v1DtoToV2(current);
+			fullTime += System.nanoTime() - start;
+			fullBytes += full.length;
+
+			// hashes and tail
+			start = System.nanoTime();
+			Hashes newHashes = Hashes.of(current);
+			Appended appended = hashes != null ? TrackDelta.detectAppend(hashes, current, newHashes) : null;
+			byte[] newTail = appended != null ? TrackDelta.appendToTail(tail, appended) : null;
+			if (newTail != null && !TrackDelta.shouldCompact(data.length, newTail.length)) {
+				tail = newTail;
+				tailBytes += tail.length;
+			} else {
+				data = TrackStorage.V1V2Bridge.v1DtoToV2(current);
+				tail = null;
+				tailBytes += data.length;
+				compactions++;
+			}
+			hashes = newHashes;
+			tailTime += System.nanoTime() - start;
+		}
+		if (!check) return;
+		StoredData decoded = TrackDelta.decode(data, tail);
+		assertThat(decoded.s[0].getP()).hasSize(points.length);
+		assertThat(tailBytes).isLessThan(fullBytes / 2);
+		log.info("Live recording, {} updates: full re-encode {} ms and {} bytes written, tail {} ms and {} bytes written with {} compactions",
+			points.length / chunk, fullTime / 1000000, fullBytes, tailTime / 1000000, tailBytes, compactions);
+	}
+
+	private static Point[] points(Random random, int nb) {
+		Point[] points = new Point[nb];
+		points[0] = new Point(450000000L + random.nextInt(1000000), 50000000L + random.nextInt(1000000), 5000L, 1700000000000L, 500L, null, null, null);
+		for (int i = 1; i < nb; ++i)
+			points[i] = new Point((long) random.nextInt(-150, 151), (long) random.nextInt(-200, 201), random.nextBoolean() ? (long) random.nextInt(-3, 4) : null, 1000L, null, null, null, null);
+		return points;
+	}
+
+	private static WayPoint wayPoint(String name) {
+		return new WayPoint(450000000L, 50000000L, null, null, name, null, null, null);
+	}
+
+	private static Point[] concat(Point[] a, Point[] b) {
+		Point[] result = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, result, a.length, b.length);
+		return result;
+	}
+}
@@ -0,0 +1,124 @@
+package org.trailence.trail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.trailence.global.TrailenceUtils;
+import org.trailence.trail.TrackExporter.ExportedTrail;
+import org.trailence.trail.TrackStorage.V1.StoredData;
+import org.trailence.trail.dto.ExportFormat;
+import org.trailence.trail.dto.Track.Point;
+import org.trailence.trail.dto.Track.Segment;
+import org.trailence.trail.dto.Track.WayPoint;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+
+@Slf4j
+class TestTrackExporter {
+
+	@Test
+	void testFormats() throws IOException {
+		Point[] points = new Point[] {
+			new Point(453456789L, 51234567L, 1234L, 1700000000000L, null, null, null, null),
+			new Point(-10L, 100L, -4L, 1000L, null, null, null, null),
+		};
+		byte[] data = TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(
+			new Segment[] { new Segment(points) },
+			new WayPoint[] { new WayPoint(453456789L, 51234567L, null, null, "A & B", null, null, null) }
+		));
+		Flux<ExportedTrail> trails = Flux.just(new ExportedTrail(UUID.randomUUID(), "<Trail>", "desc", data, null));
+
+		String gpx = new String(concat(TrackExporter.export(trails, ExportFormat.GPX, false)), StandardCharsets.UTF_8);
+		assertThat(gpx)
+			.contains("<wpt lat=\"45.3456789\" lon=\"5.1234567\"><name>A &amp; B</name></wpt>")
+			.contains("<trk><name>&lt;Trail&gt;</name><desc>desc</desc>")
+			.contains("<trkpt lat=\"45.3456779\" lon=\"5.1234667\"><ele>123</ele><time>2023-11-14T22:13:21Z</time></trkpt>")
+			.endsWith("</gpx>\n");
+		assertThat(gpx.indexOf("<wpt")).isLessThan(gpx.indexOf("<trk>"));
+
+		String kml = new String(concat(TrackExporter.export(trails, ExportFormat.KML, false)), StandardCharsets.UTF_8);
+		assertThat(kml).contains("<coordinates>5.1234567,45.3456789,123.4 5.1234667,45.3456779,123 </coordinates>");
+
+		String json = new String(concat(TrackExporter.export(trails, ExportFormat.GEOJSON, false)), StandardCharsets.UTF_8);
+		var geojson = TrailenceUtils.mapper.readTree(json);
+		assertThat(geojson.get("features")).hasSize(2);
+		assertThat(geojson.get("features").get(0).get("properties").get("name").asString()).isEqualTo("<Trail>");
+		assertThat(geojson.get("features").get(0).get("geometry").get("coordinates").get(0).get(1).toString()).isEqualTo("[5.1234667,45.3456779,123]");
+
+		byte[] zip = concat(TrackExporter.export(Flux.concat(trails, trails), ExportFormat.GPX, true));
+		try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+			var entry = in.getNextEntry();
+			assertThat(entry.getName()).isEqualTo("_Trail_.gpx");
+			assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).startsWith("<?xml").endsWith("</gpx>\n");
+			entry = in.getNextEntry();
+			assertThat(entry.getName()).startsWith("_Trail_-").endsWith(".gpx");
+			assertThat(in.getNextEntry()).isNull();
+		}
+	}
+
+	@Test
+	void testDecimals() {
+		assertThat(TrackExporter.appendDecimal(new StringBuilder(), 0, 7)).hasToString("0");
+		assertThat(TrackExporter.appendDecimal(new StringBuilder(), -5, 7)).hasToString("-0.0000005");
+		assertThat(TrackExporter.appendDecimal(new StringBuilder(), 1800000000, 7)).hasToString("180");
+		assertThat(TrackExporter.appendDecimal(new StringBuilder(), 12340, 1)).hasToString("1234");
+		assertThat(TrackExporter.appendDecimal(new StringBuilder(), -12345, 1)).hasToString("-1234.5");
+	}
+
+	@Test
+	void export10000TrailsWithBoundedMemory() throws IOException {
+		int nbTrails = 10000;
+		// all trails share the same data, so the source does not use memory
+		Random random = new Random(1);
+		Point[] points = new Point[200];
+		points[0] = new Point(450000000L, 50000000L, 5000L, 1700000000000L, null, null, null, null);
+		for (int i = 1; i < points.length; ++i)
+			points[i] = new Point((long) random.nextInt(-150, 151), (long) random.nextInt(-200, 201), (long) random.nextInt(-3, 4), 1000L, null, null, null, null);
+		byte[] data = TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(new Segment[] { new Segment(points) }, new WayPoint[0]));
+		Flux<ExportedTrail> trails = Flux.range(0, nbTrails).map(i -> new ExportedTrail(UUID.randomUUID(), "trail " + i, null, data, null));
+
+		for (ExportFormat format : ExportFormat.values()) {
+			for (boolean zip : new boolean[] { false, true }) {
+				Runtime runtime = Runtime.getRuntime();
+				System.gc();
+				long baseline = runtime.totalMemory() - runtime.freeMemory();
+				AtomicLong total = new AtomicLong();
+				AtomicLong maxUsed = new AtomicLong();
+				AtomicLong count = new AtomicLong();
+				long start = System.currentTimeMillis();
+				TrackExporter.export(trails, format, zip)
+				.doOnNext(bytes -> {
+					total.addAndGet(bytes.length);
+					if (count.incrementAndGet() % 2000 == 0) {
+						System.gc();
+						maxUsed.accumulateAndGet(runtime.totalMemory() - runtime.freeMemory() - baseline, Math::max);
+					}
+				})
+				.blockLast();
+				log.info("Export {} trails in {}{}: {} bytes in {} ms, max heap increase {} KB",
+					nbTrails, format, zip ? " zipped" : "", total.get(), System.currentTimeMillis() - start, maxUsed.get() / 1024);
+				// the output is much larger than the heap budget, so it cannot have been kept in memory
+				assertThat(total.get()).isGreaterThan(zip ? 10L * 1024 * 1024 : 50L * 1024 * 1024);
+				assertThat(maxUsed.get()).isLessThan(32L * 1024 * 1024);
+			}
+		}
+	}
+
+	private static byte[] concat(Flux<byte[]> flux) {
+		return flux.reduce(new byte[0], (a, b) -> {
+			byte[] result = new byte[a.length + b.length];
+			System.arraycopy(a, 0, result, 0, a.length);
+			System.arraycopy(b, 0, result, a.length, b.length);
+			return result;
+		}).block();
+	}
+}
@@ -0,0 +1,200 @@
+package org.trailence.trail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.trailence.global.TrailenceUtils;
+import org.trailence.global.exceptions.BadRequestException;
+import org.trailence.trail.TrackStorage.V1.StoredData;
+import org.trailence.trail.dto.Track;
+import org.trailence.trail.dto.Track.Point;
+import org.trailence.trail.dto.Track.Segment;
+import org.trailence.trail.dto.Track.WayPoint;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class TestTrackFrame {
+
+	@Test
+	void testEncodeDecode() throws Exception {
+		Random random = new Random(1);
+		byte[] data = TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(new Segment[] { new Segment(points(random, 100)) }, new WayPoint[0]));
+		var withTail = new TrackFrame(UUID.randomUUID(), "été@test.com", 3, 1000, 2000, data, new byte[] { 1, 2, 3 });
+		var withoutTail = new TrackFrame(UUID.randomUUID(), "test@test.com", 1, 1000, 1000, data, null);
+		var out = new ByteArrayOutputStream();
+		out.write(withTail.encode());
+		out.write(withoutTail.encode());
+		byte[] bytes = out.toByteArray();
+
+		var buffer = ByteBuffer.wrap(bytes);
+		assertThat(TrackFrame.decode(buffer)).isEqualTo(withTail);
+		assertThat(TrackFrame.decode(buffer)).isEqualTo(withoutTail);
+		assertThat(TrackFrame.decode(buffer)).isNull();
+
+		// incomplete frame
+		buffer = ByteBuffer.wrap(bytes, 0, bytes.length - 1);
+		TrackFrame.decode(buffer);
+		int position = buffer.position();
+		assertThat(TrackFrame.decode(buffer)).isNull();
+		assertThat(buffer.position()).isEqualTo(position);
+	}
+
+	@Test
+	void testBulkVersusJson() throws Exception {
+		Random random = new Random(2);
+		List<byte[]> stored = new ArrayList<>(10000);
+		for (int i = 0; i < 10000; ++i)
+			stored.add(TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(new Segment[] { new Segment(points(random, 500)) }, new WayPoint[0])));
+		// warm up
+		bulk(stored.subList(0, 200), true);
+		bulk(stored.subList(0, 200), false);
+		for (int nb : new int[] { 1000, 10000 }) {
+			var tracks = stored.subList(0, nb);
+			long start = System.nanoTime();
+			long jsonSize = bulk(tracks, true);
+			long jsonTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			long framesSize = bulk(tracks, false);
+			long framesTime = System.nanoTime() - start;
+			log.info("{} tracks: JSON {} ms, {} bytes; frames {} ms, {} bytes", nb, jsonTime / 1000000, jsonSize, framesTime / 1000000, framesSize);
+			assertThat(framesSize).isLessThan(jsonSize);
+		}
+	}
+
+	@Test
+	void testSizeUsedIsOptional() throws Exception {
+		byte[] data = TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(new Segment[] { new Segment(points(new Random(3), 10)) }, new WayPoint[0]));
+		var withSize = new TrackFrame(UUID.randomUUID(), "test@test.com", 2, 1000, 2000, data, null, 1234);
+		var buffer = ByteBuffer.wrap(withSize.encode());
+		assertThat(TrackFrame.decode(buffer)).isEqualTo(withSize);
+		assertThat(buffer.hasRemaining()).isFalse();
+	}
+
+	@Test
+	void testReceivedFrameIsChecked() throws Exception {
+		Random random = new Random(4);
+		var s = new Segment[] { new Segment(points(random, 300)), new Segment(points(random, 5)) };
+		byte[] data = TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(s, new WayPoint[0]));
+		var uuid = UUID.randomUUID();
+		var received = TrackService.fromFrame(new TrackFrame(uuid, null, 3, 0, 0, data, null).encode());
+		assertThat(received.data()).isEqualTo(data);
+		var track = received.track();
+		assertThat(track.getUuid()).isEqualTo(uuid.toString());
+		assertThat(track.getOwner()).isNull();
+		assertThat(track.getVersion()).isEqualTo(3);
+		var expected = TrackStorage.V1V2Bridge.v2ToV1Dto(data).s;
+		assertThat(track.getS()).isEqualTo(expected);
+
+		// 2 segments with 305 points
+		assertThatThrownBy(() -> TrackStorage.V1V2Bridge.v2ToV1Dto(data, 306)).isInstanceOf(IOException.class);
+		assertThat(TrackStorage.V1V2Bridge.v2ToV1Dto(data, 307).s).isEqualTo(expected);
+		// a frame cannot carry more points than a JSON body
+		Point[] max = points(random, TrackService.MAX_FRAME_ITEMS);
+		assertThat(TrailenceUtils.mapper.writeValueAsBytes(new Track(uuid.toString(), null, 3, 0, 0, new Segment[] { new Segment(max) }, new WayPoint[0], null)))
+			.hasSizeGreaterThan(2 * 1024 * 1024);
+		byte[] tooMany = TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(new Segment[] { new Segment(max) }, new WayPoint[0]));
+		assertThatThrownBy(() -> TrackService.fromFrame(new TrackFrame(uuid, null, 3, 0, 0, tooMany, null).encode()))
+			.isInstanceOfSatisfying(BadRequestException.class, e -> assertThat(e.getErrorCode()).isEqualTo("invalid-track"));
+		assertThatThrownBy(() -> TrackService.fromFrame(new byte[] { 0, 0, 0, 10, 1 }))
+			.isInstanceOfSatisfying(BadRequestException.class, e -> assertThat(e.getErrorCode()).isEqualTo("invalid-track"));
+		assertThatThrownBy(() -> TrackService.fromFrame(new TrackFrame(uuid, null, 3, 0, 0, new byte[] { 1, 2, 3 }, null).encode()))
+			.isInstanceOfSatisfying(BadRequestException.class, e -> assertThat(e.getErrorCode()).isEqualTo("invalid-track"));
+		assertThatThrownBy(() -> TrackService.fromFrame(new TrackFrame(uuid, null, 3, 0, 0, data, new byte[1]).encode()))
+			.isInstanceOfSatisfying(BadRequestException.class, e -> assertThat(e.getErrorCode()).isEqualTo("invalid-track"));
+		// lengths not consistent with the frame
+		for (int[] patch : new int[][] {
+			{ 0, 10 }, // frame shorter than its header
+			{ 0, -1 },
+			{ 46, -1 }, // data
+			{ 46, Integer.MAX_VALUE },
+			{ 46, data.length + 5 },
+			{ 50 + data.length, -1 }, // tail
+			{ 50 + data.length, Integer.MAX_VALUE },
+			{ 50 + data.length, 1 },
+		}) {
+			var buffer = ByteBuffer.wrap(new TrackFrame(uuid, null, 3, 0, 0, data, null).encode());
+			buffer.putInt(patch[0], patch[1]);
+			assertThatThrownBy(() -> TrackService.fromFrame(buffer.array()))
+				.as("int %d at %d", patch[1], patch[0])
+				.isInstanceOfSatisfying(BadRequestException.class, e -> assertThat(e.getErrorCode()).isEqualTo("invalid-track"));
+		}
+		// valid data, but with a coder the clients cannot decode
+		byte[] range = TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(s, new WayPoint[0]), TrackStorage.V1V2Bridge.Coder.RANGE);
+		assertThatThrownBy(() -> TrackService.fromFrame(new TrackFrame(uuid, null, 3, 0, 0, range, null).encode()))
+			.isInstanceOfSatisfying(BadRequestException.class, e -> assertThat(e.getErrorCode()).isEqualTo("invalid-track"));
+	}
+
+	@Test
+	void testSingleTrackVersusJson() throws Exception {
+		Random random = new Random(5);
+		List<byte[]> stored = new ArrayList<>(200);
+		for (int i = 0; i < 200; ++i)
+			stored.add(TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(new Segment[] { new Segment(points(random, 5000)) }, new WayPoint[0])));
+		for (int round = 0; round < 2; ++round) {
+			long jsonSize = 0;
+			long framesSize = 0;
+			long jsonDownload = 0;
+			long jsonUpload = 0;
+			long framesDownload = 0;
+			long framesUpload = 0;
+			for (var data : stored) {
+				// download: JSON needs to decode the stored data, a frame contains it as is
+				long start = System.nanoTime();
+				var decoded = TrackStorage.V1V2Bridge.v2ToV1Dto(data);
+				byte[] json = TrailenceUtils.mapper.writeValueAsBytes(new Track(UUID.randomUUID().toString(), "test@test.com", 1, 1000, 1000, decoded.s, decoded.wp, data.length));
+				jsonDownload += System.nanoTime() - start;
+				start = System.nanoTime();
+				byte[] frame = new TrackFrame(UUID.randomUUID(), "test@test.com", 1, 1000, 1000, data, null, data.length).encode();
+				framesDownload += System.nanoTime() - start;
+				jsonSize += json.length;
+				framesSize += frame.length;
+
+				// upload: JSON is parsed then encoded to be stored, a frame is decoded to be validated and stored as received
+				start = System.nanoTime();
+				var track = TrailenceUtils.mapper.readValue(json, Track.class);
+				TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(track.getS(), track.getWp()));
+				jsonUpload += System.nanoTime() - start;
+				start = System.nanoTime();
+				TrackService.fromFrame(frame);
+				framesUpload += System.nanoTime() - start;
+			}
+			int nb = stored.size();
+			log.info("Track of 5000 points, server side: JSON {} bytes, download {} µs, upload {} µs; binary {} bytes, download {} µs, upload {} µs",
+				jsonSize / nb, jsonDownload / nb / 1000, jsonUpload / nb / 1000, framesSize / nb, framesDownload / nb / 1000, framesUpload / nb / 1000);
+			assertThat(framesSize * 3).isLessThan(jsonSize);
+		}
+	}
+
+	private static long bulk(List<byte[]> tracks, boolean json) throws Exception {
+		long size = 0;
+		for (byte[] data : tracks) {
+			if (json) {
+				var decoded = TrackStorage.V1V2Bridge.v2ToV1Dto(data);
+				var dto = new Track(UUID.randomUUID().toString(), "test@test.com", 1, 1000, 1000, decoded.s, decoded.wp, data.length);
+				size += TrailenceUtils.mapper.writeValueAsBytes(dto).length;
+			} else {
+				size += new TrackFrame(UUID.randomUUID(), "test@test.com", 1, 1000, 1000, data, null).encode().length;
+			}
+		}
+		return size;
+	}
+
+	private static Point[] points(Random random, int nb) {
+		Point[] points = new Point[nb];
+		points[0] = new Point(random.nextLong(-900000000, 900000000), random.nextLong(-1800000000, 1800000000), random.nextLong(0, 30000), random.nextLong(1000000000000L, 2000000000000L), null, null, null, null);
+		for (int i = 1; i < nb; ++i)
+			points[i] = new Point(random.nextLong(-500, 500), random.nextLong(-500, 500), random.nextLong(-20, 20), random.nextLong(900, 1100), null, null, null, null);
+		return points;
+	}
+
+}
@@ -0,0 +1,106 @@
+package org.trailence.trail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.trailence.trail.TrackStorage.V1.StoredData;
+import org.trailence.trail.dto.Track.Point;
+import org.trailence.trail.dto.Track.Segment;
+import org.trailence.trail.dto.Track.WayPoint;
+import org.trailence.trail.dto.TrackDetail;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class TestTrackSimplifier {
+
+	@Test
+	void testTiers() throws IOException {
+		// 3 hours recorded at 1 point per second, walking around 1.4 m/s
+		StoredData data = new StoredData(new Segment[] { new Segment(generateWalk(new Random(42), 3 * 3600)) }, new WayPoint[0]);
+		Point[] full = data.s[0].getP();
+		double[] x = new double[full.length];
+		double[] y = new double[full.length];
+		TrackSimplifier.project(full, x, y);
+		int previousSize = TrackStorage.V1V2Bridge.v1DtoToV2(data).length;
+		int previousPoints = full.length;
+		log.info("Full track: {} points, {} bytes", full.length, previousSize);
+		for (var detail : TrackDetail.TIERS) {
+			byte[] bytes = TrackSimplifier.encodeTier(data, detail);
+			long start = System.nanoTime();
+			StoredData decoded = TrackStorage.V1V2Bridge.v2ToV1Dto(bytes);
+			long decodeTime = System.nanoTime() - start;
+			Point[] points = decoded.s[0].getP();
+			assertThat(bytes.length).isLessThan(previousSize);
+			assertThat(points.length).isLessThan(previousPoints);
+
+			// the simplified track must keep the same start, end and total duration
+			assertThat(sum(points, Point::getL)).isEqualTo(sum(full, Point::getL));
+			assertThat(sum(points, Point::getN)).isEqualTo(sum(full, Point::getN));
+			assertThat(sum(points, Point::getT)).isEqualTo(sum(full, Point::getT));
+
+			// no original point should be further than the tolerance from the simplified path
+			boolean[] keep = TrackSimplifier.keep(full, detail.getToleranceMeters());
+			double maxError = 0;
+			int previous = 0;
+			for (int i = 1; i < full.length; ++i) {
+				if (!keep[i]) continue;
+				for (int j = previous + 1; j < i; ++j)
+					maxError = Math.max(maxError, Math.sqrt(TrackSimplifier.distance2(x[j], y[j], x[previous], y[previous], x[i], y[i])));
+				previous = i;
+			}
+			assertThat(maxError).isLessThanOrEqualTo(detail.getToleranceMeters());
+			log.info("Tier {}: {} points, {} bytes, decoded in {} µs, max error {} m", detail, points.length, bytes.length, decodeTime / 1000, String.format("%.2f", maxError));
+			previousSize = bytes.length;
+			previousPoints = points.length;
+		}
+	}
+
+	@Test
+	void testSmallSegments() {
+		assertThat(TrackSimplifier.simplify(new Point[0], 10)).isEmpty();
+		Point[] two = new Point[] { new Point(1L, 1L, null, null, null, null, null, null), new Point(1L, 1L, null, null, null, null, null, null) };
+		assertThat(TrackSimplifier.simplify(two, 10)).isSameAs(two);
+		Point[] line = new Point[] {
+			new Point(450000000L, 50000000L, 1000L, 0L, null, null, null, null),
+			new Point(1000L, 1000L, 10L, 1000L, null, null, null, null),
+			new Point(1000L, 1000L, null, 1000L, null, null, 5L, 10L),
+		};
+		Point[] simplified = TrackSimplifier.simplify(line, 10);
+		assertThat(simplified).hasSize(2);
+		assertThat(simplified[1]).isEqualTo(new Point(2000L, 2000L, 10L, 2000L, null, null, 5L, 10L));
+	}
+
+	private static Point[] generateWalk(Random random, int nb) {
+		Point[] points = new Point[nb];
+		points[0] = new Point(450000000L, 50000000L, 5000L, 1700000000000L, 500L, 800L, null, null);
+		double heading = 0;
+		for (int i = 1; i < nb; ++i) {
+			heading += random.nextGaussian() * 0.2;
+			points[i] = new Point(
+				Math.round(Math.cos(heading) * 126), // ~1.4m
+				Math.round(Math.sin(heading) * 178),
+				(long) random.nextInt(-3, 4),
+				1000L,
+				random.nextInt(10) == 0 ? (long) random.nextInt(-50, 51) : null,
+				null,
+				null,
+				null
+			);
+		}
+		return points;
+	}
+
+	private static long sum(Point[] points, Function<Point, Long> getter) {
+		long total = 0;
+		for (Point p : points) {
+			Long v = getter.apply(p);
+			if (v != null) total += v.longValue();
+		}
+		return total;
+	}
+}
@@ -0,0 +1,95 @@
+package org.trailence.trail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.trailence.global.TrailenceUtils;
+import org.trailence.trail.TrackStorage.V1.StoredData;
+import org.trailence.trail.dto.Track.Point;
+import org.trailence.trail.dto.Track.Segment;
+import org.trailence.trail.dto.Track.WayPoint;
+import org.trailence.trail.dto.TrackStats;
+
+import io.r2dbc.postgresql.codec.Json;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class TestTrackStatsCalculator {
+
+	@Test
+	void testStraightLine() {
+		// 1000 points going north, ~1.11m each, climbing 10cm per point, 1 point per second
+		Point[] points = new Point[1001];
+		points[0] = new Point(450000000L, 50000000L, 1000L, 1700000000000L, null, null, null, null);
+		for (int i = 1; i < points.length; ++i) points[i] = new Point(100L, null, 1L, 1000L, null, null, null, null);
+		TrackStats stats = TrackStatsCalculator.compute(new StoredData(new Segment[] { new Segment(points) }, new WayPoint[0]));
+		assertThat((double) stats.getDistance()).isCloseTo(1112, within(2d));
+		assertThat(stats.getDuration()).isEqualTo(1000000L);
+		assertThat(stats.getStartDate()).isEqualTo(1700000000000L);
+		assertThat(stats.getEndDate()).isEqualTo(1700001000000L);
+		assertThat(stats.getMinElevation()).isEqualTo(1000L);
+		assertThat(stats.getMaxElevation()).isEqualTo(2000L);
+		// variations below the threshold at the end are not counted
+		assertThat(stats.getPositiveElevation()).isCloseTo(1000L, within(30L));
+		assertThat(stats.getNegativeElevation()).isZero();
+		assertThat(stats.getProfileStep()).isEqualTo(10);
+		assertThat(stats.getProfileDistance()).hasSize(113).startsWith(0, 10, 20).endsWith(1110, stats.getDistance());
+		assertThat(stats.getProfileElevation()).hasSize(113);
+		assertThat(stats.getProfileElevation()[0]).isEqualTo(1000L);
+		assertThat(stats.getProfileElevation()[56]).isCloseTo(1504L, within(2L));
+		assertThat(stats.getProfileElevation()[112]).isEqualTo(2000L);
+	}
+
+	@Test
+	void testNoElevationNoTime() {
+		Point[] s1 = new Point[] { new Point(450000000L, 50000000L, null, null, null, null, null, null), new Point(1000L, null, null, null, null, null, null, null) };
+		Point[] s2 = new Point[] { new Point(460000000L, 50000000L, null, null, null, null, null, null), new Point(1000L, null, null, null, null, null, null, null) };
+		TrackStats stats = TrackStatsCalculator.compute(new StoredData(new Segment[] { new Segment(s1), new Segment(s2) }, new WayPoint[0]));
+		// the gap between segments is not counted
+		assertThat((double) stats.getDistance()).isCloseTo(22, within(1d));
+		assertThat(stats.getDuration()).isNull();
+		assertThat(stats.getPositiveElevation()).isNull();
+		assertThat(stats.getProfileElevation()).containsOnlyNulls();
+
+		stats = TrackStatsCalculator.compute(new StoredData(new Segment[0], new WayPoint[0]));
+		assertThat(stats.getDistance()).isZero();
+		assertThat(stats.getProfileDistance()).isEmpty();
+	}
+
+	@Test
+	void compareWithFullTrack() throws IOException {
+		// 3 hours recorded at 1 point per second
+		Random random = new Random(42);
+		Point[] points = new Point[3 * 3600];
+		points[0] = new Point(450000000L, 50000000L, 5000L, 1700000000000L, 500L, 800L, null, null);
+		for (int i = 1; i < points.length; ++i)
+			points[i] = new Point((long) random.nextInt(-150, 151), (long) random.nextInt(-200, 201), (long) random.nextInt(-3, 4), 1000L, null, null, null, null);
+		StoredData data = new StoredData(new Segment[] { new Segment(points) }, new WayPoint[0]);
+		byte[] stored = TrackStorage.V1V2Bridge.v1DtoToV2(data);
+		String statsJson = TrackStatsCalculator.toJson(TrackStatsCalculator.compute(data)).asString();
+
+		String fullJson = null;
+		String json = null;
+		TrackStats stats = null;
+		long fullTime = 0;
+		long statsTime = 0;
+		// first iterations are for warm up
+		for (int i = 0; i < 30; ++i) {
+			long start = System.nanoTime();
+			fullJson = TrailenceUtils.mapper.writeValueAsString(TrackStorage.V1V2Bridge.v2ToV1Dto(stored));
+			if (i >= 10) fullTime += System.nanoTime() - start;
+			start = System.nanoTime();
+			stats = TrackStatsCalculator.fromJson(Json.of(statsJson));
+			json = TrailenceUtils.mapper.writeValueAsString(stats);
+			if (i >= 10) statsTime += System.nanoTime() - start;
+		}
+
+		assertThat(json.length()).isLessThan(fullJson.length() / 10);
+		assertThat(stats.getProfileDistance()).hasSizeLessThanOrEqualTo(TrackStatsCalculator.MAX_PROFILE_SAMPLES + 1);
+		log.info("Full track: {} bytes JSON, {} µs; statistics: {} bytes JSON, {} µs", fullJson.length(), fullTime / 20000, json.length(), statsTime / 20000);
+	}
+}
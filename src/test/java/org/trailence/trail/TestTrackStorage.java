@@ -0,0 +1,252 @@
+package org.trailence.trail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.trailence.trail.TrackStorage.V1.StoredData;
+import org.trailence.trail.dto.Track.Point;
+import org.trailence.trail.dto.Track.Segment;
+import org.trailence.trail.dto.Track.WayPoint;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class TestTrackStorage {
+
+	@Test
+	void testHeadingAndSpeed() throws IOException {
+		Random random = new Random(1);
+		Point[] first = recording(random, 500, true, true);
+		first[10].setH(null);
+		first[11].setS(-5L);
+		first[12].setH(Long.MAX_VALUE);
+		first[13].setH(Long.MIN_VALUE);
+		Point[] second = recording(random, 200, false, true);
+		Point[] single = new Point[] { new Point(450000000L, 50000000L, null, null, null, null, 9000L, null) };
+		StoredData data = new StoredData(new Segment[] { new Segment(first), new Segment(new Point[0]), new Segment(second), new Segment(single) }, new WayPoint[] { wayPoint() });
+
+		StoredData decoded = TrackStorage.V1V2Bridge.v2ToV1Dto(TrackStorage.V1V2Bridge.v1DtoToV2(data));
+		assertThat(decoded.s).hasSize(4);
+		assertThat(decoded.s[0].getP()).containsExactly(first);
+		assertThat(decoded.s[1].getP()).isEmpty();
+		assertThat(decoded.s[2].getP()).containsExactly(second);
+		assertThat(decoded.s[3].getP()).containsExactly(single);
+		assertThat(decoded.wp).containsExactly(wayPoint());
+	}
+
+	// track of 2 segments and 1 way point, as encoded before heading and speed were stored
+	private static final byte[] GOLDEN = new byte[] {
+		-53, 103, 96, 99, 96, 102, 120, -71, -60, -108, -31, -31, 87, -42, 67, -79, 12, 76, 23, 78,
+		-51, 23, 103, 102, 96, 120, -59, -52, -32, -60, -58, -80, -122, 97, 89, -57, -98, 7, 109, 2,
+		76, 12, 12, 12, -85, 24, 86, 46, -39, 122, 125, -103, -128, 19, -112, 45, -62, -56, -60, -52,
+		40, 34, -111, -110, -110, -102, 92, 0, -28, 50, -120, -33, -106, -112, 99, 12, 47, 100, 98, 81,
+		48, 95, 106, -22, 80, -5, -115, 117, 85, 34, 67, -109, -4, 93, -80, 73, 81, 76, 12, -101,
+		88, 24, 88, 127, -13, -80, 125, -25, 103, 97, 98, 98, 96, 98, 82, 102, -44, 110, 4, 106,
+		-118, 53, 101, 93, -14, -11, -27, 67, 38, -90, 67, 12, 96, -64, 90, 92, -110, 88, 84, 2,
+		100, 0, 0
+	};
+
+	private static StoredData goldenTrack() {
+		Point[] first = new Point[] {
+			new Point(450000000L, 50000000L, 12000L, 1700000000000L, 500L, 800L, null, null),
+			new Point(90L, 127L, 1L, 1000L, null, null, null, null),
+			new Point(85L, -120L, -2L, 1000L, -50L, null, null, null),
+			new Point(-3L, 130L, 3L, 1010L, null, 100L, null, null),
+			new Point(-88L, -125L, -1L, 990L, null, null, null, null),
+			new Point(1000L, 2000L, 20L, 60000L, 25L, -30L, null, null),
+		};
+		Point[] second = new Point[] {
+			new Point(450010000L, 50020000L, 12500L, 1700000600000L, 300L, 600L, null, null),
+			new Point(-45L, 63L, 2L, 2000L, null, null, null, null),
+			new Point(47L, -61L, -2L, 2000L, 10L, -10L, null, null),
+		};
+		return new StoredData(new Segment[] { new Segment(first), new Segment(second) }, new WayPoint[] { new WayPoint(450000000L, 50000000L, 12000L, null, "start", "", null, null) });
+	}
+
+	@Test
+	void testWithoutHeadingAndSpeedIsUnchanged() throws IOException {
+		// data stored by the previous encoder is decoded, and encoded again to the same bytes
+		StoredData expected = goldenTrack();
+		StoredData stored = TrackStorage.V1V2Bridge.v2ToV1Dto(GOLDEN);
+		assertThat(stored.s).hasSize(2);
+		assertThat(stored.s[0].getP()).containsExactly(expected.s[0].getP());
+		assertThat(stored.s[1].getP()).containsExactly(expected.s[1].getP());
+		assertThat(stored.wp).containsExactly(expected.wp);
+		assertThat(TrackStorage.V1V2Bridge.v1DtoToV2(stored)).containsExactly(GOLDEN);
+		assertThat(TrackStorage.V1V2Bridge.v1DtoToV2(expected)).containsExactly(GOLDEN);
+
+		Random random = new Random(2);
+		Point[] points = recording(random, 500, true, true);
+		StoredData data = new StoredData(new Segment[] { new Segment(points) }, new WayPoint[] { wayPoint() });
+		byte[] withChannels = TrackStorage.V1V2Bridge.v1DtoToV2(data);
+
+		Point[] stripped = new Point[points.length];
+		for (int i = 0; i < points.length; ++i) {
+			var p = points[i];
+			stripped[i] = new Point(p.getL(), p.getN(), p.getE(), p.getT(), p.getPa(), p.getEa(), null, null);
+		}
+		StoredData legacy = new StoredData(new Segment[] { new Segment(stripped) }, new WayPoint[] { wayPoint() });
+		byte[] withoutChannels = TrackStorage.V1V2Bridge.v1DtoToV2(legacy);
+		assertThat(withoutChannels).isNotEqualTo(withChannels);
+
+		// the data written before heading and speed were stored ends after the way points
+		StoredData decoded = TrackStorage.V1V2Bridge.v2ToV1Dto(withoutChannels);
+		assertThat(decoded.s[0].getP()).containsExactly(stripped);
+		assertThat(decoded.wp).containsExactly(wayPoint());
+		// and the tail of a recording is decoded the same way
+		assertThat(TrackDelta.decode(withoutChannels, TrackDelta.appendToTail(null, new TrackDelta.Appended(true, new Segment[] { new Segment(points) }))).s[0].getP())
+			.hasSize(points.length * 2)
+			.endsWith(points);
+	}
+
+	@Test
+	void testBytesPerPoint() throws IOException {
+		Random random = new Random(3);
+		int nbPoints = 3600;
+		int nbTracks = 20;
+		long[] sizes = new long[3];
+		for (int t = 0; t < nbTracks; ++t) {
+			Point[] points = recording(random, nbPoints, true, true);
+			sizes[0] += encodedSize(points, false, false);
+			sizes[1] += encodedSize(points, true, false);
+			sizes[2] += encodedSize(points, true, true);
+		}
+		double without = (double) sizes[0] / nbTracks / nbPoints;
+		double heading = (double) sizes[1] / nbTracks / nbPoints;
+		double all = (double) sizes[2] / nbTracks / nbPoints;
+		log.info("Recording of {} points: {} bytes per point without heading and speed, {} with heading, {} with heading and speed",
+			nbPoints, String.format("%.2f", without), String.format("%.2f", heading), String.format("%.2f", all));
+		// heading and speed add less than the 2 x 8 bytes they would take as raw values
+		assertThat(all - without).isLessThan(4);
+	}
+
+	@Test
+	void testCoders() throws IOException {
+		Random random = new Random(4);
+		var profiles = new Profile[] {
+			new Profile("alpine", 4 * 3600, 0.8, 0.4, 8, 600, 0),
+			new Profile("urban", 3600, 1.3, 0.3, 1, 120, 5),
+			new Profile("long-distance", 8 * 3600, 6, 0.05, 3, 3000, 1),
+		};
+		for (int round = 0; round < 2; ++round) {
+			for (var profile : profiles) {
+				List<StoredData> tracks = new ArrayList<>();
+				long nbPoints = 0;
+				for (int i = 0; i < 5; ++i) {
+					var track = profile.generate(random);
+					tracks.add(track);
+					for (var segment : track.s) nbPoints += segment.getP().length;
+				}
+				for (var coder : TrackStorage.V1V2Bridge.Coder.values()) {
+					long size = 0;
+					long encode = 0;
+					long decode = 0;
+					for (var track : tracks) {
+						long start = System.nanoTime();
+						byte[] data = TrackStorage.V1V2Bridge.v1DtoToV2(track, coder);
+						encode += System.nanoTime() - start;
+						size += data.length;
+						assertThat(TrackStorage.V1V2Bridge.Coder.of(data)).isEqualTo(coder);
+						start = System.nanoTime();
+						var decoded = TrackStorage.V1V2Bridge.v2ToV1Dto(data);
+						decode += System.nanoTime() - start;
+						for (int s = 0; s < track.s.length; ++s) assertThat(decoded.s[s].getP()).containsExactly(track.s[s].getP());
+					}
+					log.info("{} tracks, {} coder: {} bytes per point, encode {} points/ms, decode {} points/ms",
+						profile.name(), coder, String.format("%.2f", (double) size / nbPoints), nbPoints * 1000000 / encode, nbPoints * 1000000 / decode);
+				}
+			}
+		}
+	}
+
+	@Test
+	void testUnknownCoder() {
+		assertThrows(IOException.class, () -> TrackStorage.V1V2Bridge.v2ToV1Dto(new byte[] { (byte) 0xFE, 0, 0 }));
+	}
+
+	/** Recording with one point per second, with pauses splitting it into segments. */
+	private record Profile(String name, int nbPoints, double speed, double turn, int climb, int pauseEvery, int noise) {
+		StoredData generate(Random random) {
+			List<Segment> segments = new ArrayList<>();
+			int remaining = nbPoints;
+			while (remaining > 0) {
+				int nb = Math.min(remaining, pauseEvery * random.nextInt(1, 10));
+				remaining -= nb;
+				Point[] points = new Point[nb];
+				points[0] = new Point(450000000L + random.nextInt(1000000), 50000000L + random.nextInt(1000000), 10000L + random.nextInt(10000), 1700000000000L, 500L, 800L, 0L, 0L);
+				double direction = random.nextDouble(2 * Math.PI);
+				double velocity = speed;
+				for (int i = 1; i < nb; ++i) {
+					direction += random.nextGaussian() * turn;
+					velocity = Math.clamp(velocity + random.nextGaussian() * speed / 20, speed / 2, speed * 2);
+					points[i] = new Point(
+						nullIfZero(Math.round(Math.cos(direction) * velocity * 90) + (noise > 0 ? random.nextInt(-noise, noise + 1) : 0)),
+						nullIfZero(Math.round(Math.sin(direction) * velocity * 127) + (noise > 0 ? random.nextInt(-noise, noise + 1) : 0)),
+						(long) random.nextInt(-climb, climb + 1),
+						1000L,
+						random.nextInt(noise > 0 ? 3 : 15) == 0 ? (long) random.nextInt(-100, 101) : null,
+						random.nextInt(30) == 0 ? (long) random.nextInt(-100, 101) : null,
+						Math.floorMod(Math.round(Math.toDegrees(direction) * 100), 36000L),
+						Math.round(velocity * 100)
+					);
+				}
+				segments.add(new Segment(points));
+			}
+			return new StoredData(segments.toArray(Segment[]::new), new WayPoint[] { wayPoint() });
+		}
+	}
+
+	private static int encodedSize(Point[] points, boolean heading, boolean speed) throws IOException {
+		Point[] copy = new Point[points.length];
+		for (int i = 0; i < points.length; ++i) {
+			var p = points[i];
+			copy[i] = new Point(p.getL(), p.getN(), p.getE(), p.getT(), p.getPa(), p.getEa(), heading ? p.getH() : null, speed ? p.getS() : null);
+		}
+		return TrackStorage.V1V2Bridge.v1DtoToV2(new StoredData(new Segment[] { new Segment(copy) }, new WayPoint[0])).length;
+	}
+
+	/**
+	 * Walk recorded with one point per second: heading in hundredths of degree and speed in cm/s, unknown while stopped,
+	 * accuracies changing from time to time.
+	 */
+	private static Point[] recording(Random random, int nb, boolean heading, boolean speed) {
+		Point[] points = new Point[nb];
+		points[0] = new Point(450000000L + random.nextInt(1000000), 50000000L + random.nextInt(1000000), 5000L, 1700000000000L, 500L, 800L, heading ? 0L : null, speed ? 0L : null);
+		double direction = random.nextDouble(2 * Math.PI);
+		double velocity = 1.4;
+		boolean stopped = false;
+		for (int i = 1; i < nb; ++i) {
+			if (random.nextInt(stopped ? 20 : 300) == 0) stopped = !stopped;
+			direction += random.nextGaussian() * 0.15;
+			velocity = Math.clamp(velocity + random.nextGaussian() * 0.05, 0.5, 2);
+			double meters = stopped ? 0 : velocity;
+			points[i] = new Point(
+				nullIfZero(Math.round(Math.cos(direction) * meters * 90)),
+				nullIfZero(Math.round(Math.sin(direction) * meters * 127)),
+				(long) random.nextInt(-3, 4),
+				1000L + random.nextInt(-20, 21),
+				random.nextInt(10) == 0 ? (long) random.nextInt(-50, 51) : null,
+				random.nextInt(20) == 0 ? (long) random.nextInt(-100, 101) : null,
+				heading && !stopped ? Math.floorMod(Math.round(Math.toDegrees(direction) * 100), 36000L) : null,
+				speed && !stopped ? Math.round(velocity * 100) : null
+			);
+		}
+		return points;
+	}
+
+	// a difference of 0 on coordinates is decoded as null
+	private static Long nullIfZero(long value) {
+		return value == 0 ? null : value;
+	}
+
+	private static WayPoint wayPoint() {
+		return new WayPoint(450000000L, 50000000L, 5000L, null, "start", "", null, null);
+	}
+
+}
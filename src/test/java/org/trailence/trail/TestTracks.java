@@ -2,22 +2,33 @@ package org.trailence.trail;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.UUID;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.trailence.global.dto.UpdateResponse;
 import org.trailence.global.dto.UuidAndOwner;
 import org.trailence.global.dto.Versioned;
 import org.trailence.init.FreePlanProperties;
+import org.trailence.quotas.QuotaService;
 import org.trailence.quotas.dto.Plan;
 import org.trailence.test.AbstractTest;
 import org.trailence.test.TestUtils;
+import org.trailence.trail.db.TrackTierRepository;
 import org.trailence.trail.dto.Track;
+import org.trailence.trail.dto.TrackAppend;
+import org.trailence.trail.dto.TrackDetail;
+import org.trailence.trail.dto.TrackStats;
 import org.trailence.trail.dto.Track.WayPoint;
 
 import io.restassured.common.mapper.TypeRef;
@@ -25,6 +36,8 @@ import io.restassured.common.mapper.TypeRef;
 class TestTracks extends AbstractTest {
 	
 	@Autowired private FreePlanProperties freePlan;
+	@Autowired private QuotaService quotaService;
+	@Autowired private TrackTierRepository tierRepo;
 
 	@Test
 	void crud() {
@@ -266,4 +279,188 @@ class TestTracks extends AbstractTest {
 		test.asAdmin().stopUserSubscription(userTest.getEmail(), subscription.getUuid());
 	}
 	
+	@Test
+	void getTrackWithDetail() {
+		var user = test.createUserAndLogin();
+		var track = user.createTrack(user.generateRandomTrack(new Random(), 2, 2, 500, 500, 1, 1), -1, null);
+		var full = user.get("/api/track/v1/{owner}/{uuid}", user.getEmail(), track.getUuid()).getBody().as(Track.class);
+		assertThat(full).isEqualTo(track);
+		int previous = 1000;
+		for (var detail : TrackDetail.TIERS) {
+			var response = user.get("/api/track/v1/{owner}/{uuid}?detail=" + detail.name(), user.getEmail(), track.getUuid());
+			assertThat(response.statusCode()).isEqualTo(200);
+			var simplified = response.getBody().as(Track.class);
+			assertThat(simplified.getS()).hasSize(2);
+			assertThat(simplified.getWp()).isEqualTo(track.getWp());
+			assertThat(simplified.getSizeUsed()).isEqualTo(track.getSizeUsed());
+			int nb = simplified.getS()[0].getP().length + simplified.getS()[1].getP().length;
+			assertThat(nb).isLessThanOrEqualTo(previous);
+			previous = nb;
+		}
+	}
+	
+	@Test
+	void getTrackStats() {
+		var user = test.createUserAndLogin();
+		var track = user.createTrack(user.generateRandomTrack(new Random(), 1, 1, 100, 100, 0, 0), -1, null);
+		var response = user.get("/api/track/v1/{owner}/{uuid}/stats", user.getEmail(), track.getUuid());
+		assertThat(response.statusCode()).isEqualTo(200);
+		var stats = response.getBody().as(TrackStats.class);
+		assertThat(stats.getDistance()).isPositive();
+		assertThat(stats.getProfileDistance()).hasSameSizeAs(stats.getProfileElevation()).isNotEmpty();
+		assertThat(stats.getProfileDistance()[stats.getProfileDistance().length - 1]).isEqualTo(stats.getDistance());
+		
+		var user2 = test.createUserAndLogin();
+		response = user2.get("/api/track/v1/{owner}/{uuid}/stats", user.getEmail(), track.getUuid());
+		assertThat(response.statusCode()).isEqualTo(404);
+	}
+	
+	@Test
+	void appendPoints() {
+		var user = test.createUserAndLogin();
+		var track = user.createTrack(user.generateRandomTrack(new Random(), 1, 1, 50, 50, 1, 1), -1, null);
+		var added = user.generateRandomTrack(new Random(), 2, 2, 20, 20, 0, 0);
+		
+		var response = user.put("/api/track/v1/_append", new TrackAppend(track.getUuid(), 1, true, added.getS()));
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.getBody().as(Versioned.class).getVersion()).isEqualTo(2);
+		
+		var merged = user.get("/api/track/v1/{owner}/{uuid}", user.getEmail(), track.getUuid()).getBody().as(Track.class);
+		assertThat(merged.getVersion()).isEqualTo(2);
+		assertThat(merged.getS()).hasSize(2);
+		assertThat(merged.getS()[0].getP()).hasSize(70);
+		assertThat(merged.getS()[1].getP()).hasSize(20);
+		assertThat(merged.getWp()).isEqualTo(track.getWp());
+		
+		// tiers are removed by the append, then saved once computed
+		var detail = TrackDetail.TIERS[0];
+		assertThat(tierRepo.findOneByUuidAndOwnerAndTier(UUID.fromString(track.getUuid()), user.getEmail().toLowerCase(), (short) detail.getTier()).block()).isNull();
+		response = user.get("/api/track/v1/{owner}/{uuid}?detail=" + detail.name(), user.getEmail(), track.getUuid());
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.getBody().as(Track.class).getS()).hasSize(2);
+		assertThat(tierRepo.findOneByUuidAndOwnerAndTier(UUID.fromString(track.getUuid()), user.getEmail().toLowerCase(), (short) detail.getTier()).block()).isNotNull();
+		
+		// outdated version is ignored
+		response = user.put("/api/track/v1/_append", new TrackAppend(track.getUuid(), 1, false, added.getS()));
+		assertThat(response.getBody().as(Versioned.class).getVersion()).isEqualTo(2);
+		
+		// full update with the same content does not change the version
+		response = user.put("/api/track/v1", merged);
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.getBody().as(Track.class).getVersion()).isEqualTo(2);
+		
+		// full update adding a segment
+		var segments = Arrays.copyOf(merged.getS(), 3);
+		segments[2] = added.getS()[0];
+		merged.setS(segments);
+		response = user.put("/api/track/v1", merged);
+		assertThat(response.statusCode()).isEqualTo(200);
+		var updated = response.getBody().as(Track.class);
+		assertThat(updated.getVersion()).isEqualTo(3);
+		assertThat(updated.getS()).hasSize(3);
+		assertThat(user.renewToken().getQuotas().getTracksSizeUsed()).isEqualTo(updated.getSizeUsed());
+	}
+	
+	@Test
+	void quotasRecomputeIncludesTail() {
+		var user = test.createUserAndLogin();
+		var track = user.createTrack(user.generateRandomTrack(new Random(), 1, 1, 50, 50, 1, 1), -1, null);
+		var added = user.generateRandomTrack(new Random(), 1, 1, 20, 20, 0, 0);
+		var response = user.put("/api/track/v1/_append", new TrackAppend(track.getUuid(), 1, true, added.getS()));
+		assertThat(response.statusCode()).isEqualTo(200);
+
+		var appended = user.get("/api/track/v1/{owner}/{uuid}", user.getEmail(), track.getUuid()).getBody().as(Track.class);
+		assertThat(appended.getSizeUsed()).isGreaterThan(track.getSizeUsed());
+		int incremental = user.renewToken().getQuotas().getTracksSizeUsed();
+		assertThat(incremental).isEqualTo(appended.getSizeUsed());
+
+		quotaService.computeQuotas().block();
+		assertThat(user.renewToken().getQuotas().getTracksSizeUsed()).isEqualTo(incremental);
+	}
+	
+	@Test
+	void bulkGet() throws Exception {
+		var user = test.createUserAndLogin();
+		var track1 = user.createTrack();
+		var track2 = user.createTrack();
+		var user2 = test.createUserAndLogin();
+		var track3 = user2.createTrack();
+		
+		var response = user.post("/api/track/v1/_bulkGet", List.of(
+			new UuidAndOwner(track1.getUuid(), user.getEmail()),
+			new UuidAndOwner(track2.getUuid(), user.getEmail().toUpperCase()),
+			new UuidAndOwner(track3.getUuid(), user2.getEmail()),
+			new UuidAndOwner(UUID.randomUUID().toString(), user.getEmail())
+		));
+		assertThat(response.statusCode()).isEqualTo(200);
+		var buffer = ByteBuffer.wrap(response.getBody().asByteArray());
+		var tracks = new HashMap<String, Track>();
+		TrackFrame frame;
+		while ((frame = TrackFrame.decode(buffer)) != null) {
+			var data = TrackDelta.decode(frame.getData(), frame.getTail());
+			tracks.put(frame.getUuid().toString(), new Track(frame.getUuid().toString(), frame.getOwner(), frame.getVersion(), frame.getCreatedAt(), frame.getUpdatedAt(), data.s, data.wp, 0));
+		}
+		assertThat(buffer.hasRemaining()).isFalse();
+		// track of another user, not shared, is not returned
+		assertThat(tracks.keySet()).containsExactlyInAnyOrder(track1.getUuid(), track2.getUuid());
+		assertThat(tracks.get(track1.getUuid())).usingRecursiveComparison().ignoringFields("sizeUsed").isEqualTo(track1);
+		assertThat(tracks.get(track2.getUuid())).usingRecursiveComparison().ignoringFields("sizeUsed").isEqualTo(track2);
+		
+		response = user.post("/api/track/v1/_bulkGet", new ArrayList<>(Collections.nCopies(1001, new UuidAndOwner(track1.getUuid(), user.getEmail()))));
+		TestUtils.expectError(response, 400, "too-many-tracks");
+	}
+	
+	@Test
+	void binaryFormat() throws Exception {
+		var user = test.createUserAndLogin();
+		var track = user.generateRandomTrack(new Random(), 2, 2, 100, 200, 1, 3);
+		track.setOwner(null);
+		byte[] data = TrackStorage.V1V2Bridge.v1DtoToV2(new TrackStorage.V1.StoredData(track.getS(), track.getWp()));
+		var frame = new TrackFrame(UUID.fromString(track.getUuid()), null, 0, 0, 0, data, null);
+		
+		// create as binary, response as binary
+		var response = user.request().contentType(TrackFrame.MEDIA_TYPE_VALUE).accept(TrackFrame.MEDIA_TYPE_VALUE).body(frame.encode()).post("/api/track/v1");
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.contentType()).startsWith(TrackFrame.MEDIA_TYPE_VALUE);
+		var created = TrackFrame.decode(ByteBuffer.wrap(response.getBody().asByteArray()));
+		assertThat(created.getOwner()).isEqualTo(user.getEmail());
+		assertThat(created.getVersion()).isEqualTo(1);
+		assertThat(created.getSizeUsed()).isEqualTo(created.getData().length);
+		
+		// get as JSON and as binary
+		response = user.get("/api/track/v1/{owner}/{uuid}", user.getEmail(), track.getUuid());
+		assertThat(response.getHeader(HttpHeaders.VARY)).contains(HttpHeaders.ACCEPT);
+		var json = response.getBody().as(Track.class);
+		assertThat(json.getS()).isEqualTo(track.getS());
+		assertThat(json.getWp()).isEqualTo(track.getWp());
+		response = user.request().accept(TrackFrame.MEDIA_TYPE_VALUE).get("/api/track/v1/{owner}/{uuid}", user.getEmail(), track.getUuid());
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.getHeader(HttpHeaders.VARY)).contains(HttpHeaders.ACCEPT);
+		var got = TrackFrame.decode(ByteBuffer.wrap(response.getBody().asByteArray()));
+		var decoded = TrackDelta.decode(got.getData(), got.getTail());
+		assertThat(decoded.s).isEqualTo(track.getS());
+		assertThat(decoded.wp).isEqualTo(track.getWp());
+		assertThat(got.getSizeUsed()).isEqualTo(json.getSizeUsed());
+		
+		// update as binary, the data is stored as sent
+		track.setWp(new WayPoint[0]);
+		data = TrackStorage.V1V2Bridge.v1DtoToV2(new TrackStorage.V1.StoredData(track.getS(), track.getWp()));
+		frame = new TrackFrame(UUID.fromString(track.getUuid()), null, 1, 0, 0, data, null);
+		response = user.request().contentType(TrackFrame.MEDIA_TYPE_VALUE).body(frame.encode()).put("/api/track/v1");
+		assertThat(response.statusCode()).isEqualTo(200);
+		var updated = TrackFrame.decode(ByteBuffer.wrap(response.getBody().asByteArray()));
+		assertThat(updated.getVersion()).isEqualTo(2);
+		assertThat(updated.getData()).isEqualTo(data);
+		json = user.get("/api/track/v1/{owner}/{uuid}", user.getEmail(), track.getUuid()).getBody().as(Track.class);
+		assertThat(json.getVersion()).isEqualTo(2);
+		assertThat(json.getWp()).isEmpty();
+		
+		// invalid frames
+		response = user.request().contentType(TrackFrame.MEDIA_TYPE_VALUE).body(new byte[] { 0, 0, 1, 0, 1 }).post("/api/track/v1");
+		TestUtils.expectError(response, 400, "invalid-track");
+		frame = new TrackFrame(UUID.randomUUID(), null, 0, 0, 0, new byte[] { 1, 2, 3 }, null);
+		response = user.request().contentType(TrackFrame.MEDIA_TYPE_VALUE).body(frame.encode()).post("/api/track/v1");
+		TestUtils.expectError(response, 400, "invalid-track");
+	}
+	
 }
@@ -0,0 +1,91 @@
+package org.trailence.trail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.trailence.global.db.proxy.QueryExecution;
+import org.trailence.global.db.proxy.QueryListener;
+import org.trailence.test.AbstractTest;
+import org.trailence.trail.dto.Trail;
+
+class TestTrailValidation extends AbstractTest {
+
+	/** Records the statements executed on the connections. */
+	static class StatementsRecorder implements QueryListener {
+		private final Queue<QueryExecution> executions = new ConcurrentLinkedQueue<>();
+
+		@Override
+		public void afterQuery(QueryExecution execution) {
+			executions.add(execution);
+		}
+
+		void clear() {
+			executions.clear();
+		}
+
+		/** Number of SELECT statements recorded containing the given SQL, with the given owner bound. */
+		long selects(String sql, String owner) {
+			return executions.stream().filter(e -> e.isSelect() && e.sql().contains(sql) && e.bindings().containsValue(owner)).count();
+		}
+	}
+
+	@TestConfiguration
+	static class StatementsRecorderConfiguration {
+		@Bean
+		StatementsRecorder statementsRecorder() {
+			return new StatementsRecorder();
+		}
+	}
+
+	@Autowired private StatementsRecorder recorder;
+
+	@Test
+	void numberOfQueriesDoesNotDependOnBatchSize() {
+		var user = test.createUserAndLogin();
+		String owner = user.getEmail().toLowerCase();
+		var mytrails = user.getMyTrails();
+		var collections = user.createCollections(3);
+		Long createCollectionsQueries = null;
+		Long updateCollectionsQueries = null;
+		for (int nb : new int[] { 2, 20, 100 }) {
+			List<Trail> toCreate = user.generateTrails(mytrails, nb, true);
+			recorder.clear();
+			List<Trail> trails = user.createTrails(toCreate);
+			assertThat(recorder.selects(" FROM tracks ", owner)).as("tracks queries to create %d trails", nb).isEqualTo(1);
+			long collectionsQueries = recorder.selects(" FROM collections ", owner);
+			assertThat(collectionsQueries).as("collections queries to create %d trails", nb).isPositive();
+			if (createCollectionsQueries == null) createCollectionsQueries = collectionsQueries;
+			else assertThat(collectionsQueries).as("collections queries to create %d trails", nb).isEqualTo(createCollectionsQueries);
+
+			// move the trails into the collections, and change the current track of some of them
+			for (int i = 0; i < trails.size(); ++i) {
+				var trail = trails.get(i);
+				trail.setCollectionUuid(collections.get(i % collections.size()).getUuid());
+				if (i % 2 == 0) trail.setCurrentTrackUuid(user.createTrack().getUuid());
+			}
+			recorder.clear();
+			var updated = user.updateTrails(trails);
+			assertThat(recorder.selects(" FROM tracks ", owner)).as("tracks queries to update %d trails", nb).isEqualTo(1);
+			collectionsQueries = recorder.selects(" FROM collections ", owner);
+			assertThat(collectionsQueries).as("collections queries to update %d trails", nb).isPositive();
+			if (updateCollectionsQueries == null) updateCollectionsQueries = collectionsQueries;
+			else assertThat(collectionsQueries).as("collections queries to update %d trails", nb).isEqualTo(updateCollectionsQueries);
+
+			assertThat(updated).hasSize(nb).allMatch(t -> t.getVersion() == 2L);
+			for (var trail : trails)
+				assertThat(updated).filteredOn(t -> t.getUuid().equals(trail.getUuid())).singleElement()
+				.satisfies(t -> {
+					assertThat(t.getCollectionUuid()).isEqualTo(trail.getCollectionUuid());
+					assertThat(t.getCurrentTrackUuid()).isEqualTo(trail.getCurrentTrackUuid());
+				});
+		}
+	}
+
+}
@@ -658,4 +658,27 @@ class TestTrails extends AbstractTest {
 		assertThat(updated).singleElement().isEqualTo(trail);
 	}
 	
+	@Test
+	void export() {
+		var user = test.createUserAndLogin();
+		var mytrails = user.getMyTrails();
+		var trails = user.createTrails(mytrails, 3, true);
+		
+		var response = user.get("/api/trail/v1/_export?format=GPX&collection=" + mytrails.getUuid());
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.getHeader("Content-Disposition")).contains("trailence.gpx");
+		var gpx = response.getBody().asString();
+		assertThat(gpx).startsWith("<?xml").endsWith("</gpx>\n");
+		assertThat(gpx.split("<trk>", -1)).hasSize(trails.size() + 1);
+		
+		response = user.get("/api/trail/v1/_export?format=GEOJSON&zip=true");
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.getContentType()).isEqualTo("application/zip");
+		
+		var user2 = test.createUserAndLogin();
+		response = user2.get("/api/trail/v1/_export?format=KML&collection=" + mytrails.getUuid());
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.getBody().asString()).doesNotContain("<Folder>");
+	}
+	
 }
@@ -0,0 +1,87 @@
+package org.trailence.translations;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.trailence.test.AbstractTest;
+import org.trailence.test.stubs.TranslationStub;
+
+class TestTranslations extends AbstractTest {
+
+	@Autowired private TranslationService service;
+	@Autowired private TranslationMemory memory;
+
+	@Test
+	void translationsAreRemembered() {
+		String suffix = RandomStringUtils.insecure().nextAlphanumeric(20);
+		String text = "Bonjour " + suffix;
+		var stub = TranslationStub.stubTranslate(wireMockServer, text, "Hello");
+		long memoryHits = memory.getMemoryHits();
+		long misses = memory.getMisses();
+
+		for (int i = 0; i < 10; ++i)
+			assertThat(service.translate(text, "fr", "en").block()).isEqualTo("Hello");
+		// same text with different spaces
+		assertThat(service.translate("  " + text.replace(" ", "   ") + "\n", "fr", "en").block()).isEqualTo("Hello");
+		assertThat(wireMockServer.countRequestsMatching(stub.getRequest()).getCount()).isEqualTo(1);
+		assertThat(memory.getMisses() - misses).isEqualTo(1);
+		assertThat(memory.getMemoryHits() - memoryHits).isEqualTo(10);
+
+		// same text with a line break is a different entry
+		var multiline = TranslationStub.stubTranslate(wireMockServer, suffix, "Hello,");
+		assertThat(service.translate("Bonjour\n" + suffix, "fr", "en").block()).isEqualTo("Hello,");
+		assertThat(wireMockServer.countRequestsMatching(stub.getRequest()).getCount()).isEqualTo(1);
+		assertThat(memory.getMisses() - misses).isEqualTo(2);
+		wireMockServer.removeStubMapping(multiline);
+
+		// another target language is a different entry
+		service.translate(text, "fr", "de").block();
+		assertThat(wireMockServer.countRequestsMatching(stub.getRequest()).getCount()).isEqualTo(2);
+
+		// after memory is cleared, the result comes from the database
+		memory.clearMemory();
+		long databaseHits = memory.getDatabaseHits();
+		assertThat(service.translate(text, "fr", "en").block()).isEqualTo("Hello");
+		assertThat(memory.getDatabaseHits() - databaseHits).isEqualTo(1);
+		assertThat(wireMockServer.countRequestsMatching(stub.getRequest()).getCount()).isEqualTo(2);
+		wireMockServer.removeStubMapping(stub);
+	}
+
+	@Test
+	void detectionsAreRemembered() {
+		String text = "Bonjour " + RandomStringUtils.insecure().nextAlphanumeric(20);
+		var stub = TranslationStub.stubDetect(wireMockServer, text, "fr");
+		for (int i = 0; i < 5; ++i)
+			assertThat(service.detectLanguage(text).block()).isEqualTo("fr");
+		assertThat(wireMockServer.countRequestsMatching(stub.getRequest()).getCount()).isEqualTo(1);
+		wireMockServer.removeStubMapping(stub);
+	}
+
+	@Test
+	void aiAndClassicTranslationsAreSeparated() {
+		String text = "Bonjour " + RandomStringUtils.insecure().nextAlphanumeric(20);
+		var classic = TranslationStub.stubTranslate(wireMockServer, text, "Hello");
+		var ai = TranslationStub.stubAI(wireMockServer, text, "Hello from AI");
+		for (int i = 0; i < 3; ++i) {
+			assertThat(service.translate(text, "fr", "en").block()).isEqualTo("Hello");
+			assertThat(service.translateWithAI(text).block()).isEqualTo("Hello from AI");
+		}
+		assertThat(wireMockServer.countRequestsMatching(classic.getRequest()).getCount()).isEqualTo(1);
+		assertThat(wireMockServer.countRequestsMatching(ai.getRequest()).getCount()).isEqualTo(1);
+		wireMockServer.removeStubMapping(classic);
+		wireMockServer.removeStubMapping(ai);
+	}
+
+	@Test
+	void failuresAreNotRemembered() {
+		String text = "Bonjour " + RandomStringUtils.insecure().nextAlphanumeric(20);
+		assertThat(service.translate(text, "fr", "en").block()).isNull();
+		var stub = TranslationStub.stubTranslate(wireMockServer, text, "Hello");
+		assertThat(service.translate(text, "fr", "en").block()).isEqualTo("Hello");
+		assertThat(wireMockServer.countRequestsMatching(stub.getRequest()).getCount()).isEqualTo(1);
+		wireMockServer.removeStubMapping(stub);
+	}
+
+}